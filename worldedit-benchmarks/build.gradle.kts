@@ -0,0 +1,45 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+project.description = "Benchmarks"
+
+applyCommonJavaConfiguration(sourcesJar = false)
+
+dependencies {
+    // Modules
+    jmh(projects.worldeditCore)
+    // The CLI platform provides the offline block registries the benchmarks bootstrap from
+    jmh(projects.worldeditCli)
+
+    // Minecraft expectations
+    jmh(libs.fastutil)
+    jmh(libs.guava)
+
+    // Logging
+    jmh(libs.log4jApi)
+    jmh(libs.log4jCore)
+
+    // Third party
+    jmh(libs.parallelgzip)
+    jmh(libs.lz4Java)
+
+    // Benchmarks
+    jmh(libs.jmhCore)
+    jmhAnnotationProcessor(libs.jmhGeneratorAnnprocess)
+}
+
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.release.set(21)
+    options.encoding = "UTF-8"
+    options.compilerArgs.add("--add-modules=jdk.incubator.vector")
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // Run a subset with e.g. -Pjmh.includes=ParallelQueueExtentBenchmark
+    project.findProperty("jmh.includes")?.let { includes.add(it.toString()) }
+    jvmArgsAppend.add("--add-modules=jdk.incubator.vector")
+    resultFormat.set("JSON")
+}
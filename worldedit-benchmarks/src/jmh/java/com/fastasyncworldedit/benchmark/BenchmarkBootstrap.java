@@ -0,0 +1,59 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.benchmark.stub.StubFawe;
+import com.fastasyncworldedit.core.Fawe;
+import com.sk89q.worldedit.cli.CLIWorldEdit;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Boots just enough of FAWE for the benchmarks to run without a server: the CLI platform provides the block registries and
+ * {@link StubFawe} provides the queue handler and task manager.
+ */
+public final class BenchmarkBootstrap {
+
+    /**
+     * Data version of the newest registry dump shipped with the CLI.
+     */
+    private static final int DATA_VERSION = 3105;
+
+    private static volatile boolean initialized = false;
+
+    private BenchmarkBootstrap() {
+    }
+
+    /**
+     * Initialise the platform, registries and FAWE instance if not done yet. Safe to call from every {@code @Setup}.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        // FAWE treats the thread it is initialised on as the main thread and runs chunk submissions from it inline. Initialise
+        // from a throwaway thread so the JMH worker threads take the same async path they would on a live server.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                CLIWorldEdit app = new CLIWorldEdit();
+                app.onInitialized();
+                app.setDataVersion(DATA_VERSION);
+                app.onStarted();
+                Fawe.set(new StubFawe());
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "FAWE Benchmark Bootstrap");
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while bootstrapping", e);
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Could not bootstrap FAWE", failure.get());
+        }
+        initialized = true;
+    }
+
+}
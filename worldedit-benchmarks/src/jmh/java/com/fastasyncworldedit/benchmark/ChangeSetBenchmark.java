@@ -0,0 +1,89 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.benchmark.stub.StubWorld;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.history.MemoryOptimizedHistory;
+import com.fastasyncworldedit.core.history.change.MutableBlockChange;
+import com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording ({@link FaweStreamChangeSet#add}) and replaying ({@link FaweStreamChangeSet#getBlockIterator}) block changes
+ * through the history stream at the configured compression levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ChangeSetBenchmark {
+
+    @Param({"0", "1", "3"})
+    public int compressionLevel;
+
+    /**
+     * Side length of the changed cube, in blocks.
+     */
+    @Param({"64", "128"})
+    public int size;
+
+    private StubWorld world;
+    private int from;
+    private int to;
+    private FaweStreamChangeSet recorded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkBootstrap.init();
+        Settings.settings().HISTORY.COMPRESSION_LEVEL = compressionLevel;
+        world = new StubWorld();
+        from = BlockTypes.STONE.getDefaultState().getOrdinal();
+        to = BlockTypes.GLASS.getDefaultState().getOrdinal();
+        recorded = record();
+    }
+
+    private FaweStreamChangeSet record() throws IOException {
+        FaweStreamChangeSet changeSet = new MemoryOptimizedHistory(world);
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    changeSet.add(x, y, z, from, to);
+                }
+            }
+        }
+        changeSet.close();
+        return changeSet;
+    }
+
+    @Benchmark
+    public FaweStreamChangeSet add() throws IOException {
+        return record();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) throws IOException {
+        Iterator<MutableBlockChange> iterator = recorded.getBlockIterator(false);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+}
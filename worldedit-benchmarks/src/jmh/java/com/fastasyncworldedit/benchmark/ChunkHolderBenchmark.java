@@ -0,0 +1,127 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.benchmark.stub.StubWorld;
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChunkHolder} state transitions: threads reading one chunk while another stages changes to it, and the lifecycle
+ * of a chunk from initialization to being called. Uses public API only, so the same benchmark can be run against older
+ * revisions of the holder for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ChunkHolderBenchmark {
+
+    private static SingleThreadQueueExtent newQueue(StubWorld world) {
+        SingleThreadQueueExtent queue = new SingleThreadQueueExtent();
+        queue.init(world, Fawe.instance().getQueueHandler().getOrCreateWorldCache(world), null);
+        return queue;
+    }
+
+    /**
+     * One chunk shared by the threads of a group.
+     */
+    @State(Scope.Group)
+    public static class SharedChunk {
+
+        private ChunkHolder<?> holder;
+        private BlockState[] states;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            BenchmarkBootstrap.init();
+            StubWorld world = new StubWorld();
+            holder = ChunkHolder.newInstance();
+            holder.init(newQueue(world), 0, 0);
+            states = new BlockState[]{BlockTypes.GLASS.getDefaultState(), BlockTypes.ANDESITE.getDefaultState()};
+        }
+
+    }
+
+    /**
+     * A chunk per thread, initialized anew for every invocation.
+     */
+    @State(Scope.Thread)
+    public static class OwnChunk {
+
+        private SingleThreadQueueExtent queue;
+        private ChunkHolder<?> holder;
+        private BlockState state;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            BenchmarkBootstrap.init();
+            queue = newQueue(new StubWorld());
+            holder = ChunkHolder.newInstance();
+            state = BlockTypes.STONE.getDefaultState();
+        }
+
+    }
+
+    /**
+     * Position of a thread within the chunk, so the readers and the stager walk the chunk independently.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        private int next() {
+            return index++ & 0xFFFF;
+        }
+
+    }
+
+    @Benchmark
+    @Group("readWhileStaging")
+    @GroupThreads(3)
+    public BlockState read(SharedChunk chunk, Cursor cursor) {
+        int index = cursor.next();
+        return chunk.holder.getBlock(index & 15, index >> 8, (index >> 4) & 15);
+    }
+
+    @Benchmark
+    @Group("readWhileStaging")
+    @GroupThreads(1)
+    public boolean stage(SharedChunk chunk, Cursor cursor) {
+        int index = cursor.next();
+        return chunk.holder.setBlock(index & 15, index >> 8, (index >> 4) & 15, chunk.states[index & 1]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object lifecycle(OwnChunk chunk) {
+        ChunkHolder<?> holder = chunk.holder;
+        holder.init(chunk.queue, 0, 0);
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                holder.setBlock(x, StubWorld.SURFACE_Y, z, chunk.state);
+            }
+        }
+        return holder.call();
+    }
+
+}
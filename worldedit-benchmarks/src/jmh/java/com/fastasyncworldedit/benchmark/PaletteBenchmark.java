@@ -0,0 +1,58 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.core.FaweCache;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FaweCache#toPalette(int, char[])} for sections with an increasing number of distinct states.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaletteBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int distinctStates;
+
+    private char[] section;
+
+    @Setup
+    public void setup() {
+        BenchmarkBootstrap.init();
+        SplittableRandom random = new SplittableRandom(0);
+        int offset = BlockTypesCache.ReservedIDs.VOID_AIR + 1;
+        int bound = Math.min(distinctStates, BlockTypesCache.states.length - offset);
+        section = new char[4096];
+        for (int i = 0; i < section.length; i++) {
+            section[i] = (char) (offset + (bound == 1 ? 0 : random.nextInt(bound)));
+        }
+    }
+
+    @Benchmark
+    public FaweCache.Palette toPalette() {
+        return FaweCache.INSTANCE.toPalette(0, section);
+    }
+
+    @Benchmark
+    public FaweCache.Palette toPaletteUnstretched() {
+        return FaweCache.INSTANCE.toPaletteUnstretched(0, section);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.benchmark.stub.StubWorld;
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParallelQueueExtent#apply} with a {@code CharFilterBlock} over a square of chunks, for tuning
+ * {@code queue.parallel-threads} and {@code queue.target-size}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParallelQueueExtentBenchmark {
+
+    @Param({"1", "4", "8", "16"})
+    public int parallelThreads;
+
+    @Param({"64", "256"})
+    public int targetSize;
+
+    /**
+     * Side length of the edited square, in chunks.
+     */
+    @Param({"16", "32"})
+    public int chunks;
+
+    private ParallelQueueExtent extent;
+    private CuboidRegion region;
+    private Filter replaceFilter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkBootstrap.init();
+        Settings.settings().QUEUE.PARALLEL_THREADS = parallelThreads;
+        Settings.settings().QUEUE.TARGET_SIZE = targetSize;
+
+        StubWorld world = new StubWorld();
+        region = new CuboidRegion(
+                world,
+                BlockVector3.at(0, world.getMinY(), 0),
+                BlockVector3.at((chunks << 4) - 1, StubWorld.SURFACE_Y, (chunks << 4) - 1)
+        );
+        extent = new ParallelQueueExtent(Fawe.instance().getQueueHandler(), world, true);
+
+        final int stone = BlockTypes.STONE.getDefaultState().getOrdinal();
+        final int andesite = BlockTypes.ANDESITE.getDefaultState().getOrdinal();
+        replaceFilter = new Filter() {
+            @Override
+            public void applyBlock(final FilterBlock block) {
+                int ordinal = block.getOrdinal();
+                // Swap back and forth so every invocation changes the same number of blocks
+                if (ordinal == stone) {
+                    block.setOrdinal(andesite);
+                } else if (ordinal == andesite) {
+                    block.setOrdinal(stone);
+                }
+            }
+        };
+    }
+
+    @Benchmark
+    public Filter replaceFilter() {
+        return extent.apply(region, replaceFilter, false);
+    }
+
+    @Benchmark
+    public int setBlocks() {
+        return extent.setBlocks(region, BlockTypes.GLASS.getDefaultState());
+    }
+
+    @Benchmark
+    public int countBlocks() {
+        return extent.countBlocks(region, new ExistingBlockMask(extent));
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.clipboard.CPUOptimizedClipboard;
+import com.fastasyncworldedit.core.extent.clipboard.io.FastSchematicReaderV3;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a v3 schematic with {@link FastSchematicReaderV3} into a memory clipboard. The schematic is written once during
+ * setup: a mostly-air build with a few dozen states, which is what typical build clipboards look like.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SchematicReaderBenchmark {
+
+    /**
+     * Side length of the schematic, in blocks.
+     */
+    @Param({"64", "128"})
+    public int size;
+
+    private byte[] schematic;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkBootstrap.init();
+        Settings.settings().CLIPBOARD.USE_DISK = false;
+        CuboidRegion region = new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(size - 1, size - 1, size - 1));
+        CPUOptimizedClipboard clipboard = new CPUOptimizedClipboard(region);
+        BlockState[] states = {
+                BlockTypes.STONE_BRICKS.getDefaultState(),
+                BlockTypes.OAK_PLANKS.getDefaultState(),
+                BlockTypes.GLASS.getDefaultState(),
+                BlockTypes.OAK_STAIRS.getDefaultState(),
+                BlockTypes.SPRUCE_LOG.getDefaultState()
+        };
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    // hollow shell with a few floors, the rest is air
+                    boolean wall = x == 0 || z == 0 || x == size - 1 || z == size - 1 || (y & 7) == 0;
+                    if (wall) {
+                        clipboard.setBlock(x, y, z, states[(x + y + z) % states.length]);
+                    }
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ClipboardWriter writer = BuiltInClipboardFormat.FAST_V3.getWriter(out)) {
+            writer.write(clipboard);
+        }
+        schematic = out.toByteArray();
+    }
+
+    @Benchmark
+    public Clipboard read() throws IOException {
+        try (FastSchematicReaderV3 reader = new FastSchematicReaderV3(new ByteArrayInputStream(schematic))) {
+            return reader.read(UUID.randomUUID(), dimensions -> new CPUOptimizedClipboard(
+                    new CuboidRegion(BlockVector3.ZERO, dimensions.subtract(BlockVector3.ONE))
+            ));
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.fastasyncworldedit.benchmark;
+
+import com.fastasyncworldedit.benchmark.stub.StubWorld;
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-position {@code setBlock} into a {@link SingleThreadQueueExtent} followed by a flush, i.e. the path taken by
+ * non-filter operations such as brushes and pastes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SingleThreadQueueExtentBenchmark {
+
+    @Param({"64", "256"})
+    public int targetSize;
+
+    /**
+     * Side length of the edited cube, in blocks.
+     */
+    @Param({"64", "128"})
+    public int size;
+
+    private StubWorld world;
+    private SingleThreadQueueExtent queue;
+    private BlockState[] states;
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkBootstrap.init();
+        Settings.settings().QUEUE.TARGET_SIZE = targetSize;
+        world = new StubWorld();
+        queue = new SingleThreadQueueExtent();
+        states = new BlockState[]{BlockTypes.GLASS.getDefaultState(), BlockTypes.ANDESITE.getDefaultState()};
+    }
+
+    @Setup(Level.Invocation)
+    public void initQueue() {
+        queue.init(world, Fawe.instance().getQueueHandler().getOrCreateWorldCache(world), null);
+    }
+
+    @Benchmark
+    public SingleThreadQueueExtent setAndFlush() {
+        BlockState state = states[iteration++ & 1];
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    queue.setBlock(x, y, z, state);
+                }
+            }
+        }
+        queue.flush();
+        return queue;
+    }
+
+}
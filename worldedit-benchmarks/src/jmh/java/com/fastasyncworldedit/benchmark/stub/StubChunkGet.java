@@ -0,0 +1,147 @@
+package com.fastasyncworldedit.benchmark.stub;
+
+import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
+import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.implementation.blocks.CharGetBlocks;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.biome.BiomeTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * Chunk GET backed by {@link StubWorld}'s generator. Sections are generated lazily on first load and {@link #call} merges
+ * the SET into them, which is the part of the NMS implementation that matters for throughput.
+ */
+public class StubChunkGet extends CharGetBlocks {
+
+    private final StubWorld world;
+    private final int chunkX;
+    private final int chunkZ;
+    private boolean createCopy;
+
+    public StubChunkGet(StubWorld world, int chunkX, int chunkZ) {
+        super(world.getMinY() >> 4, world.getMaxY() >> 4);
+        this.world = world;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    @Override
+    public char[] update(int layer, char[] data, boolean aggressive) {
+        if (data == null) {
+            data = new char[4096];
+        }
+        // layer is the normalised (zero-based) section index here
+        world.generate(chunkX, chunkZ, layer + minSectionPosition, data);
+        return data;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends Future<T>> T call(IChunkSet set, Runnable finalize) {
+        for (int layer = set.getMinSectionPosition(); layer <= set.getMaxSectionPosition(); layer++) {
+            char[] setArr = set.loadIfPresent(layer);
+            if (setArr == null || layer < minSectionPosition || layer > maxSectionPosition) {
+                continue;
+            }
+            char[] getArr = load(layer);
+            for (int i = 0; i < 4096; i++) {
+                char ordinal = setArr[i];
+                if (ordinal != BlockTypesCache.ReservedIDs.__RESERVED__) {
+                    getArr[i] = ordinal;
+                }
+            }
+        }
+        finalize.run();
+        return null;
+    }
+
+    @Override
+    public BiomeType getBiomeType(int x, int y, int z) {
+        return BiomeTypes.PLAINS;
+    }
+
+    @Override
+    public int getSkyLight(int x, int y, int z) {
+        return y > StubWorld.SURFACE_Y ? 15 : 0;
+    }
+
+    @Override
+    public int getEmittedLight(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int[] getHeightMap(HeightMapType type) {
+        int[] heightMap = new int[256];
+        Arrays.fill(heightMap, StubWorld.SURFACE_Y + 1 - world.getMinY());
+        return heightMap;
+    }
+
+    @Override
+    public void removeSectionLighting(int layer, boolean sky) {
+    }
+
+    @Override
+    public Map<BlockVector3, FaweCompoundTag> tiles() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public @Nullable FaweCompoundTag tile(int x, int y, int z) {
+        return null;
+    }
+
+    @Override
+    public Collection<FaweCompoundTag> entities() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @Nullable FaweCompoundTag entity(UUID uuid) {
+        return null;
+    }
+
+    @Override
+    public boolean isCreateCopy() {
+        return createCopy;
+    }
+
+    @Override
+    public int setCreateCopy(boolean createCopy) {
+        this.createCopy = createCopy;
+        return -1;
+    }
+
+    @Override
+    public void setLightingToGet(char[][] lighting, int startSectionIndex, int endSectionIndex) {
+    }
+
+    @Override
+    public void setSkyLightingToGet(char[][] lighting, int startSectionIndex, int endSectionIndex) {
+    }
+
+    @Override
+    public void setHeightmapToGet(HeightMapType type, int[] data) {
+    }
+
+    @Override
+    public int getMaxY() {
+        return world.getMaxY();
+    }
+
+    @Override
+    public int getMinY() {
+        return world.getMinY();
+    }
+
+}
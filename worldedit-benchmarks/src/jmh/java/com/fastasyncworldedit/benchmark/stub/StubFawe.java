@@ -0,0 +1,86 @@
+package com.fastasyncworldedit.benchmark.stub;
+
+import com.fastasyncworldedit.core.FAWEPlatformAdapterImpl;
+import com.fastasyncworldedit.core.IFawe;
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+import com.fastasyncworldedit.core.queue.implementation.preloader.Preloader;
+import com.fastasyncworldedit.core.regions.FaweMaskManager;
+import com.fastasyncworldedit.core.util.TaskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Headless {@link IFawe} implementation. Chunks are never sent anywhere and there are no region plugins.
+ */
+public class StubFawe implements IFawe {
+
+    private final File directory;
+    private final TaskManager taskManager;
+    private QueueHandler queueHandler;
+
+    public StubFawe() {
+        try {
+            this.directory = Files.createTempDirectory("fawe-benchmark").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.directory.deleteOnExit();
+        this.taskManager = new StubTaskManager();
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public TaskManager getTaskManager() {
+        return taskManager;
+    }
+
+    @Override
+    public Collection<FaweMaskManager> getMaskManagers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getPlatform() {
+        return "Benchmark";
+    }
+
+    @Override
+    public UUID getUUID(final String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes());
+    }
+
+    @Override
+    public String getName(final UUID uuid) {
+        return uuid.toString();
+    }
+
+    @Override
+    public synchronized QueueHandler getQueueHandler() {
+        if (queueHandler == null) {
+            queueHandler = new StubQueueHandler();
+        }
+        return queueHandler;
+    }
+
+    @Override
+    public Preloader getPreloader(final boolean initialise) {
+        return null;
+    }
+
+    @Override
+    public FAWEPlatformAdapterImpl getPlatformAdapter() {
+        return (chunk, mask, lighting) -> {
+        };
+    }
+
+}
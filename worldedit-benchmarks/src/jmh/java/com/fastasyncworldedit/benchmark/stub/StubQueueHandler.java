@@ -0,0 +1,18 @@
+package com.fastasyncworldedit.benchmark.stub;
+
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+
+/**
+ * Queue handler without a server: there is no physics or async catcher to suspend.
+ */
+public class StubQueueHandler extends QueueHandler {
+
+    @Override
+    public void startUnsafe(final boolean parallel) {
+    }
+
+    @Override
+    public void endUnsafe(final boolean parallel) {
+    }
+
+}
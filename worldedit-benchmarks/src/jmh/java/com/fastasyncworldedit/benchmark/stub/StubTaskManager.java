@@ -0,0 +1,49 @@
+package com.fastasyncworldedit.benchmark.stub;
+
+import com.fastasyncworldedit.core.util.TaskManager;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Task manager without a tick loop. Repeating and delayed tasks are dropped as nothing in the benchmarked code paths waits
+ * on them; one-off tasks run immediately.
+ */
+public class StubTaskManager extends TaskManager {
+
+    private final AtomicInteger taskId = new AtomicInteger();
+
+    @Override
+    public int repeat(@Nonnull final Runnable runnable, final int interval) {
+        return taskId.incrementAndGet();
+    }
+
+    @Override
+    public int repeatAsync(@Nonnull final Runnable runnable, final int interval) {
+        return taskId.incrementAndGet();
+    }
+
+    @Override
+    public void async(@Nonnull final Runnable runnable) {
+        ForkJoinPool.commonPool().execute(runnable);
+    }
+
+    @Override
+    public void task(@Nonnull final Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public void later(@Nonnull final Runnable runnable, final int delay) {
+    }
+
+    @Override
+    public void laterAsync(@Nonnull final Runnable runnable, final int delay) {
+    }
+
+    @Override
+    public void cancel(final int task) {
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.fastasyncworldedit.benchmark.stub;
+
+import com.fastasyncworldedit.core.queue.IChunkGet;
+import com.sk89q.worldedit.world.NullWorld;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+/**
+ * In-memory world standing in for the NMS adapter. Every chunk is generated deterministically as flat terrain: bedrock,
+ * stone with scattered ore up to y=59, three layers of dirt, a layer of grass and air above.
+ */
+public class StubWorld extends NullWorld {
+
+    public static final int SURFACE_Y = 63;
+
+    private final char bedrock = BlockTypes.BEDROCK.getDefaultState().getOrdinalChar();
+    private final char stone = BlockTypes.STONE.getDefaultState().getOrdinalChar();
+    private final char ore = BlockTypes.IRON_ORE.getDefaultState().getOrdinalChar();
+    private final char dirt = BlockTypes.DIRT.getDefaultState().getOrdinalChar();
+    private final char grass = BlockTypes.GRASS_BLOCK.getDefaultState().getOrdinalChar();
+
+    @Override
+    public String getName() {
+        return "benchmark";
+    }
+
+    @Override
+    public String getNameUnsafe() {
+        return "benchmark";
+    }
+
+    @Override
+    public String id() {
+        return "benchmark";
+    }
+
+    @Override
+    public IChunkGet get(int x, int z) {
+        return new StubChunkGet(this, x, z);
+    }
+
+    /**
+     * Fill a chunk section with the generated terrain.
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @param layer  section layer (may be negative)
+     * @param data   array of length 4096 to fill
+     */
+    void generate(int chunkX, int chunkZ, int layer, char[] data) {
+        int minY = getMinY();
+        for (int i = 0; i < 4096; i++) {
+            int y = (layer << 4) + (i >> 8);
+            char ordinal;
+            if (y == minY) {
+                ordinal = bedrock;
+            } else if (y < SURFACE_Y - 3) {
+                int x = (chunkX << 4) + (i & 15);
+                int z = (chunkZ << 4) + (i >> 4 & 15);
+                ordinal = (hash(x, y, z) & 63) == 0 ? ore : stone;
+            } else if (y < SURFACE_Y) {
+                ordinal = dirt;
+            } else if (y == SURFACE_Y) {
+                ordinal = grass;
+            } else {
+                ordinal = BlockTypesCache.ReservedIDs.AIR;
+            }
+            data[i] = ordinal;
+        }
+    }
+
+    private static int hash(int x, int y, int z) {
+        int h = x * 0x1f1f1f1f ^ y * 0x5bd1e995 ^ z * 0x27d4eb2d;
+        return h ^ (h >>> 15);
+    }
+
+}
@@ -8,6 +8,7 @@
 import com.fastasyncworldedit.core.FaweCache;
 import com.fastasyncworldedit.core.math.BitArrayUnstretched;
 import com.fastasyncworldedit.core.math.IntPair;
+import com.fastasyncworldedit.core.queue.implementation.packet.ChunkDelta;
 import com.fastasyncworldedit.core.util.MathMan;
 import com.fastasyncworldedit.core.util.TaskManager;
 import com.mojang.datafixers.util.Either;
@@ -21,11 +22,14 @@
 import com.sk89q.worldedit.world.block.BlockTypesCache;
 import io.papermc.lib.PaperLib;
 import io.papermc.paper.world.ChunkEntitySlices;
+import it.unimi.dsi.fastutil.shorts.ShortArraySet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.IdMap;
 import net.minecraft.core.Registry;
+import net.minecraft.core.SectionPos;
 import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.network.protocol.game.ClientboundSectionBlocksUpdatePacket;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ChunkMap;
@@ -401,6 +405,48 @@ public static void sendChunk(IntPair pair, ServerLevel nmsWorld, int chunkX, int
         });
     }
 
+    /**
+     * Send the changed blocks of a chunk to the players viewing it as block change packets, one per changed section.
+     */
+    public static void sendBlockChanges(IntPair pair, ServerLevel nmsWorld, ChunkDelta delta) {
+        StampLockHolder lockHolder = new StampLockHolder();
+        NMSAdapter.beginChunkPacketSend(nmsWorld.getWorld().getName(), pair, lockHolder);
+        if (lockHolder.chunkLock == null) {
+            return;
+        }
+        MinecraftServer.getServer().execute(() -> {
+            try {
+                LevelChunk levelChunk = nmsWorld.getChunkSource().getChunkNow(delta.getChunkX(), delta.getChunkZ());
+                if (levelChunk == null) {
+                    return;
+                }
+                List<ServerPlayer> players = nearbyPlayers(nmsWorld, levelChunk.getPos());
+                if (players.isEmpty()) {
+                    return;
+                }
+                for (int i = 0; i < delta.getSectionCount(); i++) {
+                    int layer = delta.getLayer(i);
+                    LevelChunkSection section = levelChunk.getSection(levelChunk.getSectionIndexFromSectionY(layer));
+                    short[] changed = delta.getPositions(i);
+                    short[] positions = new short[changed.length];
+                    for (int j = 0; j < changed.length; j++) {
+                        // y << 8 | z << 4 | x to x << 8 | z << 4 | y, see SectionPos#sectionRelativePos
+                        int index = changed[j];
+                        positions[j] = (short) ((index & 15) << 8 | index & 0xF0 | index >> 8);
+                    }
+                    ClientboundSectionBlocksUpdatePacket packet = new ClientboundSectionBlocksUpdatePacket(
+                            SectionPos.of(delta.getChunkX(), layer, delta.getChunkZ()),
+                            new ShortArraySet(positions),
+                            section
+                    );
+                    players.forEach(p -> p.connection.send(packet));
+                }
+            } finally {
+                NMSAdapter.endChunkPacketSend(nmsWorld.getWorld().getName(), pair, lockHolder);
+            }
+        });
+    }
+
     private static List<ServerPlayer> nearbyPlayers(ServerLevel serverLevel, ChunkPos coordIntPair) {
         return serverLevel.getChunkSource().chunkMap.getPlayers(coordIntPair, false);
     }
@@ -13,6 +13,7 @@
 import com.fastasyncworldedit.core.queue.IChunkSet;
 import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
 import com.fastasyncworldedit.core.queue.implementation.blocks.CharGetBlocks;
+import com.fastasyncworldedit.core.queue.implementation.packet.ChunkDelta;
 import com.fastasyncworldedit.core.util.MathMan;
 import com.fastasyncworldedit.core.util.NbtUtils;
 import com.fastasyncworldedit.core.util.collection.AdaptedMap;
@@ -834,13 +835,19 @@ public synchronized <T extends Future<T>> T call(IChunkSet set, Runnable finaliz
                     callback = null;
                 } else {
                     int finalMask = bitMask != 0 ? bitMask : lightUpdate ? set.getBitMask() : 0;
+                    boolean sendNow = Settings.settings().LIGHTING.MODE == 0
+                            || !Settings.settings().LIGHTING.DELAY_PACKET_SENDING;
+                    // the set may be reused once this returns, so collect the changes to send now
+                    ChunkDelta delta = sendNow ? ChunkDelta.of(chunkX, chunkZ, set, getSectionCount()) : null;
                     callback = () -> {
                         // Set Modified
                         nmsChunk.setLightCorrect(true); // Set Modified
                         nmsChunk.mustNotSave = false;
                         nmsChunk.setUnsaved(true);
                         // send to player
-                        if (Settings.settings().LIGHTING.MODE == 0 || !Settings.settings().LIGHTING.DELAY_PACKET_SENDING || finalMask == 0 && biomes != null) {
+                        if (delta != null) {
+                            PaperweightPlatformAdapter.sendBlockChanges(chunkPos, serverLevel, delta);
+                        } else if (sendNow || finalMask == 0 && biomes != null) {
                             this.send();
                         }
                         if (finalizer != null) {
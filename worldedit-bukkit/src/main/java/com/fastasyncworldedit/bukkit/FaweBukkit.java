@@ -295,7 +295,12 @@ public String getName(UUID uuid) {
     public Preloader getPreloader(boolean initialise) {
         if (PaperLib.isPaper()) {
             if (preloader == null && initialise) {
-                return preloader = new AsyncPreloader();
+                return preloader = new AsyncPreloader((world, chunk) -> PaperLib.getChunkAtAsync(
+                        BukkitAdapter.adapt(world),
+                        chunk.x(),
+                        chunk.z(),
+                        true
+                ));
             }
             return preloader;
         }
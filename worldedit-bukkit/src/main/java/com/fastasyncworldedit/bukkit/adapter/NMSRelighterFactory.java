@@ -2,6 +2,7 @@
 
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.processor.lighting.NMSRelighter;
+import com.fastasyncworldedit.core.extent.processor.lighting.ParallelRelighter;
 import com.fastasyncworldedit.core.extent.processor.lighting.RelightMode;
 import com.fastasyncworldedit.core.extent.processor.lighting.Relighter;
 import com.fastasyncworldedit.core.extent.processor.lighting.RelighterFactory;
@@ -14,6 +15,9 @@ public class NMSRelighterFactory implements RelighterFactory {
 
     @Override
     public @Nonnull Relighter createRelighter(RelightMode relightMode, World world, IQueueExtent<?> queue) {
+        if (Settings.settings().LIGHTING.PARALLEL) {
+            return new ParallelRelighter(queue, relightMode);
+        }
         return new NMSRelighter(
                 queue,
                 relightMode != null ? relightMode : RelightMode.valueOf(Settings.settings().LIGHTING.MODE)
@@ -3,8 +3,13 @@
 import com.fastasyncworldedit.core.configuration.Caption;
 import com.fastasyncworldedit.core.regions.FaweMask;
 import com.fastasyncworldedit.core.regions.FaweMaskManager;
+import com.google.common.eventbus.Subscribe;
+import com.plotsquared.core.PlotSquared;
 import com.plotsquared.core.configuration.Settings;
 import com.plotsquared.core.database.DBFunc;
+import com.plotsquared.core.events.post.PostPlotDeleteEvent;
+import com.plotsquared.core.events.post.PostPlotMergeEvent;
+import com.plotsquared.core.events.post.PostPlotUnlinkEvent;
 import com.plotsquared.core.player.PlotPlayer;
 import com.plotsquared.core.plot.Plot;
 import com.plotsquared.core.plot.PlotArea;
@@ -38,6 +43,7 @@ public class PlotSquaredFeature extends FaweMaskManager {
     public PlotSquaredFeature() {
         super("PlotSquared");
         LOGGER.info("Optimizing PlotSquared");
+        PlotSquared.get().getEventDispatcher().registerListener(new RegionChangeListener());
         if (Settings.FAWE_Components.FAWE_HOOK) {
             Settings.Enabled_Components.WORLDEDIT_RESTRICTIONS = false;
             if (Settings.PLATFORM.toLowerCase(Locale.ROOT).startsWith("bukkit")) {
@@ -199,6 +205,28 @@ public FaweMask getMask(Player player, MaskType type, boolean isWhitelist, boole
         return new PlotSquaredMask(maskedRegion, finalPlot);
     }
 
+    /**
+     * Discards classified chunks once plots change shape, as the regions of plots already classified may have changed.
+     */
+    private static final class RegionChangeListener {
+
+        @Subscribe
+        public void onMerge(PostPlotMergeEvent event) {
+            com.fastasyncworldedit.core.util.WEManager.weManager().invalidateChunkCaches();
+        }
+
+        @Subscribe
+        public void onUnlink(PostPlotUnlinkEvent event) {
+            com.fastasyncworldedit.core.util.WEManager.weManager().invalidateChunkCaches();
+        }
+
+        @Subscribe
+        public void onDelete(PostPlotDeleteEvent event) {
+            com.fastasyncworldedit.core.util.WEManager.weManager().invalidateChunkCaches();
+        }
+
+    }
+
     private final class PlotSquaredMask extends FaweMask {
 
         private final Plot plot;
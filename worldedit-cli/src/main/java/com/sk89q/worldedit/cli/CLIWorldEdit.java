@@ -205,6 +205,17 @@ public void onStarted() {
         WorldEdit.getInstance().getEventBus().post(new PlatformReadyEvent(platform));
     }
 
+    //FAWE start - allow embedding the platform (e.g. benchmarks) without a schematic to derive the data version from
+    /**
+     * Set the data version the registries are loaded for. Must be called before {@link #onStarted()}.
+     *
+     * @param dataVersion the data version to load the registries for
+     */
+    public void setDataVersion(int dataVersion) {
+        this.platform.setDataVersion(dataVersion);
+    }
+    //FAWE end
+
     public void onStopped() {
         WorldEdit worldEdit = WorldEdit.getInstance();
         worldEdit.getSessionManager().unload();
@@ -0,0 +1,466 @@
+package com.fastasyncworldedit.core.anvil;
+
+import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
+import com.fastasyncworldedit.core.math.BlockVector3ChunkMap;
+import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.implementation.blocks.CharGetBlocks;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.biome.BiomeTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.enginehub.linbus.tree.LinCompoundTag;
+import org.enginehub.linbus.tree.LinIntTag;
+import org.enginehub.linbus.tree.LinListTag;
+import org.enginehub.linbus.tree.LinLongArrayTag;
+import org.enginehub.linbus.tree.LinNumberTag;
+import org.enginehub.linbus.tree.LinStringTag;
+import org.enginehub.linbus.tree.LinTagType;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * Chunk GET backed by the NBT of a chunk stored in a region file (1.18+ format). Sections are decoded lazily, and
+ * {@link #call(IChunkSet, Runnable)} merges edits into them. Only sections that were changed are re-encoded by
+ * {@link #save()}; everything else in the chunk tag is written back untouched.
+ */
+public class MCAChunk extends CharGetBlocks {
+
+    /**
+     * The first data version using the "sections"/"block_states" layout (21w43a).
+     */
+    public static final int MIN_DATA_VERSION = 2860;
+
+    private final MCAFile file;
+    private final int chunkX;
+    private final int chunkZ;
+    private LinCompoundTag root;
+    private final LinCompoundTag[] sectionTags;
+    private final List<LinCompoundTag> outOfRangeSections = new ArrayList<>();
+    private final boolean[] dirtyBlocks;
+    private final boolean[] dirtyBiomes;
+    private BiomeType[][] biomes;
+    private BlockVector3ChunkMap<FaweCompoundTag> tiles;
+    private boolean dirtyTiles;
+    private boolean modified;
+    private boolean createCopy;
+
+    /**
+     * New instance.
+     *
+     * @param file               region file the chunk belongs to
+     * @param chunkX             chunk x
+     * @param chunkZ             chunk z
+     * @param root               the chunk's root tag, see {@link #isSupported(LinCompoundTag)}
+     * @param minSectionPosition lowest section of the world
+     * @param maxSectionPosition highest section of the world
+     */
+    public MCAChunk(MCAFile file, int chunkX, int chunkZ, LinCompoundTag root, int minSectionPosition, int maxSectionPosition) {
+        super(minSectionPosition, maxSectionPosition);
+        this.file = file;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.root = root;
+        this.sectionTags = new LinCompoundTag[sectionCount];
+        this.dirtyBlocks = new boolean[sectionCount];
+        this.dirtyBiomes = new boolean[sectionCount];
+        for (LinCompoundTag section : root.getListTag("sections", LinTagType.compoundTag()).value()) {
+            int y = getSectionY(section);
+            if (y < minSectionPosition || y > maxSectionPosition) {
+                outOfRangeSections.add(section);
+            } else {
+                sectionTags[y - minSectionPosition] = section;
+            }
+        }
+    }
+
+    /**
+     * Whether a chunk tag can be edited offline: it must be a fully generated chunk saved in the 1.18+ layout.
+     * Proto-chunks are skipped as the server will keep generating them and overwrite any edits.
+     */
+    public static boolean isSupported(LinCompoundTag root) {
+        LinIntTag dataVersion = root.findTag("DataVersion", LinTagType.intTag());
+        if (dataVersion == null || dataVersion.valueAsInt() < MIN_DATA_VERSION) {
+            return false;
+        }
+        if (root.findTag("sections", LinTagType.listTag()) == null) {
+            return false;
+        }
+        LinStringTag status = root.findTag("Status", LinTagType.stringTag());
+        return status != null && (status.value().equals("minecraft:full") || status.value().equals("full"));
+    }
+
+    /**
+     * Get the range of sections that hold blocks in a chunk, used to infer the height of a world that isn't loaded.
+     *
+     * @return {min, max} section positions, or null if the chunk has no blocks
+     */
+    @Nullable
+    public static int[] getSectionRange(LinCompoundTag root) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (LinCompoundTag section : root.getListTag("sections", LinTagType.compoundTag()).value()) {
+            if (section.findTag("block_states", LinTagType.compoundTag()) == null) {
+                continue;
+            }
+            int y = getSectionY(section);
+            min = Math.min(min, y);
+            max = Math.max(max, y);
+        }
+        return min > max ? null : new int[]{min, max};
+    }
+
+    private static int getSectionY(LinCompoundTag section) {
+        // Sometimes a byte, sometimes an int
+        return ((LinNumberTag<?>) section.value().get("Y")).value().intValue();
+    }
+
+    public MCAFile getFile() {
+        return file;
+    }
+
+    public int getX() {
+        return chunkX;
+    }
+
+    public int getZ() {
+        return chunkZ;
+    }
+
+    /**
+     * Whether edits have been merged into this chunk since it was read or last saved.
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Re-encode the changed parts of this chunk and queue it on its region file. Lighting is invalidated and heightmaps
+     * dropped for changed chunks so that the server recomputes both when the chunk is next loaded.
+     *
+     * @throws IOException if the chunk cannot be serialized
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        root = toTag();
+        file.write(MCAFile.index(chunkX, chunkZ), root);
+        modified = false;
+    }
+
+    private LinCompoundTag toTag() {
+        LinCompoundTag.Builder builder = root.toBuilder();
+        List<LinCompoundTag> sections = new ArrayList<>(outOfRangeSections);
+        boolean blocksChanged = false;
+        for (int i = 0; i < sectionCount; i++) {
+            LinCompoundTag section = sectionTags[i];
+            if (!dirtyBlocks[i] && !dirtyBiomes[i]) {
+                if (section != null) {
+                    sections.add(section);
+                }
+                continue;
+            }
+            LinCompoundTag.Builder sectionBuilder = section == null
+                    ? LinCompoundTag.builder().putByte("Y", (byte) (i + minSectionPosition))
+                    : section.toBuilder();
+            if (dirtyBlocks[i]) {
+                blocksChanged = true;
+                sectionBuilder.put("block_states", MCAPalette.encodeBlocks(blocks[i]));
+                sectionBuilder.remove("BlockLight");
+                sectionBuilder.remove("SkyLight");
+            }
+            if (dirtyBiomes[i] || section == null || section.findTag("biomes", LinTagType.compoundTag()) == null) {
+                sectionBuilder.put("biomes", MCAPalette.encodeBiomes(loadBiomes(i)));
+            }
+            section = sectionBuilder.build();
+            sectionTags[i] = section;
+            dirtyBlocks[i] = false;
+            dirtyBiomes[i] = false;
+            sections.add(section);
+        }
+        sections.sort(Comparator.comparingInt(MCAChunk::getSectionY));
+        builder.put("sections", LinListTag.of(LinTagType.compoundTag(), sections));
+        if (blocksChanged) {
+            builder.putByte("isLightOn", (byte) 0);
+            builder.remove("Heightmaps");
+        }
+        if (dirtyTiles) {
+            List<LinCompoundTag> tileTags = new ArrayList<>(tiles.size());
+            for (FaweCompoundTag tile : tiles.values()) {
+                tileTags.add(tile.linTag());
+            }
+            builder.put("block_entities", LinListTag.of(LinTagType.compoundTag(), tileTags));
+            dirtyTiles = false;
+        }
+        return builder.build();
+    }
+
+    @Override
+    public char[] update(int layer, char[] data, boolean aggressive) {
+        if (data == null) {
+            data = new char[4096];
+        }
+        LinCompoundTag section = sectionTags[layer];
+        LinCompoundTag blockStates = section == null ? null : section.findTag("block_states", LinTagType.compoundTag());
+        if (blockStates == null) {
+            Arrays.fill(data, (char) BlockTypesCache.ReservedIDs.AIR);
+        } else {
+            MCAPalette.decodeBlocks(blockStates, data);
+        }
+        return data;
+    }
+
+    private BiomeType[] loadBiomes(int layer) {
+        if (biomes == null) {
+            biomes = new BiomeType[sectionCount][];
+        }
+        BiomeType[] result = biomes[layer];
+        if (result == null) {
+            result = new BiomeType[64];
+            LinCompoundTag section = sectionTags[layer];
+            LinCompoundTag biomesTag = section == null ? null : section.findTag("biomes", LinTagType.compoundTag());
+            if (biomesTag == null) {
+                Arrays.fill(result, BiomeTypes.PLAINS);
+            } else {
+                MCAPalette.decodeBiomes(biomesTag, result);
+            }
+            biomes[layer] = result;
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends Future<T>> T call(IChunkSet set, Runnable finalize) {
+        for (int layer = set.getMinSectionPosition(); layer <= set.getMaxSectionPosition(); layer++) {
+            char[] setArr = set.loadIfPresent(layer);
+            if (setArr == null || layer < minSectionPosition || layer > maxSectionPosition) {
+                continue;
+            }
+            int index = layer - minSectionPosition;
+            char[] getArr = load(layer);
+            boolean changed = false;
+            for (int i = 0; i < 4096; i++) {
+                char ordinal = setArr[i];
+                if (ordinal != BlockTypesCache.ReservedIDs.__RESERVED__ && getArr[i] != ordinal) {
+                    getArr[i] = ordinal;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                dirtyBlocks[index] = true;
+                removeReplacedTiles(layer, setArr);
+            }
+        }
+        BiomeType[][] setBiomes = set.getBiomes();
+        if (setBiomes != null) {
+            for (int i = 0; i < setBiomes.length; i++) {
+                BiomeType[] setArr = setBiomes[i];
+                int layer = i + set.getMinSectionPosition();
+                if (setArr == null || layer < minSectionPosition || layer > maxSectionPosition) {
+                    continue;
+                }
+                BiomeType[] getArr = loadBiomes(layer - minSectionPosition);
+                for (int j = 0; j < 64; j++) {
+                    if (setArr[j] != null && getArr[j] != setArr[j]) {
+                        getArr[j] = setArr[j];
+                        dirtyBiomes[layer - minSectionPosition] = true;
+                    }
+                }
+            }
+        }
+        Map<BlockVector3, FaweCompoundTag> setTiles = set.tiles();
+        if (!setTiles.isEmpty()) {
+            BlockVector3ChunkMap<FaweCompoundTag> tiles = loadTiles();
+            for (Map.Entry<BlockVector3, FaweCompoundTag> entry : setTiles.entrySet()) {
+                BlockVector3 pos = entry.getKey();
+                LinCompoundTag tag = entry.getValue().linTag().toBuilder()
+                        .putInt("x", (chunkX << 4) + pos.x())
+                        .putInt("y", pos.y())
+                        .putInt("z", (chunkZ << 4) + pos.z())
+                        .build();
+                tiles.put(pos.x(), pos.y(), pos.z(), FaweCompoundTag.of(tag));
+            }
+            dirtyTiles = true;
+        }
+        for (boolean dirty : dirtyBlocks) {
+            modified |= dirty;
+        }
+        for (boolean dirty : dirtyBiomes) {
+            modified |= dirty;
+        }
+        modified |= dirtyTiles;
+        finalize.run();
+        return null;
+    }
+
+    private void removeReplacedTiles(int layer, char[] setArr) {
+        BlockVector3ChunkMap<FaweCompoundTag> tiles = loadTiles();
+        if (tiles.isEmpty()) {
+            return;
+        }
+        int minY = layer << 4;
+        List<BlockVector3> replaced = new ArrayList<>();
+        for (BlockVector3 pos : tiles.keySet()) {
+            if (pos.y() >> 4 == layer
+                    && setArr[(pos.y() - minY) << 8 | pos.z() << 4 | pos.x()] != BlockTypesCache.ReservedIDs.__RESERVED__) {
+                replaced.add(pos);
+            }
+        }
+        for (BlockVector3 pos : replaced) {
+            tiles.remove(pos.x(), pos.y(), pos.z());
+        }
+        dirtyTiles |= !replaced.isEmpty();
+    }
+
+    private BlockVector3ChunkMap<FaweCompoundTag> loadTiles() {
+        if (tiles == null) {
+            tiles = new BlockVector3ChunkMap<>();
+            LinListTag<LinCompoundTag> list = root.findListTag("block_entities", LinTagType.compoundTag());
+            if (list != null) {
+                for (LinCompoundTag tag : list.value()) {
+                    int x = tag.getTag("x", LinTagType.intTag()).valueAsInt() & 15;
+                    int y = tag.getTag("y", LinTagType.intTag()).valueAsInt();
+                    int z = tag.getTag("z", LinTagType.intTag()).valueAsInt() & 15;
+                    tiles.put(x, y, z, FaweCompoundTag.of(tag));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    @Override
+    public synchronized boolean trim(boolean aggressive) {
+        // Edited sections only exist in memory until saved, so they must never be dropped
+        boolean result = true;
+        for (int i = 0; i < sectionCount; i++) {
+            if (dirtyBlocks[i]) {
+                result = false;
+                continue;
+            }
+            sections[i] = EMPTY;
+            blocks[i] = null;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean trim(boolean aggressive, int layer) {
+        layer -= minSectionPosition;
+        if (dirtyBlocks[layer]) {
+            return false;
+        }
+        sections[layer] = EMPTY;
+        blocks[layer] = null;
+        return true;
+    }
+
+    @Override
+    public synchronized BiomeType getBiomeType(int x, int y, int z) {
+        int layer = (y >> 4) - minSectionPosition;
+        if (layer < 0 || layer >= sectionCount) {
+            return BiomeTypes.PLAINS;
+        }
+        return loadBiomes(layer)[(y & 12) << 2 | (z & 12) | (x & 12) >> 2];
+    }
+
+    @Override
+    public int getSkyLight(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int getEmittedLight(int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int[] getHeightMap(HeightMapType type) {
+        int[] heightMap = new int[256];
+        LinCompoundTag heightMaps = root.findTag("Heightmaps", LinTagType.compoundTag());
+        LinLongArrayTag data = heightMaps == null ? null : heightMaps.findTag(type.name(), LinTagType.longArrayTag());
+        if (data == null) {
+            return heightMap;
+        }
+        int bits = MCAPalette.bitsFor(getMaxY() - getMinY() + 2);
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        long[] longs = data.value();
+        for (int i = 0; i < 256 && i / perLong < longs.length; i++) {
+            heightMap[i] = (int) ((longs[i / perLong] >>> ((i % perLong) * bits)) & mask);
+        }
+        return heightMap;
+    }
+
+    @Override
+    public void removeSectionLighting(int layer, boolean sky) {
+    }
+
+    @Override
+    public synchronized Map<BlockVector3, FaweCompoundTag> tiles() {
+        return Collections.unmodifiableMap(loadTiles());
+    }
+
+    @Override
+    public synchronized @Nullable FaweCompoundTag tile(int x, int y, int z) {
+        return loadTiles().get(x & 15, y, z & 15);
+    }
+
+    /**
+     * Entities have been stored separately from chunks since 1.17 and are not part of this chunk.
+     */
+    @Override
+    public Collection<FaweCompoundTag> entities() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @Nullable FaweCompoundTag entity(UUID uuid) {
+        return null;
+    }
+
+    @Override
+    public boolean isCreateCopy() {
+        return createCopy;
+    }
+
+    @Override
+    public int setCreateCopy(boolean createCopy) {
+        this.createCopy = createCopy;
+        return -1;
+    }
+
+    @Override
+    public void setLightingToGet(char[][] lighting, int startSectionIndex, int endSectionIndex) {
+    }
+
+    @Override
+    public void setSkyLightingToGet(char[][] lighting, int startSectionIndex, int endSectionIndex) {
+    }
+
+    @Override
+    public void setHeightmapToGet(HeightMapType type, int[] data) {
+    }
+
+    @Override
+    public int getMaxY() {
+        return (maxSectionPosition << 4) + 15;
+    }
+
+    @Override
+    public int getMinY() {
+        return minSectionPosition << 4;
+    }
+
+}
@@ -0,0 +1,377 @@
+package com.fastasyncworldedit.core.anvil;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import org.enginehub.linbus.stream.LinBinaryIO;
+import org.enginehub.linbus.tree.LinCompoundTag;
+import org.enginehub.linbus.tree.LinRootEntry;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A single Anvil region file ({@code r.<x>.<z>.mca}) holding up to 32x32 chunks.
+ * <p>
+ * Chunks are read on demand. Writes are compressed immediately but only hit the disk on {@link #flush()}, which writes
+ * the chunks to free sectors, then the header, and only then releases the sectors the chunks were moved from. Chunks
+ * that were not written are never moved.
+ */
+public class MCAFile implements Closeable {
+
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_SECTORS = 2;
+    private static final int CHUNK_HEADER_BYTES = 5;
+    private static final int MAX_SECTORS = 255;
+
+    private static final byte VERSION_GZIP = 1;
+    private static final byte VERSION_DEFLATE = 2;
+    private static final byte VERSION_NONE = 3;
+    private static final byte VERSION_LZ4 = 4;
+    private static final int EXTERNAL_FLAG = 128;
+
+    private static final byte[] DELETED = new byte[0];
+
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    private final FileChannel channel;
+    private final int[] offsets = new int[1024];
+    private final int[] timestamps = new int[1024];
+    private final BitSet usedSectors = new BitSet();
+    private final Int2ObjectLinkedOpenHashMap<byte[]> pending = new Int2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * Open a region file. The region coordinates are taken from the file name.
+     *
+     * @param path path of the {@code r.<x>.<z>.mca} file, created if it does not exist
+     * @throws IOException if the file cannot be opened or its header cannot be read
+     */
+    public MCAFile(Path path) throws IOException {
+        this.path = path;
+        String[] split = path.getFileName().toString().split("\\.");
+        if (split.length != 4 || !split[0].equals("r") || !split[3].equals("mca")) {
+            throw new IllegalArgumentException("Not a region file: " + path);
+        }
+        this.regionX = Integer.parseInt(split[1]);
+        this.regionZ = Integer.parseInt(split[2]);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readHeader();
+    }
+
+    /**
+     * Get the index of a chunk within its region.
+     *
+     * @param chunkX chunk x, only the lowest 5 bits are used
+     * @param chunkZ chunk z, only the lowest 5 bits are used
+     * @return index in [0, 1024)
+     */
+    public static int index(int chunkX, int chunkZ) {
+        return (chunkX & 31) | (chunkZ & 31) << 5;
+    }
+
+    private void readHeader() throws IOException {
+        usedSectors.set(0, HEADER_SECTORS);
+        long size = channel.size();
+        if (size < HEADER_SECTORS * SECTOR_BYTES) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+        readFully(header, 0);
+        header.flip();
+        IntBuffer ints = header.asIntBuffer();
+        ints.get(offsets);
+        ints.get(timestamps);
+        int fileSectors = (int) ((size + SECTOR_BYTES - 1) / SECTOR_BYTES);
+        for (int i = 0; i < offsets.length; i++) {
+            int offset = offsets[i];
+            if (offset == 0) {
+                continue;
+            }
+            int start = offset >>> 8;
+            int count = offset & 0xFF;
+            if (start < HEADER_SECTORS || count == 0 || start + count > fileSectors) {
+                // Points outside the file, treat it as missing like the server does
+                offsets[i] = 0;
+                continue;
+            }
+            usedSectors.set(start, start + count);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getX() {
+        return regionX;
+    }
+
+    public int getZ() {
+        return regionZ;
+    }
+
+    /**
+     * Whether the chunk at the given index has been saved to this region.
+     */
+    public synchronized boolean hasChunk(int index) {
+        byte[] queued = pending.get(index);
+        if (queued != null) {
+            return queued != DELETED;
+        }
+        return offsets[index] != 0;
+    }
+
+    /**
+     * Last modification time of the chunk in seconds since the epoch, or 0 if it is missing.
+     */
+    public synchronized int getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Read and decompress a chunk. Only the sector read is done under the file lock, so different chunks of the same
+     * region may be decompressed concurrently.
+     *
+     * @param index chunk index, see {@link #index(int, int)}
+     * @return the chunk's root tag, or null if the chunk does not exist
+     * @throws IOException if the chunk is corrupt or cannot be read
+     */
+    @Nullable
+    public LinCompoundTag read(int index) throws IOException {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            byte[] queued = pending.get(index);
+            if (queued != null) {
+                return queued == DELETED ? null : decode(VERSION_DEFLATE, new ByteArrayInputStream(queued));
+            }
+            int offset = offsets[index];
+            if (offset == 0) {
+                return null;
+            }
+            buffer = ByteBuffer.allocate((offset & 0xFF) * SECTOR_BYTES);
+            readFully(buffer, (long) (offset >>> 8) * SECTOR_BYTES);
+        }
+        buffer.flip();
+        int length = buffer.getInt();
+        if (length <= 0 || length > buffer.capacity() - 4) {
+            throw new IOException("Corrupt chunk " + index + " in " + path + " (length " + length + ")");
+        }
+        int version = buffer.get() & 0xFF;
+        if ((version & EXTERNAL_FLAG) != 0) {
+            return decode(version & ~EXTERNAL_FLAG, Files.newInputStream(getExternalPath(index)));
+        }
+        return decode(version, new ByteArrayInputStream(buffer.array(), CHUNK_HEADER_BYTES, length - 1));
+    }
+
+    private LinCompoundTag decode(int version, InputStream in) throws IOException {
+        in = switch (version) {
+            case VERSION_GZIP -> new GZIPInputStream(in);
+            case VERSION_DEFLATE -> new InflaterInputStream(in);
+            case VERSION_NONE -> in;
+            case VERSION_LZ4 -> new LZ4BlockInputStream(in);
+            default -> {
+                in.close();
+                throw new IOException("Unknown chunk compression " + version + " in " + path);
+            }
+        };
+        try (DataInputStream data = new DataInputStream(new FastBufferedInputStream(in))) {
+            return LinBinaryIO.readUsing(data, LinRootEntry::readFrom).value();
+        }
+    }
+
+    /**
+     * Queue a chunk to be written on the next {@link #flush()}. The tag is compressed immediately.
+     *
+     * @param index chunk index, see {@link #index(int, int)}
+     * @param tag   the chunk's root tag
+     * @throws IOException if the tag cannot be serialized
+     */
+    public void write(int index, LinCompoundTag tag) throws IOException {
+        FastByteArrayOutputStream bytes = new FastByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            LinBinaryIO.write(out, new LinRootEntry("", tag));
+        }
+        byte[] compressed = bytes.length == bytes.array.length ? bytes.array : Arrays.copyOf(bytes.array, bytes.length);
+        synchronized (this) {
+            pending.put(index, compressed);
+        }
+    }
+
+    /**
+     * Queue a chunk to be removed from the region on the next {@link #flush()}.
+     *
+     * @param index chunk index, see {@link #index(int, int)}
+     */
+    public synchronized void delete(int index) {
+        pending.put(index, DELETED);
+    }
+
+    /**
+     * Whether there are chunk writes or deletions waiting for {@link #flush()}.
+     */
+    public synchronized boolean isDirty() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Write all queued chunks to disk, then the header.
+     * <p>
+     * Chunks are always written to sectors that the header on disk does not reference, and the sectors they leave are
+     * only released once the new header is durable. If writing fails part way, the file still holds the previous
+     * version of every chunk and the queued chunks are kept for the next attempt.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int now = (int) (System.currentTimeMillis() / 1000L);
+        int[] newOffsets = offsets.clone();
+        int[] newTimestamps = timestamps.clone();
+        // Sectors referenced by the header on disk or taken by this flush
+        BitSet allocated = (BitSet) usedSectors.clone();
+        IntList external = new IntArrayList();
+        IntList removedExternal = new IntArrayList();
+        for (Int2ObjectMap.Entry<byte[]> entry : pending.int2ObjectEntrySet()) {
+            int index = entry.getIntKey();
+            byte[] payload = entry.getValue();
+            if (payload == DELETED) {
+                newOffsets[index] = 0;
+                newTimestamps[index] = 0;
+                removedExternal.add(index);
+                continue;
+            }
+            int version = VERSION_DEFLATE;
+            int sectors = (payload.length + CHUNK_HEADER_BYTES + SECTOR_BYTES - 1) / SECTOR_BYTES;
+            if (sectors > MAX_SECTORS) {
+                // Same as the server: oversized chunks live in their own file and keep a stub in the region
+                Files.write(getExternalTempPath(index), payload);
+                external.add(index);
+                version |= EXTERNAL_FLAG;
+                payload = DELETED;
+                sectors = 1;
+            } else {
+                removedExternal.add(index);
+            }
+            int start = allocate(allocated, sectors);
+            ByteBuffer buffer = ByteBuffer.allocate(sectors * SECTOR_BYTES);
+            buffer.putInt(payload.length + 1);
+            buffer.put((byte) version);
+            buffer.put(payload);
+            buffer.clear();
+            writeFully(buffer, (long) start * SECTOR_BYTES);
+            allocated.set(start, start + sectors);
+            newOffsets[index] = start << 8 | sectors;
+            newTimestamps[index] = now;
+        }
+        channel.force(false);
+        // External chunks are replaced before the header refers to them, a stale external file of a chunk that is not
+        // external on disk is never read
+        for (int i = 0; i < external.size(); i++) {
+            int index = external.getInt(i);
+            Files.move(getExternalTempPath(index), getExternalPath(index), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+        IntBuffer ints = header.asIntBuffer();
+        ints.put(newOffsets);
+        ints.put(newTimestamps);
+        writeFully(header, 0);
+        channel.force(false);
+
+        System.arraycopy(newOffsets, 0, offsets, 0, offsets.length);
+        System.arraycopy(newTimestamps, 0, timestamps, 0, timestamps.length);
+        // The sectors the chunks were moved from are free from now on
+        usedSectors.clear();
+        usedSectors.set(0, HEADER_SECTORS);
+        for (int offset : offsets) {
+            if (offset != 0) {
+                usedSectors.set(offset >>> 8, (offset >>> 8) + (offset & 0xFF));
+            }
+        }
+        pending.clear();
+        for (int i = 0; i < removedExternal.size(); i++) {
+            Files.deleteIfExists(getExternalPath(removedExternal.getInt(i)));
+        }
+    }
+
+    /**
+     * Find the first run of sectors that are free in the given set.
+     */
+    private static int allocate(BitSet allocated, int sectors) {
+        int start = allocated.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int next = allocated.nextSetBit(start);
+            if (next == -1 || next - start >= sectors) {
+                return start;
+            }
+            start = allocated.nextClearBit(next);
+        }
+    }
+
+    private Path getExternalPath(int index) {
+        int chunkX = (regionX << 5) + (index & 31);
+        int chunkZ = (regionZ << 5) + (index >> 5);
+        return path.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc");
+    }
+
+    private Path getExternalTempPath(int index) {
+        Path external = getExternalPath(index);
+        return external.resolveSibling(external.getFileName() + ".tmp");
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Write the whole buffer at the given position of the file.
+     */
+    void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+}
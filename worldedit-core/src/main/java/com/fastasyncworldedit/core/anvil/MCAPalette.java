@@ -0,0 +1,241 @@
+package com.fastasyncworldedit.core.anvil;
+
+import com.sk89q.worldedit.registry.state.Property;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.biome.BiomeTypes;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.chars.Char2IntOpenHashMap;
+import org.enginehub.linbus.tree.LinCompoundTag;
+import org.enginehub.linbus.tree.LinListTag;
+import org.enginehub.linbus.tree.LinLongArrayTag;
+import org.enginehub.linbus.tree.LinStringTag;
+import org.enginehub.linbus.tree.LinTag;
+import org.enginehub.linbus.tree.LinTagType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conversion between the paletted section format used by chunks since 1.18 ({@code block_states} / {@code biomes}) and
+ * FAWE's ordinal arrays.
+ */
+final class MCAPalette {
+
+    private static final int BLOCKS_PER_SECTION = 4096;
+    private static final int BIOMES_PER_SECTION = 64;
+    private static final int MIN_BLOCK_BITS = 4;
+
+    private static final Map<LinCompoundTag, Character> ORDINAL_CACHE = new ConcurrentHashMap<>();
+    private static final LinCompoundTag[] ENTRY_CACHE = new LinCompoundTag[BlockTypesCache.states.length];
+
+    private MCAPalette() {
+    }
+
+    /**
+     * Decode a {@code block_states} compound into ordinals.
+     *
+     * @param blockStates the section's block_states tag
+     * @param out         array of 4096 ordinals, indexed y << 8 | z << 4 | x
+     */
+    static void decodeBlocks(LinCompoundTag blockStates, char[] out) {
+        List<LinCompoundTag> entries = blockStates.getListTag("palette", LinTagType.compoundTag()).value();
+        char[] palette = new char[entries.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = toOrdinal(entries.get(i));
+        }
+        if (palette.length == 1) {
+            Arrays.fill(out, palette[0]);
+            return;
+        }
+        LinLongArrayTag data = blockStates.findTag("data", LinTagType.longArrayTag());
+        if (data == null) {
+            Arrays.fill(out, palette[0]);
+            return;
+        }
+        int bits = Math.max(MIN_BLOCK_BITS, bitsFor(palette.length));
+        unpack(data.value(), bits, palette, out, BLOCKS_PER_SECTION);
+    }
+
+    /**
+     * Encode ordinals into a {@code block_states} compound with a minimal palette.
+     *
+     * @param blocks array of 4096 ordinals, indexed y << 8 | z << 4 | x
+     * @return the block_states tag
+     */
+    static LinCompoundTag encodeBlocks(char[] blocks) {
+        Char2IntOpenHashMap indices = new Char2IntOpenHashMap();
+        indices.defaultReturnValue(-1);
+        int[] values = new int[BLOCKS_PER_SECTION];
+        LinListTag.Builder<LinCompoundTag> palette = LinListTag.builder(LinTagType.compoundTag());
+        for (int i = 0; i < BLOCKS_PER_SECTION; i++) {
+            char ordinal = blocks[i];
+            if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                ordinal = BlockTypesCache.ReservedIDs.AIR;
+            }
+            int index = indices.get(ordinal);
+            if (index == -1) {
+                index = indices.size();
+                indices.put(ordinal, index);
+                palette.add(toEntry(ordinal));
+            }
+            values[i] = index;
+        }
+        LinCompoundTag.Builder builder = LinCompoundTag.builder().put("palette", palette.build());
+        if (indices.size() > 1) {
+            builder.put("data", LinLongArrayTag.of(pack(values, Math.max(MIN_BLOCK_BITS, bitsFor(indices.size())))));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decode a {@code biomes} compound.
+     *
+     * @param biomes the section's biomes tag
+     * @param out    array of 64 biomes, indexed y << 4 | z << 2 | x in 4x4x4 cells
+     */
+    static void decodeBiomes(LinCompoundTag biomes, BiomeType[] out) {
+        List<LinStringTag> entries = biomes.getListTag("palette", LinTagType.stringTag()).value();
+        BiomeType[] palette = new BiomeType[entries.size()];
+        for (int i = 0; i < palette.length; i++) {
+            BiomeType biome = BiomeTypes.get(entries.get(i).value());
+            palette[i] = biome == null ? BiomeTypes.PLAINS : biome;
+        }
+        LinLongArrayTag data = biomes.findTag("data", LinTagType.longArrayTag());
+        if (palette.length == 1 || data == null) {
+            Arrays.fill(out, palette[0]);
+            return;
+        }
+        int bits = bitsFor(palette.length);
+        long[] longs = data.value();
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        for (int i = 0; i < BIOMES_PER_SECTION; i++) {
+            int index = (int) ((longs[i / perLong] >>> ((i % perLong) * bits)) & mask);
+            out[i] = index < palette.length ? palette[index] : palette[0];
+        }
+    }
+
+    /**
+     * Encode biomes into a {@code biomes} compound with a minimal palette.
+     *
+     * @param biomes array of 64 biomes, indexed y << 4 | z << 2 | x in 4x4x4 cells
+     * @return the biomes tag
+     */
+    static LinCompoundTag encodeBiomes(BiomeType[] biomes) {
+        Map<BiomeType, Integer> indices = new IdentityHashMap<>();
+        List<LinStringTag> palette = new ArrayList<>();
+        int[] values = new int[BIOMES_PER_SECTION];
+        for (int i = 0; i < BIOMES_PER_SECTION; i++) {
+            BiomeType biome = biomes[i] == null ? BiomeTypes.PLAINS : biomes[i];
+            Integer index = indices.get(biome);
+            if (index == null) {
+                index = indices.size();
+                indices.put(biome, index);
+                palette.add(LinStringTag.of(biome.id()));
+            }
+            values[i] = index;
+        }
+        LinCompoundTag.Builder builder = LinCompoundTag.builder().put("palette", LinListTag.of(LinTagType.stringTag(), palette));
+        if (palette.size() > 1) {
+            builder.put("data", LinLongArrayTag.of(pack(values, bitsFor(palette.size()))));
+        }
+        return builder.build();
+    }
+
+    static int bitsFor(int paletteSize) {
+        return 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    /**
+     * Unpack values that do not span across longs (the format since 1.16).
+     */
+    private static void unpack(long[] data, int bits, char[] palette, char[] out, int size) {
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        int i = 0;
+        for (int l = 0; l < data.length && i < size; l++) {
+            long word = data[l];
+            for (int j = 0; j < perLong && i < size; j++, i++) {
+                int index = (int) (word & mask);
+                out[i] = index < palette.length ? palette[index] : palette[0];
+                word >>>= bits;
+            }
+        }
+        if (i < size) {
+            Arrays.fill(out, i, size, palette[0]);
+        }
+    }
+
+    private static long[] pack(int[] values, int bits) {
+        int perLong = 64 / bits;
+        long[] data = new long[(values.length + perLong - 1) / perLong];
+        for (int i = 0; i < values.length; i++) {
+            data[i / perLong] |= (long) values[i] << ((i % perLong) * bits);
+        }
+        return data;
+    }
+
+    private static char toOrdinal(LinCompoundTag entry) {
+        Character cached = ORDINAL_CACHE.get(entry);
+        if (cached != null) {
+            return cached;
+        }
+        char ordinal = parseEntry(entry).getOrdinalChar();
+        ORDINAL_CACHE.put(entry, ordinal);
+        return ordinal;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockState parseEntry(LinCompoundTag entry) {
+        BlockType type = BlockTypes.get(entry.getTag("Name", LinTagType.stringTag()).value());
+        if (type == null) {
+            // Unknown to this platform, nothing sensible can be stored for it
+            return BlockTypes.AIR.getDefaultState();
+        }
+        BlockState state = type.getDefaultState();
+        LinCompoundTag properties = entry.findTag("Properties", LinTagType.compoundTag());
+        if (properties == null) {
+            return state;
+        }
+        for (Map.Entry<String, ? extends LinTag<?>> property : properties.value().entrySet()) {
+            Property<Object> key = type.getProperty(property.getKey());
+            if (key == null || !(property.getValue() instanceof LinStringTag value)) {
+                continue;
+            }
+            try {
+                state = state.with(key, key.getValueFor(value.value()));
+            } catch (IllegalArgumentException ignored) {
+                // Keep the default for values this version does not know
+            }
+        }
+        return state;
+    }
+
+    private static LinCompoundTag toEntry(char ordinal) {
+        LinCompoundTag entry = ENTRY_CACHE[ordinal];
+        if (entry != null) {
+            return entry;
+        }
+        BlockState state = BlockTypesCache.states[ordinal];
+        LinCompoundTag.Builder builder = LinCompoundTag.builder().putString("Name", state.getBlockType().id());
+        if (!state.getStates().isEmpty()) {
+            LinCompoundTag.Builder properties = LinCompoundTag.builder();
+            for (Map.Entry<Property<?>, Object> property : state.getStates().entrySet()) {
+                properties.putString(property.getKey().getName(), property.getValue().toString().toLowerCase(Locale.ROOT));
+            }
+            builder.put("Properties", properties.build());
+        }
+        entry = builder.build();
+        ENTRY_CACHE[ordinal] = entry;
+        return entry;
+    }
+
+}
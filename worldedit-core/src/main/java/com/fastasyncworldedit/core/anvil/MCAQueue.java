@@ -0,0 +1,130 @@
+package com.fastasyncworldedit.core.anvil;
+
+import com.fastasyncworldedit.core.queue.IChunkGet;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.blocks.NullChunkGet;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.extent.NullExtent;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queue over the region files of an {@link MCAWorld}. Chunk GETs are {@link MCAChunk}s read straight from disk, and
+ * {@link #flush()} writes every chunk changed through this queue back to its region file.
+ * <p>
+ * Like {@link SingleThreadQueueExtent}, an instance must only be used by one thread at a time. Use one queue per worker
+ * and do not let two queues edit chunks of the same region concurrently.
+ */
+public class MCAQueue extends SingleThreadQueueExtent {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+
+    private final MCAWorld world;
+    private final Long2ObjectOpenHashMap<MCAChunk> loaded = new Long2ObjectOpenHashMap<>();
+
+    MCAQueue(MCAWorld world) {
+        super(world.getMinY(), world.getMaxY());
+        this.world = world;
+        NullExtent bounds = new NullExtent() {
+            @Override
+            public int getMinY() {
+                return world.getMinY();
+            }
+
+            @Override
+            public int getMaxY() {
+                return world.getMaxY();
+            }
+        };
+        init(bounds, this::getOrLoad, null);
+    }
+
+    public MCAWorld getWorld() {
+        return world;
+    }
+
+    private IChunkGet getOrLoad(int chunkX, int chunkZ) {
+        long pair = MathMan.pairInt(chunkX, chunkZ);
+        synchronized (loaded) {
+            MCAChunk chunk = loaded.get(pair);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        MCAChunk chunk;
+        try {
+            chunk = world.readChunk(chunkX, chunkZ);
+        } catch (IOException e) {
+            LOGGER.error("Could not read chunk {}, {} of {}", chunkX, chunkZ, world.getRegionFolder(), e);
+            chunk = null;
+        }
+        if (chunk == null) {
+            return NullChunkGet.getInstance();
+        }
+        MCAChunk existing;
+        synchronized (loaded) {
+            existing = loaded.putIfAbsent(pair, chunk);
+        }
+        if (existing == null) {
+            return chunk;
+        }
+        try {
+            world.release(chunk);
+        } catch (IOException e) {
+            LOGGER.error("Could not release chunk {}, {} of {}", chunkX, chunkZ, world.getRegionFolder(), e);
+        }
+        return existing;
+    }
+
+    /**
+     * Whether the chunk exists on disk in a format that can be edited, see {@link MCAChunk#isSupported}. The chunk is
+     * kept loaded for the following edit.
+     */
+    public boolean isEditable(int chunkX, int chunkZ) {
+        return getCachedGet(chunkX, chunkZ) instanceof MCAChunk;
+    }
+
+    /**
+     * Apply all queued edits, then write changed chunks to their region files and release every loaded chunk
+     * and its region file.
+     */
+    @Override
+    public synchronized void flush() {
+        super.flush();
+        List<MCAChunk> chunks;
+        synchronized (loaded) {
+            chunks = new ArrayList<>(loaded.values());
+            loaded.clear();
+        }
+        Set<MCAFile> files = new LinkedHashSet<>();
+        try {
+            for (MCAChunk chunk : chunks) {
+                if (chunk.isModified()) {
+                    chunk.save();
+                    files.add(chunk.getFile());
+                }
+            }
+            for (MCAFile file : files) {
+                file.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (MCAChunk chunk : chunks) {
+                try {
+                    world.release(chunk);
+                } catch (IOException e) {
+                    LOGGER.error("Could not close region file {}", chunk.getFile().getPath(), e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.fastasyncworldedit.core.anvil;
+
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.Logger;
+import org.enginehub.linbus.tree.LinCompoundTag;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The region files of a world that is not loaded by the server, edited directly on disk.
+ * <p>
+ * {@link #apply(Filter)} runs a filter over every chunk of the world without the server loading any of them: each
+ * worker takes whole region files, reads and decompresses their chunks, applies the filter through an {@link MCAQueue}
+ * and rewrites only the sectors of chunks that changed.
+ * <p>
+ * Region files are reference counted, as a worker may read chunks of the region files of other workers. A region file
+ * is closed once the last worker and the last chunk read from it release it.
+ */
+public class MCAWorld implements Closeable {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+    private static final Pattern REGION_FILE = Pattern.compile("r\\.-?\\d+\\.-?\\d+\\.mca");
+
+    private final Path regionFolder;
+    private final int minY;
+    private final int maxY;
+    private final Long2ObjectOpenHashMap<MCAFile> files = new Long2ObjectOpenHashMap<>();
+    private final Long2IntOpenHashMap references = new Long2IntOpenHashMap(); // guarded by files
+
+    /**
+     * New instance.
+     *
+     * @param regionFolder folder containing the {@code r.<x>.<z>.mca} files
+     * @param minY         min y of the world (inclusive)
+     * @param maxY         max y of the world (inclusive)
+     */
+    public MCAWorld(Path regionFolder, int minY, int maxY) {
+        this.regionFolder = regionFolder;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Open the region folder of a world folder (or a dimension folder such as {@code DIM-1}), inferring the world
+     * height from the first editable chunk found.
+     *
+     * @param worldFolder the world folder
+     * @return the world, or null if it has no region folder
+     * @throws IOException if the region folder cannot be read
+     */
+    @Nullable
+    public static MCAWorld open(Path worldFolder) throws IOException {
+        Path regionFolder = worldFolder.resolve("region");
+        if (!Files.isDirectory(regionFolder)) {
+            return null;
+        }
+        // The overworld height since 1.18, only used if no chunk has been generated yet
+        int minSection = -4;
+        int maxSection = 19;
+        search:
+        for (Path path : listRegionFiles(regionFolder)) {
+            try (MCAFile file = new MCAFile(path)) {
+                for (int index = 0; index < 1024; index++) {
+                    if (!file.hasChunk(index)) {
+                        continue;
+                    }
+                    LinCompoundTag root = file.read(index);
+                    int[] range = root != null && MCAChunk.isSupported(root) ? MCAChunk.getSectionRange(root) : null;
+                    if (range != null) {
+                        minSection = range[0];
+                        maxSection = range[1];
+                        break search;
+                    }
+                }
+            }
+        }
+        return new MCAWorld(regionFolder, minSection << 4, (maxSection << 4) + 15);
+    }
+
+    private static List<Path> listRegionFiles(Path regionFolder) throws IOException {
+        try (Stream<Path> stream = Files.list(regionFolder)) {
+            return stream.filter(path -> REGION_FILE.matcher(path.getFileName().toString()).matches()).toList();
+        }
+    }
+
+    public Path getRegionFolder() {
+        return regionFolder;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get the region files of this world.
+     */
+    public List<Path> getRegionFiles() throws IOException {
+        return listRegionFiles(regionFolder);
+    }
+
+    /**
+     * Get an open region file. Region files are never created by reading, so this returns null for regions that have not
+     * been generated. The file is kept open until this world is closed.
+     *
+     * @param regionX region x
+     * @param regionZ region z
+     * @return the region file, or null if it does not exist
+     * @throws IOException if the file cannot be opened
+     */
+    @Nullable
+    public MCAFile getRegion(int regionX, int regionZ) throws IOException {
+        // never released
+        return acquireRegion(regionX, regionZ);
+    }
+
+    private static long pair(int regionX, int regionZ) {
+        return (long) regionX << 32 | regionZ & 0xffffffffL;
+    }
+
+    @Nullable
+    private MCAFile acquireRegion(int regionX, int regionZ) throws IOException {
+        long pair = pair(regionX, regionZ);
+        synchronized (files) {
+            MCAFile file = files.get(pair);
+            if (file == null) {
+                Path path = regionFolder.resolve("r." + regionX + "." + regionZ + ".mca");
+                if (!Files.exists(path)) {
+                    return null;
+                }
+                file = new MCAFile(path);
+                files.put(pair, file);
+            }
+            references.addTo(pair, 1);
+            return file;
+        }
+    }
+
+    private void releaseRegion(MCAFile file) throws IOException {
+        long pair = pair(file.getX(), file.getZ());
+        synchronized (files) {
+            if (files.get(pair) != file) {
+                // already closed with the world
+                return;
+            }
+            if (references.addTo(pair, -1) > 1) {
+                return;
+            }
+            references.remove(pair);
+            files.remove(pair);
+            // closed while holding the lock, so the file is not opened again before it has been written
+            file.close();
+        }
+    }
+
+    /**
+     * Read a chunk from disk. The region file of the chunk is kept open until the chunk is {@link #release(MCAChunk)
+     * released}.
+     *
+     * @return the chunk, or null if it does not exist or cannot be edited offline
+     * @throws IOException if the chunk is corrupt or cannot be read
+     */
+    @Nullable
+    public MCAChunk readChunk(int chunkX, int chunkZ) throws IOException {
+        MCAFile file = acquireRegion(chunkX >> 5, chunkZ >> 5);
+        if (file == null) {
+            return null;
+        }
+        boolean read = false;
+        try {
+            LinCompoundTag root = file.read(MCAFile.index(chunkX, chunkZ));
+            if (root == null || !MCAChunk.isSupported(root)) {
+                return null;
+            }
+            read = true;
+            return new MCAChunk(file, chunkX, chunkZ, root, minY >> 4, maxY >> 4);
+        } finally {
+            if (!read) {
+                releaseRegion(file);
+            }
+        }
+    }
+
+    /**
+     * Release the region file of a chunk read by {@link #readChunk(int, int)}, closing it if no other chunk or worker uses
+     * it. The chunk must have been saved before.
+     *
+     * @param chunk the chunk
+     * @throws IOException if the region file cannot be written
+     */
+    public void release(MCAChunk chunk) throws IOException {
+        releaseRegion(chunk.getFile());
+    }
+
+    /**
+     * Create a new queue over this world. See {@link MCAQueue} for threading constraints.
+     */
+    public MCAQueue getQueue() {
+        return new MCAQueue(this);
+    }
+
+    /**
+     * Apply a filter to every editable chunk of this world, using {@link Settings.QUEUE#PARALLEL_THREADS} workers that
+     * each process whole region files.
+     *
+     * @param filter the filter, forked for every worker
+     * @return the filter, after the forks have been joined
+     * @throws IOException if the region folder cannot be listed
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Filter> T apply(T filter) throws IOException {
+        final List<Path> regions = new ArrayList<>(getRegionFiles());
+        final Iterator<Path> regionsIter = regions.iterator();
+        final QueueHandler handler = Fawe.instance().getQueueHandler();
+        final int size = Math.max(1, Math.min(regions.size(), Settings.settings().QUEUE.PARALLEL_THREADS));
+        final ForkJoinTask[] tasks = IntStream.range(0, size).mapToObj(i -> handler.submit(() -> {
+            final Filter newFilter = filter.fork();
+            final MCAQueue queue = getQueue();
+            while (true) {
+                final Path path;
+                synchronized (regionsIter) {
+                    if (!regionsIter.hasNext()) {
+                        break;
+                    }
+                    path = regionsIter.next();
+                }
+                try {
+                    applyRegion(queue, newFilter, path);
+                } catch (Throwable t) {
+                    LOGGER.error("Could not process region file {}", path, t);
+                }
+            }
+        })).toArray(ForkJoinTask[]::new);
+        for (ForkJoinTask task : tasks) {
+            task.quietlyJoin();
+        }
+        filter.join();
+        return filter;
+    }
+
+    private void applyRegion(MCAQueue queue, Filter filter, Path path) throws IOException {
+        String[] split = path.getFileName().toString().split("\\.");
+        int regionX = Integer.parseInt(split[1]);
+        int regionZ = Integer.parseInt(split[2]);
+        MCAFile file = acquireRegion(regionX, regionZ);
+        if (file == null) {
+            return;
+        }
+        try {
+            Region region = new CuboidRegion(
+                    BlockVector3.at(regionX << 9, minY, regionZ << 9),
+                    BlockVector3.at((regionX << 9) + 511, maxY, (regionZ << 9) + 511)
+            );
+            ChunkFilterBlock block = null;
+            for (int z = 0; z < 32; z++) {
+                for (int x = 0; x < 32; x++) {
+                    int chunkX = (regionX << 5) + x;
+                    int chunkZ = (regionZ << 5) + z;
+                    if (!file.hasChunk(MCAFile.index(x, z)) || !queue.isEditable(chunkX, chunkZ)) {
+                        continue;
+                    }
+                    block = queue.apply(block, filter, region, chunkX, chunkZ, true);
+                }
+                // Write back a row at a time to bound the number of decoded chunks held by a worker
+                queue.flush();
+            }
+        } finally {
+            // other workers may still hold chunks of this region
+            releaseRegion(file);
+        }
+    }
+
+    /**
+     * Flush and close all open region files.
+     */
+    @Override
+    public void close() throws IOException {
+        List<MCAFile> open;
+        synchronized (files) {
+            open = new ArrayList<>(files.values());
+            files.clear();
+            references.clear();
+        }
+        IOException failure = null;
+        for (MCAFile file : open) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package com.fastasyncworldedit.core.command;
 
+import com.fastasyncworldedit.core.anvil.MCAWorld;
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.function.mask.MaskPlanner;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.LocalSession;
 import com.sk89q.worldedit.WorldEdit;
@@ -7,16 +10,27 @@
 import com.sk89q.worldedit.command.util.CommandPermissions;
 import com.sk89q.worldedit.command.util.CommandPermissionsConditionGenerator;
 import com.sk89q.worldedit.entity.Player;
+import com.sk89q.worldedit.extension.input.ParserContext;
+import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extension.platform.Platform;
+import com.sk89q.worldedit.function.mask.Mask;
 import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.function.pattern.RandomStatePattern;
 import com.sk89q.worldedit.internal.annotation.Selection;
 import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
 import org.enginehub.piston.annotation.Command;
 import org.enginehub.piston.annotation.CommandContainer;
 import org.enginehub.piston.annotation.param.Arg;
 import org.enginehub.piston.annotation.param.Switch;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -24,12 +38,15 @@
  * @deprecated Anvil classes were used on versions prior to 1.13 to trim chunks.
  *         The way how it's been done was unsafe and led to issues back the years, hence it
  *         hasn't been implemented in any modern version. Therefore the current
- *         implementation is deprecated for removal without replacement.
+ *         implementation is deprecated for removal without replacement. Only {@code /replaceall}
+ *         is available again, backed by {@link MCAWorld}.
  */
 @Deprecated
 @CommandContainer(superTypes = CommandPermissionsConditionGenerator.Registration.class)
 public class AnvilCommands {
 
+    private final WorldEdit worldEdit;
+
     /**
      * Create a new instance.
      *
@@ -37,6 +54,7 @@ public class AnvilCommands {
      */
     public AnvilCommands(WorldEdit worldEdit) {
         checkNotNull(worldEdit);
+        this.worldEdit = worldEdit;
     }
 
     //    /**
@@ -127,21 +145,95 @@ public void replaceAll(
                     String fromPattern,
             String toPatternStr,
             @Switch(name = 'd', desc = "Disable wildcard data matching")
-                    boolean useData
+                    boolean useData,
+            @Switch(name = 'f', desc = "Run even if the world is loaded (save it first)")
+                    boolean force
     ) throws WorldEditException {
-        //        final FaweBlockMatcher matchFrom;  TODO NOT IMPLEMENTED
-        //        if (from == null) {
-        //            matchFrom = FaweBlockMatcher.NOT_AIR;
-        //        } else {
-        //            if (from.contains(":")) {
-        //                useData = true; //override d flag, if they specified data they want it
-        //            }
-        //            matchFrom = FaweBlockMatcher.fromBlocks(worldEdit.getBlocks(player, from, true), useData);
-        //        }
-        //        final FaweBlockMatcher matchTo = FaweBlockMatcher.setBlocks(worldEdit.getBlocks(player, to, true));
-        //        ReplaceSimpleFilter filter = new ReplaceSimpleFilter(matchFrom, matchTo);
-        //        ReplaceSimpleFilter result = runWithWorld(player, folder, filter, true);
-        //        if (result != null) player.print(Caption.of("fawe.worldedit.visitor.visitor.block", (result.getTotal())));
+        Path worldFolder = resolveWorldFolder(player, folder);
+        if (worldFolder == null) {
+            player.print(Caption.of("fawe.worldedit.anvil.world.not.found", folder));
+            return;
+        }
+        if (isLoaded(worldFolder) && !force) {
+            player.print(Caption.of("fawe.worldedit.anvil.world.is.loaded"));
+            return;
+        }
+        ParserContext context = new ParserContext();
+        context.setActor(player);
+        context.setWorld(player.getWorld());
+        context.setSession(worldEdit.getSessionManager().get(player));
+        context.setTryLegacy(player.getLimit().ALLOW_LEGACY);
+        context.setPreferringWildcard(!useData);
+        Mask from = worldEdit.getMaskFactory().parseFromInput(fromPattern.isEmpty() ? "#existing" : fromPattern, context);
+        Pattern to = worldEdit.getPatternFactory().parseFromInput(toPatternStr, context);
+        // the context world is the one the player is in, masks and patterns may not read any other block than the one tested
+        if (MaskPlanner.fold(from) == null) {
+            player.print(Caption.of("fawe.worldedit.anvil.mask.unsupported", fromPattern));
+            return;
+        }
+        if (!isStateOnly(to)) {
+            player.print(Caption.of("fawe.worldedit.anvil.pattern.unsupported", toPatternStr));
+            return;
+        }
+
+        try (MCAWorld world = MCAWorld.open(worldFolder)) {
+            if (world == null) {
+                player.print(Caption.of("fawe.worldedit.anvil.world.not.found", folder));
+                return;
+            }
+            int affected = world.apply(from.toFilter(to)).getBlocksApplied();
+            player.print(Caption.of("fawe.worldedit.visitor.visitor.block", affected));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * World folders of unloaded worlds are looked up in the world container, the folder holding the folder of the world the
+     * player is in.
+     *
+     * @return the world folder, or null if it is not within the world container
+     */
+    @Nullable
+    private static Path resolveWorldFolder(Player player, String folder) {
+        Path current = player.getWorld().getStoragePath();
+        Path container = current != null && current.getParent() != null ? current.getParent() : Path.of("");
+        container = container.toAbsolutePath().normalize();
+        Path resolved;
+        try {
+            resolved = container.resolve(folder).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!resolved.startsWith(container) || resolved.equals(container)) {
+            return null;
+        }
+        return resolved;
+    }
+
+    /**
+     * Whether a pattern places blocks without reading the extent, or the world of the parser context.
+     */
+    private static boolean isStateOnly(Pattern pattern) {
+        if (pattern instanceof RandomPattern random) {
+            return random.getPatterns().stream().allMatch(AnvilCommands::isStateOnly);
+        }
+        return pattern instanceof BlockStateHolder<?> || pattern instanceof RandomStatePattern;
+    }
+
+    /**
+     * Whether a world folder belongs to a world loaded by the server.
+     */
+    private boolean isLoaded(Path worldFolder) {
+        Platform platform = worldEdit.getPlatformManager().queryCapability(Capability.WORLD_EDITING);
+        for (World world : platform.getWorlds()) {
+            Path path = world.getStoragePath();
+            if (path != null ? path.toAbsolutePath().normalize().equals(worldFolder)
+                    : world.getName().equals(worldFolder.getFileName().toString())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Command(
@@ -16,6 +16,8 @@
 import com.sk89q.worldedit.extension.platform.Platform;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.util.formatting.text.TextComponent;
 import com.sk89q.worldedit.util.formatting.text.TranslatableComponent;
@@ -84,9 +86,10 @@ public boolean perform(final Player player, LocalSession session, boolean rightC
             World world = player.getWorld();
             RollbackDatabase db = DBHandler.dbHandler().getDatabase(world);
             int count = 0;
-            for (Supplier<RollbackOptimizedHistory> supplier : db.getEdits(target, false)) {
+            for (Supplier<RollbackOptimizedHistory> supplier : db.getEditsNewestFirst(null, 0, target, target)) {
                 count++;
                 RollbackOptimizedHistory edit = supplier.get();
+                edit.setReadRegions(new Region[]{new CuboidRegion(target, target)});
                 Iterator<MutableFullBlockChange> iter = edit.getFullBlockIterator(null, 0, false);
                 while (iter.hasNext()) {
                     MutableFullBlockChange change = iter.next();
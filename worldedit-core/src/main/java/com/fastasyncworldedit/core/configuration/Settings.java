@@ -285,6 +285,10 @@ public static final class ENABLED_COMPONENTS {
         public boolean DEBUG = false;
         @Comment({"Whether or not FAWE should notify you on startup about new versions available."})
         public boolean UPDATE_NOTIFICATIONS = true;
+        @Comment({"Time the stages of edits (chunk loading, filtering, history, relighting, ...) per thread.",
+                " - View the times of recent edits with /fawe perf",
+                " - Stages are also recorded as JFR events if a flight recording is running"})
+        public boolean PERFORMANCE_TELEMETRY = false;
 
     }
 
@@ -346,6 +350,12 @@ public static final class REGION_RESTRICTIONS_OPTIONS {
                 " - Forcefully prevents any edit outside this range"
         })
         public boolean RESTRICT_TO_SAFE_RANGE = true;
+        @Comment({
+                "Remember which chunks are fully inside or outside a player's regions across their edits",
+                " - Blocks are only checked against the regions in chunks partially inside them",
+                " - Kept until the player's regions or world change"
+        })
+        public boolean CACHE_CHUNK_CLASSIFICATION = true;
 
     }
 
@@ -486,6 +496,18 @@ public static class HISTORY {
                 " - Does not impact performance",
         })
         public boolean USE_DATABASE = true;
+        @Comment({
+                "Edits are written to the database in a single transaction once this many are pending",
+                " - Fewer, larger transactions keep up better when many edits are made"
+        })
+        public int DATABASE_FLUSH_SIZE = 256;
+        @Comment("The maximum time in milliseconds an edit waits before it is written to the database")
+        public int DATABASE_FLUSH_LATENCY = 1000;
+        @Comment({
+                "Number of separate connections used to read the database (e.g. inspect, rollback)",
+                " - Reads then never wait for edits being written"
+        })
+        public int DATABASE_READ_CONNECTIONS = 2;
         @Comment({
                 "Record history with dispatching:",
                 " - Much faster as it avoids duplicate block checks",
@@ -520,6 +542,12 @@ public static class HISTORY {
                 " - Must be in the range [64, 33554432]",
         })
         public int BUFFER_SIZE = 531441;
+        @Comment({
+                "Store block history on disk in separately compressed chunk segments with an index",
+                " - Undo, rollback and inspect of a region only read the chunks they need",
+                " - Slightly larger files, and history saved this way cannot be read by older versions",
+        })
+        public boolean CHUNK_INDEXED = false;
 
         @Comment("Delete history on disk after a number of days")
         public int DELETE_AFTER_DAYS = 7;
@@ -559,6 +587,12 @@ public static class QUEUE {
                 "This should equal the number of processors you have",
         })
         public int PARALLEL_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+        @Comment({
+                "The side length, in chunks, of the square tiles chunks are handed to the parallel threads in",
+                " - Neighbouring chunks of a tile are processed by the same thread, idle threads take tiles of busy ones",
+                " - Rounded down to a power of two",
+        })
+        public int PARALLEL_TILE_SIZE = 4;
 
         @Comment({
                 "When doing edits that effect more than this many chunks:",
@@ -592,6 +626,23 @@ public static class QUEUE {
         // Renamed from PRELOAD_CHUNK because it was set to 100000... something that lots of servers will now have which is
         // wayyy too much...
         public int PRELOAD_CHUNK_COUNT = 512;
+        @Comment({
+                "The maximum number of chunk loads requested by the preloader per tick",
+                " - Fewer are requested as ticks take longer, none once they take 25% longer than normal",
+        })
+        public int PRELOAD_CHUNKS_PER_TICK = 32;
+        @Comment("The maximum number of chunk loads requested by the preloader that may be pending at once")
+        public int PRELOAD_MAX_IN_FLIGHT = 128;
+
+        @Comment({
+                "Cache the block counts of chunk sections to answer //count and //distr without scanning them again",
+                " - Sections are invalidated when changed by FAWE, other changes are only picked up once an entry expires",
+        })
+        public boolean SECTION_HISTOGRAM_CACHE = false;
+        @Comment("The maximum number of chunk sections to cache block counts for")
+        public int SECTION_HISTOGRAM_CACHE_SIZE = 65536;
+        @Comment("How long the block counts of a chunk section are cached for, in seconds")
+        public int SECTION_HISTOGRAM_CACHE_EXPIRY = 300;
 
         @Comment({
                 "If pooling is enabled (reduces GC, higher memory usage)",
@@ -631,6 +682,13 @@ public static class EXPERIMENTAL {
                 " - 0 means undo operations are not batched."})
         public int UNDO_BATCH_SIZE = 128;
 
+        @Comment({
+                "Undo and redo block changes grouped by chunk",
+                " - The size defines the number of block changes read and sorted by chunk at once.",
+                " - The chunks of the next batch are preloaded while the current one is applied.",
+                " - 0 means block changes are applied in the order they were recorded."})
+        public int UNDO_CHUNK_SORT_SIZE = 1048576;
+
         @Comment({
                 "[UNSAFE] Directly modify the region files. (OBSOLETE - USE ANVIL COMMANDS)",
                 " - IMPROPER USE CAN CAUSE WORLD CORRUPTION!",
@@ -656,6 +714,13 @@ public static class EXPERIMENTAL {
         })
         public boolean KEEP_ENTITIES_IN_BLOCKS = true;
 
+        @Comment({
+                "[SAFE] Send small changes to chunks as block change packets instead of resending the whole chunk",
+                " - Whole chunks are still sent if estimated to be smaller, or if block entities, biomes or light changed",
+                " - Only applies to chunks sent right away, not to chunks sent after relighting",
+        })
+        public boolean DELTA_CHUNK_PACKETS = true;
+
         @Comment({
                 "[SAFE] Attempt to remove entities from the world if they were not present in the expected chunk (default: true)",
                 " - Sometimes an entity may have moved into a different chunk to that which FAWE expected",
@@ -682,6 +747,26 @@ public static class EXPERIMENTAL {
         })
         public boolean USE_VECTOR_API = false;
 
+        @Comment({
+                "Compile expressions (//generate, expression masks and patterns, ...) to bytecode working on",
+                "primitive numbers instead of boxed method handle chains",
+                " - Expressions using switch statements, or break / continue outside of a loop, always use method handles"
+        })
+        public boolean COMPILE_EXPRESSIONS = false;
+
+        @Comment({
+                "[SAFE] Test masks of edits working on whole chunks (//set, //replace, //count, ...) as a single lookup of",
+                "all parts only depending on the block state, followed by the other parts cheapest first (default: true)"
+        })
+        public boolean FUSED_MASKS = true;
+
+        @Comment({
+                "[SAFE] Fill sphere and cylinder brushes a chunk section at a time, in parallel like //set, instead of",
+                "setting each block on its own (default: true)",
+                " - Brushes with a mask still test each block of the shape"
+        })
+        public boolean CHUNK_BRUSHES = true;
+
     }
 
     @Comment({"Web/HTTP connection related settings"})
@@ -766,6 +851,12 @@ public static class CLIPBOARD {
                 " - levels over 6 require ZSTD 1.4.8+ to be installed to the system"
         })
         public int COMPRESSION_LEVEL = 1;
+        @Comment({
+                "Store in-memory clipboards per 16x16x16 section, with a palette of the blocks used in each section",
+                " - Only used if clipboard.use-disk is disabled, compression-level is ignored if enabled",
+                " - Sections of a single block only store that block",
+        })
+        public boolean SECTION_PALETTE = true;
         @Comment("Number of days to keep history on disk before deleting it")
         public int DELETE_AFTER_DAYS = 1;
         @Comment({
@@ -784,6 +875,16 @@ public static class CLIPBOARD {
                 " - May run into issues where a file lock is not correctly lifted"
         })
         public boolean LOCK_CLIPBOARD_FILE = false;
+        @Comment({
+                "Size in MiB of the parts of an on-disk clipboard file that are memory mapped together",
+                " - Rounded down to a power of two",
+        })
+        public int MAPPED_SEGMENT_SIZE = 64;
+        @Comment({
+                "Maximum number of parts of an on-disk clipboard file that are memory mapped at the same time",
+                " - The part mapped the longest ago is unmapped first",
+        })
+        public int MAX_MAPPED_SEGMENTS = 32;
 
     }
 
@@ -799,10 +900,16 @@ public static class LIGHTING {
                 " - 0 = None (Do no relighting)",
                 " - 1 = Optimal (Relight changed light sources and changed blocks)",
                 " - 2 = All (Slowly relight every blocks)",
+                " - 3 = Heightmap (Like optimal, but derive sky light from heightmaps and only spread it where columns differ)",
         })
         public int MODE = 1;
         @Comment({"If existing lighting should be removed before relighting"})
         public boolean REMOVE_FIRST = true;
+        @Comment({
+                "If light should be propagated on multiple threads, in independent areas of 3x3 chunks around changed chunks.",
+                " - Not used if the server relights with Starlight",
+        })
+        public boolean PARALLEL = false;
 
     }
 
@@ -4,6 +4,7 @@
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.history.RollbackOptimizedHistory;
 import com.fastasyncworldedit.core.util.MainUtil;
+import com.fastasyncworldedit.core.util.TaskManager;
 import com.fastasyncworldedit.core.util.collection.YieldIterable;
 import com.fastasyncworldedit.core.util.task.AsyncNotifyQueue;
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
@@ -13,6 +14,7 @@
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -21,23 +23,39 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
-import java.util.stream.IntStream;
 
 public class RollbackDatabase extends AsyncNotifyQueue {
 
     private static final Logger LOGGER = LogManagerCompat.getLogger();
+    private static final int PAGE_SIZE = 64;
 
     private final String prefix;
     private final File dbLocation;
     private final World world;
     private final ConcurrentLinkedQueue<RollbackOptimizedHistory> historyChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+    // Idle read connections, see #read
+    private final BlockingQueue<Connection> readers = new LinkedBlockingQueue<>();
+    private final AtomicInteger readerCount = new AtomicInteger();
     private Connection connection;
+    private boolean spatialIndex;
+    private CompletableFuture<Boolean> scheduledFlush;
 
     RollbackDatabase(World world) throws SQLException, ClassNotFoundException {
         super((t, e) -> e.printStackTrace());
@@ -97,10 +115,93 @@ public Future<Boolean> init() {
                     stmt.executeUpdate();
                 }
             }
+            createSpatialIndex();
             return true;
         });
     }
 
+    /**
+     * Create an R*Tree index over the bounds of the edits, kept up to date by triggers on the edits table. Edits logged
+     * before the index existed are indexed when it is created.
+     */
+    private void createSpatialIndex() {
+        String edits = "`" + this.prefix + "_edits`";
+        String rtreeName = this.prefix + "_edits_rtree";
+        String rtree = "`" + rtreeName + "`";
+        try {
+            boolean exists;
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT 1 FROM sqlite_master WHERE `type`='table' AND `name`=?")) {
+                stmt.setString(1, rtreeName);
+                try (ResultSet result = stmt.executeQuery()) {
+                    exists = result.next();
+                }
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS " + rtree +
+                        " USING rtree_i32(`id`, `x1`, `x2`, `z1`, `z2`, `y1`, `y2`)");
+                stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS `" + rtreeName + "_insert` AFTER INSERT ON " + edits +
+                        " BEGIN INSERT OR REPLACE INTO " + rtree +
+                        " VALUES (NEW.rowid, NEW.`x1`, NEW.`x2`, NEW.`z1`, NEW.`z2`, NEW.`y1`, NEW.`y2`); END");
+                stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS `" + rtreeName + "_delete` AFTER DELETE ON " + edits +
+                        " BEGIN DELETE FROM " + rtree + " WHERE `id`=OLD.rowid; END");
+                if (!exists) {
+                    stmt.executeUpdate("INSERT INTO " + rtree +
+                            " SELECT rowid, `x1`, `x2`, `z1`, `z2`, `y1`, `y2` FROM " + edits);
+                }
+            }
+            spatialIndex = true;
+        } catch (SQLException e) {
+            LOGGER.warn("Could not create the spatial index of the rollback database, queries will scan all edits", e);
+        }
+    }
+
+    /**
+     * Get the query of the edits intersecting some bounds. Parameters are the bounds as in {@link #setBounds}, followed by
+     * the minimum time and the player, if any.
+     */
+    private String getEditsQuery(boolean player) {
+        String query;
+        if (spatialIndex) {
+            // CROSS JOIN keeps the R*Tree as outer loop
+            query = """
+                    SELECT e.rowid AS `edit_row`, e.* FROM `%1$s_edits_rtree` AS r
+                      CROSS JOIN `%1$s_edits` AS e ON e.rowid = r.`id`
+                      WHERE r.`x2` >= ?
+                        AND r.`x1` <= ?
+                        AND r.`z2` >= ?
+                        AND r.`z1` <= ?
+                        AND r.`y2` >= ?
+                        AND r.`y1` <= ?
+                    """;
+        } else {
+            query = """
+                    SELECT e.rowid AS `edit_row`, e.* FROM `%1$s_edits` AS e
+                      WHERE e.`x2` >= ?
+                        AND e.`x1` <= ?
+                        AND e.`z2` >= ?
+                        AND e.`z1` <= ?
+                        AND e.`y2` >= ?
+                        AND e.`y1` <= ?
+                    """;
+        }
+        query += "    AND e.`time` > ?";
+        if (player) {
+            query += "\n    AND e.`player`= ?";
+        }
+        return query.formatted(this.prefix);
+    }
+
+    private static void setBounds(PreparedStatement stmt, BlockVector3 pos1, BlockVector3 pos2) throws SQLException {
+        stmt.setInt(1, pos1.x());
+        stmt.setInt(2, pos2.x());
+        stmt.setInt(3, pos1.z());
+        stmt.setInt(4, pos2.z());
+        // Keep 128 offset for backwards-compatibility
+        stmt.setInt(5, pos1.y() - 128);
+        stmt.setInt(6, pos2.y() - 128);
+    }
+
     public Future<Integer> delete(UUID uuid, int id) {
         return call(() -> {
             try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM`" + this.prefix + "_edits` WHERE `player`=? " +
@@ -113,7 +214,7 @@ public Future<Integer> delete(UUID uuid, int id) {
     }
 
     public Future<RollbackOptimizedHistory> getEdit(@Nonnull UUID uuid, int id) {
-        return call(() -> {
+        return read(connection -> {
             try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM`" + this.prefix +
                     "_edits` WHERE `player`=? AND `id`=?")) {
                 stmt.setBytes(1, toBytes(uuid));
@@ -177,36 +278,18 @@ public Iterable<Supplier<RollbackOptimizedHistory>> getEdits(
     ) {
         YieldIterable<Supplier<RollbackOptimizedHistory>> yieldIterable = new YieldIterable<>();
 
-        Future<Integer> future = call(() -> {
+        Future<Integer> future = read(connection -> {
             try {
                 int count = 0;
-                String stmtStr = """
-                                SELECT * FROM `%s_edits`
-                                  WHERE `time` > ?
-                                    AND `x2` >= ?
-                                    AND `x1` <= ?
-                                    AND `z2` >= ?
-                                    AND `z1` <= ?
-                                    AND `y2` >= ?
-                                    AND `y1` <= ?
-                                """;
-                if (uuid != null) {
-                    stmtStr += "\n    AND `player`= ?";
-                }
+                String stmtStr = getEditsQuery(uuid != null);
                 if (ascending) {
-                    stmtStr += "\n  ORDER BY `time` ASC, `id` ASC";
+                    stmtStr += "\n  ORDER BY e.`time` ASC, e.`id` ASC";
                 } else {
-                    stmtStr += "\n  ORDER BY `time` DESC, `id` DESC";
+                    stmtStr += "\n  ORDER BY e.`time` DESC, e.`id` DESC";
                 }
-                try (PreparedStatement stmt = connection.prepareStatement(stmtStr.formatted(this.prefix))) {
-                    stmt.setInt(1, (int) (minTime / 1000));
-                    stmt.setInt(2, pos1.x());
-                    stmt.setInt(3, pos2.x());
-                    stmt.setInt(4, pos1.z());
-                    stmt.setInt(5, pos2.z());
-                    // Keep 128 offset for backwards-compatibility
-                    stmt.setInt(6, pos1.y() - 128);
-                    stmt.setInt(7, pos2.y() - 128);
+                try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
+                    setBounds(stmt, pos1, pos2);
+                    stmt.setInt(7, (int) (minTime / 1000));
                     if (uuid != null) {
                         byte[] uuidBytes = toBytes(uuid);
                         stmt.setBytes(8, uuidBytes);
@@ -251,15 +334,154 @@ public Iterable<Supplier<RollbackOptimizedHistory>> getEdits(
         return yieldIterable;
     }
 
+    /**
+     * Get the edits intersecting the given bounds, newest first. The edits are queried in small pages while iterating, so
+     * the first edits are available quickly and the database is not held while the caller processes them.
+     *
+     * @param uuid    the player, or null for all players
+     * @param minTime the minimum time of the edits, in milliseconds
+     * @param pos1    the minimum point
+     * @param pos2    the maximum point
+     * @return the edits, newest first
+     * @since TODO
+     */
+    public Iterable<Supplier<RollbackOptimizedHistory>> getEditsNewestFirst(
+            @Nullable UUID uuid,
+            long minTime,
+            BlockVector3 pos1,
+            BlockVector3 pos2
+    ) {
+        return () -> new NewestFirstIterator(uuid, minTime, pos1, pos2);
+    }
+
+    private final class NewestFirstIterator implements Iterator<Supplier<RollbackOptimizedHistory>> {
+
+        private final UUID uuid;
+        private final long minTime;
+        private final BlockVector3 pos1;
+        private final BlockVector3 pos2;
+        private Iterator<Supplier<RollbackOptimizedHistory>> page = Collections.emptyIterator();
+        private boolean first = true;
+        private boolean done;
+        // the last edit of the previous page
+        private int lastTime;
+        private int lastId;
+        private long lastRow;
+
+        private NewestFirstIterator(UUID uuid, long minTime, BlockVector3 pos1, BlockVector3 pos2) {
+            this.uuid = uuid;
+            this.minTime = minTime;
+            this.pos1 = pos1;
+            this.pos2 = pos2;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !done) {
+                List<Supplier<RollbackOptimizedHistory>> next;
+                try {
+                    next = read(this::queryPage).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+                if (next == null || next.size() < PAGE_SIZE) {
+                    done = true;
+                }
+                if (next != null) {
+                    page = next.iterator();
+                }
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Supplier<RollbackOptimizedHistory> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        private List<Supplier<RollbackOptimizedHistory>> queryPage(Connection connection) throws SQLException {
+            String stmtStr = getEditsQuery(uuid != null);
+            if (!first) {
+                stmtStr += "\n    AND (e.`time`, e.`id`, e.rowid) < (?, ?, ?)";
+            }
+            stmtStr += "\n  ORDER BY e.`time` DESC, e.`id` DESC, e.rowid DESC LIMIT " + PAGE_SIZE;
+            List<Supplier<RollbackOptimizedHistory>> edits = new ArrayList<>(PAGE_SIZE);
+            try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
+                setBounds(stmt, pos1, pos2);
+                stmt.setInt(7, (int) (minTime / 1000));
+                int index = 8;
+                if (uuid != null) {
+                    stmt.setBytes(index++, toBytes(uuid));
+                }
+                if (!first) {
+                    stmt.setInt(index++, lastTime);
+                    stmt.setInt(index++, lastId);
+                    stmt.setLong(index, lastRow);
+                }
+                try (ResultSet result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        edits.add(create(result));
+                        lastTime = result.getInt("time");
+                        lastId = result.getInt("id");
+                        lastRow = result.getLong("edit_row");
+                    }
+                }
+            }
+            first = false;
+            return edits;
+        }
+
+    }
+
+    /**
+     * Queue an edit to be written to the database. Edits are written in one transaction once
+     * history.database-flush-size edits are pending, or after history.database-flush-latency.
+     *
+     * @param history the edit
+     * @return a future completing once the edit was written
+     */
     public Future<?> logEdit(RollbackOptimizedHistory history) {
         historyChanges.add(history);
+        if (pendingChanges.incrementAndGet() >= Settings.settings().HISTORY.DATABASE_FLUSH_SIZE) {
+            return flush();
+        }
+        synchronized (historyChanges) {
+            if (scheduledFlush == null) {
+                CompletableFuture<Boolean> flushed = new CompletableFuture<>();
+                scheduledFlush = flushed;
+                int ticks = Math.max(1, Settings.settings().HISTORY.DATABASE_FLUSH_LATENCY / 50);
+                TaskManager.taskManager().laterAsync(() -> {
+                    synchronized (historyChanges) {
+                        scheduledFlush = null;
+                    }
+                    try {
+                        flushed.complete(flush().get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        flushed.completeExceptionally(e);
+                    }
+                }, ticks);
+            }
+            return scheduledFlush;
+        }
+    }
+
+    /**
+     * Write all pending edits to the database.
+     *
+     * @return a future completing once the edits were written, with whether there were any
+     * @since TODO
+     */
+    public Future<Boolean> flush() {
         return call(this::sendBatch);
     }
 
     private boolean sendBatch() throws SQLException {
-        int size = Math.min(1048572, historyChanges.size());
+        int size = pendingChanges.get();
 
-        if (size == 0) {
+        if (size <= 0 || historyChanges.isEmpty()) {
             return false;
         }
 
@@ -268,13 +490,15 @@ private boolean sendBatch() throws SQLException {
             connection.setAutoCommit(false);
         }
 
-        RollbackOptimizedHistory[] copy = IntStream.range(0, size)
-                .mapToObj(i -> historyChanges.poll()).toArray(RollbackOptimizedHistory[]::new);
-
+        int batchSize = Math.max(1, Settings.settings().HISTORY.DATABASE_FLUSH_SIZE);
         try (PreparedStatement stmt = connection.prepareStatement("INSERT OR REPLACE INTO`" + this.prefix + "_edits`" +
                 " (`player`,`id`,`time`,`x1`,`x2`,`z1`,`z2`,`y1`,`y2`,`command`,`size`) VALUES(?,?,?,?,?,?,?,?,?,?,?)")) {
             // `player`,`id`,`time`,`x1`,`x2`,`z1`,`z2`,`y1`,`y2`,`command`,`size`) VALUES(?,?,?,?,?,?,?,?,?,?,?)"
-            for (RollbackOptimizedHistory change : copy) {
+            int batched = 0;
+            RollbackOptimizedHistory change;
+            // only the edits pending now, so a steady stream of new edits cannot keep the transaction open
+            for (int i = 0; i < size && (change = historyChanges.poll()) != null; i++) {
+                pendingChanges.decrementAndGet();
                 UUID uuid = change.getUUID();
                 byte[] uuidBytes = toBytes(uuid);
                 stmt.setBytes(1, uuidBytes);
@@ -293,8 +517,14 @@ private boolean sendBatch() throws SQLException {
                 stmt.setInt(9, pos2.y() - 128);
                 stmt.setString(10, change.getCommand());
                 stmt.setLong(11, change.longSize());
-                stmt.executeUpdate();
-                stmt.clearParameters();
+                stmt.addBatch();
+                if (++batched == batchSize) {
+                    stmt.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                stmt.executeBatch();
             }
         } finally {
             commit();
@@ -334,12 +564,87 @@ private Connection openConnection() throws SQLException, ClassNotFoundException
         }
         Class.forName("org.sqlite.JDBC");
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        configure(connection);
         return connection;
     }
 
+    private static void configure(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // Readers are not blocked by the writer and vice versa
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            // Replaced edits also fire the delete trigger maintaining the spatial index
+            stmt.execute("PRAGMA recursive_triggers = true");
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReadTask<T> {
+
+        T read(Connection connection) throws Exception;
+
+    }
+
+    /**
+     * Run a query on one of the read connections, so it does not wait behind edits being written.
+     */
+    private <T> Future<T> read(ReadTask<T> task) {
+        return Fawe.instance().getQueueHandler().async(() -> {
+            if (isClosed()) {
+                return null;
+            }
+            Connection reader = null;
+            try {
+                reader = borrowReader();
+                return task.read(reader);
+            } catch (Throwable e) {
+                getHandler().uncaughtException(Thread.currentThread(), e);
+                return null;
+            } finally {
+                if (reader != null) {
+                    releaseReader(reader);
+                }
+            }
+        });
+    }
+
+    private Connection borrowReader() throws SQLException, InterruptedException {
+        Connection reader = readers.poll();
+        if (reader != null) {
+            return reader;
+        }
+        if (readerCount.incrementAndGet() <= Math.max(1, Settings.settings().HISTORY.DATABASE_READ_CONNECTIONS)) {
+            try {
+                reader = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+                try (Statement stmt = reader.createStatement()) {
+                    stmt.execute("PRAGMA busy_timeout = 5000");
+                }
+                return reader;
+            } catch (SQLException e) {
+                readerCount.decrementAndGet();
+                throw e;
+            }
+        }
+        readerCount.decrementAndGet();
+        return readers.take();
+    }
+
+    private void releaseReader(Connection reader) {
+        if (isClosed()) {
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        readers.add(reader);
+    }
+
     private Connection forceConnection() throws SQLException, ClassNotFoundException {
         Class.forName("org.sqlite.JDBC");
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        configure(connection);
         return connection;
     }
 
@@ -394,12 +699,25 @@ public boolean checkConnection() {
 
     @Override
     public void close() {
+        try {
+            flush().get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
         try {
             closeConnection();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         super.close();
+        Connection reader;
+        while ((reader = readers.poll()) != null) {
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
 }
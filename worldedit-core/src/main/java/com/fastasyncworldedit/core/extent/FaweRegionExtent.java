@@ -4,6 +4,7 @@
 import com.fastasyncworldedit.core.extent.processor.ProcessorScope;
 import com.fastasyncworldedit.core.limit.FaweLimit;
 import com.fastasyncworldedit.core.queue.IBatchProcessor;
+import com.fastasyncworldedit.core.regions.RegionChunkCache;
 import com.fastasyncworldedit.core.util.ExtentTraverser;
 import com.fastasyncworldedit.core.util.WEManager;
 import com.sk89q.worldedit.WorldEditException;
@@ -27,6 +28,10 @@
 public abstract class FaweRegionExtent extends ResettableExtent implements IBatchProcessor {
 
     private final FaweLimit limit;
+    @Nullable
+    private final RegionChunkCache chunkCache;
+    @Nullable
+    private ClassifiedChunk lastChunk;
 
     /**
      * Create a new instance.
@@ -34,8 +39,43 @@ public abstract class FaweRegionExtent extends ResettableExtent implements IBatc
      * @param extent the extent
      */
     public FaweRegionExtent(Extent extent, FaweLimit limit) {
+        this(extent, limit, null);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param extent     the extent
+     * @param limit      the limit to be used
+     * @param chunkCache the classification of chunks by the regions of this extent, or null to test all blocks
+     * @since TODO
+     */
+    public FaweRegionExtent(Extent extent, FaweLimit limit, @Nullable RegionChunkCache chunkCache) {
         super(extent);
         this.limit = limit;
+        this.chunkCache = chunkCache;
+    }
+
+    /**
+     * Get the classification of a chunk by the regions of this extent, {@link RegionChunkCache#PARTIAL} if unknown.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return the classification
+     * @since TODO
+     */
+    protected final byte classifyChunk(int chunkX, int chunkZ) {
+        if (chunkCache == null) {
+            return RegionChunkCache.PARTIAL;
+        }
+        // blocks are mostly accessed chunk by chunk, skip the lookup for the same chunk
+        ClassifiedChunk last = lastChunk;
+        if (last != null && last.x() == chunkX && last.z() == chunkZ) {
+            return last.state();
+        }
+        byte state = chunkCache.classify(chunkX, chunkZ);
+        lastChunk = new ClassifiedChunk(chunkX, chunkZ, state);
+        return state;
     }
 
     @Override
@@ -171,4 +211,8 @@ public ProcessorScope getScope() {
         return ProcessorScope.REMOVING_BLOCKS;
     }
 
+    private record ClassifiedChunk(int x, int z, byte state) {
+
+    }
+
 }
@@ -4,6 +4,7 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.regions.RegionChunkCache;
 import com.fastasyncworldedit.core.regions.RegionWrapper;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.regions.Region;
@@ -39,7 +40,34 @@ public class MultiRegionExtent extends FaweRegionExtent {
      * @param disallowed the disallowed regions or null for no disallowed regions
      */
     public MultiRegionExtent(Extent extent, FaweLimit limit, @Nullable Region[] allowed, @Nullable Region[] disallowed) {
-        super(extent, limit);
+        this(
+                extent,
+                limit,
+                allowed,
+                disallowed,
+                new RegionChunkCache(allowed, disallowed, extent.getMinY(), extent.getMaxY(), 0)
+        );
+    }
+
+    /**
+     * Create a new instance. Has both allowed and disallowed regions. Assumes that disallowed regions are encompassed by
+     * allowed regions.
+     *
+     * @param extent     the extent
+     * @param limit      the limit to be used
+     * @param allowed    the allowed regions or null for global editing
+     * @param disallowed the disallowed regions or null for no disallowed regions
+     * @param chunkCache the classification of chunks by the given regions, or null to test all blocks
+     * @since TODO
+     */
+    public MultiRegionExtent(
+            Extent extent,
+            FaweLimit limit,
+            @Nullable Region[] allowed,
+            @Nullable Region[] disallowed,
+            @Nullable RegionChunkCache chunkCache
+    ) {
+        super(extent, limit, chunkCache);
         this.index = 0;
         if (allowed != null && !allowed[0].isGlobal()) {
             this.region = allowed[0];
@@ -61,6 +89,10 @@ public MultiRegionExtent(Extent extent, FaweLimit limit, @Nullable Region[] allo
 
     @Override
     public boolean contains(int x, int y, int z) {
+        byte state = classifyChunk(x >> 4, z >> 4);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         if (region != null && region.contains(x, y, z)) {
             if (disallowed != null) {
                 for (final Region disallow : disallowed) {
@@ -98,6 +130,10 @@ public boolean contains(int x, int y, int z) {
 
     @Override
     public boolean contains(int x, int z) {
+        byte state = classifyChunk(x >> 4, z >> 4);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         if (region != null && region.contains(x, z)) {
             if (disallowed != null) {
                 for (final Region disallow : disallowed) {
@@ -146,6 +182,10 @@ public Collection<Region> getRegions() {
 
     @Override
     public boolean processGet(int chunkX, int chunkZ) {
+        byte state = classifyChunk(chunkX, chunkZ);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         boolean result = allowed == null;
         if (!result) {
             for (Region region : allowed) {
@@ -168,6 +208,13 @@ public boolean processGet(int chunkX, int chunkZ) {
 
     @Override
     public IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
+        byte state = classifyChunk(chunk.getX(), chunk.getZ());
+        if (state == RegionChunkCache.ALLOWED) {
+            return set;
+        }
+        if (state == RegionChunkCache.DENIED) {
+            return null;
+        }
         if (intersection != null) {
             set = intersection.processSet(chunk, get, set);
         }
@@ -4,9 +4,11 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.regions.RegionChunkCache;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.regions.Region;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.Future;
@@ -21,17 +23,38 @@ public class SingleRegionExtent extends FaweRegionExtent {
      * @param extent the extent
      */
     public SingleRegionExtent(Extent extent, FaweLimit limit, Region region) {
-        super(extent, limit);
+        this(extent, limit, region, new RegionChunkCache(new Region[]{region}, null, extent.getMinY(), extent.getMaxY(), 0));
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param extent     the extent
+     * @param limit      the limit to be used
+     * @param region     the allowed region
+     * @param chunkCache the classification of chunks by the given region, or null to test all blocks
+     * @since TODO
+     */
+    public SingleRegionExtent(Extent extent, FaweLimit limit, Region region, @Nullable RegionChunkCache chunkCache) {
+        super(extent, limit, chunkCache);
         this.region = region;
     }
 
     @Override
     public boolean contains(int x, int y, int z) {
+        byte state = classifyChunk(x >> 4, z >> 4);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         return region.contains(x, y, z);
     }
 
     @Override
     public boolean contains(int x, int z) {
+        byte state = classifyChunk(x >> 4, z >> 4);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         return region.contains(x, z);
     }
 
@@ -42,6 +65,13 @@ public Collection<Region> getRegions() {
 
     @Override
     public IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
+        byte state = classifyChunk(chunk.getX(), chunk.getZ());
+        if (state == RegionChunkCache.ALLOWED) {
+            return set;
+        }
+        if (state == RegionChunkCache.DENIED) {
+            return null;
+        }
         return region.processSet(chunk, get, set);
     }
 
@@ -59,6 +89,10 @@ public void postProcess(IChunk chunk, IChunkGet get, IChunkSet set) {
 
     @Override
     public boolean processGet(int chunkX, int chunkZ) {
+        byte state = classifyChunk(chunkX, chunkZ);
+        if (state != RegionChunkCache.PARTIAL) {
+            return state == RegionChunkCache.ALLOWED;
+        }
         return region.containsChunk(chunkX, chunkZ);
     }
 
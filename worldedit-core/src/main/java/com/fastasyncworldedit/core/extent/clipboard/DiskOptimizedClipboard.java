@@ -3,13 +3,13 @@
 import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.internal.exception.FaweClipboardVersionMismatchException;
-import com.fastasyncworldedit.core.internal.io.ByteBufferInputStream;
+import com.fastasyncworldedit.core.internal.io.AbstractDelegateOutputStream;
+import com.fastasyncworldedit.core.internal.io.NonCloseableInputStream;
+import com.fastasyncworldedit.core.internal.io.SegmentedMappedFile;
 import com.fastasyncworldedit.core.jnbt.streamer.IntValueReader;
-import com.fastasyncworldedit.core.math.IntTriple;
 import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.NbtUtils;
-import com.fastasyncworldedit.core.util.ReflectionUtils;
 import com.google.common.collect.Collections2;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.jnbt.DoubleTag;
@@ -34,15 +34,17 @@
 import org.enginehub.linbus.tree.LinCompoundTag;
 import org.enginehub.linbus.tree.LinTagType;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
@@ -58,7 +60,8 @@
 /**
  * A clipboard with disk backed storage. (lower memory + loads on crash)
  * - Uses an auto closable RandomAccessFile for getting / setting id / data
- * - I don't know how to reduce nbt / entities to O(2) complexity, so it is stored in memory.
+ * - The file is memory mapped in segments, see {@link SegmentedMappedFile}, so it may be larger than 2 GiB
+ * - Tile entities are kept in a separate file while the clipboard is open, see {@link DiskTileEntityIndex}
  */
 public class DiskOptimizedClipboard extends LinearClipboard {
 
@@ -69,17 +72,15 @@ public class DiskOptimizedClipboard extends LinearClipboard {
     private static final int VERSION_2_HEADER_SIZE = 27; // Header size of "version 2" i.e. when NBT/entities could be saved
     private static final Map<String, LockHolder> LOCK_HOLDER_CACHE = new ConcurrentHashMap<>();
 
-    private final HashMap<IntTriple, FaweCompoundTag> nbtMap;
+    private final DiskTileEntityIndex nbtMap;
     private final File file;
     private final int headerSize;
 
     private RandomAccessFile braf;
-    private MappedByteBuffer byteBuffer = null;
+    private SegmentedMappedFile byteBuffer = null;
 
     private FileChannel fileChannel = null;
     private boolean hasBiomes = false;
-    private boolean canHaveBiomes = true;
-    private int nbtBytesRemaining;
 
     /**
      * Creates a new DiskOptimizedClipboard for the given region. Creates or overwrites a file using the given UUID as a name.
@@ -121,14 +122,7 @@ public DiskOptimizedClipboard(BlockVector3 dimensions) {
     public DiskOptimizedClipboard(BlockVector3 dimensions, File file) {
         super(dimensions, BlockVector3.ZERO);
         headerSize = HEADER_SIZE;
-        if (headerSize + ((long) getVolume() << 1) >= Integer.MAX_VALUE) {
-            throw new IllegalArgumentException(
-                    "Dimensions too large for this clipboard format. Use //lazycopy for large selections.");
-        } else if (headerSize + ((long) getVolume() << 1) + (long) ((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1) >= Integer.MAX_VALUE) {
-            LOGGER.error("Dimensions are too large for biomes to be stored in a DiskOptimizedClipboard");
-            canHaveBiomes = false;
-        }
-        nbtMap = new HashMap<>();
+        nbtMap = new DiskTileEntityIndex(new File(file.getPath() + ".nbt"));
         try {
             this.file = file;
             try {
@@ -143,10 +137,9 @@ public DiskOptimizedClipboard(BlockVector3 dimensions, File file) {
                 e.printStackTrace();
             }
             this.braf = new RandomAccessFile(file, "rw");
-            long fileLength = (long) (getVolume() << 1) + (long) headerSize;
+            long fileLength = ((long) getVolume() << 1) + (long) headerSize;
             braf.setLength(0);
             braf.setLength(fileLength);
-            this.nbtBytesRemaining = Integer.MAX_VALUE - (int) fileLength;
             init();
             // write getLength() etc
             byteBuffer.putChar(2, (char) (VERSION));
@@ -184,25 +177,21 @@ public DiskOptimizedClipboard(File file) {
     public DiskOptimizedClipboard(File file, int versionOverride) {
         super(readSize(file, versionOverride), BlockVector3.ZERO);
         headerSize = getHeaderSizeOverrideFromVersion(versionOverride);
-        nbtMap = new HashMap<>();
+        nbtMap = new DiskTileEntityIndex(new File(file.getPath() + ".nbt"));
         try {
             this.file = file;
             this.braf = new RandomAccessFile(file, "rw");
             braf.setLength(file.length());
-            this.nbtBytesRemaining = Integer.MAX_VALUE - (int) file.length();
             init();
 
-            int biomeLength = ((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1);
-            canHaveBiomes = (long) headerSize + biomeLength < Integer.MAX_VALUE;
-
             if (headerSize >= VERSION_2_HEADER_SIZE) {
                 readBiomeStatusFromHeader();
                 int nbtCount = readNBTSavedCountFromHeader();
                 int entitiesCount = readEntitiesSavedCountFromHeader();
                 if (Settings.settings().CLIPBOARD.SAVE_CLIPBOARD_NBT_TO_DISK && (nbtCount + entitiesCount > 0)) {
-                    loadNBTFromFileFooter(nbtCount, entitiesCount, biomeLength);
+                    loadNBTFromFileFooter(nbtCount, entitiesCount);
                 }
-            } else if (canHaveBiomes && braf.length() - headerSize == ((long) getVolume() << 1) + biomeLength) {
+            } else if (braf.length() - headerSize == ((long) getVolume() << 1) + getBiomeLength()) {
                 hasBiomes = true;
             }
             getAndSetOffsetAndOrigin();
@@ -247,18 +236,17 @@ private static BlockVector3 readSize(File file, int expectedVersion) {
         }
     }
 
-    private void loadNBTFromFileFooter(int nbtCount, int entitiesCount, long biomeLength) throws IOException {
-        int biomeBlocksLength = headerSize + (getVolume() << 1) + (hasBiomes ? (int) biomeLength : 0);
-        MappedByteBuffer tmp = fileChannel.map(FileChannel.MapMode.READ_ONLY, biomeBlocksLength, braf.length());
-        try (NBTInputStream nbtIS = new NBTInputStream(MainUtil.getCompressedIS(new ByteBufferInputStream(tmp)))) {
+    private void loadNBTFromFileFooter(int nbtCount, int entitiesCount) throws IOException {
+        fileChannel.position(getDataLength());
+        try (NBTInputStream nbtIS = new NBTInputStream(MainUtil.getCompressedIS(new BufferedInputStream(
+                new NonCloseableInputStream(Channels.newInputStream(fileChannel)))))) {
             Iterator<CompoundTag> iter = nbtIS.toIterator();
             while (nbtCount > 0 && iter.hasNext()) { // TileEntities are stored "before" entities
                 LinCompoundTag tag = iter.next().toLinTag();
                 int x = tag.getTag("x", LinTagType.intTag()).valueAsInt();
                 int y = tag.getTag("y", LinTagType.intTag()).valueAsInt();
                 int z = tag.getTag("z", LinTagType.intTag()).valueAsInt();
-                IntTriple pos = new IntTriple(x, y, z);
-                nbtMap.put(pos, FaweCompoundTag.of(tag));
+                nbtMap.put(getIndex(x, y, z), tag);
                 nbtCount--;
             }
             while (entitiesCount > 0 && iter.hasNext()) {
@@ -329,26 +317,42 @@ private void init() throws IOException {
                     throw e;
                 }
             }
-            this.byteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, braf.length());
+            map(braf.length());
         }
     }
 
-    private boolean initBiome() {
-        if (!canHaveBiomes) {
-            return false;
-        }
+    private void map(long length) {
+        int segmentSize = Math.max(1, Settings.settings().CLIPBOARD.MAPPED_SEGMENT_SIZE);
+        this.byteBuffer = new SegmentedMappedFile(
+                fileChannel,
+                length,
+                Integer.numberOfTrailingZeros(Integer.highestOneBit(Math.min(segmentSize, 1024))) + 20,
+                Settings.settings().CLIPBOARD.MAX_MAPPED_SEGMENTS
+        );
+    }
+
+    // Since biomes represent a 4x4x4 cube, we store fewer biome bytes that volume at 1 byte per biome
+    // +1 to each to allow for cubes that lie across the region boundary
+    private long getBiomeLength() {
+        return (long) ((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1);
+    }
+
+    /**
+     * {@return the length of the header, blocks and biomes, i.e. where the NBT footer starts}
+     */
+    private long getDataLength() {
+        return headerSize + ((long) getVolume() << 1) + (hasBiomes ? getBiomeLength() : 0);
+    }
+
+    private synchronized boolean initBiome() {
         if (!hasBiomes) {
             try {
                 hasBiomes = true;
-                close();
-                this.braf = new RandomAccessFile(file, "rw");
-                // Since biomes represent a 4x4x4 cube, we store fewer biome bytes that volume at 1 byte per biome
-                // +1 to each to allow for cubes that lie across the region boundary
-                long length =
-                        headerSize + ((long) getVolume() << 1) + (long) ((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1);
+                // Drop any NBT footer, it is written again on close
+                long length = getDataLength();
+                byteBuffer.close();
                 this.braf.setLength(length);
-                this.nbtBytesRemaining = Integer.MAX_VALUE - (int) length;
-                init();
+                map(length);
             } catch (IOException e) {
                 e.printStackTrace();
                 return false;
@@ -377,7 +381,7 @@ public boolean setBiome(int x, int y, int z, BiomeType biome) {
     public void setBiome(int index, BiomeType biome) {
         if (initBiome()) {
             try {
-                byteBuffer.put(headerSize + (getVolume() << 1) + index, (byte) biome.getInternalId());
+                byteBuffer.put(headerSize + ((long) getVolume() << 1) + index, (byte) biome.getInternalId());
             } catch (IndexOutOfBoundsException e) {
                 LOGGER.info((long) (getHeight() >> 2) * (getLength() >> 2) * (getWidth() >> 2));
                 LOGGER.info(index);
@@ -391,7 +395,7 @@ public BiomeType getBiome(int index) {
         if (!hasBiomes()) {
             return null;
         }
-        int biomeId = byteBuffer.get(headerSize + (getVolume() << 1) + index) & 0xFF;
+        int biomeId = byteBuffer.get(headerSize + ((long) getVolume() << 1) + index) & 0xFF;
         return BiomeTypes.get(biomeId);
     }
 
@@ -400,7 +404,7 @@ public void streamBiomes(IntValueReader task) {
         if (!hasBiomes()) {
             return;
         }
-        int mbbIndex = headerSize + (getVolume() << 1);
+        long mbbIndex = headerSize + ((long) getVolume() << 1);
         try {
             for (int y = 0; y < getHeight(); y++) {
                 for (int z = 0; z < getLength(); z++) {
@@ -476,14 +480,7 @@ private void getAndSetOffsetAndOrigin() {
 
     @Override
     public void flush() {
-        byteBuffer.force();
-    }
-
-    private void closeDirectBuffer(ByteBuffer cb) {
-        if (cb == null || !cb.isDirect()) {
-            return;
-        }
-        ReflectionUtils.getUnsafe().invokeCleaner(cb);
+        byteBuffer.flush();
     }
 
     private void writeBiomeStatusToHeader() {
@@ -515,25 +512,37 @@ private int readEntitiesSavedCountFromHeader() {
     public void close() {
         try {
             if (byteBuffer != null) {
+                boolean saveNbt = headerSize >= VERSION_2_HEADER_SIZE
+                        && Settings.settings().CLIPBOARD.SAVE_CLIPBOARD_NBT_TO_DISK
+                        && (!nbtMap.isEmpty() || !entities.isEmpty());
+                if (headerSize >= VERSION_2_HEADER_SIZE) {
+                    writeNBTSavedCountToHeader(saveNbt ? nbtMap.size() : 0);
+                    writeEntitiesSavedCountToHeader(saveNbt ? entities.size() : 0);
+                    writeBiomeStatusToHeader();
+                }
+                long dataLength = getDataLength();
+                SegmentedMappedFile tmpBuffer = byteBuffer;
+                byteBuffer = null;
+                tmpBuffer.close();
                 if (headerSize >= VERSION_2_HEADER_SIZE) {
-                    if (Settings.settings().CLIPBOARD.SAVE_CLIPBOARD_NBT_TO_DISK) {
+                    // Drop the footer read on load, it is written again below
+                    fileChannel.truncate(dataLength);
+                    if (saveNbt) {
                         try {
-                            writeNBTToDisk();
+                            writeNBTToDisk(dataLength);
                         } catch (Exception e) {
                             LOGGER.error("Unable to save NBT data to disk.", e);
+                            fileChannel.truncate(dataLength);
+                            fileChannel.write(ByteBuffer.allocate(4), 23);
                         }
                     }
-                    writeBiomeStatusToHeader();
                 }
-                byteBuffer.force();
                 fileChannel.close();
                 braf.close();
                 file.setWritable(true);
-                MappedByteBuffer tmpBuffer = byteBuffer;
-                byteBuffer = null;
-                closeDirectBuffer(tmpBuffer);
                 fileChannel = null;
                 braf = null;
+                nbtMap.close();
             } else if (fileChannel != null) {
                 fileChannel.close();
                 fileChannel = null;
@@ -552,98 +561,41 @@ public void close() {
         }
     }
 
-    private void writeNBTToDisk() throws IOException {
-        if (!nbtMap.isEmpty() || !entities.isEmpty()) {
-            byte[] output = null;
-            boolean entitiesFit = false;
-            // Closing a BAOS does nothing
-            ByteArrayOutputStream baOS = new ByteArrayOutputStream();
-            try (NBTOutputStream nbtOS = new NBTOutputStream(MainUtil.getCompressedOS(
-                    baOS,
-                    Settings.settings().CLIPBOARD.COMPRESSION_LEVEL
-            ))) {
-                if (!nbtMap.isEmpty()) {
-                    try {
-                        for (FaweCompoundTag tag : nbtMap.values()) {
-                            nbtOS.writeTag(new CompoundTag(tag.linTag()));
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    nbtOS.flush();
-                    if (baOS.size() > nbtBytesRemaining) {
-                        LOGGER.warn(
-                                "Clipboard file {} does not have enough remaining space to store NBT data on disk.",
-                                file.getName()
-                        );
-                        writeNBTSavedCountToHeader(0);
-                        writeEntitiesSavedCountToHeader(0);
-                        return;
-                    } else {
-                        writeNBTSavedCountToHeader(nbtMap.size());
-                        nbtBytesRemaining -= baOS.size();
-                    }
-                    output = baOS.toByteArray(); //Keep this in case entities are unable to fit.
-                }
-
-                if (!entities.isEmpty()) {
-                    try {
-                        for (BlockArrayClipboard.ClipboardEntity entity : entities) {
-                            if (entity.getState() != null && entity.getState().getNbtData() != null) {
-                                CompoundTag data = entity.getState().getNbtData();
-                                HashMap<String, Tag<?, ?>> value = new HashMap<>(data.getValue());
-                                List<DoubleTag> pos = new ArrayList<>(3);
-                                pos.add(new DoubleTag(entity.getLocation().x()));
-                                pos.add(new DoubleTag(entity.getLocation().x()));
-                                pos.add(new DoubleTag(entity.getLocation().x()));
-                                value.put("Pos", new ListTag(DoubleTag.class, pos));
-                                nbtOS.writeTag(new CompoundTag(value));
-                            }
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    nbtOS.flush();
-                    if (baOS.size() > nbtBytesRemaining) {
-                        LOGGER.warn(
-                                "Clipboard file {} does not have enough remaining space to store entity data on disk.",
-                                file.getName()
-                        );
-                        writeEntitiesSavedCountToHeader(0);
-                    } else {
-                        entitiesFit = true;
-                        writeEntitiesSavedCountToHeader(entities.size());
-                    }
-                }
+    private void writeNBTToDisk(long position) throws IOException {
+        fileChannel.position(position);
+        // The channel is closed by close()
+        OutputStream channelOS = new AbstractDelegateOutputStream(Channels.newOutputStream(fileChannel)) {
+            @Override
+            public void close() throws IOException {
+                flush();
             }
-
-            if (entitiesFit) {
-                output = baOS.toByteArray();
+        };
+        try (NBTOutputStream nbtOS = new NBTOutputStream(MainUtil.getCompressedOS(
+                new BufferedOutputStream(channelOS),
+                Settings.settings().CLIPBOARD.COMPRESSION_LEVEL
+        ))) {
+            // TileEntities are stored "before" entities
+            for (LinCompoundTag tag : nbtMap.values()) {
+                nbtOS.writeTag(new CompoundTag(tag));
             }
-
-            if (output == null) {
-                return;
+            for (BlockArrayClipboard.ClipboardEntity entity : entities) {
+                if (entity.getState() != null && entity.getState().getNbtData() != null) {
+                    CompoundTag data = entity.getState().getNbtData();
+                    HashMap<String, Tag<?, ?>> value = new HashMap<>(data.getValue());
+                    List<DoubleTag> pos = new ArrayList<>(3);
+                    pos.add(new DoubleTag(entity.getLocation().x()));
+                    pos.add(new DoubleTag(entity.getLocation().x()));
+                    pos.add(new DoubleTag(entity.getLocation().x()));
+                    value.put("Pos", new ListTag(DoubleTag.class, pos));
+                    nbtOS.writeTag(new CompoundTag(value));
+                }
             }
-
-            long currentLength = this.braf.length();
-            this.braf.setLength(currentLength + baOS.size());
-            MappedByteBuffer tempBuffer = fileChannel.map(
-                    FileChannel.MapMode.READ_WRITE,
-                    currentLength,
-                    baOS.size()
-            );
-            tempBuffer.put(output);
-            tempBuffer.force();
-            closeDirectBuffer(tempBuffer);
-        } else {
-            writeNBTSavedCountToHeader(0);
-            writeEntitiesSavedCountToHeader(0);
         }
     }
 
     @Override
     public Collection<CompoundTag> getTileEntities() {
-        return Collections2.transform(nbtMap.values(), fct -> new CompoundTag(fct.linTag()));
+        return Collections2.transform(nbtMap.values(), CompoundTag::new);
     }
 
     public int getIndex(int x, int y, int z) {
@@ -661,35 +613,13 @@ public BaseBlock getFullBlock(int x, int y, int z) {
 
     private BaseBlock toBaseBlock(BlockState state, int i) {
         if (state.getMaterial().hasContainer() && !nbtMap.isEmpty()) {
-            FaweCompoundTag nbt;
-            if (nbtMap.size() < 4) {
-                nbt = null;
-                for (Map.Entry<IntTriple, FaweCompoundTag> entry : nbtMap.entrySet()) {
-                    IntTriple key = entry.getKey();
-                    int index = getIndex(key.x(), key.y(), key.z());
-                    if (index == i) {
-                        nbt = entry.getValue();
-                        break;
-                    }
-                }
-            } else {
-                int y = i / getArea();
-                int newI = i - y * getArea();
-                int z = newI / getWidth();
-                int x = newI - z * getWidth();
-                nbt = nbtMap.get(new IntTriple(x, y, z));
-            }
-            return state.toBaseBlock(nbt == null ? null : nbt.linTag());
+            return state.toBaseBlock(nbtMap.get(i));
         }
         return state.toBaseBlock();
     }
 
     private BaseBlock toBaseBlock(BlockState state, int x, int y, int z) {
-        if (state.getMaterial().hasContainer() && !nbtMap.isEmpty()) {
-            FaweCompoundTag nbt = nbtMap.get(new IntTriple(x, y, z));
-            return state.toBaseBlock(nbt == null ? null : nbt.linTag());
-        }
-        return state.toBaseBlock();
+        return toBaseBlock(state, getIndex(x, y, z));
     }
 
     @Override
@@ -700,7 +630,7 @@ public BaseBlock getFullBlock(int i) {
     @Override
     public BlockState getBlock(int index) {
         try {
-            int diskIndex = headerSize + (index << 1);
+            long diskIndex = headerSize + ((long) index << 1);
             char ordinal = byteBuffer.getChar(diskIndex);
             return BlockState.getFromOrdinal(ordinal);
         } catch (IndexOutOfBoundsException ignored) {
@@ -715,14 +645,14 @@ public BlockState getBlock(int x, int y, int z) {
 
     @Override
     public boolean tile(final int x, final int y, final int z, final FaweCompoundTag tile) throws WorldEditException {
-        nbtMap.put(new IntTriple(x, y, z), NbtUtils.withPosition(tile, x, y, z));
+        nbtMap.put(getIndex(x, y, z), NbtUtils.withPosition(tile.linTag(), x, y, z));
         return true;
     }
 
     @Override
     public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B block) {
         try {
-            int index = headerSize + (getIndex(x, y, z) << 1);
+            long index = headerSize + ((long) getIndex(x, y, z) << 1);
             char ordinal = block.getOrdinalChar();
             if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
                 ordinal = BlockTypesCache.ReservedIDs.AIR;
@@ -743,7 +673,7 @@ public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B b
     public <B extends BlockStateHolder<B>> boolean setBlock(int i, B block) {
         try {
             char ordinal = block.getOrdinalChar();
-            int index = headerSize + (i << 1);
+            long index = headerSize + ((long) i << 1);
             byteBuffer.putChar(index, ordinal);
             boolean hasNbt = block instanceof BaseBlock && block.hasNbtData();
             if (hasNbt) {
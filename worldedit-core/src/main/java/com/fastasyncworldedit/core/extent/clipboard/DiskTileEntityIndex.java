@@ -0,0 +1,162 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import org.enginehub.linbus.stream.LinBinaryIO;
+import org.enginehub.linbus.tree.LinCompoundTag;
+import org.enginehub.linbus.tree.LinRootEntry;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tile entities of a {@link DiskOptimizedClipboard}, kept in an append-only file next to the clipboard. Only the
+ * file offset of each tile entity is kept in memory, keyed by the clipboard index of its block. Replaced tile entities
+ * are not reclaimed, the file is deleted once the clipboard is closed.
+ */
+final class DiskTileEntityIndex implements Closeable {
+
+    private final File file;
+    private final Int2LongOpenHashMap offsets = new Int2LongOpenHashMap();
+    private FileChannel channel;
+    private long end;
+
+    DiskTileEntityIndex(File file) {
+        this.file = file;
+        this.offsets.defaultReturnValue(-1);
+    }
+
+    int size() {
+        return offsets.size();
+    }
+
+    boolean isEmpty() {
+        return offsets.isEmpty();
+    }
+
+    synchronized void put(int index, LinCompoundTag tag) {
+        FastByteArrayOutputStream bytes = new FastByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // length placeholder
+            LinBinaryIO.write(out, new LinRootEntry("", tag));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.array, 0, (int) bytes.length);
+        buffer.putInt(0, (int) bytes.length - Integer.BYTES);
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE
+                );
+            }
+            long position = end;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            offsets.put(index, end);
+            end = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    synchronized LinCompoundTag get(int index) {
+        long offset = offsets.get(index);
+        return offset == -1 ? null : read(offset);
+    }
+
+    private LinCompoundTag read(long offset) {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer data = ByteBuffer.allocate(length.getInt(0));
+            readFully(data, offset + Integer.BYTES);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data.array()))) {
+                return LinBinaryIO.readUsing(in, LinRootEntry::readFrom).value();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * {@return a view of all tile entities, read from disk while iterating}
+     */
+    Collection<LinCompoundTag> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LinCompoundTag> iterator() {
+                long[] snapshot;
+                synchronized (DiskTileEntityIndex.this) {
+                    snapshot = offsets.values().toLongArray();
+                }
+                return new Iterator<>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < snapshot.length;
+                    }
+
+                    @Override
+                    public LinCompoundTag next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        synchronized (DiskTileEntityIndex.this) {
+                            return read(snapshot[i++]);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return offsets.size();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        offsets.clear();
+        end = 0;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+}
@@ -0,0 +1,584 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.fastasyncworldedit.core.jnbt.streamer.IntValueReader;
+import com.fastasyncworldedit.core.math.BitArray;
+import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.IntTag;
+import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.biome.BiomeType;
+import com.sk89q.worldedit.world.biome.BiomeTypes;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.enginehub.linbus.tree.LinCompoundTag;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clipboard storing blocks per 16x16x16 section, relative to the clipboard minimum. Each section holds a palette of the
+ * block states used and a {@link BitArray} of palette indices. Sections using a single block state only keep that state,
+ * sections that were never written are air. Sections with more than 256 states store ordinals directly.
+ * <p>
+ * Within a section, blocks are ordered y, z, x ({@code y << 8 | z << 4 | x}), the same as in chunk sections.
+ * Not thread safe.
+ */
+public class SectionPaletteClipboard extends LinearClipboard {
+
+    private static final int MAX_PALETTE_BITS = 8;
+
+    private final int sectionsX;
+    private final int sectionsZ;
+    private final Section[] sections;
+    private final Int2ObjectOpenHashMap<LinCompoundTag> tiles = new Int2ObjectOpenHashMap<>();
+    private char[] biomes = null;
+
+    public SectionPaletteClipboard(Region region) {
+        super(region.getDimensions(), region.getMinimumPoint());
+        this.sectionsX = (getWidth() + 15) >> 4;
+        this.sectionsZ = (getLength() + 15) >> 4;
+        this.sections = new Section[sectionsX * ((getHeight() + 15) >> 4) * sectionsZ];
+    }
+
+    public int getSectionsX() {
+        return sectionsX;
+    }
+
+    public int getSectionsY() {
+        return (getHeight() + 15) >> 4;
+    }
+
+    public int getSectionsZ() {
+        return sectionsZ;
+    }
+
+    @Override
+    public boolean hasBiomes() {
+        return biomes != null;
+    }
+
+    @Override
+    public boolean setBiome(BlockVector3 position, BiomeType biome) {
+        return setBiome(position.x(), position.y(), position.z(), biome);
+    }
+
+    @Override
+    public boolean setBiome(int x, int y, int z, BiomeType biome) {
+        setBiome(getBiomeIndex(x, y, z), biome);
+        return true;
+    }
+
+    @Override
+    public void setBiome(int index, BiomeType biome) {
+        if (biomes == null) {
+            biomes = new char[((getHeight() >> 2) + 1) * ((getLength() >> 2) + 1) * ((getWidth() >> 2) + 1)];
+        }
+        biomes[index] = (char) biome.getInternalId();
+    }
+
+    @Override
+    public void streamBiomes(IntValueReader task) {
+        if (!hasBiomes()) {
+            return;
+        }
+        try {
+            for (int y = 0; y < getHeight(); y++) {
+                for (int z = 0; z < getLength(); z++) {
+                    for (int x = 0; x < getWidth(); x++) {
+                        task.applyInt(getIndex(x, y, z), biomes[getBiomeIndex(x, y, z)]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public BiomeType getBiome(int index) {
+        if (!hasBiomes()) {
+            return null;
+        }
+        return BiomeTypes.get(biomes[index]);
+    }
+
+    @Override
+    public BiomeType getBiomeType(int x, int y, int z) {
+        return getBiome(getBiomeIndex(x, y, z));
+    }
+
+    @Override
+    public BiomeType getBiome(BlockVector3 position) {
+        return getBiome(getBiomeIndex(position.x(), position.y(), position.z()));
+    }
+
+    public int getIndex(int x, int y, int z) {
+        return x + y * getArea() + z * getWidth();
+    }
+
+    public int getBiomeIndex(int x, int y, int z) {
+        return (x >> 2) + (y >> 2) * (getWidth() >> 2) * (getLength() >> 2) + (z >> 2) * (getWidth() >> 2);
+    }
+
+    private int getSectionIndex(int sectionX, int sectionY, int sectionZ) {
+        return (sectionY * sectionsZ + sectionZ) * sectionsX + sectionX;
+    }
+
+    private static int getLocalIndex(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    /**
+     * Get the ordinal of the block state at the given position, relative to the clipboard minimum.
+     */
+    public char getOrdinal(int x, int y, int z) {
+        Section section = sections[getSectionIndex(x >> 4, y >> 4, z >> 4)];
+        if (section == null) {
+            return BlockTypesCache.ReservedIDs.AIR;
+        }
+        return section.get(getLocalIndex(x, y, z));
+    }
+
+    /**
+     * Get the ordinals of the block states of a row along the x-axis, relative to the clipboard minimum.
+     *
+     * @param y      the row y
+     * @param z      the row z
+     * @param buffer array of at least {@link #getWidth()} length to write into
+     * @return the given buffer
+     */
+    public char[] getOrdinalRow(int y, int z, char[] buffer) {
+        int width = getWidth();
+        int rowIndex = (y & 15) << 8 | (z & 15) << 4;
+        for (int sectionX = 0; sectionX < sectionsX; sectionX++) {
+            int start = sectionX << 4;
+            int end = Math.min(start + 16, width);
+            Section section = sections[getSectionIndex(sectionX, y >> 4, z >> 4)];
+            if (section == null) {
+                Arrays.fill(buffer, start, end, (char) BlockTypesCache.ReservedIDs.AIR);
+            } else if (section.indices == null && section.direct == null) {
+                Arrays.fill(buffer, start, end, section.palette[0]);
+            } else {
+                for (int x = start, i = rowIndex; x < end; x++, i++) {
+                    buffer[x] = section.get(i);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Get the ordinal all blocks of a section consist of. Partial sections may only be recognised as uniform after
+     * {@link #flush()}.
+     *
+     * @return the ordinal, or {@code -1} if the section consists of multiple block states
+     */
+    public int getUniformOrdinal(int sectionX, int sectionY, int sectionZ) {
+        Section section = sections[getSectionIndex(sectionX, sectionY, sectionZ)];
+        if (section == null) {
+            return BlockTypesCache.ReservedIDs.AIR;
+        }
+        return section.indices == null && section.direct == null ? section.palette[0] : -1;
+    }
+
+    /**
+     * Get the ordinals of the block states of a section, indexed by {@code y << 8 | z << 4 | x}. The values at positions
+     * of partial sections outside the clipboard are undefined.
+     *
+     * @param buffer array of at least 4096 length to write into
+     * @return the given buffer
+     */
+    public char[] getSectionOrdinals(int sectionX, int sectionY, int sectionZ, char[] buffer) {
+        Section section = sections[getSectionIndex(sectionX, sectionY, sectionZ)];
+        if (section == null) {
+            Arrays.fill(buffer, 0, 4096, (char) BlockTypesCache.ReservedIDs.AIR);
+        } else {
+            section.toOrdinals(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * {@return an unmodifiable view of the tile entities, keyed by clipboard index}
+     */
+    public Int2ObjectMap<LinCompoundTag> getTiles() {
+        return Int2ObjectMaps.unmodifiable(tiles);
+    }
+
+    @Override
+    public Collection<CompoundTag> getTileEntities() {
+        List<CompoundTag> result = new ArrayList<>(tiles.size());
+        for (Int2ObjectMap.Entry<LinCompoundTag> entry : tiles.int2ObjectEntrySet()) {
+            int index = entry.getIntKey();
+            int y = index / getArea();
+            index -= y * getArea();
+            int z = index / getWidth();
+            int x = index - z * getWidth();
+            Map<String, Tag<?, ?>> values = new HashMap<>(new CompoundTag(entry.getValue()).getValue());
+            values.put("x", new IntTag(x));
+            values.put("y", new IntTag(y));
+            values.put("z", new IntTag(z));
+            result.add(new CompoundTag(values));
+        }
+        return result;
+    }
+
+    @Override
+    public BaseBlock getFullBlock(int x, int y, int z) {
+        return toBaseBlock(getBlock(x, y, z), getIndex(x, y, z));
+    }
+
+    @Override
+    public BaseBlock getFullBlock(int index) {
+        return toBaseBlock(getBlock(index), index);
+    }
+
+    private BaseBlock toBaseBlock(BlockState state, int index) {
+        if (!tiles.isEmpty()) {
+            LinCompoundTag tag = tiles.get(index);
+            if (tag != null) {
+                return state.toBaseBlock(tag);
+            }
+        }
+        return state.toBaseBlock();
+    }
+
+    @Override
+    public BlockState getBlock(int index) {
+        int y = index / getArea();
+        int newI = index - y * getArea();
+        int z = newI / getWidth();
+        int x = newI - z * getWidth();
+        return getBlock(x, y, z);
+    }
+
+    @Override
+    public BlockState getBlock(int x, int y, int z) {
+        return BlockState.getFromOrdinal(getOrdinal(x, y, z));
+    }
+
+    @Override
+    public boolean setTile(int x, int y, int z, CompoundTag tag) {
+        return setTile(getIndex(x, y, z), tag.toLinTag());
+    }
+
+    @Override
+    public boolean tile(final int x, final int y, final int z, final FaweCompoundTag tile) throws WorldEditException {
+        return setTile(getIndex(x, y, z), tile.linTag());
+    }
+
+    private boolean setTile(int index, LinCompoundTag tag) {
+        tiles.put(index, tag.toBuilder().remove("x").remove("y").remove("z").build());
+        return true;
+    }
+
+    @Override
+    public <B extends BlockStateHolder<B>> boolean setBlock(int index, B block) {
+        int y = index / getArea();
+        int newI = index - y * getArea();
+        int z = newI / getWidth();
+        int x = newI - z * getWidth();
+        return setBlock(x, y, z, block);
+    }
+
+    @Override
+    public <B extends BlockStateHolder<B>> boolean setBlock(int x, int y, int z, B block) {
+        char ordinal = block.getOrdinalChar();
+        if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+            ordinal = BlockTypesCache.ReservedIDs.AIR;
+        }
+        int sectionIndex = getSectionIndex(x >> 4, y >> 4, z >> 4);
+        Section section = sections[sectionIndex];
+        if (section == null) {
+            if (ordinal == BlockTypesCache.ReservedIDs.AIR) {
+                removeTile(x, y, z);
+                return true;
+            }
+            sections[sectionIndex] = section = new Section((char) BlockTypesCache.ReservedIDs.AIR);
+        }
+        section.set(getLocalIndex(x, y, z), ordinal);
+        LinCompoundTag tag;
+        if (block instanceof BaseBlock && (tag = block.getNbt()) != null) {
+            setTile(getIndex(x, y, z), tag);
+        } else {
+            removeTile(x, y, z);
+        }
+        return true;
+    }
+
+    private void removeTile(int x, int y, int z) {
+        if (!tiles.isEmpty()) {
+            tiles.remove(getIndex(x, y, z));
+        }
+    }
+
+    /**
+     * Shrink the palettes of all sections to the block states still in use and collapse sections consisting of a single
+     * block state.
+     */
+    @Override
+    public void flush() {
+        int sectionsY = getSectionsY();
+        char[] buffer = new char[4096];
+        for (int sectionY = 0; sectionY < sectionsY; sectionY++) {
+            for (int sectionZ = 0; sectionZ < sectionsZ; sectionZ++) {
+                for (int sectionX = 0; sectionX < sectionsX; sectionX++) {
+                    int sectionIndex = getSectionIndex(sectionX, sectionY, sectionZ);
+                    Section section = sections[sectionIndex];
+                    if (section == null) {
+                        continue;
+                    }
+                    section.compact(
+                            buffer,
+                            Math.min(16, getWidth() - (sectionX << 4)),
+                            Math.min(16, getHeight() - (sectionY << 4)),
+                            Math.min(16, getLength() - (sectionZ << 4))
+                    );
+                    if (section.indices == null && section.direct == null
+                            && section.palette[0] == BlockTypesCache.ReservedIDs.AIR) {
+                        sections[sectionIndex] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace every block state in place using an ordinal lookup table, e.g. one of
+     * {@link com.sk89q.worldedit.extent.transform.BlockTransformExtent#getOrdinalTable}. Only the palettes are
+     * rewritten, so the cost depends on the number of distinct block states per section rather than the volume. Tile
+     * entities are kept as they are.
+     *
+     * @param table the ordinal of the new block state, indexed by the ordinal of the current one
+     */
+    public void transformOrdinals(char[] table) {
+        for (Section section : sections) {
+            if (section != null) {
+                section.transform(table);
+            }
+        }
+    }
+
+    /**
+     * {@return an estimate of the number of bytes used to store blocks}
+     */
+    public long size() {
+        long total = (long) sections.length * Integer.BYTES;
+        for (Section section : sections) {
+            if (section != null) {
+                total += section.size();
+            }
+        }
+        return total;
+    }
+
+    private static final class Section {
+
+        private char[] palette;
+        private int paletteSize;
+        @Nullable
+        private BitArray indices;
+        @Nullable
+        private char[] direct;
+        private int bits;
+        private char lastOrdinal;
+        private int lastIndex;
+
+        private Section(char ordinal) {
+            this.palette = new char[]{ordinal};
+            this.paletteSize = 1;
+            this.lastOrdinal = ordinal;
+        }
+
+        private char get(int index) {
+            if (direct != null) {
+                return direct[index];
+            }
+            if (indices == null) {
+                return palette[0];
+            }
+            return palette[indices.get(index)];
+        }
+
+        private void set(int index, char ordinal) {
+            if (direct != null) {
+                direct[index] = ordinal;
+                return;
+            }
+            int paletteIndex = indexOf(ordinal);
+            if (paletteIndex == -1) {
+                paletteIndex = add(ordinal);
+                if (direct != null) {
+                    direct[index] = ordinal;
+                    return;
+                }
+            }
+            if (indices != null) {
+                indices.set(index, paletteIndex);
+            }
+        }
+
+        private int indexOf(char ordinal) {
+            if (ordinal == lastOrdinal) {
+                return lastIndex;
+            }
+            for (int i = 0; i < paletteSize; i++) {
+                if (palette[i] == ordinal) {
+                    lastOrdinal = ordinal;
+                    lastIndex = i;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int add(char ordinal) {
+            int index = paletteSize;
+            if (index >= 1 << bits) {
+                if (bits == MAX_PALETTE_BITS) {
+                    char[] ordinals = toOrdinals(new char[4096]);
+                    palette = null;
+                    indices = null;
+                    direct = ordinals;
+                    return -1;
+                }
+                resize(bits + 1);
+            }
+            if (index == palette.length) {
+                palette = Arrays.copyOf(palette, Math.min(palette.length << 1, 1 << MAX_PALETTE_BITS));
+            }
+            palette[index] = ordinal;
+            paletteSize++;
+            lastOrdinal = ordinal;
+            lastIndex = index;
+            return index;
+        }
+
+        /**
+         * Map the block states of this section through the given table. Entries that end up equal stay in the palette,
+         * lookups return the first of them and the next compaction merges them.
+         */
+        private void transform(char[] table) {
+            if (direct != null) {
+                for (int i = 0; i < 4096; i++) {
+                    direct[i] = table[direct[i]];
+                }
+                return;
+            }
+            for (int i = 0; i < paletteSize; i++) {
+                palette[i] = table[palette[i]];
+            }
+            lastOrdinal = palette[0];
+            lastIndex = 0;
+        }
+
+        private void resize(int bits) {
+            int[] raw = indices == null ? new int[4096] : indices.toRaw();
+            BitArray resized = new BitArray(bits, 4096);
+            resized.fromRaw(raw);
+            this.indices = resized;
+            this.bits = bits;
+        }
+
+        private char[] toOrdinals(char[] buffer) {
+            if (direct != null) {
+                System.arraycopy(direct, 0, buffer, 0, 4096);
+            } else if (indices == null) {
+                Arrays.fill(buffer, 0, 4096, palette[0]);
+            } else {
+                indices.toRaw(buffer);
+                for (int i = 0; i < 4096; i++) {
+                    buffer[i] = palette[buffer[i]];
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * Rebuild the palette from the block states used within the given bounds, positions outside the bounds are
+         * set to the first palette entry.
+         */
+        private void compact(char[] buffer, int sizeX, int sizeY, int sizeZ) {
+            if (indices == null && direct == null) {
+                return;
+            }
+            toOrdinals(buffer);
+            char[] used = new char[16];
+            int usedSize = 0;
+            for (int y = 0; y < sizeY; y++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    int rowIndex = y << 8 | z << 4;
+                    for (int x = 0; x < sizeX; x++) {
+                        char ordinal = buffer[rowIndex | x];
+                        if (usedSize > 0 && used[usedSize - 1] == ordinal) {
+                            continue;
+                        }
+                        int i = 0;
+                        while (i < usedSize && used[i] != ordinal) {
+                            i++;
+                        }
+                        if (i == usedSize) {
+                            if (usedSize == 1 << MAX_PALETTE_BITS) {
+                                return;
+                            }
+                            if (usedSize == used.length) {
+                                used = Arrays.copyOf(used, usedSize << 1);
+                            }
+                            used[usedSize++] = ordinal;
+                        }
+                    }
+                }
+            }
+            palette = Arrays.copyOf(used, usedSize);
+            paletteSize = usedSize;
+            indices = null;
+            direct = null;
+            bits = 0;
+            lastOrdinal = palette[0];
+            lastIndex = 0;
+            if (usedSize == 1) {
+                return;
+            }
+            bits = 32 - Integer.numberOfLeadingZeros(usedSize - 1);
+            BitArray compacted = new BitArray(bits, 4096);
+            for (int y = 0; y < sizeY; y++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    int rowIndex = y << 8 | z << 4;
+                    for (int x = 0; x < sizeX; x++) {
+                        compacted.set(rowIndex | x, indexOf(buffer[rowIndex | x]));
+                    }
+                }
+            }
+            indices = compacted;
+        }
+
+        private long size() {
+            long size = 32;
+            if (direct != null) {
+                return size + (long) direct.length * Character.BYTES;
+            }
+            size += (long) palette.length * Character.BYTES;
+            if (indices != null) {
+                size += (long) indices.getLength() * Long.BYTES;
+            }
+            return size;
+        }
+
+    }
+
+}
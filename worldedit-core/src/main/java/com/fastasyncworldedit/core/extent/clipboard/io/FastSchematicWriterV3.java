@@ -1,5 +1,6 @@
 package com.fastasyncworldedit.core.extent.clipboard.io;
 
+import com.fastasyncworldedit.core.extent.clipboard.SectionPaletteClipboard;
 import com.fastasyncworldedit.core.function.visitor.Order;
 import com.fastasyncworldedit.core.util.IOUtil;
 import com.sk89q.jnbt.CompoundTag;
@@ -10,6 +11,7 @@
 import com.sk89q.worldedit.entity.Entity;
 import com.sk89q.worldedit.extension.platform.Capability;
 import com.sk89q.worldedit.extension.platform.Platform;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.math.BlockVector3;
@@ -18,6 +20,7 @@
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import net.jpountz.lz4.LZ4BlockInputStream;
 import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.enginehub.linbus.tree.LinCompoundTag;
@@ -110,6 +113,13 @@ private void write2(NBTOutputStream schematic, Clipboard clipboard) throws IOExc
     }
 
     private void writeBlocks(NBTOutputStream blocks, Clipboard clipboard) throws IOException {
+        Clipboard parent = clipboard instanceof BlockArrayClipboard blockArrayClipboard
+                ? blockArrayClipboard.getParent()
+                : clipboard;
+        if (parent instanceof SectionPaletteClipboard sectionClipboard) {
+            this.writeSectionBlocks(blocks, clipboard, sectionClipboard);
+            return;
+        }
         final int[] tiles = new int[]{0};
         final ByteArrayOutputStream tileBytes = new ByteArrayOutputStream();
         try (LZ4BlockOutputStream lz4Stream = new LZ4BlockOutputStream(tileBytes);
@@ -163,6 +173,51 @@ private void writeBlocks(NBTOutputStream blocks, Clipboard clipboard) throws IOE
         }
     }
 
+    /**
+     * Write the blocks of a {@link SectionPaletteClipboard} row by row, without resolving a block for every position.
+     */
+    private void writeSectionBlocks(NBTOutputStream blocks, Clipboard clipboard, SectionPaletteClipboard sectionClipboard)
+            throws IOException {
+        BlockVector3 min = clipboard.getMinimumPoint();
+        char[] row = new char[sectionClipboard.getWidth()];
+        // the palette is written in YZX order, so a row is read whenever x starts over
+        this.writePalette(
+                blocks,
+                BlockTypesCache.states.length,
+                pos -> {
+                    int x = pos.x() - min.x();
+                    if (x == 0) {
+                        sectionClipboard.getOrdinalRow(pos.y() - min.y(), pos.z() - min.z(), row);
+                    }
+                    return row[x];
+                },
+                Function.identity(),
+                ordinal -> BlockTypesCache.states[ordinal].getAsString(),
+                clipboard
+        );
+        // Write Tiles
+        Int2ObjectMap<LinCompoundTag> tiles = sectionClipboard.getTiles();
+        if (!tiles.isEmpty()) {
+            blocks.writeNamedTagName("BlockEntities", NBTConstants.TYPE_LIST);
+            blocks.write(NBTConstants.TYPE_COMPOUND);
+            blocks.writeInt(tiles.size());
+            int area = sectionClipboard.getArea();
+            int width = sectionClipboard.getWidth();
+            for (Int2ObjectMap.Entry<LinCompoundTag> entry : tiles.int2ObjectEntrySet()) {
+                int tileIndex = entry.getIntKey();
+                int y = tileIndex / area;
+                int z = (tileIndex - y * area) / width;
+                int x = tileIndex - y * area - z * width;
+                BaseBlock block = sectionClipboard.getBlock(x, y, z).toBaseBlock(entry.getValue());
+                blocks.writeNamedTag("Id", block.getNbtId());
+                blocks.writeNamedTag("Pos", new int[]{x, y, z});
+                //noinspection deprecation
+                blocks.writeNamedTag("Data", new CompoundTag(entry.getValue()));
+                blocks.write(NBTConstants.TYPE_END);
+            }
+        }
+    }
+
     private void writeBiomes(NBTOutputStream biomes, Clipboard clipboard) throws IOException {
         this.writePalette(
                 biomes, BiomeType.REGISTRY.size(),
@@ -22,7 +22,7 @@ public DistrFilter() {
         super(null);
     }
 
-    private DistrFilter(DistrFilter root) {
+    protected DistrFilter(DistrFilter root) {
         super(root);
     }
 
@@ -47,6 +47,14 @@ public final void applyBlock(FilterBlock block) {
         counter[ordinal]++;
     }
 
+    void add(SectionHistogramCache.Histogram histogram) {
+        char[] ordinals = histogram.ordinals();
+        int[] counts = histogram.counts();
+        for (int i = 0; i < ordinals.length; i++) {
+            counter[ordinals[i]] += counts[i];
+        }
+    }
+
     public int getTotal(ABlockMask mask) {
         int total = 0;
         for (int i = 0; i < counter.length; i++) {
@@ -0,0 +1,220 @@
+package com.fastasyncworldedit.core.extent.filter;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
+import com.fastasyncworldedit.core.function.mask.MaskPlanner;
+import com.fastasyncworldedit.core.function.pattern.MaskedPattern;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.ExpressionMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.regions.Region;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link MaskFilter} testing a mask as planned by {@link MaskPlanner}: the state of each block is looked up in a single
+ * table first and the remaining masks are tested ordered by their estimated cost per block rejected, which is measured per
+ * chunk. Masked patterns applied whose mask only depends on the state of the block are chosen by table as well.
+ *
+ * @param <T> Parent which extends Filter
+ * @since TODO
+ */
+public class FusedMaskFilter<T extends Filter> extends MaskFilter<T> {
+
+    private final MaskPlanner.Plan plan;
+    private final Filter target;
+    @Nullable
+    private final boolean[] ordinals;
+    private final Mask[] masks;
+    private final boolean[][] accepts;
+    private final int[] costs;
+    private final boolean[] stateful;
+    private final long[] tested;
+    private final long[] rejected;
+
+    private FusedMaskFilter(T other, Mask root, MaskPlanner.Plan plan, Filter target, AtomicInteger changes) {
+        super(other, root, changes);
+        this.plan = plan;
+        this.target = target;
+        this.ordinals = plan.ordinals();
+        this.masks = plan.masks().clone();
+        this.accepts = plan.accepts().clone();
+        this.costs = plan.costs().clone();
+        this.stateful = new boolean[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            stateful[i] = MaskPlanner.isStateful(masks[i]);
+        }
+        this.tested = new long[masks.length];
+        this.rejected = new long[masks.length];
+    }
+
+    /**
+     * Create a filter applying the given filter where the mask matches, if the mask can be tested faster than as it is.
+     *
+     * @param other the filter to apply
+     * @param root  the mask
+     * @return the filter, or null if the mask should be tested as it is
+     */
+    @Nullable
+    public static <T extends Filter> FusedMaskFilter<T> of(T other, Mask root) {
+        if (!Settings.settings().EXPERIMENTAL.FUSED_MASKS) {
+            return null;
+        }
+        MaskPlanner.Plan plan = MaskPlanner.plan(root);
+        if (plan == null) {
+            return null;
+        }
+        return new FusedMaskFilter<>(other, root, plan, fuse(other), new AtomicInteger());
+    }
+
+    /**
+     * Replace masked patterns by a choice by table where possible.
+     */
+    static Filter fuse(Filter filter) {
+        if (filter instanceof MaskedPattern masked) {
+            boolean[] ordinals = MaskPlanner.fold(masked.getMask());
+            if (ordinals != null) {
+                return new StateSwitch(ordinals, fuse(masked.getPrimary()), fuse(masked.getSecondary()));
+            }
+        }
+        return filter;
+    }
+
+    @Override
+    public <V extends IChunk> V applyChunk(V chunk, @Nullable Region region) {
+        V result = target == getParent() ? getParent().applyChunk(chunk, region) : target.applyChunk(chunk, region);
+        // an expression mask is only evaluated for whole sections if it is tested for every block
+        if (result != null && ordinals == null && masks.length > 0 && accepts[0] == null
+                && masks[0] instanceof ExpressionMask expressionMask) {
+            expressionMask.initChunk(chunk.getX(), chunk.getZ(), region);
+        }
+        return result;
+    }
+
+    @Override
+    public void applyBlock(FilterBlock block) {
+        int ordinal = block.getOrdinal();
+        if (ordinals != null && !ordinals[ordinal]) {
+            return;
+        }
+        for (int i = 0; i < masks.length; i++) {
+            boolean[] accept = accepts[i];
+            if (accept != null && accept[ordinal]) {
+                continue;
+            }
+            tested[i]++;
+            Mask mask = masks[i];
+            boolean passed = mask instanceof AbstractExtentMask extentMask
+                    ? extentMask.test(block.getExtent(), block)
+                    : mask.test(block);
+            if (!passed) {
+                rejected[i]++;
+                return;
+            }
+        }
+        target.applyBlock(block);
+        this.changes.incrementAndGet();
+    }
+
+    @Override
+    public void finishChunk(IChunk chunk) {
+        for (Mask mask : masks) {
+            if (mask instanceof ExpressionMask expressionMask) {
+                expressionMask.finishChunk();
+            }
+        }
+        reorder();
+        if (target == getParent()) {
+            getParent().finishChunk(chunk);
+        } else {
+            target.finishChunk(chunk);
+        }
+    }
+
+    /**
+     * Sort the masks by their cost per block rejected in the chunks filtered so far, so masks rejecting many blocks cheaply
+     * are tested first. Stateful masks are not moved and no mask is moved past them.
+     */
+    private void reorder() {
+        for (int i = 1; i < masks.length; i++) {
+            for (int j = i; j > 0 && !stateful[j] && !stateful[j - 1] && rank(j) < rank(j - 1); j--) {
+                swap(j, j - 1);
+            }
+        }
+        // keep adapting to later chunks
+        for (int i = 0; i < masks.length; i++) {
+            tested[i] >>= 1;
+            rejected[i] >>= 1;
+        }
+    }
+
+    private double rank(int i) {
+        return costs[i] * (tested[i] + 1d) / (rejected[i] + 1d);
+    }
+
+    private void swap(int a, int b) {
+        Mask mask = masks[a];
+        masks[a] = masks[b];
+        masks[b] = mask;
+        boolean[] accept = accepts[a];
+        accepts[a] = accepts[b];
+        accepts[b] = accept;
+        int cost = costs[a];
+        costs[a] = costs[b];
+        costs[b] = cost;
+        long count = tested[a];
+        tested[a] = tested[b];
+        tested[b] = count;
+        count = rejected[a];
+        rejected[a] = rejected[b];
+        rejected[b] = count;
+    }
+
+    @Override
+    public MaskFilter<?> newInstance(Filter other) {
+        return new FusedMaskFilter<>(other, mask, plan, fuse(other), new AtomicInteger());
+    }
+
+    @Override
+    public Filter fork() {
+        Filter forked = getParent().fork();
+        return new FusedMaskFilter<>(forked, mask, plan.copy(), target == getParent() ? forked : target.fork(), changes);
+    }
+
+    /**
+     * Applies one of two filters depending on the state of the block.
+     */
+    private record StateSwitch(boolean[] ordinals, Filter primary, Filter secondary) implements Filter {
+
+        @Override
+        public <V extends IChunk> V applyChunk(V chunk, @Nullable Region region) {
+            V result = primary.applyChunk(chunk, region);
+            return result == null ? null : secondary.applyChunk(result, region);
+        }
+
+        @Override
+        public void applyBlock(FilterBlock block) {
+            if (ordinals[block.getOrdinal()]) {
+                primary.applyBlock(block);
+            } else {
+                secondary.applyBlock(block);
+            }
+        }
+
+        @Override
+        public void finishChunk(IChunk chunk) {
+            primary.finishChunk(chunk);
+            secondary.finishChunk(chunk);
+        }
+
+        @Override
+        public Filter fork() {
+            return new StateSwitch(ordinals, primary.fork(), secondary.fork());
+        }
+
+    }
+
+}
@@ -82,6 +82,19 @@ public ShortVector applyVector(final ShortVector get, final ShortVector set) {
             return getRight().applyVector(get, res);
         }
 
+        @Override
+        public ShortVector applyVector(
+                final ShortVector get,
+                final ShortVector set,
+                final int chunkX,
+                final int layer,
+                final int chunkZ,
+                final int index
+        ) {
+            ShortVector res = getLeft().applyVector(get, set, chunkX, layer, chunkZ, index);
+            return getRight().applyVector(get, res, chunkX, layer, chunkZ, index);
+        }
+
         @Override
         public Filter fork() {
             return new VectorizedLinkedFilter<>((L) getLeft().fork(), (R) getRight().fork());
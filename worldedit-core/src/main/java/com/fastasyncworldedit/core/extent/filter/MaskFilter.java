@@ -6,12 +6,16 @@
 import com.fastasyncworldedit.core.internal.simd.VectorizedFilter;
 import com.fastasyncworldedit.core.internal.simd.VectorizedMask;
 import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
 import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.ExpressionMask;
 import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.regions.Region;
 import jdk.incubator.vector.ShortVector;
 import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
 
+import javax.annotation.Nullable;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -35,6 +39,15 @@ public MaskFilter(T other, Mask root, AtomicInteger changes) {
         this.changes = changes;
     }
 
+    @Override
+    public <V extends IChunk> V applyChunk(V chunk, @Nullable Region region) {
+        V result = getParent().applyChunk(chunk, region);
+        if (result != null && mask instanceof ExpressionMask expressionMask) {
+            expressionMask.initChunk(chunk.getX(), chunk.getZ(), region);
+        }
+        return result;
+    }
+
     @Override
     public void applyBlock(FilterBlock block) {
         if (mask instanceof AbstractExtentMask) {
@@ -48,6 +61,14 @@ public void applyBlock(FilterBlock block) {
         }
     }
 
+    @Override
+    public void finishChunk(IChunk chunk) {
+        if (mask instanceof ExpressionMask expressionMask) {
+            expressionMask.finishChunk();
+        }
+        getParent().finishChunk(chunk);
+    }
+
     /**
      * Get the number of blocks which passed the Mask test and were applied to
      *
@@ -83,9 +104,23 @@ public VectorizedMaskFilter(final T other, final Mask root, AtomicInteger change
 
         @Override
         public ShortVector applyVector(final ShortVector get, final ShortVector set) {
-            final T parent = getParent();
+            return applyMasked(get, set, getParent().applyVector(get, set));
+        }
+
+        @Override
+        public ShortVector applyVector(
+                final ShortVector get,
+                final ShortVector set,
+                final int chunkX,
+                final int layer,
+                final int chunkZ,
+                final int index
+        ) {
+            return applyMasked(get, set, getParent().applyVector(get, set, chunkX, layer, chunkZ, index));
+        }
+
+        private ShortVector applyMasked(final ShortVector get, final ShortVector set, ShortVector res) {
             VectorMask<Short> masked = vectorizedMask.compareVector(set, get);
-            ShortVector res = parent.applyVector(get, set);
             res = set.blend(res, masked);
             VectorMask<Short> changed = res.compare(VectorOperators.NE, set);
             changes.getAndAdd(changed.trueCount());
@@ -0,0 +1,135 @@
+package com.fastasyncworldedit.core.extent.filter;
+
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Counts the blocks of a cuboid region section by section instead of block by block. The counts of sections entirely
+ * inside the region are taken from, or added to, the {@link SectionHistogramCache}, only sections on the boundary of the
+ * region are counted anew.
+ *
+ * @since TODO
+ */
+public class SectionDistrFilter extends DistrFilter {
+
+    private final String world;
+    private final boolean full;
+    private int[] scratch;
+    private char[] distinct;
+
+    /**
+     * Create a new filter.
+     *
+     * @param world the name of the world the region is in
+     * @param full  whether to count sections not present in the world as air
+     */
+    public SectionDistrFilter(String world, boolean full) {
+        this.world = world;
+        this.full = full;
+    }
+
+    private SectionDistrFilter(SectionDistrFilter root) {
+        super(root);
+        this.world = root.world;
+        this.full = root.full;
+    }
+
+    @Override
+    public SectionDistrFilter init() {
+        return new SectionDistrFilter(this);
+    }
+
+    @Override
+    public <T extends IChunk> T applyChunk(T chunk, @Nullable Region region) {
+        if (!(region instanceof CuboidRegion)) {
+            return chunk;
+        }
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        BlockVector3 min = region.getMinimumPoint();
+        BlockVector3 max = region.getMaximumPoint();
+        int minX = Math.max(min.x() - (chunkX << 4), 0);
+        int maxX = Math.min(max.x() - (chunkX << 4), 15);
+        int minZ = Math.max(min.z() - (chunkZ << 4), 0);
+        int maxZ = Math.min(max.z() - (chunkZ << 4), 15);
+        // also loads the existing blocks of the chunk, which hasSection depends on
+        int minLayer = Math.max(chunk.getMinSectionPosition(), min.y() >> 4);
+        int maxLayer = Math.min(chunk.getMaxSectionPosition(), max.y() >> 4);
+        boolean column = minX == 0 && maxX == 15 && minZ == 0 && maxZ == 15;
+        for (int layer = minLayer; layer <= maxLayer; layer++) {
+            if (!full && !chunk.hasSection(layer)) {
+                continue;
+            }
+            int minY = Math.max(min.y() - (layer << 4), 0);
+            int maxY = Math.min(max.y() - (layer << 4), 15);
+            final int section = layer;
+            if (column && minY == 0 && maxY == 15) {
+                add(SectionHistogramCache.get(
+                        world,
+                        chunkX,
+                        chunkZ,
+                        layer,
+                        () -> count(chunk.load(section), 0, 15, 0, 15, 0, 15)
+                ));
+            } else {
+                add(count(chunk.load(layer), minX, maxX, minY, maxY, minZ, maxZ));
+            }
+        }
+        // all blocks are counted
+        return null;
+    }
+
+    /**
+     * Count the blocks of a section within the given bounds, relative to the section.
+     */
+    private SectionHistogramCache.Histogram count(
+            @Nullable char[] blocks,
+            int minX,
+            int maxX,
+            int minY,
+            int maxY,
+            int minZ,
+            int maxZ
+    ) {
+        if (blocks == null) {
+            int volume = (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+            return new SectionHistogramCache.Histogram(
+                    new char[]{BlockTypesCache.ReservedIDs.AIR},
+                    new int[]{volume}
+            );
+        }
+        if (scratch == null) {
+            scratch = new int[BlockTypesCache.states.length];
+            distinct = new char[4096];
+        }
+        int size = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                int index = (y << 8) | (z << 4);
+                for (int x = minX; x <= maxX; x++) {
+                    char ordinal = blocks[index | x];
+                    if (ordinal == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                        ordinal = BlockTypesCache.ReservedIDs.AIR;
+                    }
+                    if (scratch[ordinal]++ == 0) {
+                        distinct[size++] = ordinal;
+                    }
+                }
+            }
+        }
+        char[] ordinals = Arrays.copyOf(distinct, size);
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = scratch[ordinals[i]];
+            scratch[ordinals[i]] = 0;
+        }
+        return new SectionHistogramCache.Histogram(ordinals, counts);
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.fastasyncworldedit.core.extent.filter;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Caches the block counts of chunk sections, see {@link SectionDistrFilter}. Sections are invalidated whenever a chunk
+ * holder submits changes to them. Changes made outside of FAWE are not tracked, so entries also expire after a while.
+ *
+ * @since TODO
+ */
+public final class SectionHistogramCache {
+
+    private static final int STRIPES = 1024;
+
+    private static volatile Cache<SectionKey, Histogram> cache;
+    // bumped when a chunk is invalidated so histograms of it computed concurrently are not kept, striped by chunk
+    private static final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+    // the worlds histograms were cached for, to invalidate a chunk in all of them
+    private static final Set<String> worlds = ConcurrentHashMap.newKeySet();
+
+    private SectionHistogramCache() {
+    }
+
+    public static boolean isEnabled() {
+        return Settings.settings().QUEUE.SECTION_HISTOGRAM_CACHE;
+    }
+
+    private static Cache<SectionKey, Histogram> cache() {
+        Cache<SectionKey, Histogram> cache = SectionHistogramCache.cache;
+        if (cache == null) {
+            synchronized (SectionHistogramCache.class) {
+                cache = SectionHistogramCache.cache;
+                if (cache == null) {
+                    cache = CacheBuilder.newBuilder()
+                            .maximumSize(Settings.settings().QUEUE.SECTION_HISTOGRAM_CACHE_SIZE)
+                            .expireAfterWrite(Settings.settings().QUEUE.SECTION_HISTOGRAM_CACHE_EXPIRY, TimeUnit.SECONDS)
+                            .build();
+                    SectionHistogramCache.cache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static int stripe(int chunkX, int chunkZ) {
+        return (chunkX * 31 + chunkZ) & (STRIPES - 1);
+    }
+
+    /**
+     * Get the block counts of a chunk section, computing and caching them if not present.
+     *
+     * @param world   the name of the world
+     * @param chunkX  the chunk x coordinate
+     * @param chunkZ  the chunk z coordinate
+     * @param layer   the section layer
+     * @param compute computes the block counts from the current blocks of the section
+     */
+    public static Histogram get(String world, int chunkX, int chunkZ, int layer, Supplier<Histogram> compute) {
+        SectionKey key = new SectionKey(world, chunkX, chunkZ, layer);
+        Cache<SectionKey, Histogram> cache = cache();
+        Histogram histogram = cache.getIfPresent(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        worlds.add(world);
+        int stripe = stripe(chunkX, chunkZ);
+        long stamp = invalidations.get(stripe);
+        histogram = compute.get();
+        cache.put(key, histogram);
+        if (stamp != invalidations.get(stripe)) {
+            // the chunk was changed while counting, the invalidation may have missed the entry
+            cache.invalidate(key);
+        }
+        return histogram;
+    }
+
+    /**
+     * Invalidate the sections of a chunk changed by the given set.
+     *
+     * @param world  the name of the world, or null to invalidate the chunk in all worlds
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param set    the changes to the chunk
+     */
+    public static void invalidate(@Nullable String world, int chunkX, int chunkZ, IChunkSet set) {
+        Cache<SectionKey, Histogram> cache = SectionHistogramCache.cache;
+        if (cache == null) {
+            return;
+        }
+        invalidations.incrementAndGet(stripe(chunkX, chunkZ));
+        for (String name : world != null ? Set.of(world) : worlds) {
+            for (int layer = set.getMinSectionPosition(); layer <= set.getMaxSectionPosition(); layer++) {
+                if (set.hasSection(layer)) {
+                    cache.invalidate(new SectionKey(name, chunkX, chunkZ, layer));
+                }
+            }
+        }
+    }
+
+    /**
+     * The block counts of a chunk section.
+     *
+     * @param ordinals the distinct block state ordinals in the section
+     * @param counts   the number of blocks of each state
+     */
+    public record Histogram(char[] ordinals, int[] counts) {
+
+    }
+
+    private record SectionKey(String world, int chunkX, int chunkZ, int layer) {
+
+    }
+
+}
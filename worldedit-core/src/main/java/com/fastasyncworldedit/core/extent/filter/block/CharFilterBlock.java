@@ -9,6 +9,8 @@
 import com.fastasyncworldedit.core.queue.IChunkSet;
 import com.fastasyncworldedit.core.queue.implementation.Flood;
 import com.fastasyncworldedit.core.queue.implementation.blocks.CharGetBlocks;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.math.BlockVector3;
@@ -74,10 +76,12 @@ public synchronized final ChunkFilterBlock initLayer(IBlocks iget, IChunkSet ise
         minLayer = this.get.getMinSectionPosition();
         maxLayer = this.get.getMaxSectionPosition();
         this.layer = layer;
-        if (!iget.hasSection(layer)) {
-            getArr = FaweCache.INSTANCE.EMPTY_CHAR_4096;
-        } else {
-            getArr = iget.load(layer);
+        try (EditTelemetry.Timer ignored = EditTelemetry.start(EditStage.CHUNK_LOAD)) {
+            if (!iget.hasSection(layer)) {
+                getArr = FaweCache.INSTANCE.EMPTY_CHAR_4096;
+            } else {
+                getArr = iget.load(layer);
+            }
         }
         this.set = iset;
         if (set.hasSection(layer)) {
@@ -233,6 +237,15 @@ public final int getChunkZ() {
         return chunkZ;
     }
 
+    /**
+     * Get the layer of the section currently filtered.
+     *
+     * @since TODO
+     */
+    public final int getLayer() {
+        return layer;
+    }
+
     public final char getOrdinalChar() {
         return getArr[index];
     }
@@ -0,0 +1,219 @@
+package com.fastasyncworldedit.core.extent.processor.lighting;
+
+import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
+import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.fastasyncworldedit.core.util.MathMan;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+
+/**
+ * Computes sky light of chunks from their {@link HeightMapType#WORLD_SURFACE} heightmap, as written by the
+ * {@link com.fastasyncworldedit.core.extent.processor.heightmap.HeightmapProcessor}. Everything above the surface of a column
+ * is air and fully lit without reading any block, light below the surface is computed straight down the column. Light is
+ * only spread sideways, breadth first, from the blocks where neighbouring columns differ in height, e.g. below overhangs,
+ * and from every lit block next to the borders of the relit chunks.
+ * <p>
+ * Used by {@link NMSRelighter} for {@link RelightMode#HEIGHTMAP}. Not thread safe.
+ */
+final class HeightmapSkyLighter {
+
+    private static final int[] OFFSETS_X = {-1, 1, 0, 0, 0, 0};
+    private static final int[] OFFSETS_Y = {0, 0, -1, 1, 0, 0};
+    private static final int[] OFFSETS_Z = {0, 0, 0, 0, -1, 1};
+
+    private final IQueueExtent<?> queue;
+    private final int minY;
+    private final int maxY;
+    private final Long2ObjectOpenHashMap<Columns> columns = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<int[]> surfaces = new Long2ObjectOpenHashMap<>();
+    private final LongArrayFIFOQueue spread = new LongArrayFIFOQueue();
+
+    HeightmapSkyLighter(IQueueExtent<?> queue, int minY, int maxY) {
+        this.queue = queue;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Compute the sky light of the columns of a chunk, down from the highest section not skipped.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param fix    the {@link Relighter.SkipReason} per section
+     * @return the chunk
+     */
+    ChunkHolder<?> relightColumns(int chunkX, int chunkZ, byte[] fix) {
+        ChunkHolder<?> chunk = getChunk(chunkX, chunkZ);
+        int layer = fix.length - 1;
+        while (layer >= 0 && fix[layer] != Relighter.SkipReason.NONE) {
+            layer--;
+        }
+        if (layer < 0) {
+            return chunk;
+        }
+        int top = minY + (layer << 4) + 15;
+        int[] surface = getSurface(chunkX, chunkZ);
+        int[] lowest = new int[256];
+        for (int j = 0; j < 256; j++) {
+            int x = j & 15;
+            int z = j >> 4;
+            int y = top;
+            int value;
+            if (surface[j] <= top + 1) {
+                // only air above the surface, no need to read any block
+                for (; y >= surface[j]; y--) {
+                    chunk.setSkyLight(x, y, z, 15);
+                }
+                value = 15;
+            } else {
+                value = top < maxY ? chunk.getSkyLight(x, top + 1, z) : 15;
+            }
+            lowest[j] = y + 1;
+            for (; y >= minY && value > 0; y--) {
+                int opacity = chunk.getBlock(x, y, z).getMaterial().getLightOpacity();
+                if (value < 15 || opacity > 0) {
+                    value = Math.max(0, value - Math.max(1, opacity));
+                }
+                chunk.setSkyLight(x, y, z, value);
+                if (value > 1) {
+                    lowest[j] = y;
+                }
+            }
+            // anything lit below was lit sideways, which is spread again from the lit blocks
+            for (; y >= minY; y--) {
+                if (chunk.getSkyLight(x, y, z) != 0) {
+                    chunk.setSkyLight(x, y, z, 0);
+                }
+            }
+        }
+        columns.put(MathMan.pairInt(chunkX, chunkZ), new Columns(chunkX, chunkZ, top, lowest));
+        return chunk;
+    }
+
+    /**
+     * Spread light sideways into and out of the columns computed, wherever neighbouring columns differ.
+     */
+    void propagate() {
+        for (Columns relit : columns.values()) {
+            int[] surface = getSurface(relit.chunkX, relit.chunkZ);
+            int bx = relit.chunkX << 4;
+            int bz = relit.chunkZ << 4;
+            for (int j = 0; j < 256; j++) {
+                int x = bx + (j & 15);
+                int z = bz + (j >> 4);
+                int highest = surface[j];
+                for (int i = 0; i < 6; i++) {
+                    if (OFFSETS_Y[i] != 0) {
+                        continue;
+                    }
+                    int nx = x + OFFSETS_X[i];
+                    int nz = z + OFFSETS_Z[i];
+                    int neighbour = getSurface(nx >> 4, nz >> 4)[(nz & 15) << 4 | (nx & 15)];
+                    highest = Math.max(highest, neighbour);
+                    if (!columns.containsKey(MathMan.pairInt(nx >> 4, nz >> 4))) {
+                        // columns of chunks not relit spread into the border wherever they are lit below its surface,
+                        // both open to the sky and lit sideways, e.g. caves crossing into the relit chunk
+                        ChunkHolder<?> chunk = getChunk(nx >> 4, nz >> 4);
+                        for (int y = minY; y < surface[j] && y <= maxY; y++) {
+                            if (y >= neighbour || chunk.getSkyLight(nx & 15, y, nz & 15) > 1) {
+                                enqueue(nx, y, nz);
+                            }
+                        }
+                    }
+                }
+                // blocks above the surface of all neighbours can not be brighter than their neighbours
+                int end = Math.min(relit.top, highest - 1);
+                for (int y = relit.lowest[j]; y <= end; y++) {
+                    enqueue(x, y, z);
+                }
+            }
+        }
+        while (!spread.isEmpty()) {
+            long pos = spread.dequeueLong();
+            int x = unpackX(pos);
+            int y = unpackY(pos);
+            int z = unpackZ(pos);
+            int level = getChunk(x >> 4, z >> 4).getSkyLight(x & 15, y, z & 15);
+            if (level <= 1) {
+                continue;
+            }
+            for (int i = 0; i < 6; i++) {
+                int nx = x + OFFSETS_X[i];
+                int ny = y + OFFSETS_Y[i];
+                int nz = z + OFFSETS_Z[i];
+                if (ny < minY || ny > maxY) {
+                    continue;
+                }
+                ChunkHolder<?> chunk = getChunk(nx >> 4, nz >> 4);
+                int next = level - Math.max(1, chunk.getBlock(nx & 15, ny, nz & 15).getMaterial().getLightOpacity());
+                if (next > chunk.getSkyLight(nx & 15, ny, nz & 15)) {
+                    chunk.setSkyLight(nx & 15, ny, nz & 15, next);
+                    if (next > 1) {
+                        spread.enqueue(pack(nx, ny, nz));
+                    }
+                }
+            }
+        }
+        columns.clear();
+        surfaces.clear();
+    }
+
+    private void enqueue(int x, int y, int z) {
+        spread.enqueue(pack(x, y, z));
+    }
+
+    /**
+     * Get the y of the lowest air block above which all blocks are air, per column, checking the heightmap is plausible.
+     */
+    private int[] getSurface(int chunkX, int chunkZ) {
+        long pair = MathMan.pairInt(chunkX, chunkZ);
+        int[] surface = surfaces.get(pair);
+        if (surface != null) {
+            return surface;
+        }
+        ChunkHolder<?> chunk = getChunk(chunkX, chunkZ);
+        int[] heightmap = chunk.getHeightMap(HeightMapType.WORLD_SURFACE);
+        surface = new int[256];
+        for (int j = 0; j < 256; j++) {
+            int height = heightmap != null && heightmap.length == 256 ? heightmap[j] : -1;
+            int y = minY + height;
+            if (height < 0 || y > maxY + 1 || (height > 0 && chunk.getBlock(j & 15, y - 1, j >> 4).isAir())) {
+                // heightmap missing or outdated, do not assume anything is open to the sky
+                y = maxY + 1;
+            }
+            surface[j] = y;
+        }
+        surfaces.put(pair, surface);
+        return surface;
+    }
+
+    private ChunkHolder<?> getChunk(int chunkX, int chunkZ) {
+        ChunkHolder<?> chunk = (ChunkHolder<?>) queue.getOrCreateChunk(chunkX, chunkZ);
+        if (!chunk.isInit()) {
+            chunk.init(queue, chunkX, chunkZ);
+        }
+        return chunk;
+    }
+
+    private long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | ((y - minY) & 0xFFF);
+    }
+
+    private static int unpackX(long pos) {
+        return (int) (pos >> 38);
+    }
+
+    private int unpackY(long pos) {
+        return (int) (pos & 0xFFF) + minY;
+    }
+
+    private static int unpackZ(long pos) {
+        return (int) (pos << 26 >> 38);
+    }
+
+    private record Columns(int chunkX, int chunkZ, int top, int[] lowest) {
+
+    }
+
+}
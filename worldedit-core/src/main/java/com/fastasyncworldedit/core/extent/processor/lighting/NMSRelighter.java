@@ -9,6 +9,8 @@
 import com.fastasyncworldedit.core.util.MathMan;
 import com.fastasyncworldedit.core.util.TaskManager;
 import com.fastasyncworldedit.core.util.task.RunnableVal;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.sk89q.worldedit.registry.state.DirectionalProperty;
 import com.sk89q.worldedit.registry.state.EnumProperty;
 import com.sk89q.worldedit.registry.state.Property;
@@ -929,6 +931,8 @@ public void flush() {
     }
 
     public synchronized void sendChunks() {
+        // the chunks may be sent from the main thread, which the edit is not bound to
+        final EditTelemetry telemetry = EditTelemetry.current();
         RunnableVal<Object> runnable = new RunnableVal<>() {
             @Override
             public void run(Object value) {
@@ -942,7 +946,9 @@ public void run(Object value) {
                     ChunkHolder<?> chunk = (ChunkHolder<?>) queue.getOrCreateChunk(x, z);
                     chunk.setBitMask(bitMask);
                     chunk.flushLightToGet();
-                    Fawe.platform().getPlatformAdapter().sendChunk(chunk.getOrCreateGet(), bitMask, true);
+                    try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.PACKETS)) {
+                        Fawe.platform().getPlatformAdapter().sendChunk(chunk.getOrCreateGet(), bitMask, true);
+                    }
                     iter.remove();
                 }
                 finished.set(true);
@@ -974,11 +980,45 @@ public synchronized void fixSkyLighting() {
                 int start = i * DISPATCH_SIZE;
                 int end = Math.min(size, start + DISPATCH_SIZE);
                 List<RelightSkyEntry> sub = chunksList.subList(start, end);
-                fixSkyLighting(sub);
+                dispatchSkyLighting(sub);
             }
         } else {
-            fixSkyLighting(chunksList);
+            dispatchSkyLighting(chunksList);
+        }
+    }
+
+    private void dispatchSkyLighting(List<RelightSkyEntry> sorted) {
+        if (relightMode == RelightMode.HEIGHTMAP) {
+            fixSkyLightingFromHeightmaps(sorted);
+        } else {
+            fixSkyLighting(sorted);
+        }
+    }
+
+    private void fixSkyLightingFromHeightmaps(List<RelightSkyEntry> sorted) {
+        HeightmapSkyLighter lighter = new HeightmapSkyLighter(queue, minY, maxY);
+        for (RelightSkyEntry chunk : sorted) {
+            ChunkHolder<?> iChunk = lighter.relightColumns(chunk.x, chunk.z, chunk.fix);
+            // light sources are otherwise found while reading every block for sky light
+            int bx = chunk.x << 4;
+            int bz = chunk.z << 4;
+            for (int layer = 0; layer < chunk.fix.length; layer++) {
+                if (chunk.fix[layer] != SkipReason.NONE) {
+                    continue;
+                }
+                int baseY = minY + (layer << 4);
+                for (int i = 0; i < 4096; i++) {
+                    int x = i & 15;
+                    int y = baseY + (i >> 8);
+                    int z = (i >> 4) & 15;
+                    int brightness = iChunk.getBlock(x, y, z).getMaterial().getLightValue();
+                    if (brightness > 0 && brightness != iChunk.getEmittedLight(x, y, z)) {
+                        addLightUpdate(bx + x, y, bz + z);
+                    }
+                }
+            }
         }
+        lighter.propagate();
     }
 
     public void fill(byte[] mask, ChunkHolder<?> iChunk, int y, byte reason) {
@@ -0,0 +1,605 @@
+package com.fastasyncworldedit.core.extent.processor.lighting;
+
+import com.fastasyncworldedit.core.Fawe;
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.QueueHandler;
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.TaskManager;
+import com.fastasyncworldedit.core.util.task.RunnableVal;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+
+/**
+ * Relighter propagating light on the {@link QueueHandler}'s fork join pool. Chunks are relit in the {@link RelightWindow}
+ * of the 3x3 chunks around them. The chunks to relight are split into nine phases by their coordinates modulo three, the
+ * windows of the chunks of a phase are disjoint and relit in parallel. Propagation leaving a window is continued in further
+ * rounds, until no light changes.
+ * <p>
+ * Sky light of a chunk is computed column by column from the top of its highest changed section and then spread from the
+ * columns and the surrounding chunks. Block light is relit incrementally: up to the highest changed section, only blocks
+ * whose light no longer matches their emission and the light around them are updated, spreading or removing light from
+ * there. With {@link RelightMode#ALL}, or after the light was removed, block light is spread from every light source again.
+ * <p>
+ * Relighting and sending chunks is done holding {@link #getLock()}.
+ *
+ * @since TODO
+ */
+public class ParallelRelighter implements Relighter {
+
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+    // propagation leaving a window only continues for up to 15 blocks, this only guards against unforeseen cycles
+    private static final int MAX_ROUNDS = 16;
+
+    private final IQueueExtent<?> queue;
+    private final RelightMode relightMode;
+    private final int minY;
+    private final int maxY;
+    private final int sectionCount;
+    private final Map<Long, DirtyChunk> chunks = new ConcurrentHashMap<>();
+    // chunks with sky light relit, still to relight block light for
+    private final Map<Long, DirtyChunk> pendingBlockLight = new ConcurrentHashMap<>();
+    // block positions to update block light at, as section relative indices, per chunk
+    private final Map<Long, IntArrayList> lightUpdates = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> chunksToSend = new ConcurrentHashMap<>();
+    private final ReentrantLock lightingLock = new ReentrantLock();
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    /**
+     * Create a new relighter.
+     *
+     * @param queue       the queue to relight chunks of
+     * @param relightMode the relight mode, or null for the configured mode
+     */
+    public ParallelRelighter(IQueueExtent<?> queue, RelightMode relightMode) {
+        this.queue = queue;
+        this.relightMode = relightMode != null ? relightMode : RelightMode.valueOf(Settings.settings().LIGHTING.MODE);
+        this.minY = queue.getMinY();
+        this.maxY = queue.getMaxY();
+        this.sectionCount = (maxY - minY + 16) >> 4;
+    }
+
+    public RelightMode getRelightMode() {
+        return relightMode;
+    }
+
+    @Override
+    public boolean addChunk(int cx, int cz, byte[] skipReason, int bitmask) {
+        chunks.merge(MathMan.pairInt(cx, cz), new DirtyChunk(cx, cz, skipReason, bitmask), DirtyChunk::merge);
+        return true;
+    }
+
+    @Override
+    public void addLightUpdate(int x, int y, int z) {
+        int index = ((y - minY) << 8) | (z & 15) << 4 | (x & 15);
+        lightUpdates.compute(MathMan.pairInt(x >> 4, z >> 4), (pair, indices) -> {
+            if (indices == null) {
+                indices = new IntArrayList();
+            }
+            indices.add(index);
+            return indices;
+        });
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        pendingBlockLight.clear();
+        lightUpdates.clear();
+        chunksToSend.clear();
+    }
+
+    @Override
+    public void removeAndRelight(boolean sky) {
+        lightingLock.lock();
+        try {
+            removeLighting();
+            fixLightingSafe(sky);
+        } finally {
+            lightingLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeLighting() {
+        for (DirtyChunk chunk : chunks.values()) {
+            ChunkHolder<?> holder = getChunk(chunk.x, chunk.z);
+            if (holder == null) {
+                continue;
+            }
+            for (int layer = minY >> 4; layer <= maxY >> 4; layer++) {
+                holder.removeSectionLighting(layer, true);
+            }
+            chunk.removed = true;
+        }
+    }
+
+    @Override
+    public void fixLightingSafe(boolean sky) {
+        if (isEmpty()) {
+            return;
+        }
+        lightingLock.lock();
+        try {
+            if (sky) {
+                fixSkyLighting();
+            } else {
+                drain(chunks, pendingBlockLight, DirtyChunk::merge);
+            }
+            fixBlockLighting();
+            sendChunks();
+        } finally {
+            lightingLock.unlock();
+        }
+    }
+
+    @Override
+    public void fixSkyLighting() {
+        Map<Long, DirtyChunk> dirty = new HashMap<>();
+        drain(chunks, dirty, DirtyChunk::merge);
+        if (dirty.isEmpty()) {
+            return;
+        }
+        relight(true, dirty.keySet(), dirty, (window, pair) -> relightSky(window, dirty.get(pair)));
+        pendingBlockLight.putAll(dirty);
+    }
+
+    @Override
+    public void fixBlockLighting() {
+        Map<Long, DirtyChunk> dirty = new HashMap<>();
+        drain(pendingBlockLight, dirty, DirtyChunk::merge);
+        Map<Long, IntArrayList> updates = new HashMap<>();
+        drain(lightUpdates, updates, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+        if (dirty.isEmpty() && updates.isEmpty()) {
+            return;
+        }
+        List<Long> centers = new ArrayList<>(dirty.keySet());
+        for (Long pair : updates.keySet()) {
+            if (!dirty.containsKey(pair)) {
+                centers.add(pair);
+            }
+        }
+        relight(false, centers, dirty, (window, pair) -> relightBlocks(window, dirty.get(pair), updates.get(pair)));
+    }
+
+    private static <V> void drain(Map<Long, V> from, Map<Long, V> to, BinaryOperator<V> merge) {
+        Iterator<Map.Entry<Long, V>> iter = from.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, V> entry = iter.next();
+            iter.remove();
+            to.merge(entry.getKey(), entry.getValue(), merge);
+        }
+    }
+
+    /**
+     * Relight the windows around the given chunks, continuing propagation leaving the windows until done.
+     */
+    private void relight(boolean sky, Collection<Long> centers, Map<Long, DirtyChunk> dirty, WindowTask initial) {
+        for (Long pair : centers) {
+            DirtyChunk chunk = dirty.get(pair);
+            chunksToSend.merge(pair, chunk != null ? chunk.bitmask : -1, (a, b) -> a | b);
+        }
+        Queue<RelightWindow.Seed> seeds = new ConcurrentLinkedQueue<>();
+        runPhases(sky, centers, initial, seeds);
+        for (int round = 1; round < MAX_ROUNDS && !seeds.isEmpty(); round++) {
+            Map<Long, List<RelightWindow.Seed>> byChunk = new Long2ObjectOpenHashMap<>();
+            RelightWindow.Seed seed;
+            while ((seed = seeds.poll()) != null) {
+                byChunk.computeIfAbsent(MathMan.pairInt(seed.x() >> 4, seed.z() >> 4), pair -> new ArrayList<>()).add(seed);
+            }
+            runPhases(sky, byChunk.keySet(), (window, pair) -> byChunk.get(pair).forEach(window::seed), seeds);
+        }
+    }
+
+    private void runPhases(boolean sky, Collection<Long> centers, WindowTask task, Queue<RelightWindow.Seed> seeds) {
+        List<List<Long>> phases = new ArrayList<>(9);
+        for (int i = 0; i < 9; i++) {
+            phases.add(new ArrayList<>());
+        }
+        for (long pair : centers) {
+            int x = MathMan.unpairIntX(pair);
+            int z = MathMan.unpairIntY(pair);
+            phases.get(Math.floorMod(x, 3) * 3 + Math.floorMod(z, 3)).add(pair);
+        }
+        QueueHandler handler = Fawe.instance().getQueueHandler();
+        for (List<Long> phase : phases) {
+            if (phase.isEmpty()) {
+                continue;
+            }
+            // resolve the chunks on this thread, the chunks of a window are only used by the task relighting it. The queue
+            // must not submit chunks in the meantime, the tasks hold on to them
+            queue.disableQueue();
+            try {
+                List<Runnable> tasks = new ArrayList<>(phase.size());
+                for (long pair : phase) {
+                    ChunkHolder<?>[] window = getWindow(MathMan.unpairIntX(pair), MathMan.unpairIntY(pair));
+                    if (window != null) {
+                        tasks.add(EditTelemetry.wrap(EditStage.RELIGHT, () -> relightWindow(sky, pair, window, task, seeds)));
+                    }
+                }
+                if (tasks.size() == 1) {
+                    tasks.get(0).run();
+                    continue;
+                }
+                ForkJoinTask<?>[] submitted = new ForkJoinTask<?>[tasks.size()];
+                for (int i = 0; i < submitted.length; i++) {
+                    submitted[i] = handler.submit(tasks.get(i));
+                }
+                for (ForkJoinTask<?> submittedTask : submitted) {
+                    submittedTask.quietlyJoin();
+                }
+            } finally {
+                queue.enableQueue();
+            }
+        }
+    }
+
+    private void relightWindow(
+            boolean sky,
+            long pair,
+            ChunkHolder<?>[] holders,
+            WindowTask task,
+            Queue<RelightWindow.Seed> seeds
+    ) {
+        try {
+            int centerX = MathMan.unpairIntX(pair);
+            int centerZ = MathMan.unpairIntY(pair);
+            RelightWindow window = new RelightWindow(holders, centerX, centerZ, minY, maxY, sky, seeds::add);
+            task.apply(window, pair);
+            window.propagate();
+            int touched = window.writeBack();
+            for (int i = 0; i < 9; i++) {
+                if ((touched & (1 << i)) == 0) {
+                    continue;
+                }
+                if (i == 4) {
+                    chunksToSend.putIfAbsent(pair, -1);
+                } else {
+                    chunksToSend.merge(MathMan.pairInt(centerX + (i % 3) - 1, centerZ + (i / 3) - 1), -1, (a, b) -> a | b);
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.error("Error relighting chunk {}, {}", MathMan.unpairIntX(pair), MathMan.unpairIntY(pair), t);
+        }
+    }
+
+    /**
+     * Get the top section, relative to the minimum section, of a chunk which may have changed.
+     *
+     * @return the section, or -1 if no section changed
+     */
+    private int getTopSection(DirtyChunk chunk) {
+        if (chunk == null || chunk.fix == null || chunk.removed || relightMode == RelightMode.ALL) {
+            return sectionCount - 1;
+        }
+        for (int section = Math.min(chunk.fix.length, sectionCount) - 1; section >= 0; section--) {
+            if (chunk.fix[section] == SkipReason.NONE) {
+                return section;
+            }
+        }
+        return -1;
+    }
+
+    private void relightSky(RelightWindow window, DirtyChunk chunk) {
+        int top = getTopSection(chunk);
+        if (top < 0) {
+            return;
+        }
+        int topY = Math.min(window.height() - 1, (top << 4) + 15);
+        byte[] column = new byte[256];
+        if (topY == window.height() - 1) {
+            Arrays.fill(column, (byte) 15);
+        } else {
+            // the sections above are unchanged, their light shines down
+            for (int i = 0; i < 256; i++) {
+                column[i] = (byte) window.get(16 + (i & 15), topY + 1, 16 + (i >> 4));
+            }
+        }
+        for (int y = topY; y >= 0; y--) {
+            for (int i = 0; i < 256; i++) {
+                int x = 16 + (i & 15);
+                int z = 16 + (i >> 4);
+                int value = column[i];
+                if (value > 0) {
+                    int opacity = window.opacity(x, y, z);
+                    if (value < 15 || opacity > 0) {
+                        value = Math.max(0, value - Math.max(1, opacity));
+                    }
+                    column[i] = (byte) value;
+                }
+                if (window.get(x, y, z) != value) {
+                    window.set(x, y, z, value);
+                }
+            }
+        }
+        seedEdges(window, topY);
+    }
+
+    private void relightBlocks(RelightWindow window, DirtyChunk chunk, IntArrayList updates) {
+        if (chunk != null) {
+            int top = getTopSection(chunk);
+            int topY = Math.min(window.height() - 1, (top << 4) + 15);
+            boolean full = chunk.removed || relightMode == RelightMode.ALL;
+            for (int y = 0; y <= topY; y++) {
+                for (int i = 0; i < 256; i++) {
+                    if (full) {
+                        updateSource(window, 16 + (i & 15), y, 16 + (i >> 4));
+                    } else {
+                        updateChanged(window, 16 + (i & 15), y, 16 + (i >> 4));
+                    }
+                }
+            }
+            if (chunk.removed) {
+                seedEdges(window, window.height() - 1);
+            }
+        }
+        if (updates != null) {
+            for (int i = 0; i < updates.size(); i++) {
+                int index = updates.getInt(i);
+                int y = index >> 8;
+                if (y >= 0 && y < window.height()) {
+                    updateSource(window, 16 + (index & 15), y, 16 + ((index >> 4) & 15));
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the block light at a position to the light emitted by the block, removing or spreading light from it.
+     */
+    static void updateSource(RelightWindow window, int x, int y, int z) {
+        int current = window.get(x, y, z);
+        int emission = window.emission(x, y, z);
+        if (current != emission) {
+            window.set(x, y, z, emission);
+            if (emission < current) {
+                window.decrease(x, y, z, current);
+            }
+        }
+        if (emission > 1) {
+            window.increase(x, y, z);
+        }
+    }
+
+    /**
+     * Update the block light at a position if it does not match the light emitted by the block and spread to it by its
+     * neighbours, removing light from it if it is too bright or spreading light from it if it is too dark.
+     */
+    static void updateChanged(RelightWindow window, int x, int y, int z) {
+        int current = window.get(x, y, z);
+        int emission = window.emission(x, y, z);
+        int attenuation = window.attenuation(x, y, z);
+        int expected = emission;
+        expected = Math.max(expected, window.get(x - 1, y, z) - attenuation);
+        expected = Math.max(expected, window.get(x + 1, y, z) - attenuation);
+        expected = Math.max(expected, window.get(x, y, z - 1) - attenuation);
+        expected = Math.max(expected, window.get(x, y, z + 1) - attenuation);
+        if (y > 0) {
+            expected = Math.max(expected, window.get(x, y - 1, z) - attenuation);
+        }
+        if (y < window.height() - 1) {
+            expected = Math.max(expected, window.get(x, y + 1, z) - attenuation);
+        }
+        if (current > expected) {
+            // a light source was removed or the block got more opaque, the light around is spread again once removed
+            window.set(x, y, z, emission);
+            window.decrease(x, y, z, current);
+            window.increase(x, y, z);
+        } else if (current < expected) {
+            window.set(x, y, z, expected);
+            window.increase(x, y, z);
+        }
+    }
+
+    /**
+     * Spread light into the center chunk of a window from the blocks around it, up to the given y, and from blocks of the
+     * center chunk brighter than their neighbours.
+     */
+    private static void seedEdges(RelightWindow window, int topY) {
+        for (int y = 0; y <= topY; y++) {
+            for (int i = 0; i < 16; i++) {
+                seedFrom(window, 15, y, 16 + i, 16, y, 16 + i);
+                seedFrom(window, 32, y, 16 + i, 31, y, 16 + i);
+                seedFrom(window, 16 + i, y, 15, 16 + i, y, 16);
+                seedFrom(window, 16 + i, y, 32, 16 + i, y, 31);
+            }
+            for (int i = 0; i < 256; i++) {
+                int x = 16 + (i & 15);
+                int z = 16 + (i >> 4);
+                int level = window.get(x, y, z);
+                if (level > 1 && (darker(window, level, x - 1, y, z) || darker(window, level, x + 1, y, z)
+                        || darker(window, level, x, y, z - 1) || darker(window, level, x, y, z + 1)
+                        || (y > 0 && darker(window, level, x, y - 1, z)))) {
+                    window.increase(x, y, z);
+                }
+            }
+        }
+    }
+
+    private static boolean darker(RelightWindow window, int level, int x, int y, int z) {
+        return window.get(x, y, z) < level - 1;
+    }
+
+    private static void seedFrom(RelightWindow window, int x, int y, int z, int toX, int toY, int toZ) {
+        int level = window.get(x, y, z);
+        if (level > 1 && window.get(toX, toY, toZ) < level - 1) {
+            window.increase(x, y, z);
+        }
+    }
+
+    /**
+     * Get the chunks of the window around a chunk.
+     *
+     * @return the chunks, or null if any is outside the world
+     */
+    private ChunkHolder<?>[] getWindow(int centerX, int centerZ) {
+        ChunkHolder<?>[] window = new ChunkHolder<?>[9];
+        for (int i = 0; i < 9; i++) {
+            ChunkHolder<?> chunk = getChunk(centerX + (i % 3) - 1, centerZ + (i / 3) - 1);
+            if (chunk == null) {
+                return null;
+            }
+            window[i] = chunk;
+        }
+        return window;
+    }
+
+    private ChunkHolder<?> getChunk(int x, int z) {
+        IChunk chunk = queue.getOrCreateChunk(x, z);
+        if (!(chunk instanceof ChunkHolder<?> holder)) {
+            return null;
+        }
+        if (!holder.isInit()) {
+            holder.init(queue, x, z);
+        }
+        return holder;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return chunks.isEmpty() && pendingBlockLight.isEmpty() && lightUpdates.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The lock is held while relighting and sending chunks, and may be held by callers to relight only once.
+     */
+    @Override
+    public ReentrantLock getLock() {
+        return lightingLock;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    @Override
+    public void close() {
+        lightingLock.lock();
+        try {
+            for (Map.Entry<Long, Integer> entry : chunksToSend.entrySet()) {
+                long pair = entry.getKey();
+                ChunkHolder<?> chunk = getChunk(MathMan.unpairIntX(pair), MathMan.unpairIntY(pair));
+                if (chunk != null) {
+                    chunk.setBitMask(entry.getValue());
+                }
+            }
+            chunksToSend.clear();
+            if (Settings.settings().LIGHTING.ASYNC) {
+                queue.flush();
+                finished.set(true);
+            } else {
+                TaskManager.taskManager().sync(new RunnableVal<>() {
+                    @Override
+                    public void run(Object value) {
+                        queue.flush();
+                        finished.set(true);
+                    }
+                });
+            }
+        } finally {
+            lightingLock.unlock();
+        }
+    }
+
+    public void sendChunks() {
+        // the chunks may be sent from the main thread, which the edit is not bound to
+        final EditTelemetry telemetry = EditTelemetry.current();
+        RunnableVal<Object> runnable = new RunnableVal<>() {
+            @Override
+            public void run(Object value) {
+                Iterator<Map.Entry<Long, Integer>> iter = chunksToSend.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<Long, Integer> entry = iter.next();
+                    long pair = entry.getKey();
+                    int bitMask = entry.getValue();
+                    ChunkHolder<?> chunk = getChunk(MathMan.unpairIntX(pair), MathMan.unpairIntY(pair));
+                    iter.remove();
+                    if (chunk == null) {
+                        continue;
+                    }
+                    chunk.setBitMask(bitMask);
+                    chunk.flushLightToGet();
+                    try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.PACKETS)) {
+                        Fawe.platform().getPlatformAdapter().sendChunk(chunk.getOrCreateGet(), bitMask, true);
+                    }
+                }
+                finished.set(true);
+            }
+        };
+        lightingLock.lock();
+        try {
+            if (Settings.settings().LIGHTING.ASYNC) {
+                runnable.run();
+            } else {
+                TaskManager.taskManager().sync(runnable);
+            }
+        } finally {
+            lightingLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface WindowTask {
+
+        void apply(RelightWindow window, long pair);
+
+    }
+
+    private static final class DirtyChunk {
+
+        private final int x;
+        private final int z;
+        private final byte[] fix;
+        private final int bitmask;
+        private volatile boolean removed;
+
+        private DirtyChunk(int x, int z, byte[] fix, int bitmask) {
+            this.x = x;
+            this.z = z;
+            this.fix = fix;
+            this.bitmask = bitmask;
+        }
+
+        private DirtyChunk merge(DirtyChunk other) {
+            byte[] merged = null;
+            if (fix != null && other.fix != null) {
+                merged = new byte[Math.min(fix.length, other.fix.length)];
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i] = (byte) (fix[i] & other.fix[i]);
+                }
+            }
+            DirtyChunk chunk = new DirtyChunk(x, z, merged, bitmask | other.bitmask);
+            chunk.removed = removed || other.removed;
+            return chunk;
+        }
+
+    }
+
+}
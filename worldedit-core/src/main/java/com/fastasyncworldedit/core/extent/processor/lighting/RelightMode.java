@@ -6,7 +6,8 @@
 public enum RelightMode {
     NONE(0), // no relighting
     OPTIMAL(1), // relight changed light sources and changed blocks
-    ALL(2); // relight every single block
+    ALL(2), // relight every single block
+    HEIGHTMAP(3); // relight like OPTIMAL, deriving sky light from heightmaps where possible
 
     private static final Map<Integer, RelightMode> map = new HashMap<>();
 
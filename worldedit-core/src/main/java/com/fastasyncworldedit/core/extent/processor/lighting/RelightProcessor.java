@@ -27,7 +27,7 @@ public RelightProcessor(Relighter relighter) {
     public IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
         if (Settings.settings().LIGHTING.MODE == 2) {
             relighter.addChunk(chunk.getX(), chunk.getZ(), null, chunk.getBitMask());
-        } else if (Settings.settings().LIGHTING.MODE == 1) {
+        } else if (Settings.settings().LIGHTING.MODE == 1 || Settings.settings().LIGHTING.MODE == 3) {
             byte[] fix = new byte[get.getSectionCount()];
             boolean relight = false;
             for (int i = get.getMaxSectionPosition(); i >= get.getMinSectionPosition(); i--) {
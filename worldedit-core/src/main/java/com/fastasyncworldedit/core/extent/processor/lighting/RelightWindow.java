@@ -0,0 +1,340 @@
+package com.fastasyncworldedit.core.extent.processor.lighting;
+
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.sk89q.worldedit.world.registry.BlockMaterial;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+
+/**
+ * The 3x3 chunks around a chunk being relit by a {@link ParallelRelighter}. Light of one kind (block or sky) is copied into
+ * nibble arrays per chunk section on first access, propagated with primitive breadth first queues and written back to the
+ * chunks once done, touching only the values that changed.
+ * <p>
+ * Light never spreads further than 15 blocks, so propagating from the center chunk stays within the window. Propagation
+ * reaching the edge of the window, which happens when it continues from light spread into a neighbouring chunk, is handed
+ * to {@link ParallelRelighter} as a {@link Seed} to continue in the window around that chunk.
+ * <p>
+ * Not thread safe. Windows of chunks at least three chunks apart on either axis are disjoint and may be used concurrently.
+ */
+final class RelightWindow {
+
+    static final int SIDE = 48;
+    private static final int AREA = SIDE * SIDE;
+    private static final int[] OFFSETS_X = {-1, 1, 0, 0, 0, 0};
+    private static final int[] OFFSETS_Y = {0, 0, -1, 1, 0, 0};
+    private static final int[] OFFSETS_Z = {0, 0, 0, 0, -1, 1};
+
+    private final ChunkHolder<?>[] chunks;
+    private final int originX;
+    private final int originZ;
+    private final int minY;
+    private final int height;
+    private final int sections;
+    private final boolean sky;
+    // nibble arrays per chunk and section, indexed by chunk * sections + section
+    private final byte[][] light;
+    // the block indices within a section changed, per chunk and section
+    private final long[][] changed;
+    // attenuation, emission and opacity of blocks by 4 bits each, 0 if not read yet
+    private final short[][] properties;
+    // (window index << 4) | level
+    private final IntArrayFIFOQueue increase = new IntArrayFIFOQueue();
+    private final IntArrayFIFOQueue decrease = new IntArrayFIFOQueue();
+    private final SeedSink sink;
+
+    /**
+     * Create a new window.
+     *
+     * @param chunks  the 3x3 chunks of the window, indexed by {@code (z + 1) * 3 + x + 1} relative to the center
+     * @param centerX the x coordinate of the center chunk
+     * @param centerZ the z coordinate of the center chunk
+     * @param minY    the minimum y of the world
+     * @param maxY    the maximum y of the world
+     * @param sky     whether to relight sky light instead of block light
+     * @param sink    receives propagation leaving the window
+     */
+    RelightWindow(ChunkHolder<?>[] chunks, int centerX, int centerZ, int minY, int maxY, boolean sky, SeedSink sink) {
+        this.chunks = chunks;
+        this.originX = (centerX - 1) << 4;
+        this.originZ = (centerZ - 1) << 4;
+        this.minY = minY;
+        this.height = maxY - minY + 1;
+        this.sections = (height + 15) >> 4;
+        this.sky = sky;
+        this.light = new byte[9 * sections][];
+        this.changed = new long[9 * sections][];
+        this.properties = new short[9 * sections][];
+        this.sink = sink;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * Get the window index of a block, relative to the window origin and world minimum y.
+     */
+    static int index(int x, int y, int z) {
+        return (y * SIDE + z) * SIDE + x;
+    }
+
+    private int slot(int x, int y, int z) {
+        return ((z >> 4) * 3 + (x >> 4)) * sections + (y >> 4);
+    }
+
+    private static int local(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    private byte[] section(int x, int y, int z) {
+        int slot = slot(x, y, z);
+        byte[] nibbles = light[slot];
+        if (nibbles == null) {
+            nibbles = new byte[2048];
+            ChunkHolder<?> chunk = chunks[slot / sections];
+            int baseY = minY + (y & ~15);
+            for (int i = 0; i < 4096; i++) {
+                int bx = i & 15;
+                int bz = (i >> 4) & 15;
+                int by = baseY + (i >> 8);
+                int value = sky ? chunk.getSkyLight(bx, by, bz) : chunk.getEmittedLight(bx, by, bz);
+                nibbles[i >> 1] |= (byte) ((value & 15) << ((i & 1) << 2));
+            }
+            light[slot] = nibbles;
+        }
+        return nibbles;
+    }
+
+    /**
+     * Get the light at a window position.
+     */
+    int get(int x, int y, int z) {
+        int i = local(x, y, z);
+        return (section(x, y, z)[i >> 1] >> ((i & 1) << 2)) & 15;
+    }
+
+    /**
+     * Set the light at a window position.
+     */
+    void set(int x, int y, int z, int value) {
+        byte[] nibbles = section(x, y, z);
+        int i = local(x, y, z);
+        int shift = (i & 1) << 2;
+        nibbles[i >> 1] = (byte) ((nibbles[i >> 1] & ~(15 << shift)) | (value & 15) << shift);
+        int slot = slot(x, y, z);
+        long[] bits = changed[slot];
+        if (bits == null) {
+            bits = changed[slot] = new long[64];
+        }
+        bits[i >> 6] |= 1L << i;
+    }
+
+    private int properties(int x, int y, int z) {
+        int slot = slot(x, y, z);
+        short[] section = properties[slot];
+        if (section == null) {
+            section = properties[slot] = new short[4096];
+        }
+        int i = local(x, y, z);
+        int value = section[i];
+        if (value == 0) {
+            BlockMaterial material = chunks[slot / sections].getBlock(x & 15, minY + y, z & 15).getMaterial();
+            int opacity = material.getLightOpacity();
+            int emission = material.getLightValue();
+            // blocks which are not full cubes only dim light passing through them by one, as in NMSRelighter
+            boolean partial = (!material.isSolid() || !material.isFullCube()) && opacity > 0 && emission == 0;
+            int attenuation = partial ? 1 : Math.max(1, Math.min(15, opacity));
+            value = (Math.min(15, opacity) << 8) | (Math.min(15, emission) << 4) | attenuation;
+            section[i] = (short) value;
+        }
+        return value;
+    }
+
+    /**
+     * Get how much light is dimmed entering the block at a window position, at least one.
+     */
+    int attenuation(int x, int y, int z) {
+        return properties(x, y, z) & 15;
+    }
+
+    /**
+     * Get the light emitted by the block at a window position.
+     */
+    int emission(int x, int y, int z) {
+        return (properties(x, y, z) >> 4) & 15;
+    }
+
+    /**
+     * Get the light opacity of the block at a window position.
+     */
+    int opacity(int x, int y, int z) {
+        return properties(x, y, z) >> 8;
+    }
+
+    /**
+     * Spread light from a window position at its current level.
+     */
+    void increase(int x, int y, int z) {
+        int level = get(x, y, z);
+        if (level > 1) {
+            increase.enqueue(index(x, y, z) << 4 | level);
+        }
+    }
+
+    /**
+     * Remove light spread from a window position which had the given level before it was lowered.
+     */
+    void decrease(int x, int y, int z, int level) {
+        if (level > 0) {
+            decrease.enqueue(index(x, y, z) << 4 | level);
+        }
+    }
+
+    /**
+     * Continue a {@link Seed} in this window.
+     */
+    void seed(Seed seed) {
+        int x = seed.x() - originX;
+        int z = seed.z() - originZ;
+        int y = seed.y() - minY;
+        if (seed.removal()) {
+            removeAt(x, y, z, seed.level());
+            return;
+        }
+        if (seed.level() > get(x, y, z)) {
+            set(x, y, z, seed.level());
+        }
+        increase(x, y, z);
+    }
+
+    /**
+     * Handle a block next to a block which had the given light level, which has been removed.
+     */
+    private void removeAt(int x, int y, int z, int level) {
+        int current = get(x, y, z);
+        if (current != 0 && current < level) {
+            set(x, y, z, 0);
+            decrease.enqueue(index(x, y, z) << 4 | current);
+            if (!sky) {
+                // light sources next to removed light keep shining
+                int emission = emission(x, y, z);
+                if (emission > 0) {
+                    set(x, y, z, emission);
+                    increase(x, y, z);
+                }
+            }
+        } else if (current >= level) {
+            increase(x, y, z);
+        }
+    }
+
+    /**
+     * Run the queued removals, then the queued spreading of light.
+     */
+    void propagate() {
+        while (!decrease.isEmpty()) {
+            int entry = decrease.dequeueInt();
+            int level = entry & 15;
+            int index = entry >>> 4;
+            int x = index % SIDE;
+            int z = (index / SIDE) % SIDE;
+            int y = index / AREA;
+            for (int i = 0; i < 6; i++) {
+                int nx = x + OFFSETS_X[i];
+                int ny = y + OFFSETS_Y[i];
+                int nz = z + OFFSETS_Z[i];
+                if (ny < 0 || ny >= height) {
+                    continue;
+                }
+                if (nx < 0 || nx >= SIDE || nz < 0 || nz >= SIDE) {
+                    sink.accept(new Seed(originX + nx, minY + ny, originZ + nz, level, true));
+                    continue;
+                }
+                removeAt(nx, ny, nz, level);
+            }
+        }
+        while (!increase.isEmpty()) {
+            int entry = increase.dequeueInt();
+            int index = entry >>> 4;
+            int x = index % SIDE;
+            int z = (index / SIDE) % SIDE;
+            int y = index / AREA;
+            int level = get(x, y, z);
+            if (level != (entry & 15)) {
+                // lowered since, or raised and queued again
+                continue;
+            }
+            for (int i = 0; i < 6; i++) {
+                int nx = x + OFFSETS_X[i];
+                int ny = y + OFFSETS_Y[i];
+                int nz = z + OFFSETS_Z[i];
+                if (ny < 0 || ny >= height) {
+                    continue;
+                }
+                if (nx < 0 || nx >= SIDE || nz < 0 || nz >= SIDE) {
+                    // continued from this block in the window around the chunk it is in
+                    sink.accept(new Seed(originX + x, minY + y, originZ + z, level, false));
+                    continue;
+                }
+                int next = level - attenuation(nx, ny, nz);
+                if (next > get(nx, ny, nz)) {
+                    set(nx, ny, nz, next);
+                    if (next > 1) {
+                        increase.enqueue(index(nx, ny, nz) << 4 | next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the changed light values back to the chunks.
+     *
+     * @return a bit per chunk of the window (by its index) which had light changed
+     */
+    int writeBack() {
+        int touched = 0;
+        for (int slot = 0; slot < changed.length; slot++) {
+            long[] bits = changed[slot];
+            if (bits == null) {
+                continue;
+            }
+            int chunkIndex = slot / sections;
+            ChunkHolder<?> chunk = chunks[chunkIndex];
+            byte[] nibbles = light[slot];
+            int baseY = minY + ((slot % sections) << 4);
+            for (int word = 0; word < 64; word++) {
+                long value = bits[word];
+                while (value != 0) {
+                    int i = (word << 6) | Long.numberOfTrailingZeros(value);
+                    value &= value - 1;
+                    int level = (nibbles[i >> 1] >> ((i & 1) << 2)) & 15;
+                    if (sky) {
+                        chunk.setSkyLight(i & 15, baseY + (i >> 8), (i >> 4) & 15, level);
+                    } else {
+                        chunk.setBlockLight(i & 15, baseY + (i >> 8), (i >> 4) & 15, level);
+                    }
+                }
+            }
+            touched |= 1 << chunkIndex;
+        }
+        return touched;
+    }
+
+    /**
+     * Propagation to be continued in another window, in world coordinates.
+     *
+     * @param removal if light next to the position which had the given level was removed, otherwise the position has the
+     *                given level which should be spread
+     */
+    record Seed(int x, int y, int z, int level, boolean removal) {
+
+    }
+
+    @FunctionalInterface
+    interface SeedSink {
+
+        void accept(Seed seed);
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.fastasyncworldedit.core.function;
+
+import com.fastasyncworldedit.core.internal.simd.SimdSupport;
+import com.fastasyncworldedit.core.math.MutableVector3;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.internal.expression.Expression;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import javax.annotation.Nullable;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Evaluates an expression of {@code x}, {@code y} and {@code z} for a whole chunk section at once, the first time a
+ * block of the section is queried. Used by expression masks and patterns when they are applied chunk by chunk, see
+ * {@link com.fastasyncworldedit.core.queue.Filter#applyChunk}.
+ * <p>
+ * Every block of the section within the region is evaluated, so it must only be used where each of them would be
+ * queried anyway: for a mask tested first on every block, or a pattern applied without a mask. Only regions that are
+ * iterated exactly as their bounding box (cuboids, or no region at all) are evaluated in batches, so the blocks are
+ * evaluated in the same order as they are filtered.
+ */
+public final class SectionExpression {
+
+    private static final int NO_LAYER = Integer.MIN_VALUE;
+
+    private final Expression expression;
+    @Nullable
+    private final IntSupplier timeout;
+    private final double[] xs = new double[4096];
+    private final double[] ys = new double[4096];
+    private final double[] zs = new double[4096];
+    private final double[][] values = {xs, ys, zs};
+    private final double[] results = new double[4096];
+    private final MutableVector3 current = new MutableVector3();
+
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int maxX;
+    private int maxY;
+    private int maxZ;
+
+    private boolean active;
+    private int chunkX;
+    private int chunkZ;
+    private int layer = NO_LAYER;
+    // bounds of the evaluated blocks in the current layer
+    private int boxX;
+    private int boxY;
+    private int boxZ;
+    private int sizeX;
+    private int sizeZ;
+
+    /**
+     * Create a new instance.
+     *
+     * @param expression the expression, taking {@code x}, {@code y} and {@code z}
+     * @param timeout    the timeout per section, or null to use the configured calculation timeout
+     */
+    public SectionExpression(Expression expression, @Nullable IntSupplier timeout) {
+        this.expression = expression;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start evaluating a chunk. Results are only cached until {@link #finishChunk()}.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param region the region being filtered, may be null if the whole chunk is filtered
+     */
+    public void initChunk(int chunkX, int chunkZ, @Nullable Region region) {
+        this.layer = NO_LAYER;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        if (region == null) {
+            minX = minY = minZ = Integer.MIN_VALUE;
+            maxX = maxY = maxZ = Integer.MAX_VALUE;
+        } else if (region.getClass() == CuboidRegion.class) {
+            BlockVector3 min = region.getMinimumPoint();
+            BlockVector3 max = region.getMaximumPoint();
+            minX = min.x();
+            minY = min.y();
+            minZ = min.z();
+            maxX = max.x();
+            maxY = max.y();
+            maxZ = max.z();
+        } else {
+            this.active = false;
+            return;
+        }
+        this.active = true;
+    }
+
+    /**
+     * Stop using cached results for the current chunk.
+     */
+    public void finishChunk() {
+        this.active = false;
+        this.layer = NO_LAYER;
+    }
+
+    /**
+     * Get if the result for a block is evaluated with its chunk section.
+     */
+    public boolean contains(int x, int y, int z) {
+        return active && x >> 4 == chunkX && z >> 4 == chunkZ
+                && x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * Get the result for a block, evaluating its section first if required. Failed evaluations result in
+     * {@link Double#NaN}.
+     *
+     * @see #contains(int, int, int)
+     */
+    public double evaluate(int x, int y, int z) {
+        if (y >> 4 != layer) {
+            evaluateLayer(y >> 4);
+        }
+        return results[((y - boxY) * sizeZ + (z - boxZ)) * sizeX + (x - boxX)];
+    }
+
+    private void evaluateLayer(int layer) {
+        this.layer = layer;
+        int bx = chunkX << 4;
+        int by = layer << 4;
+        int bz = chunkZ << 4;
+        boxX = Math.max(minX, bx);
+        boxY = Math.max(minY, by);
+        boxZ = Math.max(minZ, bz);
+        int endX = Math.min(maxX, bx + 15);
+        int endY = Math.min(maxY, by + 15);
+        int endZ = Math.min(maxZ, bz + 15);
+        sizeX = endX - boxX + 1;
+        sizeZ = endZ - boxZ + 1;
+        int length = sizeX * (endY - boxY + 1) * sizeZ;
+
+        if (length == 4096 && SimdSupport.useVectorApi()) {
+            fillSectionVectorized(bx, by, bz);
+        } else {
+            int index = 0;
+            for (int y = boxY; y <= endY; y++) {
+                for (int z = boxZ; z <= endZ; z++) {
+                    for (int x = boxX; x <= endX; x++, index++) {
+                        xs[index] = x;
+                        ys[index] = y;
+                        zs[index] = z;
+                    }
+                }
+            }
+        }
+
+        IntConsumer beforeEach = null;
+        if (expression.getEnvironment() instanceof WorldEditExpressionEnvironment environment) {
+            environment.setCurrentBlock(current);
+            beforeEach = i -> current.setComponents(xs[i], ys[i], zs[i]);
+        }
+        int timeout = this.timeout == null
+                ? WorldEdit.getInstance().getConfiguration().calculationTimeout
+                : this.timeout.getAsInt();
+        expression.evaluate(values, results, length, timeout, beforeEach);
+    }
+
+    private void fillSectionVectorized(int bx, int by, int bz) {
+        final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+        // lanes always divide a row of 16 blocks
+        final DoubleVector lanes = DoubleVector.zero(species).addIndex(1);
+        for (int i = 0; i < 4096; i += species.length()) {
+            lanes.add(bx + (i & 15)).intoArray(xs, i);
+            DoubleVector.broadcast(species, by + (i >> 8)).intoArray(ys, i);
+            DoubleVector.broadcast(species, bz + (i >> 4 & 15)).intoArray(zs, i);
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.fastasyncworldedit.core.function.mask;
+
+import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.BlockStateMask;
+import com.sk89q.worldedit.function.mask.BlockTypeMask;
+import com.sk89q.worldedit.function.mask.BoundedHeightMask;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.ExpressionMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.function.mask.NoiseFilter;
+import com.sk89q.worldedit.function.mask.OffsetMask;
+import com.sk89q.worldedit.function.mask.RegionMask;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Flattens a mask into what has to be tested per block: a single table of the block states (by ordinal) accepted, folded
+ * from all parts of the mask which only depend on the state of the block tested, and the remaining masks, cheapest first.
+ * Nested intersections are flattened and the parts of unions only depending on the state accept a block without testing
+ * the rest of the union. Masks latching onto the first block they test, see {@link #isStateful(Mask)}, keep their place, so
+ * they are tested on the same blocks as before.
+ *
+ * @since TODO
+ */
+public final class MaskPlanner {
+
+    private static final int COST_POSITION = 1;
+    private static final int COST_BLOCK = 2;
+    private static final int COST_DEFAULT = 4;
+    private static final int COST_NEIGHBOURS = 8;
+    private static final int COST_EXPRESSION = 16;
+
+    private MaskPlanner() {
+    }
+
+    /**
+     * Plan how to test the given mask.
+     *
+     * @param mask the mask
+     * @return the plan, or null if the mask can not be tested faster than as it is
+     */
+    @Nullable
+    public static Plan plan(Mask mask) {
+        List<Mask> masks = new ArrayList<>();
+        List<boolean[]> accepts = new ArrayList<>();
+        boolean[] ordinals = collect(mask, null, masks, accepts);
+        if (ordinals != null && allOf(ordinals, true)) {
+            ordinals = null;
+        }
+        if (ordinals == null && masks.size() <= 1 && accepts.stream().allMatch(accept -> accept == null)) {
+            return null;
+        }
+        Integer[] order = new Integer[masks.size()];
+        int[] costs = new int[masks.size()];
+        int[] segments = new int[masks.size()];
+        int segment = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            costs[i] = cost(masks.get(i));
+            // masks are only moved between stateful masks
+            if (isStateful(masks.get(i))) {
+                segments[i] = ++segment;
+                segment++;
+            } else {
+                segments[i] = segment;
+            }
+        }
+        // stable, so masks of equal cost keep the order they were given in
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> segments[i]).thenComparingInt(i -> costs[i]));
+        Mask[] sortedMasks = new Mask[order.length];
+        boolean[][] sortedAccepts = new boolean[order.length][];
+        int[] sortedCosts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedMasks[i] = masks.get(order[i]);
+            sortedAccepts[i] = accepts.get(order[i]);
+            sortedCosts[i] = costs[order[i]];
+        }
+        return new Plan(ordinals, sortedMasks, sortedAccepts, sortedCosts);
+    }
+
+    private static boolean[] collect(Mask mask, @Nullable boolean[] ordinals, List<Mask> masks, List<boolean[]> accepts) {
+        boolean[] folded = fold(mask);
+        if (folded != null && masks.stream().noneMatch(MaskPlanner::isStateful)) {
+            return ordinals == null ? folded : combine(ordinals, folded, false);
+        }
+        if (folded == null && mask.getClass() == MaskIntersection.class) {
+            for (Mask child : ((MaskIntersection) mask).getMasksArray()) {
+                ordinals = collect(child, ordinals, masks, accepts);
+            }
+            return ordinals;
+        }
+        if (folded == null && mask.getClass() == CachedMask.class) {
+            // every block is only tested once, nothing to cache
+            return collect(((CachedMask) mask).getMask(), ordinals, masks, accepts);
+        }
+        if (folded == null && mask.getClass() == MaskUnion.class && !isStateful(mask)) {
+            boolean[] any = null;
+            List<Mask> rest = new ArrayList<>();
+            for (Mask child : ((MaskUnion) mask).getMasksArray()) {
+                boolean[] childOrdinals = fold(child);
+                if (childOrdinals == null) {
+                    rest.add(child);
+                } else {
+                    any = any == null ? childOrdinals : combine(any, childOrdinals, true);
+                }
+            }
+            if (any != null) {
+                masks.add(rest.size() == 1 ? rest.get(0) : new MaskUnion(rest));
+                accepts.add(any);
+                return ordinals;
+            }
+        }
+        masks.add(mask);
+        accepts.add(null);
+        return ordinals;
+    }
+
+    /**
+     * Whether a mask, or a mask within it, latches onto the first block it tests. Its result then depends on which blocks
+     * were tested before, so it may not be tested on other blocks or in another order than given.
+     *
+     * @param mask the mask
+     * @return whether the mask is stateful
+     */
+    public static boolean isStateful(Mask mask) {
+        return switch (mask) {
+            case IdMask ignored -> true;
+            case DataMask ignored -> true;
+            case XAxisMask ignored -> true;
+            case YAxisMask ignored -> true;
+            case ZAxisMask ignored -> true;
+            case RadiusMask ignored -> true;
+            case PlaneMask ignored -> true;
+            case InverseMask inverse -> isStateful(inverse.inverse());
+            case AbstractDelegateMask delegate -> isStateful(delegate.getMask());
+            case OffsetMask offset -> isStateful(offset.getMask());
+            case MaskIntersection intersection -> Arrays.stream(intersection.getMasksArray()).anyMatch(MaskPlanner::isStateful);
+            default -> false;
+        };
+    }
+
+    /**
+     * Get the table of block states accepted by a mask, if it only depends on the state of the block tested.
+     *
+     * @param mask the mask
+     * @return whether each block state, by ordinal, is accepted, or null if the mask does not only depend on the state
+     */
+    @Nullable
+    public static boolean[] fold(Mask mask) {
+        if (mask == Masks.alwaysTrue() || mask == Masks.alwaysFalse()) {
+            boolean[] ordinals = new boolean[BlockTypesCache.states.length];
+            Arrays.fill(ordinals, mask == Masks.alwaysTrue());
+            return ordinals;
+        }
+        return switch (mask) {
+            case ABlockMask blockMask -> ordinals(blockMask::test);
+            case BlockTypeMask typeMask -> ordinals(state -> typeMask.test(state.getBlockType()));
+            case BlockStateMask stateMask -> ordinals(stateMask::test);
+            case ExistingBlockMask ignored -> ordinals(state -> !state.getBlockType().getMaterial().isAir());
+            case InverseMask inverse -> {
+                boolean[] ordinals = fold(inverse.inverse());
+                yield ordinals == null ? null : negate(ordinals);
+            }
+            case CachedMask cached when cached.getClass() == CachedMask.class -> fold(cached.getMask());
+            case MaskUnion union when union.getClass() == MaskUnion.class -> fold(union.getMasksArray(), true);
+            case MaskIntersection intersection when intersection.getClass() == MaskIntersection.class ->
+                    fold(intersection.getMasksArray(), false);
+            default -> null;
+        };
+    }
+
+    @Nullable
+    private static boolean[] fold(Mask[] masks, boolean union) {
+        boolean[] result = null;
+        for (Mask mask : masks) {
+            boolean[] ordinals = fold(mask);
+            if (ordinals == null) {
+                return null;
+            }
+            result = result == null ? ordinals : combine(result, ordinals, union);
+        }
+        return result;
+    }
+
+    private static boolean[] ordinals(Predicate<BlockState> predicate) {
+        BlockState[] states = BlockTypesCache.states;
+        boolean[] ordinals = new boolean[states.length];
+        for (int i = 0; i < states.length; i++) {
+            ordinals[i] = states[i] != null && predicate.test(states[i]);
+        }
+        return ordinals;
+    }
+
+    private static boolean[] combine(boolean[] a, boolean[] b, boolean union) {
+        boolean[] result = new boolean[a.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = union ? a[i] | b[i] : a[i] & b[i];
+        }
+        return result;
+    }
+
+    private static boolean[] negate(boolean[] ordinals) {
+        boolean[] result = new boolean[ordinals.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = !ordinals[i];
+        }
+        return result;
+    }
+
+    private static boolean allOf(boolean[] ordinals, boolean value) {
+        for (boolean ordinal : ordinals) {
+            if (ordinal != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimate the relative cost of testing a mask once.
+     */
+    private static int cost(Mask mask) {
+        if (mask instanceof RegionMask || mask instanceof BoundedHeightMask || mask instanceof XAxisMask
+                || mask instanceof YAxisMask || mask instanceof ZAxisMask || mask instanceof RadiusMask
+                || mask instanceof RandomMask) {
+            return COST_POSITION;
+        }
+        if (mask instanceof ExpressionMask) {
+            return COST_EXPRESSION;
+        }
+        if (mask instanceof AdjacentMask || mask instanceof AdjacentAnyMask || mask instanceof WallMask
+                || mask instanceof SurfaceMask || mask instanceof AngleMask || mask instanceof OffsetMask) {
+            return COST_NEIGHBOURS;
+        }
+        if (mask instanceof InverseMask inverse) {
+            return cost(inverse.inverse());
+        }
+        if (mask instanceof AbstractDelegateMask delegate) {
+            return cost(delegate.getMask());
+        }
+        if (mask instanceof MaskIntersection intersection) {
+            int cost = 0;
+            for (Mask child : intersection.getMasksArray()) {
+                cost += cost(child);
+            }
+            return cost;
+        }
+        if (mask instanceof NoiseFilter) {
+            return COST_DEFAULT;
+        }
+        if (mask instanceof AbstractExtentMask) {
+            return COST_BLOCK;
+        }
+        return COST_DEFAULT;
+    }
+
+    /**
+     * A planned mask. A block passes if its state is accepted by {@link #ordinals()}, if any, and then each mask in order
+     * passes or its table in {@link #accepts()}, if any, accepts the state of the block.
+     *
+     * @param ordinals the block states accepted, by ordinal, or null to accept all
+     * @param masks    the masks to test, cheapest first
+     * @param accepts  per mask, the block states for which it does not need to be tested, or null
+     * @param costs    per mask, its estimated relative cost
+     */
+    public record Plan(@Nullable boolean[] ordinals, Mask[] masks, boolean[][] accepts, int[] costs) {
+
+        /**
+         * Create a copy of this plan with copies of its masks, e.g. for use in another thread.
+         */
+        public Plan copy() {
+            Mask[] copies = new Mask[masks.length];
+            for (int i = 0; i < copies.length; i++) {
+                copies[i] = masks[i].copy();
+            }
+            return new Plan(ordinals, copies, accepts.clone(), costs.clone());
+        }
+
+    }
+
+}
@@ -1,16 +1,21 @@
 package com.fastasyncworldedit.core.function.pattern;
 
+import com.fastasyncworldedit.core.function.SectionExpression;
+import com.fastasyncworldedit.core.queue.IChunk;
 import com.sk89q.worldedit.function.pattern.AbstractPattern;
 import com.sk89q.worldedit.function.pattern.Pattern;
 import com.sk89q.worldedit.internal.expression.EvaluationException;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockTypes;
 
+import javax.annotation.Nullable;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -22,6 +27,8 @@
 public class ExpressionPattern extends AbstractPattern {
 
     private final Expression expression;
+    @Nullable
+    private final SectionExpression section;
 
     /**
      * Create a new instance.
@@ -32,6 +39,7 @@ public class ExpressionPattern extends AbstractPattern {
     public ExpressionPattern(String input) throws ExpressionException {
         checkNotNull(input);
         this.expression = Expression.compile(input, "x", "y", "z");
+        this.section = null;
     }
 
     /**
@@ -40,12 +48,51 @@ public ExpressionPattern(String input) throws ExpressionException {
      * @param expression the expression
      */
     public ExpressionPattern(Expression expression) {
+        this(expression, false);
+    }
+
+    private ExpressionPattern(Expression expression, boolean sections) {
         checkNotNull(expression);
         this.expression = expression;
+        this.section = sections ? new SectionExpression(expression, null) : null;
+    }
+
+    /**
+     * Get a pattern evaluating the same expression for whole chunk sections when it is applied chunk by chunk. It must only
+     * be used as a filter applied to every block of the region: under a mask, it would also evaluate the expression, with
+     * its side effects, for the blocks the mask rejects.
+     *
+     * @return a pattern evaluating per chunk section
+     * @since TODO
+     */
+    public ExpressionPattern evaluatingSections() {
+        return section != null ? this : new ExpressionPattern(expression, true);
+    }
+
+    @Override
+    public <T extends IChunk> T applyChunk(T chunk, @Nullable Region region) {
+        if (section != null) {
+            section.initChunk(chunk.getX(), chunk.getZ(), region);
+        }
+        return chunk;
+    }
+
+    @Override
+    public void finishChunk(IChunk chunk) {
+        if (section != null) {
+            section.finishChunk();
+        }
     }
 
     @Override
     public BaseBlock applyBlock(BlockVector3 vector) {
+        if (section != null && section.contains(vector.x(), vector.y(), vector.z())) {
+            double combined = section.evaluate(vector.x(), vector.y(), vector.z());
+            if (Double.isNaN(combined)) {
+                return BlockTypes.AIR.getDefaultState().toBaseBlock();
+            }
+            return BlockState.getFromOrdinal((int) combined).toBaseBlock();
+        }
         try {
             if (expression.getEnvironment() instanceof WorldEditExpressionEnvironment) {
                 ((WorldEditExpressionEnvironment) expression.getEnvironment()).setCurrentBlock(vector.toVector3());
@@ -60,7 +107,7 @@ public BaseBlock applyBlock(BlockVector3 vector) {
 
     @Override
     public Pattern fork() {
-        return new ExpressionPattern(this.expression.clone());
+        return new ExpressionPattern(this.expression.clone(), section != null);
     }
 
 }
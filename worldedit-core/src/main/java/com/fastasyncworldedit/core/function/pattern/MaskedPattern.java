@@ -27,6 +27,33 @@ public MaskedPattern(Mask mask, Pattern primary, Pattern secondary) {
         this.secondary = secondary;
     }
 
+    /**
+     * Get the mask deciding which pattern is applied.
+     *
+     * @since TODO
+     */
+    public Mask getMask() {
+        return mask;
+    }
+
+    /**
+     * Get the pattern applied where the mask matches.
+     *
+     * @since TODO
+     */
+    public Pattern getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Get the pattern applied where the mask does not match.
+     *
+     * @since TODO
+     */
+    public Pattern getSecondary() {
+        return secondary;
+    }
+
     @Override
     public BaseBlock applyBlock(BlockVector3 position) {
         if (mask.test(position)) {
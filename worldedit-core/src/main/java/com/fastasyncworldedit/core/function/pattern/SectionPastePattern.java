@@ -0,0 +1,317 @@
+package com.fastasyncworldedit.core.function.pattern;
+
+import com.fastasyncworldedit.core.extent.clipboard.SectionPaletteClipboard;
+import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.enginehub.linbus.tree.LinCompoundTag;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pastes a {@link SectionPaletteClipboard} without transform. When applied to a chunk of the queue, the clipboard is
+ * written into the chunk layers a section at a time: sections aligned with the chunk sections are copied whole, other
+ * sections are shift-copied row by row. Any other extent is set block by block.
+ */
+public class SectionPastePattern implements Pattern {
+
+    private final SectionPaletteClipboard clipboard;
+    private final BlockVector3 min;
+    private final BlockVector3 max;
+    private final boolean pasteAir;
+    private final boolean aligned;
+    // clipboard indices of tile entities, by chunk
+    private final Long2ObjectOpenHashMap<IntArrayList> tiles;
+    private final LongAdder sectionChanges;
+    private final char[] buffer = new char[4096];
+
+    /**
+     * Create a new instance.
+     *
+     * @param clipboard the clipboard to paste
+     * @param min       the position to paste the clipboard minimum to
+     * @param pasteAir  if air should be pasted
+     */
+    public SectionPastePattern(SectionPaletteClipboard clipboard, BlockVector3 min, boolean pasteAir) {
+        this.clipboard = clipboard;
+        this.min = min;
+        this.max = min.add(clipboard.getDimensions()).subtract(BlockVector3.ONE);
+        this.pasteAir = pasteAir;
+        this.aligned = ((min.x() | min.y() | min.z()) & 15) == 0;
+        this.tiles = new Long2ObjectOpenHashMap<>();
+        this.sectionChanges = new LongAdder();
+        int area = clipboard.getArea();
+        int width = clipboard.getWidth();
+        for (IntIterator iterator = clipboard.getTiles().keySet().iterator(); iterator.hasNext(); ) {
+            int index = iterator.nextInt();
+            int y = index / area;
+            int z = (index - y * area) / width;
+            int x = index - y * area - z * width;
+            long chunk = MathMan.pairInt((min.x() + x) >> 4, (min.z() + z) >> 4);
+            tiles.computeIfAbsent(chunk, k -> new IntArrayList()).add(index);
+        }
+    }
+
+    private SectionPastePattern(SectionPastePattern parent) {
+        this.clipboard = parent.clipboard;
+        this.min = parent.min;
+        this.max = parent.max;
+        this.pasteAir = parent.pasteAir;
+        this.aligned = parent.aligned;
+        this.tiles = parent.tiles;
+        this.sectionChanges = parent.sectionChanges;
+    }
+
+    /**
+     * Create an instance if a copy can be done as a section paste: the source is (backed by) a
+     * {@link SectionPaletteClipboard}, the whole clipboard is copied and the mask at most excludes air.
+     *
+     * @param source      the copy source
+     * @param region      the region copied
+     * @param sourceMask  the mask applied to the source
+     * @param translation the translation from source to destination
+     * @return the pattern to set the translated region to, or {@code null} if not applicable
+     */
+    @Nullable
+    public static SectionPastePattern of(Extent source, Region region, Mask sourceMask, BlockVector3 translation) {
+        Extent storage = source instanceof BlockArrayClipboard blockArrayClipboard ? blockArrayClipboard.getParent() : source;
+        if (!(storage instanceof SectionPaletteClipboard clipboard) || !(region instanceof CuboidRegion)) {
+            return null;
+        }
+        if (!region.getMinimumPoint().equals(source.getMinimumPoint())
+                || !region.getMaximumPoint().equals(source.getMaximumPoint())) {
+            return null;
+        }
+        boolean pasteAir;
+        if (sourceMask == Masks.alwaysTrue()) {
+            pasteAir = true;
+        } else if (sourceMask instanceof ExistingBlockMask existing && existing.getExtent() == source) {
+            pasteAir = false;
+        } else {
+            return null;
+        }
+        return new SectionPastePattern(clipboard, region.getMinimumPoint().add(translation), pasteAir);
+    }
+
+    /**
+     * {@return the region this pattern pastes to}
+     */
+    public Region getRegion() {
+        return new CuboidRegion(min, max);
+    }
+
+    /**
+     * {@return the number of blocks set a section at a time, not counted by the extent setting this pattern}
+     */
+    public long getSectionChanges() {
+        return sectionChanges.sum();
+    }
+
+    private static boolean isAir(int ordinal) {
+        return ordinal <= BlockTypesCache.ReservedIDs.VOID_AIR;
+    }
+
+    @Override
+    public BaseBlock applyBlock(BlockVector3 position) {
+        int x = position.x() - min.x();
+        int y = position.y() - min.y();
+        int z = position.z() - min.z();
+        if (x < 0 || y < 0 || z < 0 || x >= clipboard.getWidth() || y >= clipboard.getHeight() || z >= clipboard.getLength()) {
+            return BlockTypes.AIR.getDefaultState().toBaseBlock();
+        }
+        return clipboard.getFullBlock(x, y, z);
+    }
+
+    @Override
+    public boolean apply(Extent extent, BlockVector3 get, BlockVector3 set) throws WorldEditException {
+        BaseBlock block = applyBlock(get);
+        if (!pasteAir && block.getBlockType().getMaterial().isAir()) {
+            return false;
+        }
+        return set.setFullBlock(extent, block);
+    }
+
+    @Override
+    public <T extends IChunk> T applyChunk(T chunk, @Nullable Region region) {
+        if (!(chunk instanceof ChunkHolder<?> holder)) {
+            return chunk;
+        }
+        // exclusive to filtering or calling the chunk, which read the set
+        holder.getLock().lock();
+        try {
+            apply(
+                    holder.getOrCreateSet(),
+                    chunk.getX(),
+                    chunk.getZ(),
+                    holder.getMinSectionPosition(),
+                    holder.getMaxSectionPosition()
+            );
+        } finally {
+            holder.getLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Write the part of the clipboard within the given chunk into its set, merging with edits already pending in it.
+     *
+     * @param set             the chunk set to write into
+     * @param chunkX          the chunk x coordinate
+     * @param chunkZ          the chunk z coordinate
+     * @param minSectionLayer the lowest section layer of the world
+     * @param maxSectionLayer the highest section layer of the world
+     */
+    void apply(IChunkSet set, int chunkX, int chunkZ, int minSectionLayer, int maxSectionLayer) {
+        int minX = Math.max(chunkX << 4, min.x());
+        int maxX = Math.min((chunkX << 4) + 15, max.x());
+        int minZ = Math.max(chunkZ << 4, min.z());
+        int maxZ = Math.min((chunkZ << 4) + 15, max.z());
+        if (minX > maxX || minZ > maxZ) {
+            return;
+        }
+        int minLayer = Math.max(min.y() >> 4, minSectionLayer);
+        int maxLayer = Math.min(max.y() >> 4, maxSectionLayer);
+        long changes = 0;
+        for (int layer = minLayer; layer <= maxLayer; layer++) {
+            int minY = Math.max(layer << 4, min.y());
+            int maxY = Math.min((layer << 4) + 15, max.y());
+            if (aligned && maxX - minX == 15 && maxY - minY == 15 && maxZ - minZ == 15) {
+                int sectionX = (minX - min.x()) >> 4;
+                int sectionY = (minY - min.y()) >> 4;
+                int sectionZ = (minZ - min.z()) >> 4;
+                int uniform = clipboard.getUniformOrdinal(sectionX, sectionY, sectionZ);
+                if (uniform != -1) {
+                    if (!pasteAir && isAir(uniform)) {
+                        continue;
+                    }
+                    if (pasteAir || !set.hasSection(layer)) {
+                        char[] data = new char[4096];
+                        Arrays.fill(data, (char) uniform);
+                        set.setBlocks(layer, data);
+                        changes += 4096;
+                        continue;
+                    }
+                } else if (pasteAir || !set.hasSection(layer)) {
+                    char[] data = clipboard.getSectionOrdinals(sectionX, sectionY, sectionZ, new char[4096]);
+                    if (pasteAir) {
+                        changes += 4096;
+                    } else {
+                        for (int i = 0; i < 4096; i++) {
+                            if (isAir(data[i])) {
+                                data[i] = BlockTypesCache.ReservedIDs.__RESERVED__;
+                            } else {
+                                changes++;
+                            }
+                        }
+                    }
+                    set.setBlocks(layer, data);
+                    continue;
+                }
+            }
+            char[] data = set.load(layer);
+            changes += copy(data, minX, minY, minZ, maxX, maxY, maxZ);
+            set.setBlocks(layer, data);
+        }
+        IntArrayList chunkTiles = tiles.get(MathMan.pairInt(chunkX, chunkZ));
+        if (chunkTiles != null) {
+            int area = clipboard.getArea();
+            int width = clipboard.getWidth();
+            Int2ObjectMap<LinCompoundTag> tags = clipboard.getTiles();
+            for (int i = 0; i < chunkTiles.size(); i++) {
+                int index = chunkTiles.getInt(i);
+                int y = index / area + min.y();
+                if (y >> 4 < minLayer || y >> 4 > maxLayer) {
+                    continue;
+                }
+                int z = (index - (y - min.y()) * area) / width;
+                int x = index - (y - min.y()) * area - z * width;
+                LinCompoundTag tag = tags.get(index);
+                set.tile((min.x() + x) & 15, y, (min.z() + z) & 15, FaweCompoundTag.of(tag));
+            }
+        }
+        sectionChanges.add(changes);
+    }
+
+    /**
+     * Shift-copy the given box of world positions, all within one chunk section, from the clipboard sections covering it.
+     *
+     * @return the number of blocks copied
+     */
+    private int copy(char[] data, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int changes = 0;
+        // iterate the clipboard sections intersecting the box
+        for (int fromY = minY; fromY <= maxY; ) {
+            int sectionY = (fromY - min.y()) >> 4;
+            int toY = Math.min(maxY, min.y() + (sectionY << 4) + 15);
+            for (int fromZ = minZ; fromZ <= maxZ; ) {
+                int sectionZ = (fromZ - min.z()) >> 4;
+                int toZ = Math.min(maxZ, min.z() + (sectionZ << 4) + 15);
+                for (int fromX = minX; fromX <= maxX; ) {
+                    int sectionX = (fromX - min.x()) >> 4;
+                    int toX = Math.min(maxX, min.x() + (sectionX << 4) + 15);
+                    int length = toX - fromX + 1;
+                    int uniform = clipboard.getUniformOrdinal(sectionX, sectionY, sectionZ);
+                    if (uniform != -1 && !pasteAir && isAir(uniform)) {
+                        fromX = toX + 1;
+                        continue;
+                    }
+                    char[] source = uniform == -1 ? clipboard.getSectionOrdinals(sectionX, sectionY, sectionZ, buffer) : null;
+                    for (int y = fromY; y <= toY; y++) {
+                        for (int z = fromZ; z <= toZ; z++) {
+                            int target = (y & 15) << 8 | (z & 15) << 4 | fromX & 15;
+                            if (source == null) {
+                                Arrays.fill(data, target, target + length, (char) uniform);
+                                changes += length;
+                                continue;
+                            }
+                            int from = ((y - min.y()) & 15) << 8 | ((z - min.z()) & 15) << 4 | (fromX - min.x()) & 15;
+                            if (pasteAir) {
+                                System.arraycopy(source, from, data, target, length);
+                                changes += length;
+                            } else {
+                                for (int i = 0; i < length; i++) {
+                                    char ordinal = source[from + i];
+                                    if (!isAir(ordinal)) {
+                                        data[target + i] = ordinal;
+                                        changes++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    fromX = toX + 1;
+                }
+                fromZ = toZ + 1;
+            }
+            fromY = toY + 1;
+        }
+        return changes;
+    }
+
+    @Override
+    public Pattern fork() {
+        return new SectionPastePattern(this);
+    }
+
+}
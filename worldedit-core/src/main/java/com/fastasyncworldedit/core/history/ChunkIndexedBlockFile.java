@@ -0,0 +1,341 @@
+package com.fastasyncworldedit.core.history;
+
+import com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet;
+import com.fastasyncworldedit.core.internal.io.FastByteArrayOutputStream;
+import com.fastasyncworldedit.core.internal.io.FaweInputStream;
+import com.fastasyncworldedit.core.util.MainUtil;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Block history file made of independently compressed segments, each holding changes of a single chunk, followed by an
+ * index of all segments and the bounds of the changes. Readers only interested in some chunks can seek to their segments
+ * instead of decompressing the whole file.
+ *
+ * <pre>
+ * [int magic][byte version]
+ * segments... { int chunk x, int chunk z, int length, byte[length] compressed block stream (header, changes) }
+ * [int segment count] { int chunk x, int chunk z, long offset, int length }...
+ * [int min x, int min y, int min z, int max x, int max y, int max z]
+ * [long index offset][int magic]
+ * </pre>
+ * <p>
+ * A chunk may have several segments, e.g. if it was flushed in between. If the index is missing because the file was not
+ * closed, the segments are found by scanning the file.
+ */
+final class ChunkIndexedBlockFile {
+
+    // the first byte is never a compression mode of a plain block stream
+    static final int MAGIC = 0xFB434944;
+    static final int SEGMENT_BUFFER_SIZE = 65536;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final int SEGMENT_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private ChunkIndexedBlockFile() {
+    }
+
+    record Segment(int chunkX, int chunkZ, long offset, int length) {
+
+        boolean intersects(Region region) {
+            BlockVector3 min = region.getMinimumPoint();
+            BlockVector3 max = region.getMaximumPoint();
+            return chunkX >= min.x() >> 4 && chunkX <= max.x() >> 4 && chunkZ >= min.z() >> 4 && chunkZ <= max.z() >> 4;
+        }
+
+    }
+
+    record Index(List<Segment> segments, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+        /**
+         * Get the segments of chunks intersecting any of the given regions, in file order.
+         *
+         * @param regions the regions, or null for all segments
+         */
+        List<Segment> segments(@Nullable Region[] regions) {
+            if (regions == null) {
+                return segments;
+            }
+            List<Segment> result = new ArrayList<>();
+            for (Region region : regions) {
+                BlockVector3 min = region.getMinimumPoint();
+                BlockVector3 max = region.getMaximumPoint();
+                if (min.x() > maxX || max.x() < minX || min.y() > maxY || max.y() < minY || min.z() > maxZ || max.z() < minZ) {
+                    continue;
+                }
+                for (Segment segment : segments) {
+                    if (segment.intersects(region) && !result.contains(segment)) {
+                        result.add(segment);
+                    }
+                }
+            }
+            if (regions.length > 1) {
+                result.sort((a, b) -> Long.compare(a.offset(), b.offset()));
+            }
+            return result;
+        }
+
+    }
+
+    static boolean isIndexed(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            readFully(channel, buffer, 0);
+            return buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    static Index readIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= HEADER_SIZE + TRAILER_SIZE) {
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+                readFully(channel, trailer, size - TRAILER_SIZE);
+                long indexOffset = trailer.getLong(0);
+                if (trailer.getInt(Long.BYTES) == MAGIC && indexOffset >= HEADER_SIZE && indexOffset < size - TRAILER_SIZE) {
+                    ByteBuffer index = ByteBuffer.allocate((int) (size - TRAILER_SIZE - indexOffset));
+                    readFully(channel, index, indexOffset);
+                    index.flip();
+                    int count = index.getInt();
+                    List<Segment> segments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        segments.add(new Segment(index.getInt(), index.getInt(), index.getLong(), index.getInt()));
+                    }
+                    return new Index(
+                            segments,
+                            index.getInt(), index.getInt(), index.getInt(),
+                            index.getInt(), index.getInt(), index.getInt()
+                    );
+                }
+            }
+            return scan(channel, size);
+        }
+    }
+
+    private static Index scan(FileChannel channel, long size) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        int minChunkX = Integer.MAX_VALUE;
+        int minChunkZ = Integer.MAX_VALUE;
+        int maxChunkX = Integer.MIN_VALUE;
+        int maxChunkZ = Integer.MIN_VALUE;
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        long position = HEADER_SIZE;
+        while (position + SEGMENT_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int chunkX = header.getInt(0);
+            int chunkZ = header.getInt(Integer.BYTES);
+            int length = header.getInt(2 * Integer.BYTES);
+            long offset = position + SEGMENT_HEADER_SIZE;
+            if (length <= 0 || offset + length > size) {
+                break;
+            }
+            segments.add(new Segment(chunkX, chunkZ, offset, length));
+            minChunkX = Math.min(minChunkX, chunkX);
+            minChunkZ = Math.min(minChunkZ, chunkZ);
+            maxChunkX = Math.max(maxChunkX, chunkX);
+            maxChunkZ = Math.max(maxChunkZ, chunkZ);
+            position = offset + length;
+        }
+        return new Index(
+                segments,
+                minChunkX << 4, Integer.MIN_VALUE, minChunkZ << 4,
+                (maxChunkX << 4) + 15, Integer.MAX_VALUE, (maxChunkZ << 4) + 15
+        );
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Appends segments to a new file and writes the index once closed.
+     */
+    static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final List<Segment> segments = new ArrayList<>();
+        private long position;
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+
+        Writer(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), SEGMENT_BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            this.position = HEADER_SIZE;
+        }
+
+        void include(int x, int y, int z) {
+            if (x < minX) {
+                minX = x;
+            }
+            if (x > maxX) {
+                maxX = x;
+            }
+            if (y < minY) {
+                minY = y;
+            }
+            if (y > maxY) {
+                maxY = y;
+            }
+            if (z < minZ) {
+                minZ = z;
+            }
+            if (z > maxZ) {
+                maxZ = z;
+            }
+        }
+
+        void writeSegment(int chunkX, int chunkZ, FastByteArrayOutputStream data) throws IOException {
+            int length = data.getSize();
+            if (length == 0) {
+                return;
+            }
+            out.writeInt(chunkX);
+            out.writeInt(chunkZ);
+            out.writeInt(length);
+            data.writeTo(out);
+            segments.add(new Segment(chunkX, chunkZ, position + SEGMENT_HEADER_SIZE, length));
+            position += SEGMENT_HEADER_SIZE + length;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (out) {
+                out.writeInt(segments.size());
+                for (Segment segment : segments) {
+                    out.writeInt(segment.chunkX());
+                    out.writeInt(segment.chunkZ());
+                    out.writeLong(segment.offset());
+                    out.writeInt(segment.length());
+                }
+                out.writeInt(minX);
+                out.writeInt(minY);
+                out.writeInt(minZ);
+                out.writeInt(maxX);
+                out.writeInt(maxY);
+                out.writeInt(maxZ);
+                out.writeLong(position);
+                out.writeInt(MAGIC);
+            }
+        }
+
+    }
+
+    /**
+     * Reads the changes of the given segments as one stream. The header of each segment is passed to the change set when
+     * the segment is reached, so the position delegates start over just like the writer's did. A segment is loaded as
+     * soon as the previous one is exhausted, i.e. right after the last change of that segment was read.
+     */
+    static final class SegmentInputStream extends InputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final FaweStreamChangeSet changeSet;
+        private final FileChannel channel;
+        private final Iterator<Segment> segments;
+        private byte[] data = EMPTY;
+        private int position;
+
+        SegmentInputStream(FaweStreamChangeSet changeSet, File file, List<Segment> segments) throws IOException {
+            this.changeSet = changeSet;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.segments = segments.iterator();
+            try {
+                advance();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void advance() throws IOException {
+            while (position == data.length && segments.hasNext()) {
+                Segment segment = segments.next();
+                ByteBuffer compressed = ByteBuffer.allocate(segment.length());
+                readFully(channel, compressed, segment.offset());
+                try (FaweInputStream in = MainUtil.getCompressedIS(
+                        new ByteArrayInputStream(compressed.array()),
+                        SEGMENT_BUFFER_SIZE
+                )) {
+                    data = in.readAllBytes();
+                }
+                ByteArrayInputStream header = new ByteArrayInputStream(data);
+                changeSet.readHeader(header);
+                position = data.length - header.available();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == data.length) {
+                return -1;
+            }
+            int value = data[position++] & 0xFF;
+            if (position == data.length) {
+                advance();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == data.length) {
+                return -1;
+            }
+            int read = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, read);
+            position += read;
+            if (position == data.length) {
+                advance();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@
 import com.fastasyncworldedit.core.database.RollbackDatabase;
 import com.fastasyncworldedit.core.history.changeset.FaweStreamChangeSet;
 import com.fastasyncworldedit.core.history.changeset.SimpleChangeSetSummary;
+import com.fastasyncworldedit.core.internal.io.FastByteArrayOutputStream;
 import com.fastasyncworldedit.core.internal.io.FaweInputStream;
 import com.fastasyncworldedit.core.internal.io.FaweOutputStream;
 import com.fastasyncworldedit.core.math.IntPair;
@@ -20,10 +21,12 @@
 import com.sk89q.worldedit.world.World;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -56,8 +59,17 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
      *
      * [contents]...
      * { short rel x, short rel z, unsigned byte y, short combinedFrom, short combinedTo }
+     *
+     * If chunk indexed, osBD is the stream of the current chunk segment, see ChunkIndexedBlockFile
      */
     private FaweOutputStream osBD;
+    private final boolean chunkIndexed = Settings.settings().HISTORY.CHUNK_INDEXED;
+    private ChunkIndexedBlockFile.Writer indexedWriter;
+    private FastByteArrayOutputStream segmentBytes;
+    private int segmentX;
+    private int segmentZ;
+    // Only read block changes in chunks of these regions, if chunk indexed
+    private Region[] readRegions;
     // biome
     private FaweOutputStream osBIO;
     // NBT From
@@ -137,6 +149,16 @@ public void deleteFiles() {
         enttFile.delete();
     }
 
+    /**
+     * Limit the block changes read from a chunk indexed history file to the chunks intersecting the given regions. Changes
+     * of other chunks may still be returned if the file is not chunk indexed.
+     *
+     * @param regions the regions, or null to read all changes
+     */
+    public void setReadRegions(@Nullable Region[] regions) {
+        this.readRegions = regions;
+    }
+
     public void undo(Actor actor, Region[] regions) {
         try {
             close();
@@ -144,8 +166,11 @@ public void undo(Actor actor, Region[] regions) {
             e.printStackTrace();
             return;
         }
+        setReadRegions(regions);
         try (EditSession session = toEditSession(actor, regions)) {
             session.setBlocks(this, ChangeSetExecutor.Type.UNDO);
+        } finally {
+            setReadRegions(null);
         }
     }
 
@@ -160,8 +185,13 @@ public void redo(Actor actor, Region[] regions) {
             e.printStackTrace();
             return;
         }
-        EditSession session = toEditSession(actor, regions);
-        session.setBlocks(this, ChangeSetExecutor.Type.REDO);
+        setReadRegions(regions);
+        try {
+            EditSession session = toEditSession(actor, regions);
+            session.setBlocks(this, ChangeSetExecutor.Type.REDO);
+        } finally {
+            setReadRegions(null);
+        }
     }
 
     public void redo(Actor actor) {
@@ -205,7 +235,10 @@ public void flush() {
         super.flush();
         synchronized (this) {
             try {
-                if (osBD != null) {
+                if (indexedWriter != null) {
+                    finishSegment();
+                    indexedWriter.flush();
+                } else if (osBD != null) {
                     osBD.flush();
                 }
                 if (osBIO != null) {
@@ -234,7 +267,12 @@ public void close() throws IOException {
         super.close();
         synchronized (this) {
             try {
-                if (osBD != null) {
+                if (indexedWriter != null) {
+                    finishSegment();
+                    indexedWriter.close();
+                    indexedWriter = null;
+                    segmentBytes = null;
+                } else if (osBD != null) {
                     osBD.close();
                     osBD = null;
                 }
@@ -300,6 +338,9 @@ public long getSizeOnDisk() {
 
     @Override
     public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
+        if (chunkIndexed) {
+            return getSegmentOS(x, y, z);
+        }
         if (osBD != null) {
             return osBD;
         }
@@ -312,6 +353,45 @@ public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
         }
     }
 
+    private FaweOutputStream getSegmentOS(int x, int y, int z) throws IOException {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        FaweOutputStream os = osBD;
+        if (os == null || chunkX != segmentX || chunkZ != segmentZ) {
+            synchronized (this) {
+                if (indexedWriter == null) {
+                    bdFile.getParentFile().mkdirs();
+                    indexedWriter = new ChunkIndexedBlockFile.Writer(bdFile);
+                    segmentBytes = new FastByteArrayOutputStream();
+                    os = getCompressedOS(segmentBytes, ChunkIndexedBlockFile.SEGMENT_BUFFER_SIZE);
+                    writeHeader(os, x, y, z);
+                } else {
+                    finishSegment();
+                    os = getCompressedOS(segmentBytes, ChunkIndexedBlockFile.SEGMENT_BUFFER_SIZE);
+                    writeContinuedHeader(os);
+                }
+                segmentX = chunkX;
+                segmentZ = chunkZ;
+                osBD = os;
+            }
+        }
+        indexedWriter.include(x, y, z);
+        return os;
+    }
+
+    /**
+     * Compress the changes of the current chunk and append them to the history file.
+     */
+    private void finishSegment() throws IOException {
+        if (osBD == null) {
+            return;
+        }
+        osBD.close();
+        osBD = null;
+        indexedWriter.writeSegment(segmentX, segmentZ, segmentBytes);
+        segmentBytes.reset();
+    }
+
     @Override
     public FaweOutputStream getBiomeOS() throws IOException {
         if (osBIO != null) {
@@ -375,6 +455,13 @@ public FaweInputStream getBlockIS() throws IOException {
             return null;
         }
         try {
+            if (ChunkIndexedBlockFile.isIndexed(bdFile)) {
+                List<ChunkIndexedBlockFile.Segment> segments = ChunkIndexedBlockFile.readIndex(bdFile).segments(readRegions);
+                if (segments.isEmpty()) {
+                    return null;
+                }
+                return new FaweInputStream(new ChunkIndexedBlockFile.SegmentInputStream(this, bdFile, segments));
+            }
             FaweInputStream is = MainUtil.getCompressedIS(new FileInputStream(bdFile));
             readHeader(is);
             return is;
@@ -461,6 +548,18 @@ public IntPair readHeader() {
         int ox = getOriginX();
         int oz = getOriginZ();
         if (ox == 0 && oz == 0 && bdFile.exists()) {
+            try {
+                if (ChunkIndexedBlockFile.isIndexed(bdFile)) {
+                    // the header of the first segment has the origin
+                    List<ChunkIndexedBlockFile.Segment> segments = ChunkIndexedBlockFile.readIndex(bdFile).segments(null);
+                    if (!segments.isEmpty()) {
+                        new ChunkIndexedBlockFile.SegmentInputStream(this, bdFile, segments.subList(0, 1)).close();
+                    }
+                    return new IntPair(getOriginX(), getOriginZ());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
             try (FileInputStream fis = new FileInputStream(bdFile)) {
                 final FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
@@ -0,0 +1,93 @@
+package com.fastasyncworldedit.core.history.change;
+
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.world.block.BlockState;
+
+import java.util.Arrays;
+
+/**
+ * The block changes of a single chunk, in recorded order. If the undo context writes directly to a queue, all changes are
+ * written to the chunk at once instead of being looked up block by block.
+ *
+ * @since TODO
+ */
+public class ChunkBlockChange implements Change {
+
+    private final int chunkX;
+    private final int chunkZ;
+    private int[] positions = new int[64];
+    private char[] ordinals = new char[64];
+    private int size;
+
+    public ChunkBlockChange(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a block change, the coordinates must be within this chunk.
+     */
+    public void add(int x, int y, int z, int ordinal) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size << 1);
+            ordinals = Arrays.copyOf(ordinals, size << 1);
+        }
+        positions[size] = y << 8 | (z & 15) << 4 | x & 15;
+        ordinals[size++] = (char) ordinal;
+    }
+
+    @Override
+    public void undo(UndoContext context) throws WorldEditException {
+        create(context);
+    }
+
+    @Override
+    public void redo(UndoContext context) throws WorldEditException {
+        create(context);
+    }
+
+    public void create(UndoContext context) {
+        Extent extent = context.getExtent();
+        if (extent instanceof ParallelQueueExtent parallel) {
+            extent = parallel.getExtent();
+        }
+        if (extent instanceof IQueueExtent<?> queue) {
+            IChunk chunk = queue.getOrCreateChunk(chunkX, chunkZ);
+            for (int i = 0; i < size; i++) {
+                int position = positions[i];
+                chunk.setBlock(position & 15, position >> 8, position >> 4 & 15, BlockState.getFromOrdinal(ordinals[i]));
+            }
+            return;
+        }
+        int blockX = chunkX << 4;
+        int blockZ = chunkZ << 4;
+        for (int i = 0; i < size; i++) {
+            int position = positions[i];
+            extent.setBlock(
+                    blockX + (position & 15),
+                    position >> 8,
+                    blockZ + (position >> 4 & 15),
+                    BlockState.getFromOrdinal(ordinals[i])
+            );
+        }
+    }
+
+}
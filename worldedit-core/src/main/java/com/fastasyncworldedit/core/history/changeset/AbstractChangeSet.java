@@ -2,6 +2,7 @@
 
 import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.FaweCache;
+import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.HistoryExtent;
 import com.fastasyncworldedit.core.extent.processor.ProcessorScope;
 import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
@@ -9,13 +10,17 @@
 import com.fastasyncworldedit.core.queue.IChunk;
 import com.fastasyncworldedit.core.queue.IChunkGet;
 import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.regions.IntersectionRegion;
 import com.fastasyncworldedit.core.util.NbtUtils;
 import com.fastasyncworldedit.core.util.TaskManager;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.google.common.util.concurrent.Futures;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.EditSessionBuilder;
 import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.entity.Player;
 import com.sk89q.worldedit.extension.platform.Actor;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.extent.inventory.BlockBag;
@@ -37,6 +42,7 @@
 import org.jetbrains.annotations.ApiStatus;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
@@ -124,6 +130,12 @@ public Extent construct(Extent child) {
 
     @Override
     public final synchronized IChunkSet processSet(IChunk chunk, IChunkGet get, IChunkSet set) {
+        try (EditTelemetry.Timer ignored = EditTelemetry.start(EditStage.HISTORY)) {
+            return recordChanges(chunk, get, set);
+        }
+    }
+
+    private IChunkSet recordChanges(IChunk chunk, IChunkGet get, IChunkSet set) {
         int bx = chunk.getX() << 4;
         int bz = chunk.getZ() << 4;
 
@@ -325,7 +337,10 @@ public EditSession toEditSession(Actor actor, Region[] regions) {
                 .fastMode(false)
                 .limitUnprocessed(actor)
                 .actor(actor);
-        if (!actor.getLimit().RESTRICT_HISTORY_TO_REGIONS) {
+        Region[] allowed = getAllowedRegions(actor, regions);
+        if (allowed != null) {
+            builder = builder.allowedRegions(allowed);
+        } else if (!actor.getLimit().RESTRICT_HISTORY_TO_REGIONS) {
             builder = builder.allowedRegionsEverywhere();
         }
         EditSession editSession = builder.build();
@@ -333,6 +348,26 @@ public EditSession toEditSession(Actor actor, Region[] regions) {
         return editSession;
     }
 
+    /**
+     * Get the regions an actor may undo or redo the changes within, if restricted to the given regions.
+     *
+     * @param actor   the actor
+     * @param regions the regions to restrict the changes to, or null
+     * @return the regions, or null to use the regions of the actor as for any other edit
+     * @since TODO
+     */
+    @Nullable
+    public static Region[] getAllowedRegions(Actor actor, @Nullable Region[] regions) {
+        if (regions == null) {
+            return null;
+        }
+        if (actor.getLimit().RESTRICT_HISTORY_TO_REGIONS && Settings.settings().REGION_RESTRICTIONS
+                && actor instanceof Player player && !actor.hasPermission("fawe.bypass.regions")) {
+            return IntersectionRegion.of(player.getAllowedRegions(), regions);
+        }
+        return regions;
+    }
+
     public void add(EntityCreate change) {
         LinCompoundTag tag = change.state.getNbt();
         assert tag != null;
@@ -418,9 +453,11 @@ public Future<?> addWriteTask(Runnable writeTask) {
     }
 
     public Future<?> addWriteTask(final Runnable writeTask, final boolean completeNow) {
+        // attribute writes done later by a history worker to the edit submitting them
+        final Runnable timedTask = EditTelemetry.wrap(EditStage.HISTORY, writeTask);
         Runnable wrappedTask = () -> {
             try {
-                writeTask.run();
+                timedTask.run();
             } catch (Throwable t) {
                 if (completeNow) {
                     throw t;
@@ -1,7 +1,9 @@
 package com.fastasyncworldedit.core.history.changeset;
 
+import com.fastasyncworldedit.core.Fawe;
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.history.change.ChangePopulator;
+import com.fastasyncworldedit.core.history.change.ChunkBlockChange;
 import com.fastasyncworldedit.core.history.change.MutableBiomeChange;
 import com.fastasyncworldedit.core.history.change.MutableBlockChange;
 import com.fastasyncworldedit.core.history.change.MutableEntityChange;
@@ -11,6 +13,7 @@
 import com.fastasyncworldedit.core.internal.io.FaweInputStream;
 import com.fastasyncworldedit.core.internal.io.FaweOutputStream;
 import com.fastasyncworldedit.core.nbt.FaweCompoundTag;
+import com.fastasyncworldedit.core.queue.implementation.preloader.Preloader;
 import com.fastasyncworldedit.core.util.MainUtil;
 import com.fastasyncworldedit.core.util.MathMan;
 import com.sk89q.jnbt.CompoundTag;
@@ -18,10 +21,12 @@
 import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BiomeType;
 import com.sk89q.worldedit.world.block.BlockTypes;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -30,8 +35,10 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -48,6 +55,9 @@ public abstract class FaweStreamChangeSet extends AbstractChangeSet {
     private static final int VERSION = 2;
     // equivalent to Short#MIN_VALUE three times stored with [(x) & 0xff, ((rx) >> 8) & 0xff]
     private static final byte[] MAGIC_NEW_RELATIVE = new byte[]{0, (byte) 128, 0, (byte) 128, 0, (byte) 128};
+    private static final Comparator<ChunkBlockChange> CHUNK_ORDER = Comparator
+            .comparingInt(ChunkBlockChange::getChunkX)
+            .thenComparingInt(ChunkBlockChange::getChunkZ);
     private int mode;
     private final int compression;
     private final int minY;
@@ -257,10 +267,24 @@ public int readZ(FaweInputStream is) throws IOException {
     }
 
     public void writeHeader(OutputStream os, int x, int y, int z) throws IOException {
+        setOrigin(x, z);
+        writeOriginHeader(os);
+    }
+
+    /**
+     * Write the header of a further block stream of this change set, e.g. a new segment of a chunk indexed history file.
+     * The origin stays the same and the stream delegates start over, just like when reading the header.
+     */
+    protected void writeContinuedHeader(OutputStream os) throws IOException {
+        writeOriginHeader(os);
+    }
+
+    private void writeOriginHeader(OutputStream os) throws IOException {
+        int x = originX;
+        int z = originZ;
         os.write(mode);
         // Allows for version detection of history in case of changes to format.
         os.write(VERSION);
-        setOrigin(x, z);
         os.write((byte) (x >> 24));
         os.write((byte) (x >> 16));
         os.write((byte) (x >> 8));
@@ -290,6 +314,10 @@ public FaweOutputStream getCompressedOS(OutputStream os) throws IOException {
         return MainUtil.getCompressedOS(os, compression);
     }
 
+    protected FaweOutputStream getCompressedOS(OutputStream os, int buffer) throws IOException {
+        return MainUtil.getCompressedOS(os, compression, buffer);
+    }
+
     @Override
     public boolean isEmpty() {
         if (blockSize > 0) {
@@ -493,6 +521,90 @@ public void remove() {
         };
     }
 
+    /**
+     * Get the block changes grouped by chunk. Changes are read in batches of the given size and the chunks of a batch are
+     * returned sorted by position, the changes within a chunk keep their recorded order. The chunks of the next batch are
+     * preloaded while the current batch is consumed.
+     *
+     * @param dir  true to get the new blocks, false to get the previous blocks
+     * @param size the number of block changes to read and sort at once
+     * @since TODO
+     */
+    public Iterator<ChunkBlockChange> getChunkSortedBlockIterator(final boolean dir, final int size) throws IOException {
+        final Iterator<MutableBlockChange> blocks = getBlockIterator(dir);
+        if (!blocks.hasNext()) {
+            return Collections.emptyIterator();
+        }
+        return new Iterator<>() {
+            private ChunkBlockChange[] current = readChunkBatch(blocks, size);
+            private ChunkBlockChange[] next = readChunkBatch(blocks, size);
+            private Preloader.Request currentRequest = preload(current);
+            private Preloader.Request nextRequest = preload(next);
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                if (index < current.length) {
+                    return true;
+                }
+                // every chunk of the batch has been handed out
+                currentRequest.close();
+                if (next.length == 0) {
+                    return false;
+                }
+                current = next;
+                currentRequest = nextRequest;
+                index = 0;
+                next = readChunkBatch(blocks, size);
+                nextRequest = preload(next);
+                return true;
+            }
+
+            @Override
+            public ChunkBlockChange next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ChunkBlockChange change = current[index];
+                current[index++] = null;
+                return change;
+            }
+        };
+    }
+
+    private ChunkBlockChange[] readChunkBatch(Iterator<MutableBlockChange> blocks, int size) {
+        Long2ObjectOpenHashMap<ChunkBlockChange> chunks = new Long2ObjectOpenHashMap<>();
+        ChunkBlockChange last = null;
+        for (int i = 0; i < size && blocks.hasNext(); i++) {
+            MutableBlockChange change = blocks.next();
+            int chunkX = change.x >> 4;
+            int chunkZ = change.z >> 4;
+            if (last == null || last.getChunkX() != chunkX || last.getChunkZ() != chunkZ) {
+                long pair = MathMan.pairInt(chunkX, chunkZ);
+                last = chunks.get(pair);
+                if (last == null) {
+                    chunks.put(pair, last = new ChunkBlockChange(chunkX, chunkZ));
+                }
+            }
+            last.add(change.x, change.y, change.z, change.ordinal);
+        }
+        ChunkBlockChange[] sorted = chunks.values().toArray(new ChunkBlockChange[0]);
+        Arrays.sort(sorted, CHUNK_ORDER);
+        return sorted;
+    }
+
+    private Preloader.Request preload(ChunkBlockChange[] batch) {
+        Preloader preloader = Fawe.platform().getPreloader(true);
+        if (preloader == null || batch.length == 0) {
+            return Preloader.Request.NONE;
+        }
+        List<BlockVector2> positions = new ArrayList<>(batch.length);
+        for (ChunkBlockChange change : batch) {
+            positions.add(BlockVector2.at(change.getChunkX(), change.getChunkZ()));
+        }
+        return preloader.preload(getWorld(), positions);
+    }
+
     public Iterator<MutableBiomeChange> getBiomeIterator(final boolean dir) throws IOException {
         final FaweInputStream is = getBiomeIS();
         if (is == null) {
@@ -563,7 +675,11 @@ public Iterator<Change> getIterator(BlockBag blockBag, int mode, boolean redo) {
 
     public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, final boolean dir) throws
             IOException {
-        final FaweInputStream is = new FaweInputStream(getBlockIS());
+        final FaweInputStream blockIS = getBlockIS();
+        if (blockIS == null) {
+            return Collections.emptyIterator();
+        }
+        final FaweInputStream is = new FaweInputStream(blockIS);
         final MutableFullBlockChange change = new MutableFullBlockChange(blockBag, inventory, dir);
         return new Iterator<MutableFullBlockChange>() {
             private MutableFullBlockChange last = read();
@@ -725,7 +841,14 @@ private ChangeExchangeCoordinator coordinatedChanges(final BlockBag blockBag, fi
         var entityCreate = entityChangePopulator(getEntityCreateIS(), true);
         var entityRemove = entityChangePopulator(getEntityRemoveIS(), false);
 
-        var blockChange = blockBag != null && mode > 0 ? fullBlockChangePopulator(blockBag, mode, dir) : blockChangePopulator(dir);
+        ChangePopulator<?> blockChange;
+        if (blockBag != null && mode > 0) {
+            blockChange = fullBlockChangePopulator(blockBag, mode, dir);
+        } else if (Settings.settings().EXPERIMENTAL.UNDO_CHUNK_SORT_SIZE > 0) {
+            blockChange = chunkBlockChangePopulator(dir, Settings.settings().EXPERIMENTAL.UNDO_CHUNK_SORT_SIZE);
+        } else {
+            blockChange = blockChangePopulator(dir);
+        }
 
         var biomeChange = biomeChangePopulator(dir);
 
@@ -940,6 +1063,34 @@ public boolean accepts(final Change change) {
         return new Populator();
     }
 
+    private ChangePopulator<ChunkBlockChange> chunkBlockChangePopulator(boolean dir, int size) throws IOException {
+        final Iterator<ChunkBlockChange> iterator = getChunkSortedBlockIterator(dir, size);
+        class Populator implements ChangePopulator<ChunkBlockChange> {
+
+            @Override
+            public @NotNull ChunkBlockChange create() {
+                throw new UnsupportedOperationException("chunk changes are not reused");
+            }
+
+            @Override
+            public @Nullable ChunkBlockChange updateOrCreate(@Nullable final Change change) {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public @Nullable ChunkBlockChange populate(@NotNull final ChunkBlockChange change) {
+                return updateOrCreate(change);
+            }
+
+            @Override
+            public boolean accepts(final Change change) {
+                return false;
+            }
+
+        }
+        return new Populator();
+    }
+
     private ChangePopulator<MutableBiomeChange> biomeChangePopulator(boolean dir) throws IOException {
         final FaweInputStream is = getBiomeIS();
         if (is == null) {
@@ -996,7 +1147,10 @@ public Iterator<Change> getIterator(final boolean dir) {
             final Iterator<MutableEntityChange> entityCreate = getEntityIterator(getEntityCreateIS(), true);
             final Iterator<MutableEntityChange> entityRemove = getEntityIterator(getEntityRemoveIS(), false);
 
-            final Iterator<MutableBlockChange> blockChange = getBlockIterator(dir);
+            final int chunkSortSize = Settings.settings().EXPERIMENTAL.UNDO_CHUNK_SORT_SIZE;
+            final Iterator<? extends Change> blockChange = chunkSortSize > 0
+                    ? getChunkSortedBlockIterator(dir, chunkSortSize)
+                    : getBlockIterator(dir);
 
             final Iterator<MutableBiomeChange> biomeChange = getBiomeIterator(dir);
 
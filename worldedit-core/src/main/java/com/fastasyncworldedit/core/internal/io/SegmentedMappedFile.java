@@ -0,0 +1,138 @@
+package com.fastasyncworldedit.core.internal.io;
+
+import com.fastasyncworldedit.core.util.ReflectionUtils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Memory maps a file of any length as fixed-size segments. Segments are mapped lazily on first access and at most
+ * {@code maxMapped} segments are kept mapped, the segment mapped the longest ago is dropped first.
+ * <p>
+ * Dropped segments are flushed and left for the garbage collector to unmap, so threads still holding on to them
+ * cannot access unmapped memory. Values are stored big-endian and may cross segment boundaries.
+ */
+public final class SegmentedMappedFile implements Flushable, Closeable {
+
+    private final FileChannel channel;
+    private final long length;
+    private final int shift;
+    private final int mask;
+    private final int maxMapped;
+    private final AtomicReferenceArray<MappedByteBuffer> segments;
+    private final ArrayDeque<Integer> mapped = new ArrayDeque<>();
+
+    /**
+     * Create a new instance. The channel must be readable and writable and at least {@code length} bytes long.
+     *
+     * @param channel      the channel to map
+     * @param length       the number of bytes to map
+     * @param segmentShift log2 of the segment size
+     * @param maxMapped    the maximum number of segments mapped at once
+     */
+    public SegmentedMappedFile(FileChannel channel, long length, int segmentShift, int maxMapped) {
+        if (segmentShift < 3 || segmentShift > 30) {
+            throw new IllegalArgumentException("Segment size must be between 8 bytes and 1 GiB");
+        }
+        this.channel = channel;
+        this.length = length;
+        this.shift = segmentShift;
+        this.mask = (1 << segmentShift) - 1;
+        this.maxMapped = Math.max(1, maxMapped);
+        this.segments = new AtomicReferenceArray<>((int) ((length + mask) >>> segmentShift));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    private MappedByteBuffer segment(long position) {
+        int index = (int) (position >>> shift);
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null) {
+            segment = map(index);
+        }
+        return segment;
+    }
+
+    private synchronized MappedByteBuffer map(int index) {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment != null) {
+            return segment;
+        }
+        if (mapped.size() >= maxMapped) {
+            int evicted = mapped.poll();
+            segments.getAndSet(evicted, null).force();
+        }
+        long start = (long) index << shift;
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(mask + 1L, length - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.set(index, segment);
+        mapped.add(index);
+        return segment;
+    }
+
+    public byte get(long position) {
+        return segment(position).get((int) position & mask);
+    }
+
+    public void put(long position, byte value) {
+        segment(position).put((int) position & mask, value);
+    }
+
+    public char getChar(long position) {
+        int offset = (int) position & mask;
+        if (offset < mask) {
+            return segment(position).getChar(offset);
+        }
+        return (char) ((get(position) & 0xFF) << 8 | get(position + 1) & 0xFF);
+    }
+
+    public void putChar(long position, char value) {
+        int offset = (int) position & mask;
+        if (offset < mask) {
+            segment(position).putChar(offset, value);
+        } else {
+            put(position, (byte) (value >>> 8));
+            put(position + 1, (byte) value);
+        }
+    }
+
+    public short getShort(long position) {
+        return (short) getChar(position);
+    }
+
+    public void putShort(long position, short value) {
+        putChar(position, (char) value);
+    }
+
+    @Override
+    public synchronized void flush() {
+        for (int index : mapped) {
+            segments.get(index).force();
+        }
+    }
+
+    /**
+     * Flush and unmap all segments. The instance must not be used by any thread afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        Integer index;
+        while ((index = mapped.poll()) != null) {
+            MappedByteBuffer segment = segments.getAndSet(index, null);
+            segment.force();
+            ReflectionUtils.getUnsafe().invokeCleaner(segment);
+        }
+    }
+
+}
@@ -2,25 +2,42 @@
 
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.extent.filter.block.DelegateFilter;
+import com.fastasyncworldedit.core.function.mask.ABlockMask;
 import com.fastasyncworldedit.core.function.mask.InverseMask;
+import com.fastasyncworldedit.core.function.mask.MaskUnion;
 import com.fastasyncworldedit.core.function.mask.SingleBlockStateMask;
+import com.fastasyncworldedit.core.math.random.TrueRandom;
 import com.fastasyncworldedit.core.queue.Filter;
+import com.sk89q.worldedit.function.mask.BlockTypeMask;
 import com.sk89q.worldedit.function.mask.ExistingBlockMask;
 import com.sk89q.worldedit.function.mask.InverseSingleBlockStateMask;
 import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
 import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockTypesCache;
 import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
 
 import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 public class SimdSupport {
 
     private static final boolean VECTOR_API_PRESENT;
+    // more ranges of ordinals than this are matched by looking up each lane instead
+    private static final int MAX_RANGE_TESTS = 8;
+    // more weighted blocks than this are chosen per block instead, as each takes one comparison and blend per vector
+    private static final int MAX_RANDOM_PATTERNS = 16;
+    private static final ThreadLocal<short[]> LANES = new ThreadLocal<>();
+    private static final ThreadLocal<boolean[]> MATCHES = new ThreadLocal<>();
 
     static {
         boolean vectorApiPresent = false;
@@ -55,10 +72,119 @@ public static boolean useVectorApi() {
                 }
                 yield (set, get) -> base.compareVector(set, get).not();
             }
+            case ABlockMask blockMask -> vectorizedTargetMask(ordinals(blockMask::test));
+            case BlockTypeMask typeMask -> vectorizedTargetMask(ordinals(state -> typeMask.test(state.getBlockType())));
+            case MaskUnion union when union.getClass() == MaskUnion.class -> vectorizedTargetMask(union.getMasksArray(), true);
+            case MaskIntersection intersection when intersection.getClass() == MaskIntersection.class ->
+                    vectorizedTargetMask(intersection.getMasksArray(), false);
             default -> null;
         };
     }
 
+    private static @Nullable VectorizedMask vectorizedTargetMask(Mask[] masks, boolean union) {
+        if (masks.length == 0) {
+            return null;
+        }
+        final VectorizedMask[] children = new VectorizedMask[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            if ((children[i] = vectorizedTargetMask(masks[i])) == null) {
+                return null;
+            }
+        }
+        if (children.length == 1) {
+            return children[0];
+        }
+        if (union) {
+            return (set, get) -> {
+                VectorMask<Short> result = children[0].compareVector(set, get);
+                for (int i = 1; i < children.length; i++) {
+                    result = result.or(children[i].compareVector(set, get));
+                }
+                return result;
+            };
+        }
+        return (set, get) -> {
+            VectorMask<Short> result = children[0].compareVector(set, get);
+            for (int i = 1; i < children.length && result.anyTrue(); i++) {
+                result = result.and(children[i].compareVector(set, get));
+            }
+            return result;
+        };
+    }
+
+    private static boolean[] ordinals(Predicate<BlockState> predicate) {
+        BlockState[] states = BlockTypesCache.states;
+        boolean[] ordinals = new boolean[states.length];
+        for (int i = 0; i < states.length; i++) {
+            ordinals[i] = states[i] != null && predicate.test(states[i]);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Match the ordinals set in the given table. States of a block type have consecutive ordinals, so most masks only
+     * need a few range tests, otherwise the table is looked up for each lane.
+     */
+    private static VectorizedMask vectorizedTargetMask(boolean[] ordinals) {
+        int ranges = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] && (i == 0 || !ordinals[i - 1])) {
+                ranges++;
+            }
+        }
+        if (ranges == 0) {
+            return (set, get) -> get.species().maskAll(false);
+        }
+        if (ranges > MAX_RANGE_TESTS) {
+            return vectorizedTargetMaskLookup(ordinals);
+        }
+        final short[] starts = new short[ranges];
+        final short[] lengths = new short[ranges];
+        int range = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] && (i == 0 || !ordinals[i - 1])) {
+                int end = i;
+                while (end + 1 < ordinals.length && ordinals[end + 1]) {
+                    end++;
+                }
+                starts[range] = (short) i;
+                lengths[range++] = (short) (end - i);
+            }
+        }
+        return (set, get) -> {
+            VectorMask<Short> result = inRange(get, starts[0], lengths[0]);
+            for (int i = 1; i < starts.length; i++) {
+                result = result.or(inRange(get, starts[i], lengths[i]));
+            }
+            return result;
+        };
+    }
+
+    private static VectorMask<Short> inRange(ShortVector get, short start, short length) {
+        if (length == 0) {
+            return get.compare(VectorOperators.EQ, start);
+        }
+        // wraps around below start, so a single unsigned comparison tests both bounds
+        return get.sub(start).compare(VectorOperators.UNSIGNED_LE, length);
+    }
+
+    private static VectorizedMask vectorizedTargetMaskLookup(boolean[] ordinals) {
+        return (set, get) -> {
+            short[] lanes = LANES.get();
+            boolean[] matches = MATCHES.get();
+            if (lanes == null || lanes.length < get.length()) {
+                LANES.set(lanes = new short[get.length()]);
+                MATCHES.set(matches = new boolean[get.length()]);
+            }
+            get.intoArray(lanes, 0);
+            for (int i = 0; i < get.length(); i++) {
+                int ordinal = lanes[i] & 0xFFFF;
+                matches[i] = ordinal < ordinals.length && ordinals[ordinal];
+            }
+            return VectorMask.fromArray(get.species(), matches, 0);
+        };
+    }
+
     private static VectorizedMask vectorizedTargetMaskNonAir() {
         // everything > VOID_AIR is not air
         return (set, get) -> get.compare(VectorOperators.UNSIGNED_GT, BlockTypesCache.ReservedIDs.VOID_AIR);
@@ -87,10 +213,119 @@ private static VectorizedMask vectorizedTargetMaskInverse(char ordinal) {
                     blockStateHolder,
                     blockStateHolder.getOrdinalChar()
             );
+            case RandomPattern random -> vectorizedRandomPattern(random);
             default -> null;
         };
     }
 
+    /**
+     * Vectorize a random pattern of plain blocks, if its blocks are chosen independently per position. The blocks are chosen
+     * by a hash of their position within the section and a seed for the section instead of the random of the pattern.
+     */
+    private static @Nullable VectorizedFilter vectorizedRandomPattern(RandomPattern pattern) {
+        if (!(pattern.getCollection().getRandom() instanceof TrueRandom)) {
+            // other randoms produce noise or gradients depending on the position
+            return null;
+        }
+        Map<Pattern, Double> weights = pattern.getWeights();
+        if (weights.isEmpty() || weights.size() > MAX_RANDOM_PATTERNS) {
+            return null;
+        }
+        double total = 0;
+        for (Map.Entry<Pattern, Double> entry : weights.entrySet()) {
+            if (!(entry.getValue() > 0)) {
+                return null;
+            }
+            total += entry.getValue();
+        }
+        char[] ordinals = new char[weights.size()];
+        short[] thresholds = new short[weights.size()];
+        double cumulative = 0;
+        int i = 0;
+        for (Map.Entry<Pattern, Double> entry : weights.entrySet()) {
+            char ordinal;
+            if (entry.getKey() instanceof BaseBlock block && block.getNbtReference() == null) {
+                ordinal = block.getOrdinalChar();
+            } else if (entry.getKey() instanceof BlockState state) {
+                ordinal = state.getOrdinalChar();
+            } else {
+                return null;
+            }
+            ordinals[i] = ordinal;
+            // the lowest hash choosing this block, out of 65536
+            thresholds[i] = (short) Math.min(65535, Math.round(cumulative / total * 65536));
+            cumulative += entry.getValue();
+            i++;
+        }
+        return new VectorizedRandomPattern<>(pattern, ordinals, thresholds, ThreadLocalRandom.current().nextLong());
+    }
+
+    private static final class VectorizedRandomPattern<T extends Filter> extends DelegateFilter<T> implements VectorizedFilter {
+
+        private final char[] ordinals;
+        private final short[] thresholds;
+        private final long seed;
+        private int unpositioned;
+
+        private VectorizedRandomPattern(final T parent, char[] ordinals, short[] thresholds, long seed) {
+            super(parent);
+            this.ordinals = ordinals;
+            this.thresholds = thresholds;
+            this.seed = seed;
+        }
+
+        @Override
+        public ShortVector applyVector(final ShortVector get, final ShortVector set) {
+            int index = unpositioned;
+            unpositioned += get.length();
+            return applyVector(get, set, index >> 12, 0, 0, index & 4095);
+        }
+
+        @Override
+        public ShortVector applyVector(
+                final ShortVector get,
+                final ShortVector set,
+                final int chunkX,
+                final int layer,
+                final int chunkZ,
+                final int index
+        ) {
+            long sectionSeed = mix64(seed ^ chunkX * 0x9E3779B97F4A7C15L ^ chunkZ * 0xC2B2AE3D27D4EB4FL
+                    ^ layer * 0x165667B19E3779F9L);
+            ShortVector hash = ShortVector.zero(get.species()).addIndex(1).add((short) index);
+            hash = hash16(hash.lanewise(VectorOperators.XOR, (short) sectionSeed));
+            hash = hash16(hash.add((short) (sectionSeed >>> 16)));
+            ShortVector result = ShortVector.broadcast(get.species(), ordinals[0]);
+            for (int i = 1; i < ordinals.length; i++) {
+                result = result.blend((short) ordinals[i], hash.compare(VectorOperators.UNSIGNED_GE, thresholds[i]));
+            }
+            return result;
+        }
+
+        private static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        /**
+         * A 16 bit integer hash (xorshift multiply), a permutation of the 16 bit values.
+         */
+        private static ShortVector hash16(ShortVector x) {
+            x = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 8));
+            x = x.mul((short) 0x88b5);
+            x = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 7));
+            x = x.mul((short) 0xdb2d);
+            return x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 9));
+        }
+
+        @Override
+        public Filter newInstance(final Filter other) {
+            return new VectorizedRandomPattern<>(other, ordinals, thresholds, seed);
+        }
+
+    }
+
     private static final class VectorizedPattern<T extends Filter> extends DelegateFilter<T> implements VectorizedFilter {
 
         private final char ordinal;
@@ -22,11 +22,14 @@ public synchronized void filter(final Filter filter) {
         char[] setArr = this.setArr;
         assert setArr != null;
         char[] getArr = this.getArr;
+        int chunkX = getChunkX();
+        int chunkZ = getChunkZ();
+        int layer = getLayer();
         // assume setArr.length == getArr.length == 4096
         for (int i = 0; i < 4096; i += species.length()) {
             ShortVector set = ShortVector.fromCharArray(species, setArr, i);
             ShortVector get = ShortVector.fromCharArray(species, getArr, i);
-            ShortVector res = vecFilter.applyVector(get, set);
+            ShortVector res = vecFilter.applyVector(get, set, chunkX, layer, chunkZ, i);
             res.intoCharArray(setArr, i);
         }
     }
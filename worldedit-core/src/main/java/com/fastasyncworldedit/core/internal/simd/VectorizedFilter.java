@@ -5,4 +5,21 @@
 
 public interface VectorizedFilter extends Filter {
     ShortVector applyVector(ShortVector get, ShortVector set);
+
+    /**
+     * Apply the filter to the blocks of a vector at a known position, for filters depending on the position of blocks.
+     *
+     * @param get    the existing blocks
+     * @param set    the blocks set so far
+     * @param chunkX the chunk x coordinate
+     * @param layer  the section layer
+     * @param chunkZ the chunk z coordinate
+     * @param index  the index of the first lane within the section, as {@code y << 8 | z << 4 | x}
+     * @return the blocks to set
+     * @since TODO
+     */
+    default ShortVector applyVector(ShortVector get, ShortVector set, int chunkX, int layer, int chunkZ, int index) {
+        return applyVector(get, set);
+    }
+
 }
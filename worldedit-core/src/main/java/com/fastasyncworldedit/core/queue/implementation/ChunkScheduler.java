@@ -0,0 +1,241 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import com.sk89q.worldedit.math.BlockVector2;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out the chunks of a region to parallel workers in spatially coherent tiles. The chunks are sorted along a Z-order
+ * (Morton) curve and cut where the curve leaves a square of tiles aligned to the minimum chunk, so each tile holds the chunks
+ * of the region within one such square. Tiles at the border of the region hold fewer chunks.
+ * Tiles are dealt to the workers round robin so all workers advance along the curve together. A worker out of tiles steals
+ * the last tile of the worker with the most tiles left.
+ * <p>
+ * The tiles of a worker form a deque: the owner takes tiles from the head and thieves from the tail, both by a single
+ * compare-and-set of the packed head and tail indices.
+ */
+final class ChunkScheduler {
+
+    private final long[] curve;
+    private final int minX;
+    private final int minZ;
+    // the index into the curve each tile starts at, followed by the curve length
+    private final int[] tileStarts;
+    private final int tileCount;
+    private final int workers;
+    // per worker: the head (high bits) and tail (low bits, exclusive) index into the worker's tiles
+    private final AtomicLongArray deques;
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param chunks   the chunks to hand out
+     * @param workers  the number of workers
+     * @param tileSize the side length of a tile in chunks, rounded down to a power of two
+     */
+    ChunkScheduler(Collection<BlockVector2> chunks, int workers, int tileSize) {
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        for (BlockVector2 chunk : chunks) {
+            minX = Math.min(minX, chunk.x());
+            minZ = Math.min(minZ, chunk.z());
+        }
+        this.minX = minX;
+        this.minZ = minZ;
+        this.curve = new long[chunks.size()];
+        int i = 0;
+        for (BlockVector2 chunk : chunks) {
+            curve[i++] = interleave(chunk.x() - minX) | interleave(chunk.z() - minZ) << 1;
+        }
+        Arrays.sort(curve);
+        // the chunks of an aligned square of the tile size share the bits of the curve above the square
+        int shift = Integer.numberOfTrailingZeros(Integer.highestOneBit(Math.max(1, tileSize))) << 1;
+        int[] starts = new int[curve.length + 1];
+        int count = 0;
+        for (i = 0; i < curve.length; i++) {
+            if (i == 0 || curve[i] >>> shift != curve[i - 1] >>> shift) {
+                starts[count++] = i;
+            }
+        }
+        starts[count] = curve.length;
+        this.tileStarts = Arrays.copyOf(starts, count + 1);
+        this.tileCount = count;
+        this.workers = workers;
+        this.deques = new AtomicLongArray(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            int tiles = worker < tileCount ? (tileCount - worker + workers - 1) / workers : 0;
+            deques.set(worker, tiles);
+        }
+    }
+
+    /**
+     * Spread the lower 32 bits of a value to the even bits of a long.
+     */
+    private static long interleave(int value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+        x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+        x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x << 2) & 0x3333333333333333L;
+        x = (x | x << 1) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Collect the even bits of a long into an int.
+     */
+    private static int deinterleave(long value) {
+        long x = value & 0x5555555555555555L;
+        x = (x | x >>> 1) & 0x3333333333333333L;
+        x = (x | x >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x >>> 4) & 0x00FF00FF00FF00FFL;
+        x = (x | x >>> 8) & 0x0000FFFF0000FFFFL;
+        x = (x | x >>> 16) & 0x00000000FFFFFFFFL;
+        return (int) x;
+    }
+
+    /**
+     * Get the number of chunks handed out so far.
+     */
+    int claimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Get all chunks in the order they are handed out in, assuming the workers advance evenly.
+     */
+    List<BlockVector2> order() {
+        return new AbstractList<>() {
+            @Override
+            public BlockVector2 get(int index) {
+                long key = curve[index];
+                return BlockVector2.at(minX + deinterleave(key), minZ + deinterleave(key >>> 1));
+            }
+
+            @Override
+            public int size() {
+                return curve.length;
+            }
+        };
+    }
+
+    Worker worker(int id) {
+        return new Worker(id);
+    }
+
+    /**
+     * Take the next tile of a worker from the head, or from the tail if stealing.
+     *
+     * @return the tile, or -1 if the worker has none left
+     */
+    private int take(int worker, boolean steal) {
+        while (true) {
+            long deque = deques.get(worker);
+            int head = (int) (deque >>> 32);
+            int tail = (int) deque;
+            if (head >= tail) {
+                return -1;
+            }
+            long next = steal ? ((long) head << 32) | (tail - 1) : ((long) (head + 1) << 32) | tail;
+            if (deques.compareAndSet(worker, deque, next)) {
+                return worker + (steal ? tail - 1 : head) * workers;
+            }
+        }
+    }
+
+    private int victim(int thief) {
+        int victim = -1;
+        int most = 0;
+        for (int worker = 0; worker < workers; worker++) {
+            long deque = deques.get(worker);
+            int left = (int) deque - (int) (deque >>> 32);
+            if (worker != thief && left > most) {
+                most = left;
+                victim = worker;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * A worker iterating over the chunks of its tiles. Not thread safe, each worker is used by a single thread.
+     */
+    final class Worker {
+
+        private final int id;
+        private int position;
+        private int end;
+        private int x;
+        private int z;
+        private int chunks;
+        private int tiles;
+        private int stolen;
+
+        private Worker(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Move to the next chunk.
+         *
+         * @return false if no chunks are left
+         */
+        boolean next() {
+            if (position == end && !nextTile()) {
+                return false;
+            }
+            long key = curve[position++];
+            x = minX + deinterleave(key);
+            z = minZ + deinterleave(key >>> 1);
+            chunks++;
+            return true;
+        }
+
+        private boolean nextTile() {
+            int tile = take(id, false);
+            while (tile < 0) {
+                int victim = victim(id);
+                if (victim < 0) {
+                    return false;
+                }
+                tile = take(victim, true);
+                if (tile >= 0) {
+                    stolen++;
+                }
+            }
+            tiles++;
+            position = tileStarts[tile];
+            end = tileStarts[tile + 1];
+            claimed.addAndGet(end - position);
+            return true;
+        }
+
+        int x() {
+            return x;
+        }
+
+        int z() {
+            return z;
+        }
+
+        int chunks() {
+            return chunks;
+        }
+
+        int tiles() {
+            return tiles;
+        }
+
+        int stolen() {
+            return stolen;
+        }
+
+    }
+
+}
@@ -9,16 +9,23 @@
 import com.fastasyncworldedit.core.extent.filter.CountFilter;
 import com.fastasyncworldedit.core.extent.filter.DistrFilter;
 import com.fastasyncworldedit.core.extent.filter.LinkedFilter;
+import com.fastasyncworldedit.core.extent.filter.SectionDistrFilter;
+import com.fastasyncworldedit.core.extent.filter.SectionHistogramCache;
 import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
 import com.fastasyncworldedit.core.extent.processor.BatchProcessorHolder;
 import com.fastasyncworldedit.core.extent.processor.MultiBatchProcessor;
+import com.fastasyncworldedit.core.function.mask.ABlockMask;
 import com.fastasyncworldedit.core.function.mask.BlockMaskBuilder;
+import com.fastasyncworldedit.core.function.pattern.ExpressionPattern;
 import com.fastasyncworldedit.core.internal.exception.FaweException;
 import com.fastasyncworldedit.core.internal.simd.SimdSupport;
 import com.fastasyncworldedit.core.internal.simd.VectorizedFilter;
 import com.fastasyncworldedit.core.queue.Filter;
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.preloader.Preloader;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
@@ -30,6 +37,7 @@
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Countable;
 import com.sk89q.worldedit.world.World;
@@ -39,10 +47,13 @@
 import com.sk89q.worldedit.world.block.BlockType;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Iterator;
+import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 public class ParallelQueueExtent extends PassthroughExtent {
@@ -61,6 +72,8 @@ public class ParallelQueueExtent extends PassthroughExtent {
     private int changes;
     private int lastException = Integer.MIN_VALUE;
     private int exceptionCount = 0;
+    private volatile List<WorkerMetrics> lastMetrics = List.of();
+    private EditTelemetry telemetry;
 
     public ParallelQueueExtent(QueueHandler handler, World world, boolean fastmode) {
         super(handler.getQueue(world, new BatchProcessorHolder(), new BatchProcessorHolder()));
@@ -119,6 +132,20 @@ public boolean cancel() {
         return false;
     }
 
+    /**
+     * Sets the telemetry of the edit using this queue, which the work of this queue and the queues of its workers is
+     * attributed to.
+     *
+     * @param telemetry the telemetry, or null for none
+     * @since TODO
+     */
+    public void setTelemetry(@Nullable EditTelemetry telemetry) {
+        this.telemetry = telemetry;
+        if (super.getExtent() instanceof SingleThreadQueueExtent queue) {
+            queue.setTelemetry(telemetry);
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     private IQueueExtent<IQueueChunk> getNewQueue() {
         return handler.getQueue(world, this.processor, this.postProcessor);
@@ -129,19 +156,38 @@ private IQueueExtent<IQueueChunk> getNewQueue() {
     public <T extends Filter> T apply(Region region, T filter, boolean full) {
         // The chunks positions to iterate over
         final Set<BlockVector2> chunks = region.getChunks();
-        final Iterator<BlockVector2> chunksIter = chunks.iterator();
 
         // Get a pool, to operate on the chunks in parallel
         final int size = Math.min(chunks.size(), Settings.settings().QUEUE.PARALLEL_THREADS);
+        final ChunkScheduler scheduler = new ChunkScheduler(
+                chunks,
+                Math.max(size, 1),
+                Settings.settings().QUEUE.PARALLEL_TILE_SIZE
+        );
+        final PreloadWindow preloadWindow = PreloadWindow.create(world, scheduler, Math.max(size, 1));
+        final WorkerMetrics[] metrics = new WorkerMetrics[Math.max(size, 1)];
         if (size <= 1) {
             // if PQE is ever used with PARALLEL_THREADS = 1, or only one chunk is edited, just run sequentially
+            final ChunkScheduler.Worker worker = scheduler.worker(0);
+            final long start = System.nanoTime();
             ChunkFilterBlock block = null;
-            while (chunksIter.hasNext()) {
-                BlockVector2 pos = chunksIter.next();
-                block = getExtent().apply(block, filter, region, pos.x(), pos.z(), full);
+            try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.FILTER)) {
+                while (worker.next()) {
+                    if (preloadWindow != null) {
+                        preloadWindow.advance(scheduler.claimed());
+                    }
+                    block = getExtent().apply(block, filter, region, worker.x(), worker.z(), full);
+                }
+            } finally {
+                if (preloadWindow != null) {
+                    preloadWindow.close();
+                }
             }
+            metrics[0] = WorkerMetrics.of(worker, System.nanoTime() - start);
         } else {
             final ForkJoinTask[] tasks = IntStream.range(0, size).mapToObj(i -> handler.submit(() -> {
+                final ChunkScheduler.Worker worker = scheduler.worker(i);
+                final long start = System.nanoTime();
                 try {
                     final Filter newFilter = filter.fork();
                     final Region newRegion = region.clone();
@@ -149,24 +195,18 @@ public <T extends Filter> T apply(Region region, T filter, boolean full) {
                     final SingleThreadQueueExtent queue = (SingleThreadQueueExtent) getNewQueue();
                     queue.setFastMode(fastmode);
                     queue.setFaweExceptionArray(faweExceptionReasonsUsed);
+                    queue.setTelemetry(telemetry);
                     enter(queue);
                     synchronized (queue) {
-                        try {
+                        try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.FILTER)) {
                             ChunkFilterBlock block = null;
 
-                            while (true) {
-                                // Get the next chunk posWeakChunk
-                                final int chunkX;
-                                final int chunkZ;
-                                synchronized (chunksIter) {
-                                    if (!chunksIter.hasNext()) {
-                                        break;
-                                    }
-                                    final BlockVector2 pos = chunksIter.next();
-                                    chunkX = pos.x();
-                                    chunkZ = pos.z();
+                            // Take the chunks of the worker's tiles, stealing tiles of other workers once done
+                            while (worker.next()) {
+                                if (preloadWindow != null) {
+                                    preloadWindow.advance(scheduler.claimed());
                                 }
-                                block = queue.apply(block, newFilter, newRegion, chunkX, chunkZ, full);
+                                block = queue.apply(block, newFilter, newRegion, worker.x(), worker.z(), full);
                             }
                             queue.flush();
                         } catch (Throwable t) {
@@ -191,6 +231,7 @@ public <T extends Filter> T apply(Region region, T filter, boolean full) {
                         LOGGER.warn(message);
                     }
                 } finally {
+                    metrics[i] = WorkerMetrics.of(worker, System.nanoTime() - start);
                     exit();
                 }
             })).toArray(ForkJoinTask[]::new);
@@ -200,13 +241,34 @@ public <T extends Filter> T apply(Region region, T filter, boolean full) {
                     task.quietlyJoin();
                 }
             }
+            if (preloadWindow != null) {
+                preloadWindow.close();
+            }
             filter.join();
         }
+        this.lastMetrics = List.of(metrics);
+        if (Settings.settings().ENABLED_COMPONENTS.DEBUG) {
+            LOGGER.info("Applied {} to {} chunks: {}", filter.getClass().getSimpleName(), chunks.size(), lastMetrics);
+        }
         return filter;
     }
 
+    /**
+     * Get the metrics of each worker of the last {@link #apply(Region, Filter, boolean)} completed.
+     *
+     * @return the metrics per worker, empty if nothing was applied yet
+     * @since TODO
+     */
+    public List<WorkerMetrics> getLastApplyMetrics() {
+        return lastMetrics;
+    }
+
     @Override
     public int countBlocks(Region region, Mask searchMask) {
+        if (searchMask instanceof ABlockMask blockMask && useSectionHistograms(region)) {
+            return apply(region, new SectionDistrFilter(world.getName(), searchMask.replacesAir()), searchMask.replacesAir())
+                    .getTotal(blockMask);
+        }
         return
                 // Apply a filter over a region
                 apply(region, searchMask
@@ -224,6 +286,10 @@ public <B extends BlockStateHolder<B>> int setBlocks(Region region, B block) thr
 
     @Override
     public int setBlocks(Region region, Pattern pattern) throws MaxChangedBlocksException {
+        if (pattern instanceof ExpressionPattern expressionPattern) {
+            // applied to every block, so it may be evaluated for whole sections
+            pattern = expressionPattern.evaluatingSections();
+        }
         VectorizedFilter vectorizedPattern = SimdSupport.vectorizedPattern(pattern);
         var filter = LinkedFilter.of(vectorizedPattern == null ? pattern : vectorizedPattern, new CountFilter());
         return this.changes = apply(region, filter, true).getRight().getTotal();
@@ -253,12 +319,26 @@ public int replaceBlocks(Region region, Mask mask, Pattern pattern)
 
     @Override
     public List<Countable<BlockState>> getBlockDistributionWithData(Region region) {
-        return apply(region, new DistrFilter(), true).getDistribution();
+        return getBlockDistributionFilter(region).getDistribution();
     }
 
     @Override
     public List<Countable<BlockType>> getBlockDistribution(Region region) {
-        return apply(region, new DistrFilter(), true).getTypeDistribution();
+        return getBlockDistributionFilter(region).getTypeDistribution();
+    }
+
+    private DistrFilter getBlockDistributionFilter(Region region) {
+        if (useSectionHistograms(region)) {
+            return apply(region, new SectionDistrFilter(world.getName(), true), true);
+        }
+        return apply(region, new DistrFilter(), true);
+    }
+
+    /**
+     * If blocks of the region can be counted per chunk section, see {@link SectionDistrFilter}.
+     */
+    private boolean useSectionHistograms(Region region) {
+        return SectionHistogramCache.isEnabled() && world != null && region instanceof CuboidRegion;
     }
 
     /**
@@ -316,4 +396,95 @@ public int replaceBlocks(Region region, Set<BaseBlock> filter, Pattern pattern)
         return replaceBlocks(region, mask, pattern);
     }
 
+    /**
+     * Requests the chunks a number of chunks ahead of the workers to be preloaded, in the order the workers take them, so
+     * workers rarely wait for a chunk to load. Advanced by each worker without locking: whichever worker moves the window
+     * far enough requests the next batch.
+     */
+    private static final class PreloadWindow {
+
+        private static final int BATCH_SIZE = 16;
+
+        private final Preloader preloader;
+        private final World world;
+        private final List<BlockVector2> order;
+        private final int lookahead;
+        private final AtomicInteger requested = new AtomicInteger();
+        private final Queue<Preloader.Request> requests = new ConcurrentLinkedQueue<>();
+
+        private PreloadWindow(Preloader preloader, World world, List<BlockVector2> order, int lookahead) {
+            this.preloader = preloader;
+            this.world = world;
+            this.order = order;
+            this.lookahead = lookahead;
+            advance(0);
+        }
+
+        @Nullable
+        static PreloadWindow create(World world, ChunkScheduler scheduler, int threads) {
+            int lookahead = Math.min(Settings.settings().QUEUE.PRELOAD_CHUNK_COUNT, threads * BATCH_SIZE);
+            // chunks would all be requested at once, no need for a preloader
+            if (lookahead <= 0 || scheduler.order().size() <= threads) {
+                return null;
+            }
+            Preloader preloader = Fawe.platform().getPreloader(true);
+            if (preloader == null) {
+                return null;
+            }
+            return new PreloadWindow(preloader, world, scheduler.order(), lookahead);
+        }
+
+        /**
+         * Move the window to the given number of chunks handed out to the workers.
+         */
+        void advance(int claimed) {
+            int target = Math.min(order.size(), claimed + lookahead);
+            while (true) {
+                int current = requested.get();
+                if (target - current < BATCH_SIZE && (target < order.size() || current >= target)) {
+                    return;
+                }
+                if (requested.compareAndSet(current, target)) {
+                    requests.add(preloader.preload(world, List.copyOf(order.subList(current, target))));
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Drop the chunks not requested from the world yet, once the workers are done.
+         */
+        void close() {
+            Preloader.Request request;
+            while ((request = requests.poll()) != null) {
+                request.close();
+            }
+        }
+
+    }
+
+    /**
+     * The work done by a worker during an {@link #apply(Region, Filter, boolean)}.
+     *
+     * @param chunks      the number of chunks processed
+     * @param tiles       the number of tiles processed, including stolen ones
+     * @param stolenTiles the number of tiles taken from other workers
+     * @param nanos       the time spent in nanoseconds
+     * @since TODO
+     */
+    public record WorkerMetrics(int chunks, int tiles, int stolenTiles, long nanos) {
+
+        private static WorkerMetrics of(ChunkScheduler.Worker worker, long nanos) {
+            return new WorkerMetrics(worker.chunks(), worker.tiles(), worker.stolen(), nanos);
+        }
+
+        /**
+         * Get the number of chunks processed per second.
+         */
+        public double chunksPerSecond() {
+            return nanos == 0 ? 0 : chunks * 1e9 / nanos;
+        }
+
+    }
+
 }
@@ -19,6 +19,7 @@
 import com.fastasyncworldedit.core.queue.implementation.chunk.NullChunk;
 import com.fastasyncworldedit.core.util.MathMan;
 import com.fastasyncworldedit.core.util.MemUtil;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.fastasyncworldedit.core.wrappers.WorldWrapper;
 import com.google.common.util.concurrent.Futures;
 import com.sk89q.worldedit.EditSession;
@@ -31,6 +32,7 @@
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -68,6 +70,7 @@ public class SingleThreadQueueExtent extends ExtentBatchProcessorHolder implemen
     private boolean[] faweExceptionReasonsUsed = new boolean[FaweException.Type.values().length];
     private int lastException = Integer.MIN_VALUE;
     private int exceptionCount = 0;
+    private EditTelemetry telemetry;
 
     public SingleThreadQueueExtent() {
     }
@@ -132,6 +135,26 @@ public void setFaweExceptionArray(final boolean[] faweExceptionReasonsUsed) {
         this.faweExceptionReasonsUsed = faweExceptionReasonsUsed;
     }
 
+    /**
+     * Sets the telemetry of the edit using this queue, which the stages of chunks of this queue are attributed to.
+     *
+     * @param telemetry the telemetry, or null for none
+     * @since TODO
+     */
+    public void setTelemetry(@Nullable EditTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Get the telemetry of the edit using this queue, if any.
+     *
+     * @since TODO
+     */
+    @Nullable
+    public EditTelemetry getTelemetry() {
+        return telemetry;
+    }
+
     /**
      * Resets the queue.
      */
@@ -154,6 +177,7 @@ protected synchronized void reset() {
         this.setPostProcessor(EmptyBatchProcessor.getInstance());
         this.world = null;
         this.faweExceptionReasonsUsed = new boolean[FaweException.Type.values().length];
+        this.telemetry = null;
     }
 
     /**
@@ -188,6 +212,16 @@ public synchronized void init(Extent extent, IChunkCache<IChunkGet> get, IChunkC
         }
     }
 
+    /**
+     * Get the world this queue was initialized for, if any.
+     *
+     * @since TODO
+     */
+    @Nullable
+    public World getWorld() {
+        return world;
+    }
+
     @Override
     public int size() {
         return chunks.size() + submissions.size();
@@ -1,5 +1,6 @@
 package com.fastasyncworldedit.core.queue.implementation.chunk;
 
+import com.fastasyncworldedit.core.extent.filter.SectionHistogramCache;
 import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
 import com.fastasyncworldedit.core.extent.processor.EmptyBatchProcessor;
 import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
@@ -11,10 +12,14 @@
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
 import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
 import com.fastasyncworldedit.core.util.MemUtil;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.sk89q.worldedit.internal.util.LogManagerCompat;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BiomeType;
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -22,19 +27,45 @@
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An abstract {@link IChunk} class that implements basic get/set blocks.
+ * <p>
+ * The get and set parts of the chunk and the delegate reflecting which of them are present are published with atomic
+ * compare-and-set transitions, so reading and setting single blocks takes no lock. Filtering, calling, trimming and
+ * initializing the chunk hold the {@link #getLock() lock} of the chunk, so they are exclusive to each other.
+ * <p>
+ * The delegates always go through {@link #getOrCreateGet()} and {@link #getOrCreateSet()}, so a part dropped by
+ * {@link #trim(boolean)} is recreated rather than read as null. Trimming only ever drops the get part, the set part a
+ * block may be written to without the lock stays attached.
  */
 @SuppressWarnings("rawtypes")
 public class ChunkHolder<T extends Future<T>> implements IQueueChunk<T> {
     private static final Logger LOGGER = LogManagerCompat.getLogger();
+    private static final VarHandle CHUNK_EXISTING;
+    private static final VarHandle CHUNK_SET;
+    private static final VarHandle DELEGATE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CHUNK_EXISTING = lookup.findVarHandle(ChunkHolder.class, "chunkExisting", IChunkGet.class);
+            CHUNK_SET = lookup.findVarHandle(ChunkHolder.class, "chunkSet", IChunkSet.class);
+            DELEGATE = lookup.findVarHandle(ChunkHolder.class, "delegate", IBlockDelegate.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     public static ChunkHolder newInstance() {
         return new ChunkHolder();
@@ -42,7 +73,8 @@ public static ChunkHolder newInstance() {
 
     private volatile IChunkGet chunkExisting; // The existing chunk (e.g. a clipboard, or the world, before changes)
     private volatile IChunkSet chunkSet; // The blocks to be set to the chunkExisting
-    private IBlockDelegate delegate; // delegate handles the abstraction of the chunk layers
+    private volatile IBlockDelegate delegate; // delegate handles the abstraction of the chunk layers
+    private final ReentrantLock lock = new ReentrantLock(); // held while filtering, calling, trimming or initializing
     private IQueueExtent<? extends IChunk> extent; // the parent queue extent which has this chunk
     private int chunkX;
     private int chunkZ;
@@ -72,7 +104,7 @@ public long initAge() {
         return System.currentTimeMillis() - initTime;
     }
 
-    public synchronized IBlockDelegate getDelegate() {
+    public IBlockDelegate getDelegate() {
         return delegate;
     }
 
@@ -120,10 +152,11 @@ public char[] load(int layer) {
     @Nullable
     @Override
     public char[] loadIfPresent(final int layer) {
-        if (chunkExisting == null) {
+        IChunkGet get = chunkExisting;
+        if (get == null) {
             return null;
         }
-        return chunkExisting.loadIfPresent(layer);
+        return get.loadIfPresent(layer);
     }
 
     @Override
@@ -147,7 +180,8 @@ public int getBitMask() {
     @Override
     public boolean hasBiomes(final int layer) {
         // No need to go through delegate. hasBiomes is SET only.
-        return chunkSet != null && chunkSet.hasBiomes(layer);
+        IChunkSet set = chunkSet;
+        return set != null && set.hasBiomes(layer);
     }
 
     public boolean isInit() {
@@ -207,12 +241,12 @@ public void flushLightToGet() {
     private static final IBlockDelegate BOTH = new IBlockDelegate() {
         @Override
         public IChunkGet get(ChunkHolder chunk) {
-            return chunk.chunkExisting;
+            return chunk.getOrCreateGet();
         }
 
         @Override
         public IChunkSet set(ChunkHolder chunk) {
-            return chunk.chunkSet;
+            return chunk.getOrCreateSet();
         }
 
         @Override
@@ -220,7 +254,7 @@ public boolean setBiome(
                 ChunkHolder chunk, int x, int y, int z,
                 BiomeType biome
         ) {
-            return chunk.chunkSet.setBiome(x, y, z, biome);
+            return chunk.getOrCreateSet().setBiome(x, y, z, biome);
         }
 
         @Override
@@ -228,154 +262,153 @@ public <B extends BlockStateHolder<B>> boolean setBlock(
                 ChunkHolder chunk, int x, int y, int z,
                 B block
         ) {
-            return chunk.chunkSet.setBlock(x, y, z, block);
+            return chunk.getOrCreateSet().setBlock(x, y, z, block);
         }
 
         @Override
         public void setSkyLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.chunkSet.setSkyLight(x, y, z, value);
+            chunk.getOrCreateSet().setSkyLight(x, y, z, value);
         }
 
         @Override
         public void setBlockLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.chunkSet.setBlockLight(x, y, z, value);
+            chunk.getOrCreateSet().setBlockLight(x, y, z, value);
         }
 
         @Override
         public void removeSectionLighting(ChunkHolder chunk, int layer, boolean sky) {
-            chunk.chunkSet.removeSectionLighting(layer, sky);
-            chunk.chunkExisting.removeSectionLighting(layer, sky);
+            chunk.getOrCreateSet().removeSectionLighting(layer, sky);
+            chunk.getOrCreateGet().removeSectionLighting(layer, sky);
         }
 
         @Override
         public void setFullBright(ChunkHolder chunk, int layer) {
-            chunk.chunkSet.setFullBright(layer);
+            chunk.getOrCreateSet().setFullBright(layer);
         }
 
         @Override
         public void setLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.chunkSet.setLightLayer(layer, toSet);
+            chunk.getOrCreateSet().setLightLayer(layer, toSet);
         }
 
         @Override
         public void setSkyLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.chunkSet.setSkyLightLayer(layer, toSet);
+            chunk.getOrCreateSet().setSkyLightLayer(layer, toSet);
         }
 
         @Override
         public void setHeightMap(ChunkHolder chunk, HeightMapType type, int[] heightMap) {
-            chunk.chunkSet.setHeightMap(type, heightMap);
+            chunk.getOrCreateSet().setHeightMap(type, heightMap);
         }
 
         @Override
         public BiomeType getBiome(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBiomeType(x, y, z);
+            return chunk.getOrCreateGet().getBiomeType(x, y, z);
         }
 
         @Override
         public BlockState getBlock(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBlock(x, y, z);
+            return chunk.getOrCreateGet().getBlock(x, y, z);
         }
 
         @Override
         public BaseBlock getFullBlock(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getFullBlock(x, y, z);
+            return chunk.getOrCreateGet().getFullBlock(x, y, z);
         }
 
         @Override
         public int getSkyLight(ChunkHolder chunk, int x, int y, int z) {
-            if (chunk.chunkSet.getSkyLight() != null) {
+            IChunkSet set = chunk.getOrCreateSet();
+            if (set.getSkyLight() != null) {
                 int layer = y >> 4;
-                layer -= chunk.chunkSet.getMinSectionPosition();
-                if (layer >= 0 && layer < chunk.chunkSet.getSectionCount()) {
-                    if (chunk.chunkSet.getSkyLight()[layer] != null) {
-                        int setLightValue = chunk.chunkSet.getSkyLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
+                layer -= set.getMinSectionPosition();
+                if (layer >= 0 && layer < set.getSectionCount()) {
+                    if (set.getSkyLight()[layer] != null) {
+                        int setLightValue = set.getSkyLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
                         if (setLightValue < 16) {
                             return setLightValue;
                         }
                     }
                 }
             }
-            return chunk.chunkExisting.getSkyLight(x, y, z);
+            return chunk.getOrCreateGet().getSkyLight(x, y, z);
         }
 
         @Override
         public int getEmittedLight(ChunkHolder chunk, int x, int y, int z) {
-            if (chunk.chunkSet.getLight() != null) {
+            IChunkSet set = chunk.getOrCreateSet();
+            if (set.getLight() != null) {
                 int layer = y >> 4;
-                layer -= chunk.chunkSet.getMinSectionPosition();
-                if (layer >= 0 && layer < chunk.chunkSet.getSectionCount()) {
-                    if (chunk.chunkSet.getLight()[layer] != null) {
-                        int setLightValue = chunk.chunkSet.getLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
+                layer -= set.getMinSectionPosition();
+                if (layer >= 0 && layer < set.getSectionCount()) {
+                    if (set.getLight()[layer] != null) {
+                        int setLightValue = set.getLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
                         if (setLightValue < 16) {
                             return setLightValue;
                         }
                     }
                 }
             }
-            return chunk.chunkExisting.getEmittedLight(x, y, z);
+            return chunk.getOrCreateGet().getEmittedLight(x, y, z);
         }
 
         @Override
         public int getBrightness(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBrightness(x, y, z);
+            return chunk.getOrCreateGet().getBrightness(x, y, z);
         }
 
         @Override
         public int getOpacity(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getOpacity(x, y, z);
+            return chunk.getOrCreateGet().getOpacity(x, y, z);
         }
 
         @Override
         public int[] getHeightMap(ChunkHolder chunk, HeightMapType type) {
-            return chunk.chunkExisting.getHeightMap(type);
+            return chunk.getOrCreateGet().getHeightMap(type);
         }
 
         @Override
         public void flushLightToGet(ChunkHolder chunk) {
-            chunk.chunkExisting.setLightingToGet(chunk.chunkSet.getLight(), chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
-            );
-            chunk.chunkExisting.setSkyLightingToGet(chunk.chunkSet.getSkyLight(), chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
-            );
+            IChunkGet get = chunk.getOrCreateGet();
+            IChunkSet set = chunk.getOrCreateSet();
+            get.setLightingToGet(set.getLight(), set.getMinSectionPosition(), set.getMaxSectionPosition());
+            get.setSkyLightingToGet(set.getSkyLight(), set.getMinSectionPosition(), set.getMaxSectionPosition());
         }
 
         @Override
         public void setLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.chunkExisting.setLightingToGet(
+            chunk.getOrCreateGet().setLightingToGet(
                     lighting,
-                    chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
+                    chunk.getOrCreateSet().getMinSectionPosition(),
+                    chunk.getOrCreateSet().getMaxSectionPosition()
             );
         }
 
         @Override
         public void setSkyLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.chunkExisting.setSkyLightingToGet(
+            chunk.getOrCreateGet().setSkyLightingToGet(
                     lighting,
-                    chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
+                    chunk.getOrCreateSet().getMinSectionPosition(),
+                    chunk.getOrCreateSet().getMaxSectionPosition()
             );
         }
 
         @Override
         public void setHeightmapToGet(ChunkHolder chunk, HeightMapType type, int[] data) {
-            chunk.chunkExisting.setHeightmapToGet(type, data);
+            chunk.getOrCreateGet().setHeightmapToGet(type, data);
         }
     };
 
     private static final IBlockDelegate GET = new IBlockDelegate() {
         @Override
         public IChunkGet get(ChunkHolder chunk) {
-            return chunk.chunkExisting;
+            return chunk.getOrCreateGet();
         }
 
         @Override
         public IChunkSet set(ChunkHolder chunk) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
-            return chunk.chunkSet;
+            chunk.promoteSet();
+            return chunk.getOrCreateSet();
         }
 
         @Override
@@ -383,8 +416,7 @@ public boolean setBiome(
                 ChunkHolder chunk, int x, int y, int z,
                 BiomeType biome
         ) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             return chunk.setBiome(x, y, z, biome);
         }
 
@@ -393,68 +425,60 @@ public <B extends BlockStateHolder<B>> boolean setBlock(
                 ChunkHolder chunk, int x, int y, int z,
                 B block
         ) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             return chunk.setBlock(x, y, z, block);
         }
 
         @Override
         public void setSkyLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setSkyLight(x, y, z, value);
         }
 
         @Override
         public void setBlockLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setBlockLight(x, y, z, value);
         }
 
         @Override
         public void removeSectionLighting(ChunkHolder chunk, int layer, boolean sky) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.removeSectionLighting(layer, sky);
         }
 
         @Override
         public void setFullBright(ChunkHolder chunk, int layer) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setFullBright(layer);
         }
 
         @Override
         public void setLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setLightLayer(layer, toSet);
         }
 
         @Override
         public void setSkyLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setSkyLightLayer(layer, toSet);
         }
 
         @Override
         public void setHeightMap(ChunkHolder chunk, HeightMapType type, int[] heightMap) {
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteSet();
             chunk.setHeightMap(type, heightMap);
         }
 
         @Override
         public BiomeType getBiome(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBiomeType(x, y, z);
+            return chunk.getOrCreateGet().getBiomeType(x, y, z);
         }
 
         @Override
         public BlockState getBlock(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBlock(x, y, z);
+            return chunk.getOrCreateGet().getBlock(x, y, z);
         }
 
         @Override
@@ -462,32 +486,32 @@ public BaseBlock getFullBlock(
                 ChunkHolder chunk, int x, int y,
                 int z
         ) {
-            return chunk.chunkExisting.getFullBlock(x, y, z);
+            return chunk.getOrCreateGet().getFullBlock(x, y, z);
         }
 
         @Override
         public int getSkyLight(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getSkyLight(x, y, z);
+            return chunk.getOrCreateGet().getSkyLight(x, y, z);
         }
 
         @Override
         public int getEmittedLight(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getEmittedLight(x, y, z);
+            return chunk.getOrCreateGet().getEmittedLight(x, y, z);
         }
 
         @Override
         public int getBrightness(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getBrightness(x, y, z);
+            return chunk.getOrCreateGet().getBrightness(x, y, z);
         }
 
         @Override
         public int getOpacity(ChunkHolder chunk, int x, int y, int z) {
-            return chunk.chunkExisting.getOpacity(x, y, z);
+            return chunk.getOrCreateGet().getOpacity(x, y, z);
         }
 
         @Override
         public int[] getHeightMap(ChunkHolder chunk, HeightMapType type) {
-            return chunk.chunkExisting.getHeightMap(type);
+            return chunk.getOrCreateGet().getHeightMap(type);
         }
 
         @Override
@@ -497,39 +521,38 @@ public void flushLightToGet(ChunkHolder chunk) {
 
         @Override
         public void setLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.chunkExisting.setLightingToGet(
+            chunk.getOrCreateGet().setLightingToGet(
                     lighting,
-                    chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
+                    chunk.getOrCreateSet().getMinSectionPosition(),
+                    chunk.getOrCreateSet().getMaxSectionPosition()
             );
         }
 
         @Override
         public void setSkyLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.chunkExisting.setSkyLightingToGet(
+            chunk.getOrCreateGet().setSkyLightingToGet(
                     lighting,
-                    chunk.chunkSet.getMinSectionPosition(),
-                    chunk.chunkSet.getMaxSectionPosition()
+                    chunk.getOrCreateSet().getMinSectionPosition(),
+                    chunk.getOrCreateSet().getMaxSectionPosition()
             );
         }
 
         @Override
         public void setHeightmapToGet(ChunkHolder chunk, HeightMapType type, int[] data) {
-            chunk.chunkExisting.setHeightmapToGet(type, data);
+            chunk.getOrCreateGet().setHeightmapToGet(type, data);
         }
     };
 
     private static final IBlockDelegate SET = new IBlockDelegate() {
         @Override
         public IChunkGet get(ChunkHolder chunk) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
-            return chunk.chunkExisting;
+            chunk.promoteGet();
+            return chunk.getOrCreateGet();
         }
 
         @Override
         public IChunkSet set(ChunkHolder chunk) {
-            return chunk.chunkSet;
+            return chunk.getOrCreateSet();
         }
 
         @Override
@@ -537,7 +560,7 @@ public boolean setBiome(
                 ChunkHolder chunk, int x, int y, int z,
                 BiomeType biome
         ) {
-            return chunk.chunkSet.setBiome(x, y, z, biome);
+            return chunk.getOrCreateSet().setBiome(x, y, z, biome);
         }
 
         @Override
@@ -548,57 +571,54 @@ public <B extends BlockStateHolder<B>> boolean setBlock(
                 int z,
                 B block
         ) {
-            return chunk.chunkSet.setBlock(x, y, z, block);
+            return chunk.getOrCreateSet().setBlock(x, y, z, block);
         }
 
         @Override
         public void setSkyLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.chunkSet.setSkyLight(x, y, z, value);
+            chunk.getOrCreateSet().setSkyLight(x, y, z, value);
         }
 
         @Override
         public void setBlockLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.chunkSet.setBlockLight(x, y, z, value);
+            chunk.getOrCreateSet().setBlockLight(x, y, z, value);
         }
 
         @Override
         public void removeSectionLighting(ChunkHolder chunk, int layer, boolean sky) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             chunk.removeSectionLighting(layer, sky);
         }
 
         @Override
         public void setFullBright(ChunkHolder chunk, int layer) {
-            chunk.chunkSet.setFullBright(layer);
+            chunk.getOrCreateSet().setFullBright(layer);
         }
 
         @Override
         public void setLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.chunkSet.setLightLayer(layer, toSet);
+            chunk.getOrCreateSet().setLightLayer(layer, toSet);
         }
 
         @Override
         public void setSkyLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.chunkSet.setSkyLightLayer(layer, toSet);
+            chunk.getOrCreateSet().setSkyLightLayer(layer, toSet);
         }
 
         @Override
         public void setHeightMap(ChunkHolder chunk, HeightMapType type, int[] heightMap) {
-            chunk.chunkSet.setHeightMap(type, heightMap);
+            chunk.getOrCreateSet().setHeightMap(type, heightMap);
         }
 
         @Override
         public BiomeType getBiome(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getBiomeType(x, y, z);
         }
 
         @Override
         public BlockState getBlock(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getBlock(x, y, z);
         }
 
@@ -607,95 +627,87 @@ public BaseBlock getFullBlock(
                 ChunkHolder chunk, int x, int y,
                 int z
         ) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getFullBlock(x, y, z);
         }
 
         @Override
         public int getSkyLight(ChunkHolder chunk, int x, int y, int z) {
-            if (chunk.chunkSet.getSkyLight() != null) {
+            IChunkSet set = chunk.getOrCreateSet();
+            if (set.getSkyLight() != null) {
                 int layer = y >> 4;
-                layer -= chunk.chunkSet.getMinSectionPosition();
-                if (layer >= 0 && layer < chunk.chunkSet.getSectionCount()) {
-                    if (chunk.chunkSet.getSkyLight()[layer] != null) {
-                        int setLightValue = chunk.chunkSet.getSkyLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
+                layer -= set.getMinSectionPosition();
+                if (layer >= 0 && layer < set.getSectionCount()) {
+                    if (set.getSkyLight()[layer] != null) {
+                        int setLightValue = set.getSkyLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
                         if (setLightValue < 16) {
                             return setLightValue;
                         }
                     }
                 }
             }
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getSkyLight(x, y, z);
         }
 
         @Override
         public int getEmittedLight(ChunkHolder chunk, int x, int y, int z) {
-            if (chunk.chunkSet.getLight() != null) {
+            IChunkSet set = chunk.getOrCreateSet();
+            if (set.getLight() != null) {
                 int layer = y >> 4;
-                layer -= chunk.chunkSet.getMinSectionPosition();
-                if (layer >= 0 && layer < chunk.chunkSet.getSectionCount()) {
-                    if (chunk.chunkSet.getLight()[layer] != null) {
-                        int setLightValue = chunk.chunkSet.getLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
+                layer -= set.getMinSectionPosition();
+                if (layer >= 0 && layer < set.getSectionCount()) {
+                    if (set.getLight()[layer] != null) {
+                        int setLightValue = set.getLight()[layer][(y & 15) << 8 | (z & 15) << 4 | (x & 15)];
                         if (setLightValue < 16) {
                             return setLightValue;
                         }
                     }
                 }
             }
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getEmittedLight(x, y, z);
         }
 
         @Override
         public int getBrightness(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getBrightness(x, y, z);
         }
 
         @Override
         public int getOpacity(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getOpacity(x, y, z);
         }
 
         @Override
         public int[] getHeightMap(ChunkHolder chunk, HeightMapType type) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             return chunk.getHeightMap(type);
         }
 
         @Override
         public void flushLightToGet(ChunkHolder chunk) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             chunk.flushLightToGet();
         }
 
         @Override
         public void setLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
-            chunk.setLightingToGet(lighting, chunk.chunkSet.getMinSectionPosition(), chunk.chunkSet.getMaxSectionPosition());
+            chunk.promoteGet();
+            chunk.setLightingToGet(lighting, chunk.getMinSectionPosition(), chunk.getMaxSectionPosition());
         }
 
         @Override
         public void setSkyLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
-            chunk.setSkyLightingToGet(lighting, chunk.chunkSet.getMinSectionPosition(), chunk.chunkSet.getMaxSectionPosition());
+            chunk.promoteGet();
+            chunk.setSkyLightingToGet(lighting, chunk.getMinSectionPosition(), chunk.getMaxSectionPosition());
         }
 
         @Override
         public void setHeightmapToGet(ChunkHolder chunk, HeightMapType type, int[] data) {
-            chunk.getOrCreateGet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
             chunk.setHeightmapToGet(type, data);
         }
     };
@@ -703,43 +715,37 @@ public void setHeightmapToGet(ChunkHolder chunk, HeightMapType type, int[] data)
     private static final IBlockDelegate NULL = new IBlockDelegate() {
         @Override
         public IChunkGet get(ChunkHolder chunk) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
-            return chunk.chunkExisting;
+            chunk.promoteGet();
+            return chunk.getOrCreateGet();
         }
 
         @Override
         public IChunkSet set(ChunkHolder chunk) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
-            return chunk.chunkSet;
+            chunk.promoteSet();
+            return chunk.getOrCreateSet();
         }
 
         @Override
         public boolean setBiome(ChunkHolder chunk, int x, int y, int z, BiomeType biome) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             return chunk.setBiome(x, y, z, biome);
         }
 
         @Override
         public <B extends BlockStateHolder<B>> boolean setBlock(ChunkHolder chunk, int x, int y, int z, B block) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             return chunk.setBlock(x, y, z, block);
         }
 
         @Override
         public BiomeType getBiome(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getBiomeType(x, y, z);
         }
 
         @Override
         public BlockState getBlock(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getBlock(x, y, z);
         }
 
@@ -748,93 +754,80 @@ public BaseBlock getFullBlock(
                 ChunkHolder chunk, int x, int y,
                 int z
         ) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getFullBlock(x, y, z);
         }
 
         @Override
         public void setSkyLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setSkyLight(x, y, z, value);
         }
 
         @Override
         public void setBlockLight(ChunkHolder chunk, int x, int y, int z, int value) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setBlockLight(x, y, z, value);
         }
 
         @Override
         public void removeSectionLighting(ChunkHolder chunk, int layer, boolean sky) {
-            chunk.getOrCreateGet();
-            chunk.getOrCreateSet();
-            chunk.delegate = BOTH;
+            chunk.promoteGet();
+            chunk.promoteSet();
             chunk.removeSectionLighting(layer, sky);
         }
 
         @Override
         public void setFullBright(ChunkHolder chunk, int layer) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setFullBright(layer);
         }
 
         @Override
         public void setLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setLightLayer(layer, toSet);
         }
 
         @Override
         public void setSkyLightLayer(ChunkHolder chunk, int layer, char[] toSet) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setSkyLightLayer(layer, toSet);
         }
 
         @Override
         public void setHeightMap(ChunkHolder chunk, HeightMapType type, int[] heightMap) {
-            chunk.getOrCreateSet();
-            chunk.delegate = SET;
+            chunk.promoteSet();
             chunk.setHeightMap(type, heightMap);
         }
 
         @Override
         public int getSkyLight(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getSkyLight(x, y, z);
         }
 
         @Override
         public int getEmittedLight(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getEmittedLight(x, y, z);
         }
 
         @Override
         public int getBrightness(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getBrightness(x, y, z);
         }
 
         @Override
         public int getOpacity(ChunkHolder chunk, int x, int y, int z) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getOpacity(x, y, z);
         }
 
         @Override
         public int[] getHeightMap(ChunkHolder chunk, HeightMapType type) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             return chunk.getHeightMap(type);
         }
 
@@ -845,70 +838,89 @@ public void flushLightToGet(ChunkHolder chunk) {
 
         @Override
         public void setLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
-            chunk.setLightingToGet(lighting, chunk.chunkSet.getMinSectionPosition(), chunk.chunkSet.getMaxSectionPosition());
+            chunk.promoteGet();
+            chunk.setLightingToGet(lighting, chunk.getMinSectionPosition(), chunk.getMaxSectionPosition());
         }
 
         @Override
         public void setSkyLightingToGet(ChunkHolder chunk, char[][] lighting) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
-            chunk.setSkyLightingToGet(lighting, chunk.chunkSet.getMinSectionPosition(), chunk.chunkSet.getMaxSectionPosition());
+            chunk.promoteGet();
+            chunk.setSkyLightingToGet(lighting, chunk.getMinSectionPosition(), chunk.getMaxSectionPosition());
         }
 
         @Override
         public void setHeightmapToGet(ChunkHolder chunk, HeightMapType type, int[] data) {
-            chunk.getOrCreateGet();
-            chunk.delegate = GET;
+            chunk.promoteGet();
             chunk.setHeightmapToGet(type, data);
         }
     };
 
     @Override
     public boolean hasSection(int layer) {
-        return chunkExisting != null && chunkExisting.hasSection(layer);
+        IChunkGet get = chunkExisting;
+        return get != null && get.hasSection(layer);
     }
 
     @Override
-    public synchronized void filterBlocks(Filter filter, ChunkFilterBlock block, @Nullable Region region, boolean full) {
-        final IChunkGet get = getOrCreateGet();
-        final IChunkSet set = getOrCreateSet();
-        set.setFastMode(fastmode);
+    public void filterBlocks(Filter filter, ChunkFilterBlock block, @Nullable Region region, boolean full) {
+        lock.lock();
         try {
-            block.filter(this, get, set, filter, region, full);
+            final IChunkGet get = getOrCreateGet();
+            final IChunkSet set = getOrCreateSet();
+            set.setFastMode(fastmode);
+            try {
+                block.filter(this, get, set, filter, region, full);
+            } finally {
+                filter.finishChunk(this);
+            }
         } finally {
-            filter.finishChunk(this);
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized boolean trim(boolean aggressive) {
-        // always trim GET. It could be cached elsewhere.
-        chunkExisting.trim(aggressive);
-        if (chunkSet != null) {
-            final boolean result = chunkSet.trim(aggressive);
-            if (result) {
-                delegate = NULL;
-                chunkExisting = null;
-                chunkSet.recycle();
-                chunkSet = null;
-                return true;
+    public boolean trim(boolean aggressive) {
+        lock.lock();
+        try {
+            // always trim GET. It could be cached elsewhere.
+            IChunkGet get = chunkExisting;
+            if (get != null) {
+                get.trim(aggressive);
             }
-        }
-        if (aggressive) {
-            chunkExisting = null;
-            if (delegate == BOTH) {
-                delegate = SET;
-            } else if (delegate == GET) {
-                delegate = NULL;
+            IChunkSet set = chunkSet;
+            // An empty set stays attached: a block may be set into it without the lock at any time, so it can be
+            // neither dropped nor recycled without losing that change
+            boolean result = set != null && set.trim(aggressive);
+            if (result || aggressive) {
+                dropGet();
             }
+            return result;
+        } finally {
+            lock.unlock();
         }
-        return false;
+    }
+
+    /**
+     * Move the delegate to the state without the existing part, then drop it. Readers racing with this recreate it.
+     */
+    private void dropGet() {
+        IBlockDelegate current;
+        IBlockDelegate next;
+        do {
+            current = delegate;
+            if (current == BOTH) {
+                next = SET;
+            } else if (current == GET) {
+                next = NULL;
+            } else {
+                break;
+            }
+        } while (!DELEGATE.compareAndSet(this, current, next));
+        chunkExisting = null;
     }
 
     @Override
-    public synchronized boolean trim(boolean aggressive, int layer) {
+    public boolean trim(boolean aggressive, int layer) {
         return this.trim(aggressive);
     }
 
@@ -919,7 +931,8 @@ public int getSectionCount() {
 
     @Override
     public boolean isEmpty() {
-        return chunkSet == null || chunkSet.isEmpty();
+        IChunkSet set = chunkSet;
+        return set == null || set.isEmpty();
     }
 
     @Override
@@ -931,21 +944,85 @@ public boolean tile(final int x, final int y, final int z, final FaweCompoundTag
      * Get or create the existing part of this chunk.
      */
     public final IChunkGet getOrCreateGet() {
-        if (chunkExisting == null) {
-            chunkExisting = newWrappedGet();
-            chunkExisting.trim(MemUtil.isMemoryLimited());
+        IChunkGet get = chunkExisting;
+        if (get == null) {
+            IChunkGet created = newWrappedGet();
+            created.trim(MemUtil.isMemoryLimited());
+            get = (IChunkGet) CHUNK_EXISTING.compareAndExchange(this, null, created);
+            if (get == null) {
+                get = created;
+            }
         }
-        return chunkExisting;
+        return get;
     }
 
     /**
      * Get or create the settable part of this chunk.
      */
     public final IChunkSet getOrCreateSet() {
-        if (chunkSet == null) {
-            chunkSet = newWrappedSet();
+        IChunkSet set = chunkSet;
+        if (set == null) {
+            IChunkSet created = newWrappedSet();
+            set = (IChunkSet) CHUNK_SET.compareAndExchange(this, null, created);
+            if (set == null) {
+                set = created;
+            } else {
+                // another thread was faster
+                created.recycle();
+            }
         }
-        return chunkSet;
+        return set;
+    }
+
+    /**
+     * Create the existing part of this chunk if not present and move the delegate to a state with it.
+     */
+    private void promoteGet() {
+        do {
+            getOrCreateGet();
+            IBlockDelegate current;
+            IBlockDelegate next;
+            do {
+                current = delegate;
+                if (current == NULL) {
+                    next = GET;
+                } else if (current == SET) {
+                    next = BOTH;
+                } else {
+                    break;
+                }
+            } while (!DELEGATE.compareAndSet(this, current, next));
+            // trimmed in between, the delegate may have moved on before the existing part was dropped
+        } while (chunkExisting == null);
+    }
+
+    /**
+     * Create the settable part of this chunk if not present and move the delegate to a state with it.
+     */
+    private void promoteSet() {
+        getOrCreateSet();
+        IBlockDelegate current;
+        IBlockDelegate next;
+        do {
+            current = delegate;
+            if (current == NULL) {
+                next = SET;
+            } else if (current == GET) {
+                next = BOTH;
+            } else {
+                return;
+            }
+        } while (!DELEGATE.compareAndSet(this, current, next));
+    }
+
+    /**
+     * Get the lock held while filtering, calling, trimming or initializing this chunk. Changes to the set part of the chunk
+     * which have to be exclusive to those may hold it too.
+     *
+     * @since TODO
+     */
+    public Lock getLock() {
+        return lock;
     }
 
     /**
@@ -967,64 +1044,104 @@ private IChunkGet newWrappedGet() {
     }
 
     @Override
-    public synchronized <V extends IChunk> void init(IQueueExtent<V> extent, int chunkX, int chunkZ) {
-        this.initTime = System.currentTimeMillis();
-        this.extent = extent;
-        this.chunkX = chunkX;
-        this.chunkZ = chunkZ;
-        if (chunkSet != null) {
-            chunkSet.reset();
-            delegate = SET;
-        } else {
-            delegate = NULL;
+    public <V extends IChunk> void init(IQueueExtent<V> extent, int chunkX, int chunkZ) {
+        lock.lock();
+        try {
+            this.initTime = System.currentTimeMillis();
+            this.extent = extent;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            // the existing part is dropped before the delegate, like when trimming
+            chunkExisting = null;
+            if (chunkSet != null) {
+                chunkSet.reset();
+                delegate = SET;
+            } else {
+                delegate = NULL;
+            }
+            isInit = true;
+        } finally {
+            lock.unlock();
         }
-        chunkExisting = null;
-        isInit = true;
     }
 
     @Override
-    public synchronized T call() {
-        if (chunkSet != null && !chunkSet.isEmpty()) {
-            chunkSet.setBitMask(bitMask);
-            IChunkSet copy = chunkSet.createCopy();
-            return this.call(copy, () -> {
-                // Do nothing
-            });
+    public T call() {
+        lock.lock();
+        try {
+            if (chunkSet != null && !chunkSet.isEmpty()) {
+                chunkSet.setBitMask(bitMask);
+                IChunkSet copy = chunkSet.createCopy();
+                return this.call(copy, () -> {
+                    // Do nothing
+                });
+            }
+            return null;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     /**
      * This method should never be called from outside ChunkHolder
      */
     @Override
-    public synchronized T call(IChunkSet set, Runnable finalize) {
+    public T call(IChunkSet set, Runnable finalize) {
         if (set != null) {
-            IChunkGet get = getOrCreateGet();
+            lock.lock();
             try {
-                get.lockCall();
-                trackExtent();
-                boolean postProcess = !(getExtent().getPostProcessor() instanceof EmptyBatchProcessor);
-                final int copyKey = get.setCreateCopy(postProcess);
-                final IChunkSet iChunkSet = getExtent().processSet(this, get, set);
-                Runnable finalizer;
-                if (postProcess) {
-                    finalizer = () -> {
-                        getExtent().postProcess(this, get.getCopy(copyKey), iChunkSet);
-                        finalize.run();
-                    };
-                } else {
-                    finalizer = finalize;
+                IChunkGet get = getOrCreateGet();
+                EditTelemetry telemetry = extent instanceof SingleThreadQueueExtent queue ? queue.getTelemetry() : null;
+                try {
+                    get.lockCall();
+                    trackExtent();
+                    boolean postProcess = !(getExtent().getPostProcessor() instanceof EmptyBatchProcessor);
+                    final int copyKey = get.setCreateCopy(postProcess);
+                    final IChunkSet iChunkSet;
+                    try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.PROCESS)) {
+                        iChunkSet = getExtent().processSet(this, get, set);
+                    }
+                    Runnable finalizer;
+                    if (postProcess) {
+                        finalizer = () -> {
+                            try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.POST_PROCESS)) {
+                                getExtent().postProcess(this, get.getCopy(copyKey), iChunkSet);
+                            }
+                            finalize.run();
+                        };
+                    } else {
+                        finalizer = finalize;
+                    }
+                    if (SectionHistogramCache.isEnabled()) {
+                        // again once applied, the sections may be counted in between
+                        invalidateHistograms(set);
+                        Runnable applied = finalizer;
+                        finalizer = () -> {
+                            invalidateHistograms(set);
+                            if (applied != null) {
+                                applied.run();
+                            }
+                        };
+                    }
+                    try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.APPLY)) {
+                        return get.call(set, finalizer);
+                    }
+                } finally {
+                    get.unlockCall();
+                    untrackExtent();
                 }
-                return get.call(set, finalizer);
             } finally {
-                get.unlockCall();
-                untrackExtent();
+                lock.unlock();
             }
         }
         return null;
     }
 
+    private void invalidateHistograms(IChunkSet set) {
+        World world = extent instanceof SingleThreadQueueExtent queue ? queue.getWorld() : null;
+        SectionHistogramCache.invalidate(world != null ? world.getName() : null, chunkX, chunkZ, set);
+    }
+
     // "call" can be called by QueueHandler#blockingExecutor. In such case, we still want the other thread
     // to use this SingleThreadQueueExtent. Otherwise, many threads might end up locking on **one** STQE.
     // This way, locking is spread across multiple STQEs, allowing for better performance
@@ -0,0 +1,141 @@
+package com.fastasyncworldedit.core.queue.implementation.packet;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * The positions of blocks changed in a chunk, per section, to be sent as block change packets instead of resending the
+ * whole chunk. Only created if that is estimated to be cheaper, see {@link #isCheaper(int, int, int)}.
+ *
+ * @since TODO
+ */
+public final class ChunkDelta {
+
+    // estimated encoded sizes in bytes
+    private static final int SECTION_UPDATE_HEADER = 12; // packet id, section position, number of blocks
+    private static final int BLOCK_UPDATE = 4; // state id and position in the section, as a var long
+    private static final int CHUNK_HEADER = 64; // packet id, position, heightmaps, block entity and light masks
+    private static final int SECTION_BYTES = 1024; // lower than most sections with blocks and light, to favour full chunks
+
+    private final int chunkX;
+    private final int chunkZ;
+    private final int[] layers;
+    private final short[][] positions;
+
+    private ChunkDelta(int chunkX, int chunkZ, int[] layers, short[][] positions) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.layers = layers;
+        this.positions = positions;
+    }
+
+    /**
+     * Collect the changed positions of a chunk, if sending them as block changes is enabled and cheaper than sending the
+     * whole chunk. Chunks with block entities, biomes or light set are always sent whole.
+     *
+     * @param chunkX       the chunk x coordinate
+     * @param chunkZ       the chunk z coordinate
+     * @param set          the changes applied to the chunk
+     * @param sectionCount the number of sections in the chunk sent otherwise
+     * @return the delta, or null if the chunk should be sent whole
+     */
+    @Nullable
+    public static ChunkDelta of(int chunkX, int chunkZ, IChunkSet set, int sectionCount) {
+        if (!Settings.settings().EXPERIMENTAL.DELTA_CHUNK_PACKETS) {
+            return null;
+        }
+        if (set.hasBiomes() || set.hasLight() || set.getSkyLight() != null || !set.tiles().isEmpty()) {
+            return null;
+        }
+        int minLayer = set.getMinSectionPosition();
+        int maxLayer = set.getMaxSectionPosition();
+        int[] layers = new int[maxLayer - minLayer + 1];
+        short[][] positions = new short[layers.length][];
+        int sections = 0;
+        int blocks = 0;
+        for (int layer = minLayer; layer <= maxLayer; layer++) {
+            if (!set.hasSection(layer)) {
+                continue;
+            }
+            char[] section = set.loadIfPresent(layer);
+            if (section == null) {
+                continue;
+            }
+            short[] changed = null;
+            int count = 0;
+            for (int i = 0; i < 4096; i++) {
+                if (section[i] == BlockTypesCache.ReservedIDs.__RESERVED__) {
+                    continue;
+                }
+                if (!isCheaper(blocks + count + 1, sections + 1, sectionCount)) {
+                    return null;
+                }
+                if (changed == null) {
+                    changed = new short[64];
+                } else if (count == changed.length) {
+                    changed = Arrays.copyOf(changed, Math.min(4096, count << 1));
+                }
+                changed[count++] = (short) i;
+            }
+            if (count == 0) {
+                continue;
+            }
+            layers[sections] = layer;
+            positions[sections] = Arrays.copyOf(changed, count);
+            sections++;
+            blocks += count;
+        }
+        if (sections == 0) {
+            return null;
+        }
+        return new ChunkDelta(chunkX, chunkZ, Arrays.copyOf(layers, sections), Arrays.copyOf(positions, sections));
+    }
+
+    /**
+     * Estimate if sending block changes is cheaper than sending a whole chunk.
+     *
+     * @param blocks       the number of changed blocks
+     * @param sections     the number of sections with changed blocks
+     * @param sectionCount the number of sections in the chunk
+     * @return true if block changes are estimated to be smaller
+     */
+    public static boolean isCheaper(int blocks, int sections, int sectionCount) {
+        long delta = (long) sections * SECTION_UPDATE_HEADER + (long) blocks * BLOCK_UPDATE;
+        long full = CHUNK_HEADER + (long) sectionCount * SECTION_BYTES;
+        return delta < full;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    /**
+     * Get the number of sections with changed blocks.
+     */
+    public int getSectionCount() {
+        return layers.length;
+    }
+
+    /**
+     * Get the section layer of the changed section with the given index.
+     */
+    public int getLayer(int index) {
+        return layers[index];
+    }
+
+    /**
+     * Get the positions changed in the changed section with the given index, as {@code y << 8 | z << 4 | x}.
+     */
+    public short[] getPositions(int index) {
+        return positions[index];
+    }
+
+}
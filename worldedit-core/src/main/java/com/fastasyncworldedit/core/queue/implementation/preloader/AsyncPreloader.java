@@ -4,55 +4,74 @@
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.util.FaweTimer;
 import com.fastasyncworldedit.core.util.TaskManager;
-import com.fastasyncworldedit.core.util.collection.MutablePair;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.sk89q.worldedit.IncompleteRegionException;
 import com.sk89q.worldedit.LocalSession;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.extension.platform.Locatable;
 import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
+/**
+ * Loads chunks asynchronously ahead of their use. Chunks of pending operations, see {@link #preload(World, Collection)}, are
+ * loaded first in the order the operation visits them, followed by the chunks of actor selections nearest to the actor.
+ * Loads are requested every tick, at a rate scaled down as ticks take longer, and only up to a number of loads may be
+ * pending at once.
+ */
 public class AsyncPreloader implements Preloader, Runnable {
 
-    private final ConcurrentHashMap<UUID, MutablePair<World, Set<BlockVector2>>> update;
+    private final ConcurrentHashMap<UUID, PendingLoad> update = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<PendingLoad> operations = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final BiFunction<World, BlockVector2, CompletableFuture<?>> loader;
 
     public AsyncPreloader() {
-        this.update = new ConcurrentHashMap<>();
+        this((world, chunk) -> {
+            world.checkLoadedChunk(BlockVector3.at(chunk.x() << 4, 0, chunk.z() << 4));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Create a new preloader.
+     *
+     * @param loader requests a chunk to be loaded asynchronously, returning a future completing once it is loaded
+     * @since TODO
+     */
+    public AsyncPreloader(BiFunction<World, BlockVector2, CompletableFuture<?>> loader) {
+        this.loader = loader;
         TaskManager.taskManager().laterAsync(this, 1);
     }
 
     @Override
     public void cancel() {
         cancelled.set(true);
-        synchronized (update) {
-            update.clear();
-        }
+        update.clear();
+        operations.clear();
     }
 
     @Override
     public void cancel(@Nonnull Actor actor) {
-        cancelAndGet(actor);
-    }
-
-    private MutablePair<World, Set<BlockVector2>> cancelAndGet(@Nonnull Actor actor) {
-        MutablePair<World, Set<BlockVector2>> existing = update.get(actor.getUniqueId());
-        if (existing != null) {
-            existing.setValue(null);
-        }
-        return existing;
+        update.remove(actor.getUniqueId());
     }
 
     @Override
@@ -61,76 +80,146 @@ public void update(@Nonnull Actor actor, @Nonnull World world) {
         if (session == null) {
             return;
         }
-        MutablePair<World, Set<BlockVector2>> existing = cancelAndGet(actor);
+        update.remove(actor.getUniqueId());
         try {
             Region region = session.getSelection(world);
             if (region == null) {
                 return;
             }
-            if (existing == null) {
-                update.put(
-                        actor.getUniqueId(),
-                        existing = new MutablePair<>()
-                );
-            }
-            synchronized (existing) { // Ensure key & value are mutated together
-                existing.setKey(world);
-                existing.setValue(ImmutableSet.copyOf(Iterables.limit(
-                        region.getChunks(),
-                        Settings.settings().QUEUE.PRELOAD_CHUNK_COUNT
-                )));
-            }
-            synchronized (update) {
-                update.notify();
-            }
+            BlockVector3 origin = actor instanceof Locatable locatable
+                    ? locatable.getLocation().toBlockPoint()
+                    : region.getCenter().toBlockPoint();
+            List<BlockVector2> chunks = nearest(region.getChunks(), origin, Settings.settings().QUEUE.PRELOAD_CHUNK_COUNT);
+            update.put(actor.getUniqueId(), new PendingLoad(world, chunks));
         } catch (IncompleteRegionException ignored) {
         }
     }
 
+    /**
+     * Get up to limit chunks nearest to the origin, nearest first.
+     */
+    private static List<BlockVector2> nearest(Collection<BlockVector2> chunks, BlockVector3 origin, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        int originX = origin.x() >> 4;
+        int originZ = origin.z() >> 4;
+        Comparator<BlockVector2> byDistance = Comparator.comparingLong(chunk -> {
+            long dx = chunk.x() - originX;
+            long dz = chunk.z() - originZ;
+            return dx * dx + dz * dz;
+        });
+        // the farthest of the nearest chunks at the head
+        PriorityQueue<BlockVector2> nearest = new PriorityQueue<>(Math.min(limit, chunks.size()) + 1, byDistance.reversed());
+        for (BlockVector2 chunk : chunks) {
+            nearest.add(chunk);
+            if (nearest.size() > limit) {
+                nearest.poll();
+            }
+        }
+        List<BlockVector2> result = new ArrayList<>(nearest);
+        result.sort(byDistance);
+        return result;
+    }
+
+    @Override
+    public Request preload(@Nonnull World world, @Nonnull Collection<BlockVector2> chunks) {
+        if (cancelled.get() || chunks.isEmpty()) {
+            return Request.NONE;
+        }
+        PendingLoad load = new PendingLoad(world, List.copyOf(chunks));
+        operations.add(load);
+        return () -> operations.remove(load);
+    }
+
     @Override
     public void run() {
-        FaweTimer timer = Fawe.instance().getTimer();
         if (cancelled.get()) {
             return;
         }
-        if (update.isEmpty()) {
-            TaskManager.taskManager().laterAsync(this, 1);
-            return;
-        }
-        Iterator<Map.Entry<UUID, MutablePair<World, Set<BlockVector2>>>> plrIter = update.entrySet().iterator();
-        while (timer.getTPS() > 18 && plrIter.hasNext()) {
-            if (cancelled.get()) {
-                return;
+        int budget = getRequestBudget(Fawe.instance().getTimer());
+        int maxInFlight = Settings.settings().QUEUE.PRELOAD_MAX_IN_FLIGHT;
+        while (budget > 0 && inFlight.get() < maxInFlight && !cancelled.get()) {
+            PendingLoad next = operations.peek();
+            if (next != null && !next.chunks.hasNext()) {
+                operations.remove(next);
+                continue;
+            }
+            if (next == null) {
+                next = nextSelection();
+                if (next == null) {
+                    break;
+                }
             }
-            Map.Entry<UUID, MutablePair<World, Set<BlockVector2>>> entry = plrIter.next();
-            MutablePair<World, Set<BlockVector2>> pair = entry.getValue();
-            World world = pair.getKey();
-            Set<BlockVector2> chunks = pair.getValue();
-            if (chunks != null) {
-                Iterator<BlockVector2> chunksIter = chunks.iterator();
-                while (chunksIter.hasNext() && pair.getValue() == chunks) { // Ensure the queued load is still valid
-                    BlockVector2 chunk = chunksIter.next();
-                    if (Settings.settings().REGION_RESTRICTIONS_OPTIONS.RESTRICT_TO_SAFE_RANGE) {
-                        int x = chunk.x();
-                        int z = chunk.z();
-                        // if any chunk coord is outside 30 million blocks
-                        if (x > 1875000 || z > 1875000 || x < -1875000 || z < -1875000) {
-                            continue;
-                        }
-                    }
-                    queueLoad(world, chunk);
+            BlockVector2 chunk = next.chunks.next();
+            if (Settings.settings().REGION_RESTRICTIONS_OPTIONS.RESTRICT_TO_SAFE_RANGE) {
+                int x = chunk.x();
+                int z = chunk.z();
+                // if any chunk coord is outside 30 million blocks
+                if (x > 1875000 || z > 1875000 || x < -1875000 || z < -1875000) {
+                    continue;
                 }
             }
-            plrIter.remove();
+            queueLoad(next.world, chunk);
+            budget--;
         }
         if (cancelled.get()) {
             return;
         }
-        TaskManager.taskManager().laterAsync(this, 20);
+        TaskManager.taskManager().laterAsync(this, 1);
+    }
+
+    private PendingLoad nextSelection() {
+        for (Map.Entry<UUID, PendingLoad> entry : update.entrySet()) {
+            PendingLoad load = entry.getValue();
+            if (load.chunks.hasNext()) {
+                return load;
+            }
+            // unless replaced by a new selection meanwhile
+            update.remove(entry.getKey(), load);
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of chunk loads to request this tick. The full rate is used while ticks take 50ms, down to none once
+     * they take 25% longer or the current tick overruns.
+     */
+    private static int getRequestBudget(FaweTimer timer) {
+        if (timer.getTickMillis() > 50) {
+            return 0;
+        }
+        double headroom = Math.min(1, (62.5 - timer.getAverageTickMillis()) / 12.5);
+        if (headroom <= 0) {
+            return 0;
+        }
+        return (int) Math.ceil(Settings.settings().QUEUE.PRELOAD_CHUNKS_PER_TICK * headroom);
     }
 
     private void queueLoad(World world, BlockVector2 chunk) {
-        world.checkLoadedChunk(BlockVector3.at(chunk.x() << 4, 0, chunk.z() << 4));
+        inFlight.incrementAndGet();
+        try {
+            loader.apply(world, chunk).whenComplete((result, throwable) -> inFlight.decrementAndGet());
+        } catch (Throwable t) {
+            inFlight.decrementAndGet();
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Chunks to load in order. Only accessed by the preloader task once created, and removed once loaded or once the
+     * operation requesting them completes.
+     */
+    private static final class PendingLoad {
+
+        private final World world;
+        private final Iterator<BlockVector2> chunks;
+
+        private PendingLoad(World world, List<BlockVector2> chunks) {
+            this.world = world;
+            this.chunks = chunks.iterator();
+        }
+
     }
 
 }
@@ -1,9 +1,11 @@
 package com.fastasyncworldedit.core.queue.implementation.preloader;
 
 import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.world.World;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 
 public interface Preloader {
 
@@ -27,4 +29,37 @@ public interface Preloader {
      */
     void update(@Nonnull Actor actor, @Nonnull World world);
 
+    /**
+     * Load the given chunks ahead of an operation that is going to use them, in the given order.
+     *
+     * @param world  World to use
+     * @param chunks Chunks to load
+     * @return the request, to be closed once the operation completes or is cancelled
+     * @since TODO
+     */
+    default Request preload(@Nonnull World world, @Nonnull Collection<BlockVector2> chunks) {
+        return Request.NONE;
+    }
+
+    /**
+     * Chunks requested to be loaded by {@link #preload(World, Collection)}.
+     *
+     * @since TODO
+     */
+    interface Request extends AutoCloseable {
+
+        /**
+         * A request that does nothing.
+         */
+        Request NONE = () -> {
+        };
+
+        /**
+         * Stop loading the chunks of this request that have not been requested from the world yet.
+         */
+        @Override
+        void close();
+
+    }
+
 }
@@ -0,0 +1,129 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.AbstractRegion;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.regions.RegionOperationException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The blocks contained by both of two regions. Unlike {@link com.sk89q.worldedit.regions.RegionIntersection}, which contains
+ * the blocks of any of its regions.
+ *
+ * @since TODO
+ */
+public class IntersectionRegion extends AbstractRegion {
+
+    private final Region first;
+    private final Region second;
+    private final BlockVector3 min;
+    private final BlockVector3 max;
+
+    private IntersectionRegion(Region first, Region second, BlockVector3 min, BlockVector3 max) {
+        super(first.getWorld());
+        this.first = first;
+        this.second = second;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Get the blocks contained by both of two regions, as a cuboid if both are cuboids.
+     *
+     * @param first  the first region
+     * @param second the second region
+     * @return the region, or null if the bounds of the regions do not intersect
+     */
+    @Nullable
+    public static Region of(Region first, Region second) {
+        if (first.isGlobal()) {
+            return second;
+        }
+        if (second.isGlobal()) {
+            return first;
+        }
+        BlockVector3 min = first.getMinimumPoint().getMaximum(second.getMinimumPoint());
+        BlockVector3 max = first.getMaximumPoint().getMinimum(second.getMaximumPoint());
+        if (min.x() > max.x() || min.y() > max.y() || min.z() > max.z()) {
+            return null;
+        }
+        if (first instanceof CuboidRegion && second instanceof CuboidRegion) {
+            return new CuboidRegion(first.getWorld(), min, max, false);
+        }
+        return new IntersectionRegion(first, second, min, max);
+    }
+
+    /**
+     * Get the blocks contained by any of the first and any of the second regions.
+     *
+     * @param first  the first regions, or null for everywhere
+     * @param second the second regions, or null for everywhere
+     * @return the regions, or null for everywhere
+     */
+    @Nullable
+    public static Region[] of(@Nullable Region[] first, @Nullable Region[] second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        List<Region> regions = new ArrayList<>();
+        for (Region a : first) {
+            for (Region b : second) {
+                Region intersection = of(a, b);
+                if (intersection != null) {
+                    regions.add(intersection);
+                }
+            }
+        }
+        return regions.toArray(new Region[0]);
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        return x >= min.x() && x <= max.x() && y >= min.y() && y <= max.y() && z >= min.z() && z <= max.z()
+                && first.contains(x, y, z) && second.contains(x, y, z);
+    }
+
+    @Override
+    public boolean contains(BlockVector3 position) {
+        return contains(position.x(), position.y(), position.z());
+    }
+
+    @Override
+    public boolean containsEntireCuboid(int bx, int tx, int by, int ty, int bz, int tz) {
+        return first.containsEntireCuboid(bx, tx, by, ty, bz, tz) && second.containsEntireCuboid(bx, tx, by, ty, bz, tz);
+    }
+
+    @Override
+    public BlockVector3 getMinimumPoint() {
+        return min;
+    }
+
+    @Override
+    public BlockVector3 getMaximumPoint() {
+        return max;
+    }
+
+    @Override
+    public void expand(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-expand"));
+    }
+
+    @Override
+    public void contract(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-contract"));
+    }
+
+    @Override
+    public void shift(BlockVector3 change) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-shift"));
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.World;
+
+import javax.annotation.Nullable;
+
+/**
+ * The blocks set by {@link com.sk89q.worldedit.EditSession#makeCylinder} for a cylinder, as a region which can be filtered a
+ * chunk at a time.
+ *
+ * @since TODO
+ */
+public class RasterizedCylinder extends RasterizedRegion {
+
+    private final int centerZ;
+    private final double invRadiusX;
+    private final double invRadiusZ;
+    private final boolean hollow;
+    private final double invInnerRadiusX;
+    private final double invInnerRadiusZ;
+    private final BlockVector3 min;
+    private final BlockVector3 max;
+
+    /**
+     * Create a new cylinder.
+     *
+     * @param world     the world, or null
+     * @param pos       the center of the base of the cylinder
+     * @param radiusX   the radius on the x-axis, as given to makeCylinder
+     * @param radiusZ   the radius on the z-axis, as given to makeCylinder
+     * @param height    the height, extending downwards if negative
+     * @param thickness the thickness of the wall, or 0
+     * @param filled    if false and no thickness is given, only the shell is contained
+     * @param minY      the minimum y of the world
+     * @param maxY      the maximum y of the world
+     */
+    public RasterizedCylinder(
+            @Nullable World world,
+            BlockVector3 pos,
+            double radiusX,
+            double radiusZ,
+            int height,
+            double thickness,
+            boolean filled,
+            int minY,
+            int maxY
+    ) {
+        super(world, pos.x());
+        radiusX += 0.5;
+        radiusZ += 0.5;
+        this.centerZ = pos.z();
+        this.invRadiusX = 1 / radiusX;
+        this.invRadiusZ = 1 / radiusZ;
+        if (thickness != 0) {
+            // a wall as thick as the radius leaves nothing hollow
+            this.hollow = radiusX - thickness > 0 && radiusZ - thickness > 0;
+            this.invInnerRadiusX = 1 / (radiusX - thickness);
+            this.invInnerRadiusZ = 1 / (radiusZ - thickness);
+        } else {
+            this.hollow = !filled;
+            this.invInnerRadiusX = invRadiusX;
+            this.invInnerRadiusZ = invRadiusZ;
+        }
+        // same bounds as makeCylinder
+        int baseY = pos.y();
+        if (height < 0) {
+            height = -height;
+            baseY -= height;
+        }
+        if (baseY < minY) {
+            baseY = minY;
+        } else if (baseY + height - 1 > maxY) {
+            height = maxY - baseY + 1;
+        }
+        int outerX = largest(invRadiusX, 0);
+        int outerZ = largest(invRadiusZ, 0);
+        this.min = BlockVector3.at(centerX - outerX, baseY, centerZ - outerZ);
+        this.max = BlockVector3.at(centerX + outerX, baseY + height - 1, centerZ + outerZ);
+    }
+
+    @Override
+    protected int outer(int y, int z) {
+        if (y < min.y() || y > max.y()) {
+            return -1;
+        }
+        return footprint(z);
+    }
+
+    @Override
+    protected int inner(int y, int z) {
+        if (!hollow) {
+            return 0;
+        }
+        int dz = Math.abs(z - centerZ);
+        double zn = dz * invInnerRadiusZ;
+        double nextZn = (dz + 1) * invInnerRadiusZ;
+        // blocks are hollow if the next block outwards on both axes is within the inner radius
+        int hollow = Math.min(largest(invInnerRadiusX, zn * zn) - 1, largest(invInnerRadiusX, nextZn * nextZn));
+        return Math.max(hollow + 1, 0);
+    }
+
+    @Override
+    protected int footprint(int z) {
+        double zn = (z - centerZ) * invRadiusZ;
+        return largest(invRadiusX, zn * zn);
+    }
+
+    @Override
+    public BlockVector3 getMinimumPoint() {
+        return min;
+    }
+
+    @Override
+    public BlockVector3 getMaximumPoint() {
+        return max;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.world.World;
+
+import javax.annotation.Nullable;
+
+/**
+ * The blocks set by {@link com.sk89q.worldedit.EditSession#makeSphere} for a sphere or ellipsoid, as a region which can be
+ * filtered a chunk at a time.
+ *
+ * @since TODO
+ */
+public class RasterizedEllipsoid extends RasterizedRegion {
+
+    private final int centerY;
+    private final int centerZ;
+    private final double invRadiusX;
+    private final double invRadiusY;
+    private final double invRadiusZ;
+    private final boolean filled;
+    private final BlockVector3 min;
+    private final BlockVector3 max;
+
+    /**
+     * Create a new ellipsoid.
+     *
+     * @param world  the world, or null
+     * @param center the center
+     * @param radius the radius on each axis, as given to makeSphere
+     * @param filled if false, only the shell is contained
+     * @param minY   the minimum y of the world
+     * @param maxY   the maximum y of the world
+     */
+    public RasterizedEllipsoid(@Nullable World world, BlockVector3 center, Vector3 radius, boolean filled, int minY, int maxY) {
+        super(world, center.x());
+        this.centerY = center.y();
+        this.centerZ = center.z();
+        this.invRadiusX = 1 / (radius.x() + 0.5);
+        this.invRadiusY = 1 / (radius.y() + 0.5);
+        this.invRadiusZ = 1 / (radius.z() + 0.5);
+        this.filled = filled;
+        int radiusX = largest(invRadiusX, 0);
+        int radiusY = largest(invRadiusY, 0);
+        int radiusZ = largest(invRadiusZ, 0);
+        this.min = BlockVector3.at(centerX - radiusX, Math.max(minY, centerY - radiusY), centerZ - radiusZ);
+        this.max = BlockVector3.at(centerX + radiusX, Math.min(maxY, centerY + radiusY), centerZ + radiusZ);
+    }
+
+    @Override
+    protected int outer(int y, int z) {
+        if (y < min.y() || y > max.y()) {
+            return -1;
+        }
+        double yn = (y - centerY) * invRadiusY;
+        double zn = (z - centerZ) * invRadiusZ;
+        return largest(invRadiusX, zn * zn + yn * yn);
+    }
+
+    @Override
+    protected int inner(int y, int z) {
+        if (filled) {
+            return 0;
+        }
+        int dy = Math.abs(y - centerY);
+        int dz = Math.abs(z - centerZ);
+        double yn = dy * invRadiusY;
+        double zn = dz * invRadiusZ;
+        double nextYn = (dy + 1) * invRadiusY;
+        double nextZn = (dz + 1) * invRadiusZ;
+        // blocks are hollow if the next block outwards on every axis is contained too
+        int hollow = Math.min(
+                largest(invRadiusX, yn * yn + zn * zn) - 1,
+                Math.min(largest(invRadiusX, zn * zn + nextYn * nextYn), largest(invRadiusX, yn * yn + nextZn * nextZn))
+        );
+        return hollow + 1;
+    }
+
+    @Override
+    protected int footprint(int z) {
+        double zn = (z - centerZ) * invRadiusZ;
+        return largest(invRadiusX, zn * zn);
+    }
+
+    @Override
+    public BlockVector3 getMinimumPoint() {
+        return min;
+    }
+
+    @Override
+    public BlockVector3 getMaximumPoint() {
+        return max;
+    }
+
+}
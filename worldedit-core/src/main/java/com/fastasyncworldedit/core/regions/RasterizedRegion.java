@@ -0,0 +1,227 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.fastasyncworldedit.core.configuration.Caption;
+import com.fastasyncworldedit.core.extent.filter.block.ChunkFilterBlock;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.queue.IChunkGet;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.AbstractRegion;
+import com.sk89q.worldedit.regions.RegionOperationException;
+import com.sk89q.worldedit.world.World;
+
+import javax.annotation.Nullable;
+
+/**
+ * A region symmetric around a center x coordinate, made of rows along the x-axis which are computed at once: each row
+ * contains the blocks at a distance from the center x between {@link #inner(int, int)} and {@link #outer(int, int)}.
+ * <p>
+ * Filtering a chunk rasterizes each section into a bitmask per row, so whole sections and runs of blocks are passed to the
+ * filter without testing each block.
+ *
+ * @since TODO
+ */
+public abstract class RasterizedRegion extends AbstractRegion {
+
+    private static final int EMPTY = 0;
+    private static final int PARTIAL = 1;
+    private static final int FULL = 2;
+
+    protected final int centerX;
+
+    protected RasterizedRegion(@Nullable World world, int centerX) {
+        super(world);
+        this.centerX = centerX;
+    }
+
+    /**
+     * Get the largest distance from the center x of the blocks in a row.
+     *
+     * @param y the y coordinate of the row
+     * @param z the z coordinate of the row
+     * @return the distance, or -1 if the row is empty
+     */
+    protected abstract int outer(int y, int z);
+
+    /**
+     * Get the smallest distance from the center x of the blocks in a row which is not empty.
+     *
+     * @param y the y coordinate of the row
+     * @param z the z coordinate of the row
+     * @return the distance, at most {@link #outer(int, int)}
+     */
+    protected int inner(int y, int z) {
+        return 0;
+    }
+
+    /**
+     * Get the largest distance from the center x of the blocks in any row at the given z coordinate.
+     *
+     * @param z the z coordinate
+     * @return the distance, or -1 if there are no blocks
+     */
+    protected abstract int footprint(int z);
+
+    /**
+     * Get the largest {@code a >= 0} for which {@code (a * inverseRadius)^2 + rest <= 1}.
+     *
+     * @param inverseRadius the inverse of the radius
+     * @param rest          the part of the squared distance of the other axes
+     * @return the largest distance, or -1 if there is none
+     */
+    protected static int largest(double inverseRadius, double rest) {
+        if (rest > 1) {
+            return -1;
+        }
+        int a = (int) (Math.sqrt(1 - rest) / inverseRadius);
+        while (fits(a + 1, inverseRadius, rest)) {
+            a++;
+        }
+        while (a >= 0 && !fits(a, inverseRadius, rest)) {
+            a--;
+        }
+        return a;
+    }
+
+    private static boolean fits(int a, double inverseRadius, double rest) {
+        double n = a * inverseRadius;
+        return n * n + rest <= 1;
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        int outer = outer(y, z);
+        if (outer < 0) {
+            return false;
+        }
+        int distance = Math.abs(x - centerX);
+        return distance <= outer && distance >= inner(y, z);
+    }
+
+    @Override
+    public boolean contains(BlockVector3 position) {
+        return contains(position.x(), position.y(), position.z());
+    }
+
+    @Override
+    public boolean containsChunk(int chunkX, int chunkZ) {
+        BlockVector3 min = getMinimumPoint();
+        BlockVector3 max = getMaximumPoint();
+        if (min.y() > max.y()) {
+            return false;
+        }
+        int bx = chunkX << 4;
+        int tx = bx + 15;
+        int bz = Math.max(chunkZ << 4, min.z());
+        int tz = Math.min((chunkZ << 4) + 15, max.z());
+        for (int z = bz; z <= tz; z++) {
+            int footprint = footprint(z);
+            if (footprint >= 0 && centerX - footprint <= tx && centerX + footprint >= bx) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getVolume() {
+        BlockVector3 min = getMinimumPoint();
+        BlockVector3 max = getMaximumPoint();
+        long volume = 0;
+        for (int y = min.y(); y <= max.y(); y++) {
+            for (int z = min.z(); z <= max.z(); z++) {
+                int outer = outer(y, z);
+                if (outer >= 0) {
+                    int inner = inner(y, z);
+                    volume += inner == 0 ? 2L * outer + 1 : 2L * (outer - inner + 1);
+                }
+            }
+        }
+        return volume;
+    }
+
+    @Override
+    public void filter(IChunk chunk, Filter filter, ChunkFilterBlock block, IChunkGet get, IChunkSet set, boolean full) {
+        int bx = chunk.getX() << 4;
+        int bz = chunk.getZ() << 4;
+        int minSection = Math.max(get.getMinSectionPosition(), getMinimumY() >> 4);
+        int maxSection = Math.min(get.getMaxSectionPosition(), getMaximumY() >> 4);
+        // local, as regions are shared by clone between the threads filtering chunks
+        char[] rows = new char[256];
+        for (int layer = minSection; layer <= maxSection; layer++) {
+            if (!full && !get.hasSection(layer)) {
+                continue;
+            }
+            int state = rasterize(bx, layer << 4, bz, rows);
+            if (state == EMPTY) {
+                continue;
+            }
+            block = block.initLayer(get, set, layer);
+            if (state == FULL) {
+                block.filter(filter);
+                continue;
+            }
+            for (int y = 0, index = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++, index++) {
+                    int bits = rows[index];
+                    while (bits != 0) {
+                        int minX = Integer.numberOfTrailingZeros(bits);
+                        int maxX = minX + Integer.numberOfTrailingZeros(~(bits >>> minX)) - 1;
+                        block.filter(filter, minX, y, z, maxX, y, z);
+                        bits &= ~((2 << maxX) - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the blocks of each row of a section as a bitmask of the x coordinates relative to the chunk, by y then z.
+     *
+     * @return whether the section is empty, partially or fully contained
+     */
+    private int rasterize(int bx, int by, int bz, char[] rows) {
+        boolean any = false;
+        boolean all = true;
+        for (int y = 0, index = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++, index++) {
+                int outer = outer(by + y, bz + z);
+                int bits = 0;
+                if (outer >= 0) {
+                    int inner = inner(by + y, bz + z);
+                    bits = span(bx, centerX - outer, centerX - inner) | span(bx, centerX + inner, centerX + outer);
+                }
+                rows[index] = (char) bits;
+                any |= bits != 0;
+                all &= bits == 0xFFFF;
+            }
+        }
+        return all ? FULL : any ? PARTIAL : EMPTY;
+    }
+
+    private static int span(int bx, int from, int to) {
+        int min = Math.max(from - bx, 0);
+        int max = Math.min(to - bx, 15);
+        if (min > max) {
+            return 0;
+        }
+        return ((2 << (max - min)) - 1) << min;
+    }
+
+    @Override
+    public void expand(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-expand"));
+    }
+
+    @Override
+    public void contract(BlockVector3... changes) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-contract"));
+    }
+
+    @Override
+    public void shift(BlockVector3 change) throws RegionOperationException {
+        throw new RegionOperationException(Caption.of("fawe.error.selection-shift"));
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.regions.RegionIntersection;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Classifies chunk columns as fully allowed, fully denied or partially allowed for a set of allowed and disallowed regions,
+ * so edits only need to test blocks against the regions in partially allowed chunks. Each chunk is classified once, by
+ * testing the bounds of every region, and remembered for as long as the cache is used, e.g. by
+ * {@link com.fastasyncworldedit.core.util.WEManager#getChunkCache} for all edits of a player in a world until their regions
+ * change.
+ * <p>
+ * Only cuboid regions are trusted to fully contain a chunk column, other regions only make a chunk partially allowed.
+ *
+ * @since TODO
+ */
+public final class RegionChunkCache {
+
+    /**
+     * No block in the chunk column may be edited.
+     */
+    public static final byte DENIED = 0;
+    /**
+     * Blocks in the chunk column must be tested against the regions.
+     */
+    public static final byte PARTIAL = 1;
+    /**
+     * All blocks in the chunk column may be edited.
+     */
+    public static final byte ALLOWED = 2;
+
+    @Nullable
+    private final Region[] allowed;
+    @Nullable
+    private final Region[] disallowed;
+    private final List<Object> keys;
+    private final int minY;
+    private final int maxY;
+    private final int generation;
+    private final Long2ByteOpenHashMap chunks = new Long2ByteOpenHashMap();
+
+    /**
+     * Create a new cache.
+     *
+     * @param allowed    the allowed regions, or null to allow everywhere
+     * @param disallowed the disallowed regions, or null for none
+     * @param minY       the minimum y of the world
+     * @param maxY       the maximum y of the world
+     * @param generation the generation of region changes the cache is valid for
+     */
+    public RegionChunkCache(@Nullable Region[] allowed, @Nullable Region[] disallowed, int minY, int maxY, int generation) {
+        this.allowed = allowed == null || isGlobal(allowed) ? null : allowed.clone();
+        this.disallowed = disallowed == null || disallowed.length == 0 ? null : disallowed.clone();
+        this.keys = keys(this.allowed, this.disallowed);
+        this.minY = minY;
+        this.maxY = maxY;
+        this.generation = generation;
+        this.chunks.defaultReturnValue((byte) -1);
+    }
+
+    /**
+     * Check if this cache classifies chunks for the given regions and world height.
+     *
+     * @param allowed    the allowed regions, or null to allow everywhere
+     * @param disallowed the disallowed regions, or null for none
+     * @param minY       the minimum y of the world
+     * @param maxY       the maximum y of the world
+     * @param generation the current generation of region changes
+     * @return if the cache may be used
+     */
+    public boolean matches(@Nullable Region[] allowed, @Nullable Region[] disallowed, int minY, int maxY, int generation) {
+        if (this.generation != generation || this.minY != minY || this.maxY != maxY) {
+            return false;
+        }
+        return keys.equals(keys(
+                allowed == null || isGlobal(allowed) ? null : allowed,
+                disallowed == null || disallowed.length == 0 ? null : disallowed
+        ));
+    }
+
+    /**
+     * Get the classification of a chunk column, one of {@link #DENIED}, {@link #PARTIAL} or {@link #ALLOWED}.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @return the classification
+     */
+    public byte classify(int chunkX, int chunkZ) {
+        long pair = MathMan.pairInt(chunkX, chunkZ);
+        byte result;
+        synchronized (chunks) {
+            result = chunks.get(pair);
+        }
+        if (result == -1) {
+            result = compute(chunkX, chunkZ);
+            synchronized (chunks) {
+                chunks.put(pair, result);
+            }
+        }
+        return result;
+    }
+
+    private byte compute(int chunkX, int chunkZ) {
+        int bx = chunkX << 4;
+        int bz = chunkZ << 4;
+        int tx = bx + 15;
+        int tz = bz + 15;
+        boolean all = allowed == null;
+        if (allowed != null) {
+            boolean any = false;
+            for (Region region : allowed) {
+                if (!intersects(region, bx, tx, bz, tz)) {
+                    continue;
+                }
+                any = true;
+                if (containsColumn(region, bx, tx, bz, tz)) {
+                    all = true;
+                    break;
+                }
+            }
+            if (!any) {
+                return DENIED;
+            }
+        }
+        if (disallowed != null) {
+            for (Region region : disallowed) {
+                if (!intersects(region, bx, tx, bz, tz)) {
+                    continue;
+                }
+                if (containsColumn(region, bx, tx, bz, tz)) {
+                    return DENIED;
+                }
+                all = false;
+            }
+        }
+        return all ? ALLOWED : PARTIAL;
+    }
+
+    private boolean intersects(Region region, int bx, int tx, int bz, int tz) {
+        if (region.isGlobal()) {
+            return true;
+        }
+        BlockVector3 min = region.getMinimumPoint();
+        BlockVector3 max = region.getMaximumPoint();
+        return tx >= min.x() && bx <= max.x() && tz >= min.z() && bz <= max.z() && maxY >= min.y() && minY <= max.y();
+    }
+
+    private boolean containsColumn(Region region, int bx, int tx, int bz, int tz) {
+        if (region.isGlobal()) {
+            return true;
+        }
+        if (region instanceof RegionIntersection intersection) {
+            for (Region child : intersection.getRegions()) {
+                if (containsColumn(child, bx, tx, bz, tz)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (region instanceof CuboidRegion) {
+            BlockVector3 min = region.getMinimumPoint();
+            BlockVector3 max = region.getMaximumPoint();
+            return bx >= min.x() && tx <= max.x() && bz >= min.z() && tz <= max.z() && minY >= min.y() && maxY <= max.y();
+        }
+        return false;
+    }
+
+    private static boolean isGlobal(Region[] regions) {
+        for (Region region : regions) {
+            if (region.isGlobal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keys comparing equal for regions classifying chunks the same. Cuboids are compared by their bounds, as region managers
+     * usually create new regions each time they are asked, anything else by identity. The order of regions does not matter.
+     */
+    private static List<Object> keys(@Nullable Region[] allowed, @Nullable Region[] disallowed) {
+        List<Object> keys = new ArrayList<>();
+        // null allows everywhere, unlike no regions
+        keys.add(allowed == null ? "*" : keys(allowed));
+        keys.add(disallowed == null ? Set.of() : keys(disallowed));
+        return keys;
+    }
+
+    private static Set<Object> keys(Region[] regions) {
+        Set<Object> keys = new HashSet<>(regions.length);
+        for (Region region : regions) {
+            keys.add(key(region));
+        }
+        return keys;
+    }
+
+    private static Object key(Region region) {
+        if (region instanceof RegionIntersection intersection) {
+            return keys(intersection.getRegions().toArray(new Region[0]));
+        }
+        if (region instanceof CuboidRegion) {
+            return List.of(region.getClass(), region.getMinimumPoint(), region.getMaximumPoint());
+        }
+        return new Identity(region);
+    }
+
+    private record Identity(Region region) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity other && other.region == region;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(region);
+        }
+
+    }
+
+}
@@ -11,10 +11,16 @@ public class FaweTimer implements Runnable {
     private final long tickInterval = 5;
     private long tick;
     private long tickMod;
+    private volatile double averageTickMillis = 50;
 
     @Override
     public void run() {
-        tickStart = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        if (tick > 0) {
+            // weigh the last 20 ticks most
+            averageTickMillis += ((now - tickStart) - averageTickMillis) / 20;
+        }
+        tickStart = now;
         tick++;
         if (++tickMod == tickInterval) {
             tickMod = 0;
@@ -55,6 +61,16 @@ public long getTickMillis() {
         return System.currentTimeMillis() - tickStart;
     }
 
+    /**
+     * Get the measured duration of recent ticks, from the start of a tick to the start of the next, as a moving average.
+     *
+     * @return the average tick duration in milliseconds, 50 while the server keeps up
+     * @since TODO
+     */
+    public double getAverageTickMillis() {
+        return averageTickMillis;
+    }
+
     public long getTickStart() {
         return tickStart;
     }
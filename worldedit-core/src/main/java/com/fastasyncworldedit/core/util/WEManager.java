@@ -6,6 +6,7 @@
 import com.fastasyncworldedit.core.internal.exception.FaweException;
 import com.fastasyncworldedit.core.regions.FaweMask;
 import com.fastasyncworldedit.core.regions.FaweMaskManager;
+import com.fastasyncworldedit.core.regions.RegionChunkCache;
 import com.fastasyncworldedit.core.regions.RegionWrapper;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.entity.Player;
@@ -16,13 +17,16 @@
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.util.formatting.text.TextComponent;
+import com.sk89q.worldedit.world.World;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WEManager {
 
@@ -34,6 +38,7 @@ public class WEManager {
     @Deprecated(forRemoval = true, since = "2.0.0")
     public static WEManager IMP = weManager();
     private final ArrayDeque<FaweMaskManager> managers = new ArrayDeque<>();
+    private final AtomicInteger regionGeneration = new AtomicInteger();
 
     /**
      * Get an instance of the WEManager.
@@ -105,6 +110,7 @@ public Region[] getMask(Player player, FaweMaskManager.MaskType type, final bool
         if (!world.equals(player.getMeta("lastMaskWorld"))) {
             player.deleteMeta("lastMaskWorld");
             player.deleteMeta("lastMask");
+            player.deleteMeta("lastMaskChunks");
         }
         player.setMeta("lastMaskWorld", world);
         Set<FaweMask> masks = player.getMeta("lastMask");
@@ -136,6 +142,9 @@ public Region[] getMask(Player player, FaweMaskManager.MaskType type, final bool
                 if (!removed && inMask) {
                     return regions.toArray(new Region[0]);
                 }
+                if (removed) {
+                    player.deleteMeta("lastMaskChunks");
+                }
             }
         }
         synchronized (masks) {
@@ -176,6 +185,45 @@ public Region[] getMask(Player player, FaweMaskManager.MaskType type, final bool
         return regions.toArray(new Region[0]);
     }
 
+    /**
+     * Get the classification of chunks by a player's allowed and disallowed regions, reused for all edits of the player in
+     * their current world as long as the regions are the same and no region change was signalled by
+     * {@link #invalidateChunkCaches()}.
+     *
+     * @param player     the player
+     * @param world      the world edited
+     * @param allowed    the allowed regions, or null to allow everywhere
+     * @param disallowed the disallowed regions, or null for none
+     * @return the cache
+     * @since TODO
+     */
+    public RegionChunkCache getChunkCache(Player player, World world, @Nullable Region[] allowed, @Nullable Region[] disallowed) {
+        int generation = regionGeneration.get();
+        int minY = world.getMinY();
+        int maxY = world.getMaxY();
+        // regions are only known for the world the player is in
+        boolean reusable = Settings.settings().REGION_RESTRICTIONS_OPTIONS.CACHE_CHUNK_CLASSIFICATION
+                && world.getName().equals(player.getMeta("lastMaskWorld"));
+        RegionChunkCache cache = reusable ? player.getMeta("lastMaskChunks") : null;
+        if (cache != null && cache.matches(allowed, disallowed, minY, maxY, generation)) {
+            return cache;
+        }
+        cache = new RegionChunkCache(allowed, disallowed, minY, maxY, generation);
+        if (reusable) {
+            player.setMeta("lastMaskChunks", cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Discard the chunk classifications of all players, to be called by region plugins when regions are created, changed or
+     * deleted.
+     *
+     * @since TODO
+     */
+    public void invalidateChunkCaches() {
+        regionGeneration.incrementAndGet();
+    }
 
     public boolean intersects(Region region1, Region region2) {
         BlockVector3 rg1P1 = region1.getMinimumPoint();
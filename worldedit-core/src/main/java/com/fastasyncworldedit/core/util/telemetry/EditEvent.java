@@ -0,0 +1,29 @@
+package com.fastasyncworldedit.core.util.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning an edit from its creation until it completed. Stages of the edit are recorded as
+ * {@link EditStageEvent}s referring to the same edit.
+ */
+@Name("com.fastasyncworldedit.Edit")
+@Label("Edit")
+@Category("FastAsyncWorldEdit")
+@Description("An edit from its creation until it completed")
+@StackTrace(false)
+final class EditEvent extends jdk.jfr.Event {
+
+    @Label("Edit")
+    long edit;
+
+    @Label("Actor")
+    String actor;
+
+    @Label("Command")
+    String command;
+
+}
@@ -0,0 +1,51 @@
+package com.fastasyncworldedit.core.util.telemetry;
+
+/**
+ * A stage of the edit pipeline time is attributed to, see {@link EditTelemetry}.
+ *
+ * @since TODO
+ */
+public enum EditStage {
+    /**
+     * Loading the existing blocks of chunk sections.
+     */
+    CHUNK_LOAD("chunk load"),
+    /**
+     * Applying filters, masks and patterns to chunks.
+     */
+    FILTER("filter"),
+    /**
+     * Running the batch processors on chunks about to be set.
+     */
+    PROCESS("process"),
+    /**
+     * Running the batch post processors on chunks that have been set.
+     */
+    POST_PROCESS("post process"),
+    /**
+     * Recording and writing the history of changes.
+     */
+    HISTORY("history"),
+    /**
+     * Setting the changes to the world.
+     */
+    APPLY("apply"),
+    /**
+     * Relighting changed chunks.
+     */
+    RELIGHT("relight"),
+    /**
+     * Sending changed chunks to players.
+     */
+    PACKETS("packets");
+
+    private final String displayName;
+
+    EditStage(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,31 @@
+package com.fastasyncworldedit.core.util.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for time a thread spent in a stage of an edit. The duration of the event includes nested stages, the self time
+ * excludes them.
+ */
+@Name("com.fastasyncworldedit.EditStage")
+@Label("Edit Stage")
+@Category("FastAsyncWorldEdit")
+@Description("Time spent by a thread in a stage of an edit")
+@StackTrace(false)
+final class EditStageEvent extends jdk.jfr.Event {
+
+    @Label("Edit")
+    long edit;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Self Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long selfTime;
+
+}
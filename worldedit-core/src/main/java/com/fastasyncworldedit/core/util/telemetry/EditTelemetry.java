@@ -0,0 +1,302 @@
+package com.fastasyncworldedit.core.util.telemetry;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Attributes the time of an edit to the stages of the edit pipeline, per thread. Code doing the work of a stage starts a
+ * {@link Timer} for it, which is attributed to the edit bound to the current thread. Stages may nest, the time of a stage
+ * does not include the time of the stages nested in it.
+ * <p>
+ * If enabled, each timer is also recorded as a JFR event, see {@link EditStageEvent}.
+ *
+ * @since TODO
+ */
+public final class EditTelemetry {
+
+    private static final int RECENT_EDITS = 16;
+    private static final Timer NOOP = new Timer(null, null, null);
+    private static final ThreadLocal<EditTelemetry> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Timer> ACTIVE = new ThreadLocal<>();
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final Deque<EditTelemetry> RECENT = new ConcurrentLinkedDeque<>();
+    private static final EditStage[] STAGES = EditStage.values();
+
+    private final long id = IDS.incrementAndGet();
+    private final String actor;
+    private final String command;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final EditEvent event = new EditEvent();
+    // nanos and count per stage, per thread
+    private final Map<String, AtomicLongArray> threads = new ConcurrentHashMap<>();
+    private volatile long durationNanos = -1;
+
+    /**
+     * Create a new telemetry for an edit.
+     *
+     * @param actor   the name of the actor editing
+     * @param command the command of the edit, if known
+     */
+    public EditTelemetry(String actor, @Nullable String command) {
+        this.actor = actor;
+        this.command = command;
+        event.begin();
+    }
+
+    /**
+     * Create a new telemetry for an edit if telemetry is enabled.
+     *
+     * @param actor   the name of the actor editing
+     * @param command the command of the edit, if known
+     * @return the telemetry, or null if disabled
+     */
+    @Nullable
+    public static EditTelemetry create(String actor, @Nullable String command) {
+        if (!Settings.settings().ENABLED_COMPONENTS.PERFORMANCE_TELEMETRY) {
+            return null;
+        }
+        return new EditTelemetry(actor, command);
+    }
+
+    /**
+     * Get the telemetry of the edit bound to the current thread.
+     */
+    @Nullable
+    public static EditTelemetry current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Start timing a stage for the edit bound to the current thread.
+     *
+     * @param stage the stage
+     * @return the timer to close once the stage is done
+     */
+    public static Timer start(EditStage stage) {
+        EditTelemetry telemetry = CURRENT.get();
+        if (telemetry == null) {
+            return NOOP;
+        }
+        return telemetry.begin(stage);
+    }
+
+    /**
+     * Start timing a stage for the given edit, binding it to the current thread until the timer is closed.
+     *
+     * @param telemetry the telemetry of the edit, may be null
+     * @param stage     the stage
+     * @return the timer to close once the stage is done
+     */
+    public static Timer start(@Nullable EditTelemetry telemetry, EditStage stage) {
+        if (telemetry == null) {
+            return NOOP;
+        }
+        return telemetry.begin(stage);
+    }
+
+    /**
+     * Wrap a task to be run later, possibly on another thread, so its time is attributed to the given stage of the edit bound
+     * to the current thread.
+     *
+     * @param stage the stage
+     * @param task  the task
+     * @return the wrapped task, or the task itself if no edit is bound
+     */
+    public static Runnable wrap(EditStage stage, Runnable task) {
+        EditTelemetry telemetry = CURRENT.get();
+        if (telemetry == null || task == null) {
+            return task;
+        }
+        return () -> {
+            try (Timer ignored = telemetry.begin(stage)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Get the recently completed edits, most recent first.
+     */
+    public static List<EditTelemetry> getRecent() {
+        return new ArrayList<>(RECENT);
+    }
+
+    private Timer begin(EditStage stage) {
+        EditTelemetry previous = CURRENT.get();
+        if (previous != this) {
+            CURRENT.set(this);
+        }
+        Timer timer = new Timer(this, stage, previous);
+        if (timer.event.isEnabled()) {
+            timer.event.begin();
+        }
+        return timer;
+    }
+
+    private void record(EditStage stage, long nanos) {
+        AtomicLongArray stats = threads.computeIfAbsent(
+                Thread.currentThread().getName(),
+                name -> new AtomicLongArray(STAGES.length * 2)
+        );
+        stats.addAndGet(stage.ordinal() * 2, nanos);
+        stats.incrementAndGet(stage.ordinal() * 2 + 1);
+    }
+
+    /**
+     * Mark the edit as completed, making it available in {@link #getRecent()}.
+     */
+    public void complete() {
+        if (durationNanos >= 0) {
+            return;
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        event.end();
+        if (event.shouldCommit()) {
+            event.edit = id;
+            event.actor = actor;
+            event.command = command;
+            event.commit();
+        }
+        RECENT.addFirst(this);
+        while (RECENT.size() > RECENT_EDITS) {
+            RECENT.pollLast();
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    @Nullable
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Get the time the edit was created at, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Get the wall clock time from creating the edit until it completed, or until now if not completed.
+     */
+    public long getDurationNanos() {
+        long duration = durationNanos;
+        return duration >= 0 ? duration : System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Get the time spent in a stage summed over all threads.
+     */
+    public long getNanos(EditStage stage) {
+        long nanos = 0;
+        for (AtomicLongArray stats : threads.values()) {
+            nanos += stats.get(stage.ordinal() * 2);
+        }
+        return nanos;
+    }
+
+    /**
+     * Get the number of times a stage was timed summed over all threads.
+     */
+    public long getCount(EditStage stage) {
+        long count = 0;
+        for (AtomicLongArray stats : threads.values()) {
+            count += stats.get(stage.ordinal() * 2 + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Get the time spent in each stage per thread.
+     *
+     * @return the nanos per stage ordinal, by thread name
+     */
+    public Map<String, long[]> getThreadNanos() {
+        Map<String, long[]> result = new ConcurrentHashMap<>();
+        threads.forEach((thread, stats) -> {
+            long[] nanos = new long[STAGES.length];
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] = stats.get(i * 2);
+            }
+            result.put(thread, nanos);
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Times a stage of an edit on the thread that started it. Closing the timer attributes the time since it was started,
+     * excluding timers nested in it, to the stage.
+     */
+    public static final class Timer implements AutoCloseable {
+
+        private final EditTelemetry telemetry;
+        private final EditStage stage;
+        private final EditTelemetry previous;
+        private final Timer parent;
+        private final EditStageEvent event;
+        private final long start;
+        private long nested;
+
+        private Timer(EditTelemetry telemetry, EditStage stage, EditTelemetry previous) {
+            this.telemetry = telemetry;
+            this.stage = stage;
+            this.previous = previous;
+            if (telemetry == null) {
+                this.parent = null;
+                this.event = null;
+                this.start = 0;
+                return;
+            }
+            this.parent = ACTIVE.get();
+            this.event = new EditStageEvent();
+            ACTIVE.set(this);
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (telemetry == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            long self = elapsed - nested;
+            telemetry.record(stage, self);
+            if (parent != null) {
+                parent.nested += elapsed;
+            }
+            ACTIVE.set(parent);
+            if (previous != telemetry) {
+                CURRENT.set(previous);
+            }
+            if (event.isEnabled()) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.edit = telemetry.id;
+                    event.stage = stage.name();
+                    event.selfTime = self;
+                    event.commit();
+                }
+            }
+        }
+
+    }
+
+}
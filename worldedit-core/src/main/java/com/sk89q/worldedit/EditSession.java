@@ -60,6 +60,8 @@
 import com.fastasyncworldedit.core.util.TaskManager;
 import com.fastasyncworldedit.core.util.collection.BlockVector3Set;
 import com.fastasyncworldedit.core.util.task.RunnableVal;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.sk89q.worldedit.entity.BaseEntity;
 import com.sk89q.worldedit.entity.Entity;
 import com.sk89q.worldedit.entity.Player;
@@ -254,6 +256,7 @@ public String getDisplayName() {
 
     //FAWE start
     private final Relighter relighter;
+    private final EditTelemetry telemetry;
     private final boolean wnaMode;
     @Nullable
     private final Region[] allowedRegions;
@@ -274,6 +277,7 @@ public String getDisplayName() {
         this.blockBag = builder.getBlockBag();
         this.history = changeSet != null;
         this.relighter = builder.getRelighter();
+        this.telemetry = builder.getTelemetry();
         this.wnaMode = builder.isWNAMode();
         if (builder.isTracing()) {
             this.tracingExtents = new ArrayList<>();
@@ -294,6 +298,17 @@ public FaweLimit getLimit() {
         return originalLimit;
     }
 
+    /**
+     * Get the telemetry of this edit, if performance telemetry is enabled.
+     *
+     * @return the telemetry, or null
+     * @since TODO
+     */
+    @Nullable
+    public EditTelemetry getTelemetry() {
+        return telemetry;
+    }
+
     public void resetLimit() {
         this.limit.set(this.originalLimit);
         ExtentTraverser<ProcessedWEExtent> find = new ExtentTraverser<>(getExtent()).find(ProcessedWEExtent.class);
@@ -1298,7 +1313,7 @@ public void flushQueue() {
         }
         // Reset limit
         limit.set(originalLimit);
-        try {
+        try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.RELIGHT)) {
             if (relighter != null && !(relighter instanceof NullRelighter)) {
                 // Don't relight twice!
                 if (!relighter.isFinished() && relighter.getLock().tryLock()) {
@@ -1326,16 +1341,21 @@ public void flushQueue() {
         }
         // Enqueue it
         if (getChangeSet() != null) {
-            if (Settings.settings().HISTORY.COMBINE_STAGES) {
-                ((AbstractChangeSet) getChangeSet()).closeAsync();
-            } else {
-                try {
-                    getChangeSet().close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+            try (EditTelemetry.Timer ignored = EditTelemetry.start(telemetry, EditStage.HISTORY)) {
+                if (Settings.settings().HISTORY.COMBINE_STAGES) {
+                    ((AbstractChangeSet) getChangeSet()).closeAsync();
+                } else {
+                    try {
+                        getChangeSet().close();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
             }
         }
+        if (telemetry != null) {
+            telemetry.complete();
+        }
     }
 
     public <B extends BlockStateHolder<B>> int fall(final Region region, boolean fullHeight, final B replace) {
@@ -50,9 +50,13 @@
 import com.fastasyncworldedit.core.queue.IQueueChunk;
 import com.fastasyncworldedit.core.queue.IQueueExtent;
 import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.SingleThreadQueueExtent;
+import com.fastasyncworldedit.core.regions.RegionChunkCache;
 import com.fastasyncworldedit.core.regions.RegionWrapper;
 import com.fastasyncworldedit.core.util.MemUtil;
 import com.fastasyncworldedit.core.util.Permission;
+import com.fastasyncworldedit.core.util.WEManager;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.fastasyncworldedit.core.wrappers.WorldWrapper;
 import com.google.common.base.Preconditions;
 import com.sk89q.worldedit.entity.Player;
@@ -98,6 +102,7 @@ public final class EditSessionBuilder {
     private String command;
     private RelightMode relightMode;
     private Relighter relighter;
+    private EditTelemetry telemetry;
     private Boolean wnaMode;
     private Extent bypassHistory;
     private Extent bypassAll;
@@ -480,6 +485,12 @@ public EditSessionBuilder compile() {
                 wnaMode = true;
                 extent = world;
             }
+            telemetry = EditTelemetry.create(actor == null ? "Console" : actor.getName(), command);
+            if (extent instanceof ParallelQueueExtent parallel) {
+                parallel.setTelemetry(telemetry);
+            } else if (queue instanceof SingleThreadQueueExtent singleThreadQueue) {
+                singleThreadQueue.setTelemetry(telemetry);
+            }
             if (combineStages == null) {
                 combineStages =
                         // If it's enabled in the settings
@@ -611,13 +622,19 @@ public EditSessionBuilder compile() {
             if (allowedRegions != null && allowedRegions.length == 0) {
                 regionExtent = new NullExtent(this.extent, FaweCache.NO_REGION);
             } else if (disallowedRegions != null && disallowedRegions.length != 0) {
-                regionExtent = new MultiRegionExtent(this.extent, this.limit, allowedRegions, disallowedRegions);
+                regionExtent = new MultiRegionExtent(this.extent, this.limit, allowedRegions, disallowedRegions,
+                        getChunkCache(allowedRegions, disallowedRegions)
+                );
             } else if (allowedRegions == null) {
                 allowedRegions = new Region[]{RegionWrapper.GLOBAL()};
             } else if (allowedRegions.length == 1) {
-                regionExtent = new SingleRegionExtent(this.extent, this.limit, allowedRegions[0]);
+                regionExtent = new SingleRegionExtent(this.extent, this.limit, allowedRegions[0],
+                        getChunkCache(allowedRegions, null)
+                );
             } else {
-                regionExtent = new MultiRegionExtent(this.extent, this.limit, allowedRegions, null);
+                regionExtent = new MultiRegionExtent(this.extent, this.limit, allowedRegions, null,
+                        getChunkCache(allowedRegions, null)
+                );
             }
             if (regionExtent != null) {
                 if (placeChunks) {
@@ -646,6 +663,16 @@ public EditSessionBuilder compile() {
         return this;
     }
 
+    /**
+     * Get the classification of chunks by the regions an edit is restricted to, shared between the edits of a player.
+     */
+    private RegionChunkCache getChunkCache(@Nullable Region[] allowed, @Nullable Region[] disallowed) {
+        if (actor instanceof Player player) {
+            return WEManager.weManager().getChunkCache(player, world, allowed, disallowed);
+        }
+        return new RegionChunkCache(allowed, disallowed, world.getMinY(), world.getMaxY(), 0);
+    }
+
     /**
      * Get the relight engine to be used
      */
@@ -653,6 +680,16 @@ public Relighter getRelighter() {
         return relighter;
     }
 
+    /**
+     * Get the telemetry of the edit, if enabled.
+     *
+     * @since TODO
+     */
+    @Nullable
+    public EditTelemetry getTelemetry() {
+        return telemetry;
+    }
+
     /**
      * If the edit will force using WNA
      */
@@ -25,6 +25,8 @@
 import com.fastasyncworldedit.core.configuration.Settings;
 import com.fastasyncworldedit.core.limit.FaweLimit;
 import com.fastasyncworldedit.core.util.UpdateNotification;
+import com.fastasyncworldedit.core.util.telemetry.EditStage;
+import com.fastasyncworldedit.core.util.telemetry.EditTelemetry;
 import com.intellectualsites.paster.IncendoPaster;
 import com.sk89q.worldedit.LocalSession;
 import com.sk89q.worldedit.WorldEdit;
@@ -143,6 +145,64 @@ public void threads(Actor actor) throws WorldEditException {
             }
         }
     }
+
+    @Command(
+            name = "perf",
+            desc = "Print where recent edits spent their time"
+    )
+    @CommandPermissions(value = "worldedit.perf", queued = false)
+    public void perf(
+            Actor actor,
+            @Arg(desc = "The number of recent edits to print", def = "1")
+                    int count,
+            @Switch(name = 't', desc = "Print the time of each thread")
+                    boolean threads
+    ) throws WorldEditException {
+        if (!Settings.settings().ENABLED_COMPONENTS.PERFORMANCE_TELEMETRY) {
+            actor.print(Caption.of("fawe.info.perf.disabled"));
+            return;
+        }
+        List<EditTelemetry> recent = EditTelemetry.getRecent();
+        if (recent.isEmpty()) {
+            actor.print(Caption.of("fawe.info.perf.none"));
+            return;
+        }
+        EditStage[] stages = EditStage.values();
+        for (EditTelemetry edit : recent.subList(0, Math.max(1, Math.min(count, recent.size())))) {
+            String command = edit.getCommand() == null ? "-" : edit.getCommand();
+            actor.print(Caption.of("fawe.info.perf.edit", edit.getId(), edit.getActor(), command,
+                    formatMillis(edit.getDurationNanos())
+            ));
+            for (EditStage stage : stages) {
+                long timed = edit.getCount(stage);
+                if (timed > 0) {
+                    actor.print(Caption.of("fawe.info.perf.stage", stage.getDisplayName(),
+                            formatMillis(edit.getNanos(stage)), timed
+                    ));
+                }
+            }
+            if (threads) {
+                for (Map.Entry<String, long[]> entry : edit.getThreadNanos().entrySet()) {
+                    StringBuilder times = new StringBuilder();
+                    long[] nanos = entry.getValue();
+                    for (EditStage stage : stages) {
+                        if (nanos[stage.ordinal()] > 0) {
+                            if (!times.isEmpty()) {
+                                times.append(", ");
+                            }
+                            times.append(stage.getDisplayName()).append(' ').append(formatMillis(nanos[stage.ordinal()]))
+                                    .append("ms");
+                        }
+                    }
+                    actor.print(Caption.of("fawe.info.perf.thread", entry.getKey(), times.toString()));
+                }
+            }
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000d);
+    }
     //FAWE end
 
     @Command(
@@ -19,6 +19,8 @@
 
 package com.sk89q.worldedit.command.tool.brush;
 
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.regions.RasterizedCylinder;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.function.pattern.Pattern;
@@ -39,6 +41,14 @@ public void build(EditSession editSession, BlockVector3 position, Pattern patter
         if (pattern == null) {
             pattern = BlockTypes.COBBLESTONE.getDefaultState();
         }
+        //FAWE start - fill whole chunks at once
+        if (Settings.settings().EXPERIMENTAL.CHUNK_BRUSHES) {
+            editSession.setBlocks(new RasterizedCylinder(editSession.getWorld(), position, size, size, height, 0, true,
+                    editSession.getMinY(), editSession.getMaxY()
+            ), pattern);
+            return;
+        }
+        //FAWE end
         editSession.makeCylinder(position, pattern, size, size, height, true);
     }
 
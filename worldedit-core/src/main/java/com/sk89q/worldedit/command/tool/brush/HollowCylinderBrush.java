@@ -19,6 +19,8 @@
 
 package com.sk89q.worldedit.command.tool.brush;
 
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.regions.RasterizedCylinder;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.function.pattern.Pattern;
@@ -45,7 +47,13 @@ public void build(EditSession editSession, BlockVector3 position, Pattern patter
         if (pattern == null) {
             pattern = BlockTypes.COBBLESTONE.getDefaultState();
         }
-        //FAWE start - hcyl thickness
+        //FAWE start - hcyl thickness, fill whole chunks at once
+        if (Settings.settings().EXPERIMENTAL.CHUNK_BRUSHES) {
+            editSession.setBlocks(new RasterizedCylinder(editSession.getWorld(), position, size, size, height, thickness, false,
+                    editSession.getMinY(), editSession.getMaxY()
+            ), pattern);
+            return;
+        }
         editSession.makeCylinder(position, pattern, size, size, height, thickness, false);
         //FAWE end
     }
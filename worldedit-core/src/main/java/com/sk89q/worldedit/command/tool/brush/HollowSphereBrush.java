@@ -19,10 +19,13 @@
 
 package com.sk89q.worldedit.command.tool.brush;
 
+import com.fastasyncworldedit.core.configuration.Settings;
+import com.fastasyncworldedit.core.regions.RasterizedEllipsoid;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.function.pattern.Pattern;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
 import com.sk89q.worldedit.world.block.BlockTypes;
 
 public class HollowSphereBrush implements Brush {
@@ -33,6 +36,14 @@ public void build(EditSession editSession, BlockVector3 position, Pattern patter
         if (pattern == null) {
             pattern = BlockTypes.COBBLESTONE.getDefaultState();
         }
+        //FAWE start - fill whole chunks at once
+        if (Settings.settings().EXPERIMENTAL.CHUNK_BRUSHES) {
+            editSession.setBlocks(new RasterizedEllipsoid(editSession.getWorld(), position, Vector3.at(size, size, size), false,
+                    editSession.getMinY(), editSession.getMaxY()
+            ), pattern);
+            return;
+        }
+        //FAWE end
         editSession.makeSphere(position, pattern, size, size, size, false);
     }
 
@@ -24,6 +24,8 @@
 import com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard;
 import com.fastasyncworldedit.core.extent.clipboard.MemoryOptimizedClipboard;
 import com.fastasyncworldedit.core.extent.clipboard.ReadOnlyClipboard;
+import com.fastasyncworldedit.core.extent.clipboard.SectionPaletteClipboard;
+import com.fastasyncworldedit.core.function.pattern.SectionPastePattern;
 import com.fastasyncworldedit.core.function.visitor.Order;
 import com.fastasyncworldedit.core.queue.Filter;
 import com.fastasyncworldedit.core.util.MaskTraverser;
@@ -38,6 +40,7 @@
 import com.sk89q.worldedit.extent.transform.BlockTransformExtent;
 import com.sk89q.worldedit.function.mask.ExistingBlockMask;
 import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.Masks;
 import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.math.BlockVector2;
@@ -98,6 +101,7 @@ static Clipboard create(Region region) {
      * Create a new {@link com.fastasyncworldedit.core.extent.clipboard.SimpleClipboard} instance.
      * Will be one of the following, depending on settings:
      *  - {@link DiskOptimizedClipboard}
+     *  - {@link SectionPaletteClipboard}
      *  - {@link CPUOptimizedClipboard}
      *  - {@link MemoryOptimizedClipboard}
      *
@@ -107,6 +111,8 @@ static Clipboard create(Region region) {
     static Clipboard create(Region region, UUID uuid) {
         if (Settings.settings().CLIPBOARD.USE_DISK) {
             return new DiskOptimizedClipboard(region, uuid);
+        } else if (Settings.settings().CLIPBOARD.SECTION_PALETTE) {
+            return new SectionPaletteClipboard(region);
         } else if (Settings.settings().CLIPBOARD.COMPRESSION_LEVEL == 0) {
             return new CPUOptimizedClipboard(region);
         } else {
@@ -402,18 +408,28 @@ default void paste(Extent extent, BlockVector3 to, boolean pasteAir, boolean pas
 
         pasteBiomes &= Clipboard.this.hasBiomes();
 
-        for (BlockVector3 pos : this) {
-            BaseBlock block = pos.getFullBlock(this);
-            int xx = pos.x() + relx;
-            int yy = pos.y() + rely;
-            int zz = pos.z() + relz;
-            if (pasteBiomes) {
-                extent.setBiome(xx, yy, zz, pos.getBiome(this));
-            }
-            if (!pasteAir && block.getBlockType().getMaterial().isAir()) {
-                continue;
+        SectionPastePattern sectionPaste = pasteBiomes ? null : SectionPastePattern.of(
+                this,
+                getRegion(),
+                pasteAir ? Masks.alwaysTrue() : new ExistingBlockMask(this),
+                BlockVector3.at(relx, rely, relz)
+        );
+        if (sectionPaste != null) {
+            extent.setBlocks(sectionPaste.getRegion(), sectionPaste);
+        } else {
+            for (BlockVector3 pos : this) {
+                BaseBlock block = pos.getFullBlock(this);
+                int xx = pos.x() + relx;
+                int yy = pos.y() + rely;
+                int zz = pos.z() + relz;
+                if (pasteBiomes) {
+                    extent.setBiome(xx, yy, zz, pos.getBiome(this));
+                }
+                if (!pasteAir && block.getBlockType().getMaterial().isAir()) {
+                    continue;
+                }
+                extent.setBlock(xx, yy, zz, block);
             }
-            extent.setBlock(xx, yy, zz, block);
         }
         // Entity offset is the paste location subtract the clipboard origin (entity's location is already relative to the world origin)
         final int entityOffsetX = to.x() - origin.x();
@@ -23,6 +23,9 @@
 import com.fastasyncworldedit.core.extent.ResettableExtent;
 import com.fastasyncworldedit.core.registry.state.PropertyKey;
 import com.fastasyncworldedit.core.registry.state.PropertyKeySet;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.sk89q.jnbt.ByteTag;
 import com.sk89q.jnbt.CompoundTag;
@@ -43,7 +46,6 @@
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockType;
-import com.sk89q.worldedit.world.block.BlockTypes;
 import com.sk89q.worldedit.world.block.BlockTypesCache;
 import org.apache.logging.log4j.Logger;
 
@@ -51,7 +53,6 @@
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -106,12 +107,23 @@ public class BlockTransformExtent extends ResettableExtent {
             WEST, PropertyKey.WEST
     );
 
-    private final int[] ALL = new int[0];
+    /**
+     * Ordinal lookup tables of affine transforms, shared by all extents (and thus pastes) using the same rotation and scale.
+     * Keyed on the linear part only, as the translation does not change how a block state is transformed.
+     */
+    private static final LoadingCache<TransformKey, char[]> ORDINAL_TABLES = CacheBuilder.newBuilder()
+            .maximumSize(32)
+            .build(new CacheLoader<>() {
+                @Override
+                public char[] load(@Nonnull TransformKey key) {
+                    return createOrdinalTable(new AffineTransform(key.coefficients()));
+                }
+            });
+
     private Transform transform;
     private Transform transformInverse;
-    private int[] BLOCK_ROTATION_BITMASK;
-    private int[][] BLOCK_TRANSFORM;
-    private int[][] BLOCK_TRANSFORM_INVERSE;
+    private char[] ordinalTable;
+    private char[] ordinalTableInverse;
 
     public BlockTransformExtent(Extent parent) {
         this(parent, new AffineTransform());
@@ -459,25 +471,94 @@ private static int transformState(BlockState state, Transform transform) {
 
 
     private void cache() {
-        BLOCK_ROTATION_BITMASK = new int[BlockTypes.size()];
-        BLOCK_TRANSFORM = new int[BlockTypes.size()][];
-        BLOCK_TRANSFORM_INVERSE = new int[BlockTypes.size()][];
-        for (int i = 0; i < BLOCK_TRANSFORM.length; i++) {
-            BLOCK_TRANSFORM[i] = ALL;
-            BLOCK_TRANSFORM_INVERSE[i] = ALL;
-            BlockType type = BlockTypes.get(i);
-            int bitMask = 0;
-            for (AbstractProperty property : (Collection<AbstractProperty>) (Collection) type.getProperties()) {
+        // tables of other transforms are not shared, so they are only created once a block is actually transformed
+        this.ordinalTable = transform instanceof AffineTransform ? getOrdinalTable(transform) : null;
+        this.ordinalTableInverse = transformInverse instanceof AffineTransform ? getOrdinalTable(transformInverse) : null;
+    }
+
+    private char[] ordinalTable() {
+        char[] table = ordinalTable;
+        if (table == null) {
+            table = ordinalTable = getOrdinalTable(transform);
+        }
+        return table;
+    }
+
+    private char[] ordinalTableInverse() {
+        char[] table = ordinalTableInverse;
+        if (table == null) {
+            table = ordinalTableInverse = getOrdinalTable(transformInverse);
+        }
+        return table;
+    }
+
+    /**
+     * Get a lookup table mapping the ordinal of every block state to the ordinal of the state transformed by the given
+     * transform. Tables of affine transforms are computed once and shared by all callers using a transform with equal
+     * rotation and scale, whatever its translation.
+     *
+     * @param transform the transform
+     * @return the lookup table, must not be modified
+     */
+    public static char[] getOrdinalTable(Transform transform) {
+        if (transform instanceof AffineTransform affine) {
+            double[] c = affine.coefficients();
+            return ORDINAL_TABLES.getUnchecked(new TransformKey(new double[]{
+                    c[0], c[1], c[2],
+                    c[4], c[5], c[6],
+                    c[8], c[9], c[10]
+            }));
+        }
+        return createOrdinalTable(transform);
+    }
+
+    private static char[] createOrdinalTable(Transform transform) {
+        char[] table = new char[BlockTypesCache.states.length];
+        for (int ordinal = 0; ordinal < table.length; ordinal++) {
+            table[ordinal] = (char) ordinal;
+        }
+        if (transform.isIdentity()) {
+            return table;
+        }
+        for (BlockType type : BlockTypesCache.values) {
+            int mask = 0;
+            for (AbstractProperty<?> property : (List<AbstractProperty<?>>) type.getProperties()) {
                 if (isDirectional(property)) {
-                    BLOCK_TRANSFORM[i] = null;
-                    BLOCK_TRANSFORM_INVERSE[i] = null;
-                    bitMask |= property.getBitMask();
+                    mask |= property.getBitMask();
                 }
             }
-            if (bitMask != 0) {
-                BLOCK_ROTATION_BITMASK[i] = bitMask;
+            if (mask == 0) {
+                continue;
+            }
+            // only the directional properties are transformed, so each combination of them is computed once per type
+            int[] transformed = new int[type.getMaxStateId() + 1];
+            Arrays.fill(transformed, -1);
+            for (BlockState state : type.getAllStates()) {
+                int internalId = state.getInternalId();
+                int maskedIndex = (internalId & mask) >> BlockTypesCache.BIT_OFFSET;
+                int newMaskedId = transformed[maskedIndex];
+                if (newMaskedId == -1) {
+                    newMaskedId = transformed[maskedIndex] = transformState(state, transform) & mask;
+                }
+                BlockState transformedState = BlockState.getFromInternalId(newMaskedId | (internalId & ~mask));
+                table[state.getOrdinal()] = transformedState.getOrdinalChar();
             }
         }
+        return table;
+    }
+
+    private record TransformKey(double[] coefficients) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TransformKey other && Arrays.equals(coefficients, other.coefficients);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(coefficients);
+        }
+
     }
     //FAWE end
 
@@ -498,7 +579,18 @@ public Transform getTransform() {
      * @return the same block
      */
     private <T extends BlockStateHolder<T>> T transformBlock(T block, boolean reverse) {
-        return transform(block, reverse ? transform.inverse() : transform);
+        //FAWE start - use the ordinal lookup tables
+        BlockState transformed = BlockState.getFromOrdinal(
+                (reverse ? ordinalTableInverse() : ordinalTable())[block.getOrdinal()]);
+        if (block instanceof BaseBlock) {
+            if (block.hasNbtData()) {
+                Transform nbtTransform = reverse ? transformInverse : transform;
+                return (T) transformBaseBlockNBT(transformed, block.getNbtData(), nbtTransform);
+            }
+            return (T) transformed.toBaseBlock();
+        }
+        return (T) transformed;
+        //FAWE end
     }
 
     @Override
@@ -564,31 +656,6 @@ public static <B extends BlockStateHolder<B>> B transform(@Nonnull B block, @Non
     }
 
     //FAWE start - use own logic
-    private BlockState transform(BlockState state, int[][] transformArray, Transform transform) {
-        int typeId = state.getInternalBlockTypeId();
-        int[] arr = transformArray[typeId];
-        if (arr == ALL) {
-            return state;
-        }
-        if (arr == null) {
-            arr = transformArray[typeId] = new int[state.getBlockType().getMaxStateId() + 1];
-            Arrays.fill(arr, -1);
-        }
-        int mask = BLOCK_ROTATION_BITMASK[typeId];
-        int internalId = state.getInternalId();
-
-        int maskedId = internalId & mask;
-        int newMaskedId = arr[maskedId >> BlockTypesCache.BIT_OFFSET];
-        if (newMaskedId != -1) {
-            return BlockState.getFromInternalId(newMaskedId | (internalId & (~mask)));
-        }
-
-        newMaskedId = transformState(state, transform);
-
-        arr[maskedId >> BlockTypesCache.BIT_OFFSET] = newMaskedId & mask;
-        return BlockState.getFromInternalId(newMaskedId);
-    }
-
     public final BaseBlock transform(BlockStateHolder<BaseBlock> block) {
         BlockState transformed = transform(block.toImmutableState());
         if (block.hasNbtData()) {
@@ -606,11 +673,11 @@ protected final BlockStateHolder transformInverse(BlockStateHolder block) {
     }
 
     public final BlockState transform(BlockState block) {
-        return transform(block, BLOCK_TRANSFORM, transform);
+        return BlockState.getFromOrdinal(ordinalTable()[block.getOrdinal()]);
     }
 
     private BlockState transformInverse(BlockState block) {
-        return transform(block, BLOCK_TRANSFORM_INVERSE, transformInverse);
+        return BlockState.getFromOrdinal(ordinalTableInverse()[block.getOrdinal()]);
     }
     //FAWE end
 }
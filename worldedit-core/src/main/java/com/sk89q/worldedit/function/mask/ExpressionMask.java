@@ -19,10 +19,12 @@
 
 package com.sk89q.worldedit.function.mask;
 
+import com.fastasyncworldedit.core.function.SectionExpression;
 import com.sk89q.worldedit.internal.expression.EvaluationException;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 
 import javax.annotation.Nullable;
@@ -40,6 +42,9 @@ public class ExpressionMask extends AbstractMask {
 
     private final Expression expression;
     private final IntSupplier timeout;
+    //FAWE start - batch evaluation per chunk section
+    private final SectionExpression section;
+    //FAWE end
 
     /**
      * Create a new instance.
@@ -64,10 +69,18 @@ public ExpressionMask(Expression expression, @Nullable IntSupplier timeout) {
         checkNotNull(expression);
         this.expression = expression;
         this.timeout = timeout;
+        //FAWE start
+        this.section = new SectionExpression(expression, timeout);
+        //FAWE end
     }
 
     @Override
     public boolean test(BlockVector3 vector) {
+        //FAWE start - batch evaluation per chunk section
+        if (section.contains(vector.x(), vector.y(), vector.z())) {
+            return section.evaluate(vector.x(), vector.y(), vector.z()) > 0;
+        }
+        //FAWE end
         try {
             if (expression.getEnvironment() instanceof WorldEditExpressionEnvironment) {
                 ((WorldEditExpressionEnvironment) expression.getEnvironment()).setCurrentBlock(vector.toVector3());
@@ -96,6 +109,24 @@ public Mask2D toMask2D() {
     public Mask copy() {
         return new ExpressionMask(expression.clone(), timeout);
     }
+
+    /**
+     * Evaluate the expression for whole chunk sections of the given chunk until {@link #finishChunk()} is called.
+     *
+     * @param chunkX the chunk x coordinate
+     * @param chunkZ the chunk z coordinate
+     * @param region the region being filtered, may be null if the whole chunk is filtered
+     */
+    public void initChunk(int chunkX, int chunkZ, @Nullable Region region) {
+        section.initChunk(chunkX, chunkZ, region);
+    }
+
+    /**
+     * Stop evaluating the chunk given to {@link #initChunk(int, int, Region)} per section.
+     */
+    public void finishChunk() {
+        section.finishChunk();
+    }
     //FAWE end
 
 }
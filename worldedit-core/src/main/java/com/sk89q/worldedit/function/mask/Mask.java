@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.function.mask;
 
+import com.fastasyncworldedit.core.extent.filter.FusedMaskFilter;
 import com.fastasyncworldedit.core.extent.filter.MaskFilter;
 import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
 import com.fastasyncworldedit.core.function.mask.InverseMask;
@@ -83,6 +84,10 @@ default <T extends Filter> MaskFilter<T> toFilter(T filter) {
                 return new MaskFilter.VectorizedMaskFilter(vectorizedFilter, this);
             }
         }
+        final MaskFilter<T> fused = FusedMaskFilter.of(filter, this);
+        if (fused != null) {
+            return fused;
+        }
         return new MaskFilter<>(filter, this);
     }
 
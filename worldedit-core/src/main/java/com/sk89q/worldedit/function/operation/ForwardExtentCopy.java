@@ -26,6 +26,7 @@
 import com.fastasyncworldedit.core.function.block.BiomeCopy;
 import com.fastasyncworldedit.core.function.block.CombinedBlockCopy;
 import com.fastasyncworldedit.core.function.block.SimpleBlockCopy;
+import com.fastasyncworldedit.core.function.pattern.SectionPastePattern;
 import com.fastasyncworldedit.core.function.visitor.IntersectRegionFunction;
 import com.fastasyncworldedit.core.queue.implementation.ParallelQueueExtent;
 import com.fastasyncworldedit.core.util.ExtentTraverser;
@@ -343,7 +344,12 @@ public Operation resume(RunContext run) throws WorldEditException {
             }
         }
 
-        if (blockCopy == null) {
+        SectionPastePattern sectionPaste = null;
+        if (transExt == null && sourceFunction == null && filterFunction == null && !copyingBiomes && repetitions == 1) {
+            sectionPaste = SectionPastePattern.of(source, region, sourceMask, translation);
+        }
+
+        if (blockCopy == null && sectionPaste == null) {
             RegionFunction maskFunc = null;
 
             if (sourceFunction != null) {
@@ -418,7 +424,12 @@ public Operation resume(RunContext run) throws WorldEditException {
         }
 
         for (int i = 0; i < repetitions; i++) {
-            Operations.completeBlindly(blockCopy);
+            if (sectionPaste != null) {
+                affectedBlocks += destination.setBlocks(sectionPaste.getRegion(), sectionPaste);
+                affectedBlocks += (int) sectionPaste.getSectionChanges();
+            } else {
+                Operations.completeBlindly(blockCopy);
+            }
 
             if (!entities.isEmpty()) {
                 ExtentEntityCopy entityCopy = new ExtentEntityCopy(
@@ -445,7 +456,9 @@ public Operation resume(RunContext run) throws WorldEditException {
             }
 
         }
-        affectedBlocks += blockCopy.getAffected();
+        if (blockCopy != null) {
+            affectedBlocks += blockCopy.getAffected();
+        }
         if (copyingBiomes) {
             // We know biomes will have happened unless something else has gone wrong. Just calculate it.
             affectedBiomeCols += source.fullySupports3DBiomes() ? (getAffected() >> 2) : (region.getWidth() * region.getLength());
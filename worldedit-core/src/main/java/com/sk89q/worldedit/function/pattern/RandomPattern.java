@@ -27,6 +27,7 @@
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.world.block.BaseBlock;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -105,6 +106,16 @@ public RandomCollection<Pattern> getCollection() {
         return collection;
     }
 
+    /**
+     * Get the patterns and their weights, in the order they were added.
+     *
+     * @return an unmodifiable view of the weights
+     * @since TODO
+     */
+    public Map<Pattern, Double> getWeights() {
+        return Collections.unmodifiableMap(weights);
+    }
+
     @Override
     public BaseBlock applyBlock(BlockVector3 position) {
         return collection.next(position.x(), position.y(), position.z()).applyBlock(position);
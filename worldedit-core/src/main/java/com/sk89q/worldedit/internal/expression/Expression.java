@@ -31,11 +31,14 @@
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import javax.annotation.Nullable;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.IntConsumer;
 
 /**
  * Compiles and evaluates expressions.
@@ -177,6 +180,56 @@ public double evaluate(double[] values, int timeout) throws EvaluationException
         return result;
     }
 
+    //FAWE start - batch evaluation
+    /**
+     * Evaluates the expression {@code length} times, writing each result to {@code results}. The deadline is computed
+     * once for the whole batch instead of once per evaluation. {@code values[i]} holds the inputs for the {@code i}-th
+     * variable given when compiling.
+     *
+     * <p>Evaluations that fail or do not result in a value are written as {@link Double#NaN}. Once an evaluation exceeds
+     * the deadline of the batch, the batch fails: that evaluation and all remaining ones are written as {@code NaN}
+     * without being run.</p>
+     *
+     * @param values     the inputs, one array per variable
+     * @param results    the array to write the results to
+     * @param length     the number of evaluations
+     * @param timeout    the timeout of the batch in milliseconds
+     * @param beforeEach called with the index of each evaluation after its inputs are set, may be null
+     */
+    public void evaluate(double[][] values, double[] results, int length, int timeout, @Nullable IntConsumer beforeEach) {
+        LocalSlot.Variable[] variables = new LocalSlot.Variable[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            String slotName = providedSlots.get(i);
+            variables[i] = slots.getVariable(slotName)
+                    .orElseThrow(() -> new EvaluationException(
+                            -1,
+                            "Tried to assign to non-variable " + slotName + "."
+                    ));
+        }
+
+        ExecutionData data = new ExecutionData(slots, functions, Instant.now().plusMillis(timeout));
+        for (int index = 0; index < length; index++) {
+            for (int i = 0; i < variables.length; i++) {
+                variables[i].setValue(values[i][index]);
+            }
+            if (beforeEach != null) {
+                beforeEach.accept(index);
+            }
+            Double result;
+            try {
+                result = compiledExpression.execute(data);
+            } catch (ExpressionTimeoutException e) {
+                // running the rest with a new deadline would let a slow batch take its length times the timeout
+                Arrays.fill(results, index, length, Double.NaN);
+                return;
+            } catch (EvaluationException e) {
+                result = null;
+            }
+            results[index] = result == null ? Double.NaN : result;
+        }
+    }
+    //FAWE end
+
     public void optimize() {
         // TODO optimizing
     }
@@ -190,6 +243,12 @@ public SlotTable getSlots() {
         return slots;
     }
 
+    //FAWE start
+    CompiledExpression getCompiledExpression() {
+        return compiledExpression;
+    }
+    //FAWE end
+
     public ExpressionEnvironment getEnvironment() {
         return functions.getEnvironment();
     }
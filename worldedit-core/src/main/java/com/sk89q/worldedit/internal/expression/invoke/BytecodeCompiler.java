@@ -0,0 +1,834 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.antlr.ExpressionParser;
+import com.sk89q.worldedit.internal.expression.CompiledExpression;
+import com.sk89q.worldedit.internal.expression.ExecutionData;
+import com.sk89q.worldedit.internal.expression.ExpressionHelper;
+import com.sk89q.worldedit.internal.expression.Functions;
+import com.sk89q.worldedit.internal.expression.LocalSlot;
+import com.sk89q.worldedit.internal.expression.SlotTable;
+import com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.Code;
+import com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.Label;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.sk89q.worldedit.antlr.ExpressionLexer.ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.DIVIDE;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.DIVIDE_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.EXCLAMATION_MARK;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.GREATER_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.INCREMENT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LEFT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.LESS_THAN_OR_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MINUS_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MODULO;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.MODULO_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NEAR;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.NOT_EQUAL;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.PLUS_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.POWER_ASSIGN;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.RIGHT_SHIFT;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.TIMES;
+import static com.sk89q.worldedit.antlr.ExpressionLexer.TIMES_ASSIGN;
+import static com.sk89q.worldedit.internal.expression.ExpressionHelper.WRAPPED_CONSTANT;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.AALOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_FINAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_PRIVATE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_PUBLIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_STATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACC_SUPER;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ACONST_NULL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ALOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ARETURN;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ASTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.CHECKCAST;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.D2L;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DADD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCMPG;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DCMPL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DDIV;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DLOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DMUL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DNEG;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DREM;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DSTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DSUB;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP2;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP2_X1;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.DUP_X2;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.GETFIELD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.GETSTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.GOTO;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFEQ;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFGE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFGT;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFLE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFLT;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFNE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IFNONNULL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.IF_ACMPEQ;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ILOAD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKEINTERFACE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKESPECIAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKESTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.INVOKEVIRTUAL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.ISTORE;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.L2D;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.L2I;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LCONST_1;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LNEG;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSHL;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSHR;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.LSUB;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.POP;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.POP2;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.PUTFIELD;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.PUTSTATIC;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.RETURN;
+import static com.sk89q.worldedit.internal.expression.invoke.ClassFileWriter.SWAP;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Compiles an expression into a hidden class whose {@code execute} method works on primitive {@code double}s, instead
+ * of the {@link MethodHandle} tree built by {@link CompilingVisitor} that boxes every intermediate value.
+ * <p>
+ * Slots are never removed from a {@link SlotTable}, so each one is looked up only on its first use and then kept in a
+ * field of the generated instance and a local of {@code execute}. Variables are read and written through
+ * {@link LocalSlot.Variable} directly, so functions taking variables see the same state as with the method handle
+ * tree. Function handles are stored in static final fields of the generated class so that their invocations can be
+ * inlined.
+ * <p>
+ * Switch statements, and break / continue outside of a loop, are not supported: {@link #compile} throws an
+ * {@link UnsupportedOperationException} and {@link ExpressionCompiler} uses the method handle tree instead.
+ */
+final class BytecodeCompiler {
+
+    private static final String CLASS_NAME = internalName(BytecodeCompiler.class.getPackageName()) + "/GeneratedExpression";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String MATH = "java/lang/Math";
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESC = "Ljava/lang/invoke/MethodHandle;";
+    private static final String METHOD_HANDLES = "java/lang/invoke/MethodHandles";
+    private static final String COMPILED_EXPRESSION = internalName(CompiledExpression.class.getName());
+    private static final String LOCAL_SLOT = internalName(LocalSlot.class.getName());
+    private static final String VARIABLE = internalName(LocalSlot.Variable.class.getName());
+    private static final String SUPPORT = internalName(BytecodeSupport.class.getName());
+    private static final String VISITOR = internalName(CompilingVisitor.class.getName());
+    private static final String DATA = internalName(ExecutionData.class.getName());
+    private static final String DATA_DESC = "L" + DATA + ";";
+    private static final String SLOT_TABLE_DESC = "L" + internalName(SlotTable.class.getName()) + ";";
+    private static final String LOCAL_SLOT_DESC = "L" + LOCAL_SLOT + ";";
+    private static final String VARIABLE_DESC = "L" + VARIABLE + ";";
+    private static final String EXECUTE_DESC = "(" + DATA_DESC + ")L" + DOUBLE + ";";
+    private static final String GET_SLOT_DESC = "(" + DATA_DESC + "Ljava/lang/String;I)L" + LOCAL_SLOT + ";";
+    private static final String GET_VARIABLE_DESC = "(" + DATA_DESC + "Ljava/lang/String;I)L" + VARIABLE + ";";
+    private static final String CHECK_LOOP_DESC = "(" + DATA_DESC + "II)V";
+    private static final String CLASS_DATA_DESC =
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;";
+
+    private static final int THIS_LOCAL = 0;
+    private static final int DATA_LOCAL = 1;
+
+    private final Functions functions;
+    private final ClassFileWriter writer = new ClassFileWriter(
+            ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, OBJECT, COMPILED_EXPRESSION
+    );
+    // this, data
+    private final Code code = writer.newCode(2);
+    private final List<MethodHandle> handles = new ArrayList<>();
+    private final Map<String, Cache> slotCaches = new HashMap<>();
+    private final Map<String, Cache> variableCaches = new HashMap<>();
+    private final List<Cache> caches = new ArrayList<>();
+    private final IntList referenceLocals = new IntArrayList();
+    private final IntList doubleLocals = new IntArrayList();
+    private final IntList intLocals = new IntArrayList();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+
+    BytecodeCompiler(Functions functions) {
+        this.functions = functions;
+    }
+
+    private static String internalName(String binaryName) {
+        return binaryName.replace('.', '/');
+    }
+
+    /**
+     * Compile the expression and define its class.
+     *
+     * @param root the parsed expression
+     * @return the compiled expression
+     * @throws UnsupportedOperationException if the expression uses a construct this compiler does not handle
+     * @throws ReflectiveOperationException  if the generated class cannot be defined or instantiated
+     */
+    CompiledExpression compile(ExpressionParser.AllStatementsContext root) throws ReflectiveOperationException {
+        Label prologue = new Label();
+        Label start = new Label();
+        code.jump(GOTO, prologue);
+        code.place(start);
+        Result result = newResult();
+        statements(root.statements(), result);
+        Label noResult = new Label();
+        code.local(ILOAD, result.present());
+        code.jump(IFEQ, noResult);
+        code.local(DLOAD, result.value());
+        returnValue();
+        code.place(noResult);
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+        // Locals are verified by type inference, so every local needs a value of its type on all paths
+        code.place(prologue);
+        loadCaches();
+        for (int local : referenceLocals) {
+            code.op(ACONST_NULL, 1);
+            code.local(ASTORE, local);
+        }
+        for (int local : doubleLocals) {
+            code.dconst(0);
+            code.local(DSTORE, local);
+        }
+        for (int local : intLocals) {
+            code.iconst(0);
+            code.local(ISTORE, local);
+        }
+        code.jump(GOTO, start);
+        writer.method(ACC_PUBLIC, "execute", EXECUTE_DESC, code);
+        writeConstructor();
+        writeStaticInitializer();
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(
+                writer.toByteArray(), handles.toArray(), true
+        );
+        return (CompiledExpression) lookup.lookupClass().getConstructor().newInstance();
+    }
+
+    /**
+     * A slot looked up on its first use, kept in a field for later executions and a local for the current one.
+     */
+    private record Cache(int local, String field, String descriptor) {
+    }
+
+    private Cache newCache(String descriptor) {
+        Cache cache = new Cache(code.newLocal(1), "c" + caches.size(), descriptor);
+        writer.field(ACC_PRIVATE, cache.field(), descriptor);
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Copy the cached slots into their locals. They are dropped first if the expression is executed with another
+     * slot table than the last time.
+     */
+    private void loadCaches() {
+        if (caches.isEmpty()) {
+            return;
+        }
+        writer.field(ACC_PRIVATE, "slots", SLOT_TABLE_DESC);
+        Label sameTable = new Label();
+        Label load = new Label();
+        code.local(ALOAD, DATA_LOCAL);
+        code.invoke(INVOKEVIRTUAL, DATA, "slots", "()" + SLOT_TABLE_DESC);
+        code.op(DUP, 1);
+        code.local(ALOAD, THIS_LOCAL);
+        code.field(GETFIELD, CLASS_NAME, "slots", SLOT_TABLE_DESC);
+        code.jump(IF_ACMPEQ, sameTable);
+        code.local(ALOAD, THIS_LOCAL);
+        code.op(SWAP, 0);
+        code.field(PUTFIELD, CLASS_NAME, "slots", SLOT_TABLE_DESC);
+        for (Cache cache : caches) {
+            code.local(ALOAD, THIS_LOCAL);
+            code.op(ACONST_NULL, 1);
+            code.field(PUTFIELD, CLASS_NAME, cache.field(), cache.descriptor());
+        }
+        code.jump(GOTO, load);
+        code.place(sameTable);
+        code.op(POP, -1);
+        code.place(load);
+        for (Cache cache : caches) {
+            code.local(ALOAD, THIS_LOCAL);
+            code.field(GETFIELD, CLASS_NAME, cache.field(), cache.descriptor());
+            code.local(ASTORE, cache.local());
+        }
+    }
+
+    private void writeConstructor() {
+        Code init = writer.newCode(1);
+        init.local(ALOAD, 0);
+        init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        init.op(RETURN, 0);
+        writer.method(ACC_PUBLIC, "<init>", "()V", init);
+    }
+
+    private void writeStaticInitializer() {
+        Code clinit = writer.newCode(0);
+        if (!handles.isEmpty()) {
+            int array = clinit.newLocal(1);
+            clinit.invoke(INVOKESTATIC, METHOD_HANDLES, "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+            clinit.sconst("_");
+            clinit.cconst("[Ljava/lang/Object;");
+            clinit.invoke(INVOKESTATIC, METHOD_HANDLES, "classData", CLASS_DATA_DESC);
+            clinit.type(CHECKCAST, "[Ljava/lang/Object;");
+            clinit.local(ASTORE, array);
+            for (int i = 0; i < handles.size(); i++) {
+                writer.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "h" + i, METHOD_HANDLE_DESC);
+                clinit.local(ALOAD, array);
+                clinit.iconst(i);
+                clinit.op(AALOAD, -1);
+                clinit.type(CHECKCAST, METHOD_HANDLE);
+                clinit.field(PUTSTATIC, CLASS_NAME, "h" + i, METHOD_HANDLE_DESC);
+            }
+        }
+        clinit.op(RETURN, 0);
+        writer.method(ACC_STATIC, "<clinit>", "()V", clinit);
+    }
+
+    // Locals
+
+    private int newReferenceLocal() {
+        int local = code.newLocal(1);
+        referenceLocals.add(local);
+        return local;
+    }
+
+    private int newDoubleLocal() {
+        int local = code.newLocal(2);
+        doubleLocals.add(local);
+        return local;
+    }
+
+    private int newIntLocal() {
+        int local = code.newLocal(1);
+        intLocals.add(local);
+        return local;
+    }
+
+    /**
+     * The value of a statement, which is absent ({@code null} in the method handle tree) for statements such as an
+     * {@code if} without {@code else} whose condition is false.
+     */
+    private record Result(int value, int present) {
+    }
+
+    private Result newResult() {
+        return new Result(newDoubleLocal(), newIntLocal());
+    }
+
+    private void storeResult(Result result) {
+        code.local(DSTORE, result.value());
+        code.iconst(1);
+        code.local(ISTORE, result.present());
+    }
+
+    private void clearResult(Result result) {
+        code.iconst(0);
+        code.local(ISTORE, result.present());
+    }
+
+    private void copyResult(Result from, Result to) {
+        code.local(DLOAD, from.value());
+        code.local(DSTORE, to.value());
+        code.local(ILOAD, from.present());
+        code.local(ISTORE, to.present());
+    }
+
+    private void returnValue() {
+        code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";");
+        code.op(ARETURN, -1);
+    }
+
+    // Statements
+
+    private record Loop(Label next, Label end) {
+    }
+
+    /**
+     * Whether a statement consists of empty statements only. Those are skipped in a sequence of statements, but give
+     * an absent value on their own, like the default result of {@link CompilingVisitor}.
+     */
+    private static boolean isEmpty(ExpressionParser.StatementContext ctx) {
+        if (ctx.emptyStatement() != null) {
+            return true;
+        }
+        ExpressionParser.BlockContext block = ctx.block();
+        return block != null && block.statements().statement().stream().allMatch(BytecodeCompiler::isEmpty);
+    }
+
+    private void statements(ExpressionParser.StatementsContext ctx, Result result) {
+        boolean empty = true;
+        for (ExpressionParser.StatementContext statement : ctx.statement()) {
+            if (!isEmpty(statement)) {
+                statement(statement, result);
+                empty = false;
+            }
+        }
+        if (empty) {
+            clearResult(result);
+        }
+    }
+
+    private void statement(ExpressionParser.StatementContext ctx, Result result) {
+        if (isEmpty(ctx)) {
+            clearResult(result);
+        } else if (ctx.block() != null) {
+            statements(ctx.block().statements(), result);
+        } else if (ctx.expressionStatement() != null) {
+            value(ctx.expressionStatement().expression());
+            storeResult(result);
+        } else if (ctx.ifStatement() != null) {
+            ifStatement(ctx.ifStatement(), result);
+        } else if (ctx.whileStatement() != null) {
+            ExpressionParser.WhileStatementContext loop = ctx.whileStatement();
+            loop(null, loop.condition, loop.body, null, result);
+        } else if (ctx.forStatement() != null) {
+            ExpressionParser.ForStatementContext loop = ctx.forStatement();
+            loop(loop.init, loop.condition, loop.body, loop.update, result);
+        } else if (ctx.doStatement() != null) {
+            doStatement(ctx.doStatement(), result);
+        } else if (ctx.simpleForStatement() != null) {
+            simpleForStatement(ctx.simpleForStatement(), result);
+        } else if (ctx.breakStatement() != null || ctx.continueStatement() != null) {
+            Loop loop = loops.peek();
+            if (loop == null) {
+                throw new UnsupportedOperationException("break or continue outside of a loop");
+            }
+            code.jump(GOTO, ctx.breakStatement() != null ? loop.end() : loop.next());
+        } else if (ctx.returnStatement() != null) {
+            value(ctx.returnStatement().value);
+            returnValue();
+        } else {
+            throw new UnsupportedOperationException(ctx.getChild(0).getClass().getSimpleName());
+        }
+    }
+
+    private void ifStatement(ExpressionParser.IfStatementContext ctx, Result result) {
+        Label falseBranch = new Label();
+        Label end = new Label();
+        jumpIfFalse(ctx.condition, falseBranch);
+        statement(ctx.trueBranch, result);
+        code.jump(GOTO, end);
+        code.place(falseBranch);
+        if (ctx.falseBranch != null) {
+            statement(ctx.falseBranch, result);
+        } else {
+            clearResult(result);
+        }
+        code.place(end);
+    }
+
+    /**
+     * Count an iteration, failing like {@link ExpressionHandles} once the iteration limit or deadline is exceeded.
+     */
+    private void checkLoop(int iterations, ParserRuleContext body) {
+        code.local(ALOAD, DATA_LOCAL);
+        code.local(ILOAD, iterations);
+        code.iconst(body.start.getCharPositionInLine());
+        code.invoke(INVOKESTATIC, SUPPORT, "checkLoop", CHECK_LOOP_DESC);
+        code.iinc(iterations, 1);
+    }
+
+    /**
+     * Compile the body of a loop. The value of the loop is the one of the last iteration that was not left by break
+     * or continue.
+     */
+    private void loopBody(ExpressionParser.StatementContext body, Loop loop, Result result) {
+        Result bodyResult = newResult();
+        loops.push(loop);
+        statement(body, bodyResult);
+        loops.pop();
+        copyResult(bodyResult, result);
+    }
+
+    private void loop(
+            ExpressionParser.ExpressionContext init,
+            ExpressionParser.ExpressionContext condition,
+            ExpressionParser.StatementContext body,
+            ExpressionParser.ExpressionContext update,
+            Result result
+    ) {
+        Label check = new Label();
+        Loop loop = new Loop(new Label(), new Label());
+        int iterations = newIntLocal();
+        if (init != null) {
+            value(init);
+            code.op(POP2, -2);
+        }
+        code.iconst(0);
+        code.local(ISTORE, iterations);
+        clearResult(result);
+        code.place(check);
+        jumpIfFalse(condition, loop.end());
+        checkLoop(iterations, body);
+        loopBody(body, loop, result);
+        code.place(loop.next());
+        if (update != null) {
+            value(update);
+            code.op(POP2, -2);
+        }
+        code.jump(GOTO, check);
+        code.place(loop.end());
+    }
+
+    private void doStatement(ExpressionParser.DoStatementContext ctx, Result result) {
+        Label start = new Label();
+        Loop loop = new Loop(new Label(), new Label());
+        int iterations = newIntLocal();
+        code.iconst(0);
+        code.local(ISTORE, iterations);
+        clearResult(result);
+        code.place(start);
+        checkLoop(iterations, ctx.body);
+        loopBody(ctx.body, loop, result);
+        code.place(loop.next());
+        value(ctx.condition);
+        code.dconst(0);
+        code.op(DCMPL, -3);
+        code.jump(IFNE, start);
+        code.place(loop.end());
+    }
+
+    private void simpleForStatement(ExpressionParser.SimpleForStatementContext ctx, Result result) {
+        Label check = new Label();
+        Loop loop = new Loop(new Label(), new Label());
+        int counter = newDoubleLocal();
+        int last = newDoubleLocal();
+        int variable = newReferenceLocal();
+        int iterations = newIntLocal();
+        value(ctx.first);
+        code.local(DSTORE, counter);
+        value(ctx.last);
+        code.local(DSTORE, last);
+        loadVariable(ctx.counter, true);
+        code.local(ASTORE, variable);
+        code.iconst(0);
+        code.local(ISTORE, iterations);
+        clearResult(result);
+        code.place(check);
+        code.local(DLOAD, counter);
+        code.local(DLOAD, last);
+        code.op(DCMPG, -3);
+        code.jump(IFGT, loop.end());
+        checkLoop(iterations, ctx.body);
+        code.local(ALOAD, variable);
+        code.local(DLOAD, counter);
+        code.invoke(INVOKEVIRTUAL, VARIABLE, "setValue", "(D)V");
+        loopBody(ctx.body, loop, result);
+        code.place(loop.next());
+        code.local(DLOAD, counter);
+        code.dconst(1);
+        code.op(DADD, -2);
+        code.local(DSTORE, counter);
+        code.jump(GOTO, check);
+        code.place(loop.end());
+    }
+
+    // Expressions, each leaves a double on the stack
+
+    private void jumpIfFalse(ParserRuleContext condition, Label target) {
+        value(condition);
+        code.dconst(0);
+        code.op(DCMPL, -3);
+        code.jump(IFEQ, target);
+    }
+
+    /**
+     * Turn the int left by a comparison into 1 or 0.
+     *
+     * @param ifFalse the branch opcode taken when the comparison is false
+     */
+    private void toBoolean(int ifFalse) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        code.jump(ifFalse, isFalse);
+        code.dconst(1);
+        code.jump(GOTO, end);
+        code.place(isFalse);
+        code.dconst(0);
+        code.place(end);
+    }
+
+    private void value(ParserRuleContext ctx) {
+        if (ctx instanceof ExpressionParser.ConstantExpressionContext) {
+            code.dconst(Double.parseDouble(ctx.getText()));
+        } else if (ctx instanceof ExpressionParser.IdExprContext id) {
+            loadSlot(id.source);
+            code.invoke(INVOKEINTERFACE, LOCAL_SLOT, "value", "()D");
+        } else if (ctx instanceof ExpressionParser.AssignmentContext assignment) {
+            assignment(assignment);
+        } else if (ctx instanceof ExpressionParser.FunctionCallContext call) {
+            functionCall(call);
+        } else if (ctx instanceof ExpressionParser.TernaryExprContext ternary) {
+            Label falseBranch = new Label();
+            Label end = new Label();
+            jumpIfFalse(ternary.condition, falseBranch);
+            value(ternary.trueBranch);
+            code.jump(GOTO, end);
+            code.place(falseBranch);
+            value(ternary.falseBranch);
+            code.place(end);
+        } else if (ctx instanceof ExpressionParser.ConditionalOrExprContext or) {
+            Label end = new Label();
+            value(or.left);
+            code.op(DUP2, 2);
+            code.dconst(0);
+            code.op(DCMPL, -3);
+            code.jump(IFNE, end);
+            code.op(POP2, -2);
+            value(or.right);
+            code.place(end);
+        } else if (ctx instanceof ExpressionParser.ConditionalAndExprContext and) {
+            Label isFalse = new Label();
+            Label end = new Label();
+            jumpIfFalse(and.left, isFalse);
+            value(and.right);
+            code.jump(GOTO, end);
+            code.place(isFalse);
+            code.dconst(0);
+            code.place(end);
+        } else if (ctx instanceof ExpressionParser.EqualityExprContext equality) {
+            value(equality.left);
+            value(equality.right);
+            switch (equality.op.getType()) {
+                case EQUAL -> {
+                    code.op(DCMPL, -3);
+                    toBoolean(IFNE);
+                }
+                case NOT_EQUAL -> {
+                    code.op(DCMPL, -3);
+                    toBoolean(IFEQ);
+                }
+                case NEAR -> {
+                    code.invoke(INVOKESTATIC, VISITOR, "almostEqual2sComplement", "(DD)Z");
+                    toBoolean(IFEQ);
+                }
+                default -> throw new UnsupportedOperationException(equality.op.getText());
+            }
+        } else if (ctx instanceof ExpressionParser.RelationalExprContext relational) {
+            value(relational.left);
+            value(relational.right);
+            // NaN compares false, so it has to take the false branch
+            switch (relational.op.getType()) {
+                case LESS_THAN -> {
+                    code.op(DCMPG, -3);
+                    toBoolean(IFGE);
+                }
+                case LESS_THAN_OR_EQUAL -> {
+                    code.op(DCMPG, -3);
+                    toBoolean(IFGT);
+                }
+                case GREATER_THAN -> {
+                    code.op(DCMPL, -3);
+                    toBoolean(IFLE);
+                }
+                case GREATER_THAN_OR_EQUAL -> {
+                    code.op(DCMPL, -3);
+                    toBoolean(IFLT);
+                }
+                default -> throw new UnsupportedOperationException(relational.op.getText());
+            }
+        } else if (ctx instanceof ExpressionParser.ShiftExprContext shift) {
+            value(shift.left);
+            code.op(D2L, 0);
+            value(shift.right);
+            code.op(D2L, 0);
+            code.op(L2I, -1);
+            switch (shift.op.getType()) {
+                case LEFT_SHIFT -> code.op(LSHL, -1);
+                case RIGHT_SHIFT -> code.op(LSHR, -1);
+                default -> throw new UnsupportedOperationException(shift.op.getText());
+            }
+            code.op(L2D, 0);
+        } else if (ctx instanceof ExpressionParser.AddExprContext add) {
+            value(add.left);
+            value(add.right);
+            switch (add.op.getType()) {
+                case PLUS -> code.op(DADD, -2);
+                case MINUS -> code.op(DSUB, -2);
+                default -> throw new UnsupportedOperationException(add.op.getText());
+            }
+        } else if (ctx instanceof ExpressionParser.MultiplicativeExprContext multiplicative) {
+            value(multiplicative.left);
+            value(multiplicative.right);
+            switch (multiplicative.op.getType()) {
+                case TIMES -> code.op(DMUL, -2);
+                case DIVIDE -> code.op(DDIV, -2);
+                case MODULO -> code.op(DREM, -2);
+                default -> throw new UnsupportedOperationException(multiplicative.op.getText());
+            }
+        } else if (ctx instanceof ExpressionParser.PowerExprContext power) {
+            value(power.left);
+            value(power.right);
+            code.invoke(INVOKESTATIC, MATH, "pow", "(DD)D");
+        } else if (ctx instanceof ExpressionParser.PlusMinusExprContext plusMinus) {
+            value(plusMinus.expr);
+            switch (plusMinus.op.getType()) {
+                case PLUS -> {
+                }
+                case MINUS -> code.op(DNEG, 0);
+                default -> throw new UnsupportedOperationException(plusMinus.op.getText());
+            }
+        } else if (ctx instanceof ExpressionParser.NotExprContext not) {
+            value(not.expr);
+            code.dconst(0);
+            code.op(DCMPL, -3);
+            toBoolean(IFNE);
+        } else if (ctx instanceof ExpressionParser.ComplementExprContext complement) {
+            // ~x == -x - 1
+            value(complement.expr);
+            code.op(D2L, 0);
+            code.op(LNEG, 0);
+            code.op(LCONST_1, 2);
+            code.op(LSUB, -2);
+            code.op(L2D, 0);
+        } else if (ctx instanceof ExpressionParser.PostfixExprContext postfix) {
+            if (postfix.op.getType() != EXCLAMATION_MARK) {
+                throw new UnsupportedOperationException(postfix.op.getText());
+            }
+            value(postfix.expr);
+            code.invoke(INVOKESTATIC, VISITOR, "factorial", "(D)D");
+        } else if (ctx instanceof ExpressionParser.PreCrementExprContext crement) {
+            crement(crement.target, crement.op.getType() == INCREMENT, true);
+        } else if (ctx instanceof ExpressionParser.PostCrementExprContext crement) {
+            crement(crement.target, crement.op.getType() == INCREMENT, false);
+        } else {
+            // Fallthrough rules and parenthesised expressions wrap a single expression
+            List<ParserRuleContext> children = ctx.getRuleContexts(ParserRuleContext.class);
+            if (children.size() != 1) {
+                throw new UnsupportedOperationException(ctx.getClass().getSimpleName());
+            }
+            value(children.get(0));
+        }
+    }
+
+    /**
+     * Push the slot of the given name, looking it up only if it is not cached yet.
+     */
+    private void loadSlot(Token name) {
+        String text = name.getText();
+        Cache cache = slotCaches.computeIfAbsent(text, n -> newCache(LOCAL_SLOT_DESC));
+        loadCached(cache, text, ExpressionHelper.getErrorPosition(name), "getSlot", GET_SLOT_DESC);
+    }
+
+    /**
+     * Push the variable of the given name, looking it up only if it is not cached yet.
+     *
+     * @param create whether the variable is created if it does not exist yet, like with an assignment
+     */
+    private void loadVariable(Token name, boolean create) {
+        loadVariable(name.getText(), ExpressionHelper.getErrorPosition(name), create);
+    }
+
+    private void loadVariable(String name, int position, boolean create) {
+        Cache cache = variableCaches.computeIfAbsent(name, n -> newCache(VARIABLE_DESC));
+        loadCached(cache, name, position, create ? "initVariable" : "getVariable", GET_VARIABLE_DESC);
+    }
+
+    private void loadCached(Cache cache, String name, int position, String lookup, String descriptor) {
+        Label cached = new Label();
+        code.local(ALOAD, cache.local());
+        code.op(DUP, 1);
+        code.jump(IFNONNULL, cached);
+        code.op(POP, -1);
+        code.local(ALOAD, DATA_LOCAL);
+        code.sconst(name);
+        code.iconst(position);
+        code.invoke(INVOKESTATIC, SUPPORT, lookup, descriptor);
+        code.op(DUP, 1);
+        code.local(ASTORE, cache.local());
+        code.op(DUP, 1);
+        code.local(ALOAD, THIS_LOCAL);
+        code.op(SWAP, 0);
+        code.field(PUTFIELD, CLASS_NAME, cache.field(), cache.descriptor());
+        code.place(cached);
+    }
+
+    private void assignment(ExpressionParser.AssignmentContext ctx) {
+        int type = ctx.assignmentOperator().getStart().getType();
+        value(ctx.expression());
+        if (type == ASSIGN) {
+            // arg -> variable, arg
+            loadVariable(ctx.target, true);
+            code.op(DUP_X2, 1);
+            code.op(POP, -1);
+        } else {
+            int arg = newDoubleLocal();
+            code.local(DSTORE, arg);
+            loadVariable(ctx.target, false);
+            code.op(DUP, 1);
+            code.invoke(INVOKEVIRTUAL, VARIABLE, "value", "()D");
+            code.local(DLOAD, arg);
+            switch (type) {
+                case POWER_ASSIGN -> code.invoke(INVOKESTATIC, MATH, "pow", "(DD)D");
+                case TIMES_ASSIGN -> code.op(DMUL, -2);
+                case DIVIDE_ASSIGN -> code.op(DDIV, -2);
+                case MODULO_ASSIGN -> code.op(DREM, -2);
+                case PLUS_ASSIGN -> code.op(DADD, -2);
+                case MINUS_ASSIGN -> code.op(DSUB, -2);
+                default -> throw new UnsupportedOperationException(ctx.assignmentOperator().getText());
+            }
+        }
+        // variable, value -> value, variable, value
+        code.op(DUP2_X1, 2);
+        code.invoke(INVOKEVIRTUAL, VARIABLE, "setValue", "(D)V");
+    }
+
+    private void crement(Token target, boolean increment, boolean pre) {
+        loadVariable(target, false);
+        code.op(DUP, 1);
+        code.invoke(INVOKEVIRTUAL, VARIABLE, "value", "()D");
+        if (!pre) {
+            code.op(DUP2_X1, 2);
+        }
+        code.dconst(1);
+        code.op(increment ? DADD : DSUB, -2);
+        if (pre) {
+            code.op(DUP2_X1, 2);
+        }
+        code.invoke(INVOKEVIRTUAL, VARIABLE, "setValue", "(D)V");
+    }
+
+    private void functionCall(ExpressionParser.FunctionCallContext ctx) {
+        MethodHandle handle = ExpressionHelper.resolveFunction(functions, ctx);
+        String fnName = ctx.name.getText();
+        MethodType type = handle.type();
+        int index = handles.size();
+        code.field(GETSTATIC, CLASS_NAME, "h" + index, METHOD_HANDLE_DESC);
+        Class<?>[] parameters = new Class<?>[type.parameterCount()];
+        for (int i = 0; i < parameters.length; i++) {
+            ExpressionParser.ExpressionContext arg = ctx.args.get(i);
+            String handleName = ExpressionHelper.getArgumentHandleName(fnName, type, i, arg);
+            if (handleName == null) {
+                value(arg);
+                parameters[i] = double.class;
+            } else if (handleName.equals(WRAPPED_CONSTANT)) {
+                value(arg);
+                code.invoke(INVOKESTATIC, SUPPORT, "newConstant", "(D)L" + LOCAL_SLOT + ";");
+                parameters[i] = LocalSlot.class;
+            } else {
+                loadVariable(handleName, ExpressionHelper.getErrorPosition(arg.start), false);
+                parameters[i] = LocalSlot.Variable.class;
+            }
+        }
+        MethodType callType = methodType(double.class, parameters);
+        handles.add(handle.asType(callType));
+        code.invoke(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", callType.toMethodDescriptorString());
+    }
+
+}
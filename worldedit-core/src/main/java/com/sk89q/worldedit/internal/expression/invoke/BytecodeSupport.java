@@ -0,0 +1,45 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import com.sk89q.worldedit.internal.expression.ExecutionData;
+import com.sk89q.worldedit.internal.expression.ExpressionHelper;
+import com.sk89q.worldedit.internal.expression.LocalSlot;
+
+/**
+ * Runtime helpers called by the classes generated by {@link BytecodeCompiler}. They mirror the slot lookups of
+ * {@link ExpressionHandles}, taking the name and error position instead of a {@link org.antlr.v4.runtime.Token}.
+ */
+final class BytecodeSupport {
+
+    private BytecodeSupport() {
+    }
+
+    static LocalSlot getSlot(ExecutionData data, String name, int position) {
+        return data.slots().getSlot(name).orElseThrow(() -> ExpressionHelper.evalException(
+                position, "'" + name + "' is not initialized yet"
+        ));
+    }
+
+    static LocalSlot.Variable getVariable(ExecutionData data, String name, int position) {
+        LocalSlot slot = getSlot(data, name, position);
+        if (!(slot instanceof LocalSlot.Variable variable)) {
+            throw ExpressionHelper.evalException(position, "'" + name + "' is not a variable");
+        }
+        return variable;
+    }
+
+    static LocalSlot.Variable initVariable(ExecutionData data, String name, int position) {
+        return data.slots().initVariable(name).orElseThrow(() -> ExpressionHelper.evalException(
+                position, "Cannot overwrite non-variable '" + name + "'"
+        ));
+    }
+
+    static LocalSlot newConstant(double value) {
+        return new LocalSlot.Constant(value);
+    }
+
+    static void checkLoop(ExecutionData data, int iterations, int position) {
+        ExpressionHelper.checkIterations(iterations, position);
+        data.checkDeadline();
+    }
+
+}
@@ -0,0 +1,571 @@
+package com.sk89q.worldedit.internal.expression.invoke;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal class file writer, just enough to emit the classes generated by {@link BytecodeCompiler}.
+ * <p>
+ * Classes are written as class file version 49, which the JVM verifies by type inference, so no {@code StackMapTable}
+ * has to be computed. The price is that every local must be definitely assigned on all paths before it is read, which
+ * the compiler guarantees by initialising all locals up front.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 1;
+    static final int LCONST_1 = 10;
+    static final int DCONST_0 = 14;
+    static final int DCONST_1 = 15;
+    static final int ILOAD = 21;
+    static final int DLOAD = 24;
+    static final int ALOAD = 25;
+    static final int AALOAD = 50;
+    static final int ISTORE = 54;
+    static final int DSTORE = 57;
+    static final int ASTORE = 58;
+    static final int POP = 87;
+    static final int POP2 = 88;
+    static final int DUP = 89;
+    static final int DUP_X2 = 91;
+    static final int DUP2 = 92;
+    static final int DUP2_X1 = 93;
+    static final int SWAP = 95;
+    static final int DADD = 99;
+    static final int LSUB = 101;
+    static final int DSUB = 103;
+    static final int DMUL = 107;
+    static final int DDIV = 111;
+    static final int DREM = 115;
+    static final int LNEG = 117;
+    static final int DNEG = 119;
+    static final int LSHL = 121;
+    static final int LSHR = 123;
+    static final int IINC = 132;
+    static final int L2I = 136;
+    static final int L2D = 138;
+    static final int D2L = 143;
+    static final int DCMPL = 151;
+    static final int DCMPG = 152;
+    static final int IFEQ = 153;
+    static final int IFNE = 154;
+    static final int IFLT = 155;
+    static final int IFGE = 156;
+    static final int IFGT = 157;
+    static final int IFLE = 158;
+    static final int IF_ACMPEQ = 165;
+    static final int IF_ACMPNE = 166;
+    static final int GOTO = 167;
+    static final int ARETURN = 176;
+    static final int RETURN = 177;
+    static final int GETSTATIC = 178;
+    static final int PUTSTATIC = 179;
+    static final int GETFIELD = 180;
+    static final int PUTFIELD = 181;
+    static final int INVOKEVIRTUAL = 182;
+    static final int INVOKESPECIAL = 183;
+    static final int INVOKESTATIC = 184;
+    static final int INVOKEINTERFACE = 185;
+    static final int CHECKCAST = 192;
+    static final int IFNONNULL = 199;
+
+    private static final int VERSION = 49;
+    private static final int WIDE = 196;
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC = 18;
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int ICONST_0 = 3;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+    private final DataOutputStream members = new DataOutputStream(memberBytes);
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+
+    /**
+     * New instance.
+     *
+     * @param access     class access flags
+     * @param name       internal name of the class
+     * @param superName  internal name of the super class
+     * @param interfaces internal names of the implemented interfaces
+     */
+    ClassFileWriter(int access, String name, String superName, String... interfaces) {
+        this.access = access;
+        this.thisClass = classConstant(name);
+        this.superClass = classConstant(superName);
+        this.interfaces = Arrays.stream(interfaces).mapToInt(this::classConstant).toArray();
+    }
+
+    private int constant(String key, int slots, PoolEntryWriter writer) {
+        Integer existing = poolIndices.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int index = poolCount;
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolCount += slots;
+        if (poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool too large");
+        }
+        poolIndices.put(key, index);
+        return index;
+    }
+
+    int utf8Constant(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classConstant(String internalName) {
+        int name = utf8Constant(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int stringConstant(String value) {
+        int utf8 = utf8Constant(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(utf8);
+        });
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8Constant(name);
+        int descIndex = utf8Constant(descriptor);
+        return constant("N" + name + ':' + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+        });
+    }
+
+    int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nat = nameAndType(name, descriptor);
+        return constant("M" + tag + owner + '.' + name + ':' + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nat);
+        });
+    }
+
+    void field(int access, String name, String descriptor) {
+        int nameIndex = utf8Constant(name);
+        int descIndex = utf8Constant(descriptor);
+        fields.add(new byte[]{
+                (byte) (access >> 8), (byte) access,
+                (byte) (nameIndex >> 8), (byte) nameIndex,
+                (byte) (descIndex >> 8), (byte) descIndex,
+                0, 0
+        });
+    }
+
+    /**
+     * Create the code of a new method.
+     *
+     * @param argumentSlots the number of local slots taken by the arguments, including {@code this}
+     */
+    Code newCode(int argumentSlots) {
+        return new Code(argumentSlots);
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        if (code.length > 0xFFFF) {
+            throw new IllegalStateException("Method too large");
+        }
+        int nameIndex = utf8Constant(name);
+        int descIndex = utf8Constant(descriptor);
+        int codeIndex = utf8Constant("Code");
+        memberBytes.reset();
+        try {
+            members.writeShort(access);
+            members.writeShort(nameIndex);
+            members.writeShort(descIndex);
+            members.writeShort(1);
+            members.writeShort(codeIndex);
+            members.writeInt(12 + code.length);
+            members.writeShort(code.maxStack);
+            members.writeShort(code.maxLocals);
+            members.writeInt(code.length);
+            members.write(code.bytes, 0, code.length);
+            members.writeShort(0);
+            members.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(memberBytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int itf : interfaces) {
+                out.writeShort(itf);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Number of local variable / operand stack slots taken by a value of the given descriptor.
+     */
+    static int slots(String descriptor) {
+        char c = descriptor.charAt(0);
+        return c == 'V' ? 0 : c == 'D' || c == 'J' ? 2 : 1;
+    }
+
+    private static int argumentSlots(String methodDescriptor) {
+        int slots = 0;
+        int i = 1;
+        while (methodDescriptor.charAt(i) != ')') {
+            char c = methodDescriptor.charAt(i);
+            if (c == 'D' || c == 'J') {
+                slots += 2;
+                i++;
+                continue;
+            }
+            while (methodDescriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (methodDescriptor.charAt(i) == 'L') {
+                i = methodDescriptor.indexOf(';', i);
+            }
+            slots++;
+            i++;
+        }
+        return slots;
+    }
+
+    private static int offset(int from, int to) {
+        int offset = to - from;
+        if (offset != (short) offset) {
+            throw new IllegalStateException("Branch offset too large");
+        }
+        return offset;
+    }
+
+    @FunctionalInterface
+    private interface PoolEntryWriter {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    /**
+     * A branch target in a {@link Code}.
+     */
+    static final class Label {
+
+        private int position = -1;
+        private int stack = -1;
+        private int[] fixups = new int[4];
+        private int fixupCount;
+
+    }
+
+    /**
+     * The code of a single method. Tracks the operand stack depth of every instruction written to compute
+     * {@code max_stack}; branches carry their depth to their target label.
+     */
+    final class Code {
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+
+        private Code(int argumentSlots) {
+            this.maxLocals = argumentSlots;
+        }
+
+        /**
+         * Reserve a new local variable.
+         *
+         * @param size the number of slots, 2 for doubles and longs
+         * @return the index of the local
+         */
+        int newLocal(int size) {
+            int index = maxLocals;
+            maxLocals += size;
+            if (maxLocals > 0xFFFF) {
+                throw new IllegalStateException("Too many locals");
+            }
+            return index;
+        }
+
+        private void put1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length << 1);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void put2(int value) {
+            put1(value >> 8);
+            put1(value);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack < 0) {
+                throw new IllegalStateException("Operand stack underflow at " + length);
+            }
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Write an instruction without operands.
+         *
+         * @param opcode     the opcode
+         * @param stackDelta the change of the operand stack depth
+         */
+        void op(int opcode, int stackDelta) {
+            put1(opcode);
+            adjust(stackDelta);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                put1(ICONST_0 + value);
+            } else if (value == (byte) value) {
+                put1(BIPUSH);
+                put1(value);
+            } else if (value == (short) value) {
+                put1(SIPUSH);
+                put2(value);
+            } else {
+                ldcIndex(intConstant(value));
+                return;
+            }
+            adjust(1);
+        }
+
+        void dconst(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                put1(DCONST_0);
+            } else if (value == 1) {
+                put1(DCONST_1);
+            } else {
+                put1(LDC2_W);
+                put2(doubleConstant(value));
+            }
+            adjust(2);
+        }
+
+        void sconst(String value) {
+            ldcIndex(stringConstant(value));
+        }
+
+        void cconst(String internalName) {
+            ldcIndex(classConstant(internalName));
+        }
+
+        private void ldcIndex(int index) {
+            if (index <= 0xFF) {
+                put1(LDC);
+                put1(index);
+            } else {
+                put1(LDC_W);
+                put2(index);
+            }
+            adjust(1);
+        }
+
+        /**
+         * Write a load or store of a local variable.
+         *
+         * @param opcode one of the {@code ILOAD}, {@code DLOAD}, {@code ALOAD}, {@code ISTORE}, {@code DSTORE} or
+         *               {@code ASTORE} opcodes
+         * @param index  index of the local
+         */
+        void local(int opcode, int index) {
+            if (index > 0xFF) {
+                put1(WIDE);
+                put1(opcode);
+                put2(index);
+            } else {
+                put1(opcode);
+                put1(index);
+            }
+            int size = opcode == DLOAD || opcode == DSTORE ? 2 : 1;
+            adjust(opcode < ISTORE ? size : -size);
+        }
+
+        void iinc(int index, int amount) {
+            if (index > 0xFF || amount != (byte) amount) {
+                put1(WIDE);
+                put1(IINC);
+                put2(index);
+                put2(amount);
+            } else {
+                put1(IINC);
+                put1(index);
+                put1(amount);
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            put1(opcode);
+            put2(memberConstant(9, owner, name, descriptor));
+            int size = slots(descriptor);
+            switch (opcode) {
+                case GETSTATIC -> adjust(size);
+                case PUTSTATIC -> adjust(-size);
+                case GETFIELD -> adjust(size - 1);
+                default -> adjust(-size - 1);
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            boolean itf = opcode == INVOKEINTERFACE;
+            put1(opcode);
+            put2(memberConstant(itf ? 11 : 10, owner, name, descriptor));
+            int arguments = argumentSlots(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+            if (itf) {
+                put1(arguments);
+                put1(0);
+            }
+            adjust(slots(descriptor.substring(descriptor.indexOf(')') + 1)) - arguments);
+        }
+
+        void type(int opcode, String internalName) {
+            put1(opcode);
+            put2(classConstant(internalName));
+        }
+
+        /**
+         * Write a branch to a label.
+         *
+         * @param opcode {@code GOTO}, one of the {@code IFxx} opcodes comparing with zero, {@code IFNONNULL} or
+         *               {@code IF_ACMPxx}
+         * @param label  the target
+         */
+        void jump(int opcode, Label label) {
+            if (opcode == IF_ACMPEQ || opcode == IF_ACMPNE) {
+                adjust(-2);
+            } else if (opcode != GOTO) {
+                adjust(-1);
+            }
+            if (label.stack == -1) {
+                label.stack = stack;
+            } else if (label.stack != stack) {
+                throw new IllegalStateException("Inconsistent stack depth at branch");
+            }
+            int position = length;
+            put1(opcode);
+            if (label.position >= 0) {
+                put2(offset(position, label.position));
+            } else {
+                if (label.fixupCount == label.fixups.length) {
+                    label.fixups = Arrays.copyOf(label.fixups, label.fixupCount << 1);
+                }
+                label.fixups[label.fixupCount++] = position;
+                put2(0);
+            }
+        }
+
+        /**
+         * Bind a label to the current position. If it is only reachable through branches, the stack depth becomes the
+         * one of those branches.
+         */
+        void place(Label label) {
+            if (label.position >= 0) {
+                throw new IllegalStateException("Label placed twice");
+            }
+            label.position = length;
+            if (label.stack == -1) {
+                label.stack = stack;
+            } else {
+                stack = label.stack;
+            }
+            for (int i = 0; i < label.fixupCount; i++) {
+                int position = label.fixups[i];
+                int offset = offset(position, label.position);
+                bytes[position + 1] = (byte) (offset >> 8);
+                bytes[position + 2] = (byte) offset;
+            }
+            label.fixupCount = 0;
+        }
+
+        /**
+         * Mark the rest of the code, up to the next placed label, as unreachable.
+         */
+        void unreachable() {
+            stack = 0;
+        }
+
+        int length() {
+            return length;
+        }
+
+    }
+
+}
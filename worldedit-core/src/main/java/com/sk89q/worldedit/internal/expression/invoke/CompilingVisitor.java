@@ -475,7 +475,8 @@ public MethodHandle visitEqualityExpr(ExpressionParser.EqualityExprContext ctx)
     }
 
     // Usable AlmostEqual function, based on http://www.cygnus-software.com/papers/comparingfloats/comparingfloats.htm
-    private static boolean almostEqual2sComplement(double a, double b) {
+    //FAWE start - made package-private for BytecodeCompiler
+    static boolean almostEqual2sComplement(double a, double b) {
         // Make sure maxUlps is non-negative and small enough that the
         // default NAN won't compare as equal to anything.
         //assert(maxUlps > 0 && maxUlps < 4 * 1024 * 1024); // this is for floats, not doubles
@@ -495,6 +496,7 @@ private static boolean almostEqual2sComplement(double a, double b) {
         final long longDiff = Math.abs(aLong - bLong);
         return longDiff <= 450359963L;
     }
+    //FAWE end
 
     @Override
     public MethodHandle visitPostfixExpr(ExpressionParser.PostfixExprContext ctx) {
@@ -519,7 +521,8 @@ public MethodHandle visitPostfixExpr(ExpressionParser.PostfixExprContext ctx) {
         }
     }
 
-    private static double factorial(double x) throws EvaluationException {
+    //FAWE start - made package-private for BytecodeCompiler
+    static double factorial(double x) throws EvaluationException {
         final int n = (int) x;
 
         if (n < 0) {
@@ -532,6 +535,7 @@ private static double factorial(double x) throws EvaluationException {
 
         return factorials[n];
     }
+    //FAWE end
 
     @Override
     public MethodHandle visitAssignment(ExpressionParser.AssignmentContext ctx) {
@@ -19,9 +19,12 @@
 
 package com.sk89q.worldedit.internal.expression.invoke;
 
+import com.fastasyncworldedit.core.configuration.Settings;
 import com.sk89q.worldedit.antlr.ExpressionParser;
 import com.sk89q.worldedit.internal.expression.CompiledExpression;
 import com.sk89q.worldedit.internal.expression.Functions;
+import com.sk89q.worldedit.internal.util.LogManagerCompat;
+import org.apache.logging.log4j.Logger;
 
 import java.lang.invoke.LambdaConversionException;
 import java.lang.invoke.LambdaMetafactory;
@@ -36,6 +39,10 @@
  */
 public class ExpressionCompiler {
 
+    //FAWE start
+    private static final Logger LOGGER = LogManagerCompat.getLogger();
+    //FAWE end
+
     private static final String CE_EXECUTE = "execute";
     private static final MethodType HANDLE_TO_CE =
             methodType(CompiledExpression.class, MethodHandle.class);
@@ -67,6 +74,15 @@ public CompiledExpression compileExpression(
             ExpressionParser.AllStatementsContext root,
             Functions functions
     ) {
+        //FAWE start - compile to a class working on primitive doubles, method handles remain the fallback
+        if (Settings.settings().EXPERIMENTAL.COMPILE_EXPRESSIONS) {
+            try {
+                return new BytecodeCompiler(functions).compile(root);
+            } catch (UnsupportedOperationException | IllegalStateException | ReflectiveOperationException | LinkageError e) {
+                LOGGER.debug("Could not compile expression to bytecode, using method handles", e);
+            }
+        }
+        //FAWE end
         MethodHandle invokable = root.accept(new CompilingVisitor(functions));
         // catch ReturnExpression and substitute its result
         invokable = MethodHandles.catchException(
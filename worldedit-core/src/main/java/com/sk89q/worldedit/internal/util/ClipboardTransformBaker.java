@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.internal.util;
 
+import com.fastasyncworldedit.core.extent.clipboard.SectionPaletteClipboard;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
@@ -33,6 +34,10 @@
 import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.enginehub.linbus.tree.LinCompoundTag;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -111,12 +116,13 @@ private Region getTransformedRegion() {
      * Create an operation to copy from the original clipboard to the given extent.
      *
      * @param target the target
+     * @param transformBlocks whether to transform the block states while copying
      * @return the operation
      */
-    private Operation copyTo(Extent target) {
+    private Operation copyTo(Extent target, boolean transformBlocks) {
         //FAWE start
         Extent extent = original;
-        if (transform != null && !transform.isIdentity()) {
+        if (transformBlocks && transform != null && !transform.isIdentity()) {
             extent = new BlockTransformExtent(original, transform);
         }
         //FAWE end
@@ -145,7 +151,25 @@ public static Clipboard bakeTransform(Clipboard original, Transform transform) t
         ClipboardTransformBaker baker = new ClipboardTransformBaker(original, transform);
         Clipboard target = new BlockArrayClipboard(baker.getTransformedRegion());
         target.setOrigin(original.getOrigin());
-        Operations.complete(baker.copyTo(target));
+        //FAWE start - transform the palettes of a section palette clipboard once instead of every copied block
+        Clipboard storage = ((BlockArrayClipboard) target).getParent();
+        if (storage instanceof SectionPaletteClipboard palette) {
+            Operations.complete(baker.copyTo(target, false));
+            // tile entities with a rotation tag are transformed along with their block
+            Int2ObjectMap<BaseBlock> rotated = new Int2ObjectOpenHashMap<>();
+            for (Int2ObjectMap.Entry<LinCompoundTag> entry : palette.getTiles().int2ObjectEntrySet()) {
+                if (entry.getValue().value().containsKey("Rot")) {
+                    rotated.put(entry.getIntKey(), palette.getFullBlock(entry.getIntKey()));
+                }
+            }
+            palette.transformOrdinals(BlockTransformExtent.getOrdinalTable(transform));
+            for (Int2ObjectMap.Entry<BaseBlock> entry : rotated.int2ObjectEntrySet()) {
+                palette.setBlock(entry.getIntKey(), BlockTransformExtent.transform(entry.getValue(), transform));
+            }
+            return target;
+        }
+        Operations.complete(baker.copyTo(target, true));
+        //FAWE end
 
         return target;
     }
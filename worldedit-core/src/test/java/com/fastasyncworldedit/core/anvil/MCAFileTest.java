@@ -0,0 +1,127 @@
+package com.fastasyncworldedit.core.anvil;
+
+import org.enginehub.linbus.tree.LinByteArrayTag;
+import org.enginehub.linbus.tree.LinCompoundTag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MCAFileTest {
+
+    @TempDir
+    Path folder;
+
+    private static LinCompoundTag chunk(int seed, int size) {
+        // Random bytes so the payload does not compress below the requested size
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return LinCompoundTag.builder().putInt("seed", seed).put("data", LinByteArrayTag.of(data)).build();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Path path = folder.resolve("r.-1.2.mca");
+        try (MCAFile file = new MCAFile(path)) {
+            assertEquals(-1, file.getX());
+            assertEquals(2, file.getZ());
+            file.write(MCAFile.index(3, 4), chunk(1, 100));
+            file.write(MCAFile.index(31, 31), chunk(2, 10_000));
+            // Pending writes are visible before flushing
+            assertEquals(chunk(1, 100), file.read(MCAFile.index(3, 4)));
+        }
+        try (MCAFile file = new MCAFile(path)) {
+            assertTrue(file.hasChunk(MCAFile.index(3, 4)));
+            assertFalse(file.hasChunk(MCAFile.index(0, 0)));
+            assertNull(file.read(MCAFile.index(0, 0)));
+            assertEquals(chunk(1, 100), file.read(MCAFile.index(3, 4)));
+            assertEquals(chunk(2, 10_000), file.read(MCAFile.index(31, 31)));
+        }
+    }
+
+    @Test
+    void testOnlyChangedChunksMove() throws IOException {
+        Path path = folder.resolve("r.0.0.mca");
+        try (MCAFile file = new MCAFile(path)) {
+            file.write(0, chunk(1, 100));
+            file.write(1, chunk(2, 100));
+            file.write(2, chunk(3, 100));
+        }
+        long sizeBefore = Files.size(path);
+        try (MCAFile file = new MCAFile(path)) {
+            // Outgrows its single sector, so it has to be moved to the end of the file
+            file.write(1, chunk(4, 20_000));
+            file.delete(2);
+        }
+        long sizeMoved = Files.size(path);
+        assertTrue(sizeMoved > sizeBefore);
+        try (MCAFile file = new MCAFile(path)) {
+            assertEquals(chunk(1, 100), file.read(0));
+            assertEquals(chunk(4, 20_000), file.read(1));
+            assertFalse(file.hasChunk(2));
+            // The freed sectors are reused
+            file.write(3, chunk(5, 100));
+        }
+        assertEquals(sizeMoved, Files.size(path));
+        try (MCAFile file = new MCAFile(path)) {
+            assertEquals(chunk(5, 100), file.read(3));
+        }
+    }
+
+    @Test
+    void testFailedFlushKeepsFileReadable() throws IOException {
+        Path path = folder.resolve("r.0.0.mca");
+        try (MCAFile file = new MCAFile(path)) {
+            file.write(0, chunk(1, 100));
+            file.write(1, chunk(2, 100));
+            file.write(2, chunk(3, 100));
+        }
+        MCAFile failing = new MCAFile(path) {
+            private int writes;
+
+            @Override
+            void writeFully(ByteBuffer buffer, long position) throws IOException {
+                // The disk fills up after the first chunk of the flush
+                if (writes++ > 0) {
+                    throw new IOException("No space left on device");
+                }
+                super.writeFully(buffer, position);
+            }
+        };
+        // Fits the sectors of the chunk it replaces
+        failing.write(0, chunk(4, 100));
+        failing.write(1, chunk(5, 20_000));
+        failing.delete(2);
+        failing.write(3, chunk(6, 100));
+        assertThrows(IOException.class, failing::flush);
+        // The queued chunks are kept, closing tries again
+        assertEquals(chunk(4, 100), failing.read(0));
+        assertThrows(IOException.class, failing::close);
+
+        try (MCAFile file = new MCAFile(path)) {
+            assertEquals(chunk(1, 100), file.read(0));
+            assertEquals(chunk(2, 100), file.read(1));
+            assertEquals(chunk(3, 100), file.read(2));
+            assertFalse(file.hasChunk(3));
+            // Sectors written by the failed flush are not in use
+            file.write(0, chunk(4, 100));
+            file.write(1, chunk(5, 20_000));
+        }
+        try (MCAFile file = new MCAFile(path)) {
+            assertEquals(chunk(4, 100), file.read(0));
+            assertEquals(chunk(5, 20_000), file.read(1));
+            assertEquals(chunk(3, 100), file.read(2));
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.fastasyncworldedit.core.extent.clipboard;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+class SectionPaletteClipboardTest {
+
+    private static final int AIR = BlockTypesCache.ReservedIDs.AIR;
+
+    private static BlockStateHolder block(int ordinal) {
+        BlockStateHolder block = mock(BlockStateHolder.class);
+        when(block.getOrdinalChar()).thenReturn((char) ordinal);
+        return block;
+    }
+
+    @Test
+    void testPaletteGrowthAndRows() {
+        SectionPaletteClipboard clipboard = new SectionPaletteClipboard(
+                new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(36, 20, 17))
+        );
+        BlockStateHolder[] blocks = new BlockStateHolder[300];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = block(i + 10);
+        }
+        int[][][] expected = new int[37][21][18];
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            int x = random.nextInt(37);
+            int y = random.nextInt(21);
+            int z = random.nextInt(18);
+            // the first section receives many states, the others a few
+            int ordinal = x < 16 && y < 16 && z < 16 ? random.nextInt(300) : random.nextInt(3);
+            clipboard.setBlock(x, y, z, blocks[ordinal]);
+            expected[x][y][z] = ordinal + 10;
+        }
+        clipboard.flush();
+        char[] row = new char[37];
+        for (int y = 0; y < 21; y++) {
+            for (int z = 0; z < 18; z++) {
+                clipboard.getOrdinalRow(y, z, row);
+                for (int x = 0; x < 37; x++) {
+                    int ordinal = expected[x][y][z] == 0 ? AIR : expected[x][y][z];
+                    assertEquals(ordinal, clipboard.getOrdinal(x, y, z));
+                    assertEquals(ordinal, row[x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testUniformSections() {
+        SectionPaletteClipboard clipboard = new SectionPaletteClipboard(
+                new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(19, 15, 15))
+        );
+        BlockStateHolder stone = block(42);
+        BlockStateHolder dirt = block(43);
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 20; x++) {
+                    clipboard.setBlock(x, y, z, x == 3 ? dirt : stone);
+                }
+            }
+        }
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                clipboard.setBlock(3, y, z, stone);
+            }
+        }
+        assertEquals(-1, clipboard.getUniformOrdinal(0, 0, 0));
+        assertEquals(-1, clipboard.getUniformOrdinal(1, 0, 0));
+        clipboard.flush();
+        assertEquals(42, clipboard.getUniformOrdinal(0, 0, 0));
+        // partial section, only the positions within the clipboard count
+        assertEquals(42, clipboard.getUniformOrdinal(1, 0, 0));
+        assertEquals(42, clipboard.getOrdinal(19, 15, 15));
+    }
+
+    @Test
+    void testTransformOrdinals() {
+        SectionPaletteClipboard clipboard = new SectionPaletteClipboard(
+                new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(15, 15, 15))
+        );
+        for (int x = 0; x < 16; x++) {
+            clipboard.setBlock(x, 0, 0, block(40 + x % 3));
+        }
+        char[] table = new char[64];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (char) i;
+        }
+        table[40] = 41;
+        table[41] = 40;
+        table[42] = 41;
+        clipboard.transformOrdinals(table);
+        for (int x = 0; x < 16; x++) {
+            assertEquals(table[40 + x % 3], clipboard.getOrdinal(x, 0, 0));
+        }
+        assertEquals(AIR, clipboard.getOrdinal(0, 1, 0));
+        // merged palette entries keep resolving after further writes
+        clipboard.setBlock(0, 1, 0, block(41));
+        clipboard.flush();
+        assertEquals(41, clipboard.getOrdinal(0, 1, 0));
+        assertEquals(41, clipboard.getOrdinal(2, 0, 0));
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.fastasyncworldedit.core.extent.filter;
+
+import com.fastasyncworldedit.core.extent.filter.block.FilterBlock;
+import com.fastasyncworldedit.core.function.mask.XAxisMask;
+import com.fastasyncworldedit.core.function.pattern.MaskedPattern;
+import com.fastasyncworldedit.core.queue.Filter;
+import com.fastasyncworldedit.core.queue.IChunk;
+import com.fastasyncworldedit.core.util.TestBlockTypes;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.mask.AbstractMask;
+import com.sk89q.worldedit.function.mask.BlockStateMask;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.util.test.ResourceLockKeys;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.ResourceLock;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ResourceLock(ResourceLockKeys.WORLDEDIT_PLATFORM)
+class FusedMaskFilterTest {
+
+    private static final BlockVector3 POSITION = BlockVector3.at(0, 64, 0);
+
+    private static Extent extent;
+    private static BlockState current;
+
+    @BeforeAll
+    static void setup() {
+        TestBlockTypes.init();
+        extent = mock(Extent.class);
+        when(extent.getBlock(any(BlockVector3.class))).thenAnswer(invocation -> current);
+    }
+
+    private static FilterBlock block(int ordinal) {
+        FilterBlock block = mock(FilterBlock.class);
+        when(block.getOrdinal()).thenReturn(ordinal);
+        return block;
+    }
+
+    @Test
+    void testStateSwitchMatchesMaskedPattern() {
+        int[] chosen = new int[1];
+        Pattern primary = position -> {
+            chosen[0] = 1;
+            return null;
+        };
+        Pattern secondary = position -> {
+            chosen[0] = 2;
+            return null;
+        };
+        Mask mask = new MaskIntersection(new ExistingBlockMask(extent), new BlockStateMask(extent, Map.of("axis", "y"), false));
+        MaskedPattern masked = new MaskedPattern(mask, primary, secondary);
+        Filter fused = FusedMaskFilter.fuse(masked);
+        assertInstanceOf(Record.class, fused);
+        BlockState[] states = TestBlockTypes.states();
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == null) {
+                continue;
+            }
+            current = states[i];
+            masked.applyBlock(POSITION);
+            int expected = chosen[0];
+            chosen[0] = 0;
+            fused.applyBlock(block(i));
+            assertEquals(expected, chosen[0], states[i].getAsString());
+        }
+    }
+
+    @Test
+    void testReorderKeepsStatefulMasks() {
+        int[] axisTests = new int[1];
+        Mask axis = new XAxisMask(extent) {
+            @Override
+            public boolean test(BlockVector3 vector) {
+                axisTests[0]++;
+                return super.test(vector);
+            }
+        };
+        Mask rejecting = new AbstractMask() {
+            @Override
+            public boolean test(BlockVector3 vector) {
+                return false;
+            }
+
+            @Override
+            public Mask copy() {
+                return this;
+            }
+        };
+        FusedMaskFilter<Filter> filter = FusedMaskFilter.of(mock(Filter.class), new MaskIntersection(axis, rejecting));
+        assertNotNull(filter);
+        FilterBlock block = block(0);
+        for (int i = 0; i < 100; i++) {
+            filter.applyBlock(block);
+        }
+        // the rejecting mask is cheaper per block rejected, but the axis mask has to see every block to latch onto the first
+        filter.finishChunk(mock(IChunk.class));
+        for (int i = 0; i < 10; i++) {
+            filter.applyBlock(block);
+        }
+        assertEquals(110, axisTests[0]);
+    }
+
+}
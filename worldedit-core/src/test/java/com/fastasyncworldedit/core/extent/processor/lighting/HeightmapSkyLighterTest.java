@@ -0,0 +1,151 @@
+package com.fastasyncworldedit.core.extent.processor.lighting;
+
+import com.fastasyncworldedit.core.extent.processor.heightmap.HeightMapType;
+import com.fastasyncworldedit.core.queue.IQueueExtent;
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.registry.BlockMaterial;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HeightmapSkyLighterTest {
+
+    private static final int MIN_Y = 0;
+    private static final int MAX_Y = 31;
+    private static final int GROUND = 10;
+    private static final int TUNNEL_Y = 5;
+    private static final int TUNNEL_Z = 8;
+    private static final int SHAFT_X = 12;
+
+    private static final BlockState AIR = state(true, 0);
+    private static final BlockState STONE = state(false, 15);
+
+    // sky light of the world
+    private final Map<BlockVector3, Integer> light = new HashMap<>();
+    private final Map<Long, ChunkHolder<?>> chunks = new HashMap<>();
+    private final IQueueExtent<?> queue = queue();
+
+    private static BlockState state(boolean air, int opacity) {
+        BlockMaterial material = mock(BlockMaterial.class);
+        when(material.getLightOpacity()).thenReturn(opacity);
+        when(material.isAir()).thenReturn(air);
+        BlockState state = mock(BlockState.class);
+        when(state.getMaterial()).thenReturn(material);
+        when(state.isAir()).thenReturn(air);
+        return state;
+    }
+
+    /**
+     * Flat ground with a tunnel along x, lit through a shaft in chunk 0 only.
+     */
+    private static BlockState block(int x, int y, int z) {
+        if (y >= GROUND) {
+            return AIR;
+        }
+        if (z == TUNNEL_Z && (y == TUNNEL_Y && x >= 0 && x <= 40 || x == SHAFT_X && y > TUNNEL_Y)) {
+            return AIR;
+        }
+        return STONE;
+    }
+
+    private static int[] heightmap(int chunkX, int chunkZ) {
+        int[] heightmap = new int[256];
+        for (int j = 0; j < 256; j++) {
+            int y = MAX_Y;
+            while (y >= MIN_Y && block((chunkX << 4) + (j & 15), y, (chunkZ << 4) + (j >> 4)).isAir()) {
+                y--;
+            }
+            heightmap[j] = y + 1 - MIN_Y;
+        }
+        return heightmap;
+    }
+
+    private ChunkHolder<?> chunk(int chunkX, int chunkZ) {
+        ChunkHolder<?> chunk = mock(ChunkHolder.class);
+        when(chunk.isInit()).thenReturn(true);
+        int[] heightmap = heightmap(chunkX, chunkZ);
+        when(chunk.getHeightMap(HeightMapType.WORLD_SURFACE)).thenReturn(heightmap);
+        when(chunk.getBlock(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> block(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        ));
+        when(chunk.getSkyLight(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> light.getOrDefault(BlockVector3.at(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                (int) invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        ), 0));
+        doAnswer(invocation -> light.put(BlockVector3.at(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                (int) invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        ), invocation.getArgument(3))).when(chunk).setSkyLight(anyInt(), anyInt(), anyInt(), anyInt());
+        return chunk;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private IQueueExtent<?> queue() {
+        IQueueExtent queue = mock(IQueueExtent.class);
+        when(queue.getOrCreateChunk(anyInt(), anyInt())).thenAnswer(invocation -> {
+            int chunkX = invocation.getArgument(0);
+            int chunkZ = invocation.getArgument(1);
+            return chunks.computeIfAbsent(MathMan.pairInt(chunkX, chunkZ), k -> chunk(chunkX, chunkZ));
+        });
+        return queue;
+    }
+
+    private void relight(int... chunkXs) {
+        HeightmapSkyLighter lighter = new HeightmapSkyLighter(queue, MIN_Y, MAX_Y);
+        for (int chunkX : chunkXs) {
+            lighter.relightColumns(chunkX, 0, new byte[]{Relighter.SkipReason.NONE, Relighter.SkipReason.NONE});
+        }
+        lighter.propagate();
+    }
+
+    private int light(int x, int y, int z) {
+        return light.getOrDefault(BlockVector3.at(x, y, z), 0);
+    }
+
+    @Test
+    void testColumns() {
+        relight(0, 1);
+        assertEquals(15, light(3, GROUND, 3));
+        assertEquals(15, light(20, MAX_Y, 3));
+        assertEquals(0, light(3, GROUND - 1, 3));
+        assertEquals(15, light(SHAFT_X, TUNNEL_Y, TUNNEL_Z));
+        for (int d = 1; d < 15; d++) {
+            assertEquals(15 - d, light(SHAFT_X + d, TUNNEL_Y, TUNNEL_Z), "x + " + d);
+            assertEquals(SHAFT_X - d < 0 ? 0 : 15 - d, light(SHAFT_X - d, TUNNEL_Y, TUNNEL_Z), "x - " + d);
+        }
+        assertEquals(0, light(SHAFT_X + 15, TUNNEL_Y, TUNNEL_Z));
+    }
+
+    @Test
+    void testCaveLitFromChunkNotRelit() {
+        relight(0, 1);
+        Map<BlockVector3, Integer> expected = new HashMap<>(light);
+        assertEquals(11, light(16, TUNNEL_Y, TUNNEL_Z));
+
+        // the tunnel in chunk 1 is cleared and has to be lit again from chunk 0, below the surface of both
+        relight(1);
+        for (int x = -16; x < 48; x++) {
+            for (int z = -16; z < 32; z++) {
+                for (int y = MIN_Y; y <= MAX_Y; y++) {
+                    BlockVector3 position = BlockVector3.at(x, y, z);
+                    assertEquals(expected.getOrDefault(position, 0), light.getOrDefault(position, 0), position.toString());
+                }
+            }
+        }
+    }
+
+}
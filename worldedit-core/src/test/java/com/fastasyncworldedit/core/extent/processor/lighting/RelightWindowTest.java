@@ -0,0 +1,163 @@
+package com.fastasyncworldedit.core.extent.processor.lighting;
+
+import com.fastasyncworldedit.core.queue.implementation.chunk.ChunkHolder;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.registry.BlockMaterial;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RelightWindowTest {
+
+    private static final int MIN_Y = 0;
+    private static final int MAX_Y = 15;
+    private static final int Y = 8;
+    private static final int Z = 8;
+
+    private static final BlockState AIR = state(0);
+    private static final BlockState TORCH = state(14);
+
+    // block light and light sources of the world
+    private final Map<BlockVector3, Integer> light = new HashMap<>();
+    private final Set<BlockVector3> sources = new HashSet<>();
+    private final List<RelightWindow.Seed> seeds = new ArrayList<>();
+
+    private static BlockState state(int emission) {
+        BlockMaterial material = mock(BlockMaterial.class);
+        when(material.getLightValue()).thenReturn(emission);
+        BlockState state = mock(BlockState.class);
+        when(state.getMaterial()).thenReturn(material);
+        return state;
+    }
+
+    private ChunkHolder<?> chunk(int chunkX, int chunkZ) {
+        ChunkHolder<?> chunk = mock(ChunkHolder.class);
+        when(chunk.getEmittedLight(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> light.getOrDefault(BlockVector3.at(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                (int) invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        ), 0));
+        when(chunk.getBlock(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> sources.contains(BlockVector3.at(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                (int) invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        )) ? TORCH : AIR);
+        doAnswer(invocation -> light.put(BlockVector3.at(
+                (chunkX << 4) + (int) invocation.getArgument(0),
+                (int) invocation.getArgument(1),
+                (chunkZ << 4) + (int) invocation.getArgument(2)
+        ), invocation.getArgument(3))).when(chunk).setBlockLight(anyInt(), anyInt(), anyInt(), anyInt());
+        return chunk;
+    }
+
+    private RelightWindow window(int centerX) {
+        ChunkHolder<?>[] chunks = new ChunkHolder<?>[9];
+        for (int i = 0; i < 9; i++) {
+            chunks[i] = chunk(centerX + (i % 3) - 1, (Z >> 4) + (i / 3) - 1);
+        }
+        return new RelightWindow(chunks, centerX, Z >> 4, MIN_Y, MAX_Y, false, seeds::add);
+    }
+
+    /**
+     * Relight the block at a world position in the window around the given chunk, continuing propagation leaving the
+     * window in the windows around the chunks it reaches, as {@link ParallelRelighter} does.
+     */
+    private void relight(int centerX, int x, boolean incremental) {
+        RelightWindow window = window(centerX);
+        int windowX = x - ((centerX - 1) << 4);
+        int windowZ = 16 + (Z & 15);
+        if (incremental) {
+            ParallelRelighter.updateChanged(window, windowX, Y, windowZ);
+        } else {
+            ParallelRelighter.updateSource(window, windowX, Y, windowZ);
+        }
+        window.propagate();
+        window.writeBack();
+        for (int round = 0; round < 16 && !seeds.isEmpty(); round++) {
+            List<RelightWindow.Seed> pending = new ArrayList<>(seeds);
+            seeds.clear();
+            for (RelightWindow.Seed seed : pending) {
+                RelightWindow next = window(seed.x() >> 4);
+                next.seed(seed);
+                next.propagate();
+                next.writeBack();
+            }
+        }
+        assertTrue(seeds.isEmpty());
+    }
+
+    private int light(int x, int y, int z) {
+        return light.getOrDefault(BlockVector3.at(x, y, z), 0);
+    }
+
+    @Test
+    void testLightCrossesWindow() {
+        // the window around chunk 1 spans x 0 to 47, the torch is lit from there as when spread in from a neighbour
+        int torch = 44;
+        sources.add(BlockVector3.at(torch, Y, Z));
+        relight(1, torch, false);
+        for (int d = 0; d < 14; d++) {
+            assertEquals(14 - d, light(torch + d, Y, Z), "x + " + d);
+            assertEquals(14 - d, light(torch - d, Y, Z), "x - " + d);
+        }
+        assertEquals(0, light(torch + 14, Y, Z));
+        assertEquals(14 - 6, light(torch + 3, Y + 3, Z));
+        assertEquals(14 - 13, light(torch + 9, Y - 2, Z + 2));
+    }
+
+    @Test
+    void testRemovalCrossesWindow() {
+        int torch = 44;
+        sources.add(BlockVector3.at(torch, Y, Z));
+        relight(1, torch, false);
+        assertEquals(14 - 12, light(56, Y, Z));
+
+        sources.remove(BlockVector3.at(torch, Y, Z));
+        relight(1, torch, true);
+        assertFalse(light.isEmpty());
+        for (Map.Entry<BlockVector3, Integer> entry : light.entrySet()) {
+            assertEquals(0, entry.getValue(), entry.getKey().toString());
+        }
+    }
+
+    @Test
+    void testRemovalKeepsOtherSources() {
+        int kept = 20;
+        int removed = 36;
+        sources.add(BlockVector3.at(kept, Y, Z));
+        sources.add(BlockVector3.at(removed, Y, Z));
+        relight(kept >> 4, kept, false);
+        relight(removed >> 4, removed, false);
+        assertEquals(14, light(removed, Y, Z));
+        assertEquals(14 - 6, light(30, Y, Z));
+
+        sources.remove(BlockVector3.at(removed, Y, Z));
+        relight(removed >> 4, removed, true);
+        for (int d = 0; d < 14; d++) {
+            assertEquals(14 - d, light(kept + d, Y, Z), "x + " + d);
+        }
+        for (int x = kept + 14; x <= removed + 14; x++) {
+            assertEquals(0, light(x, Y, Z), "x " + x);
+        }
+
+        // light matching the blocks around is left as it is
+        Map<BlockVector3, Integer> before = new HashMap<>(light);
+        relight(kept >> 4, kept + 3, true);
+        assertEquals(before, light);
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.fastasyncworldedit.core.function.mask;
+
+import com.fastasyncworldedit.core.util.TestBlockTypes;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.mask.BlockMask;
+import com.sk89q.worldedit.function.mask.BlockStateMask;
+import com.sk89q.worldedit.function.mask.BlockTypeMask;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.util.test.ResourceLockKeys;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.ResourceLock;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ResourceLock(ResourceLockKeys.WORLDEDIT_PLATFORM)
+class MaskPlannerTest {
+
+    private static final BlockVector3 POSITION = BlockVector3.at(0, 64, 0);
+
+    private static Extent extent;
+    private static BlockState current;
+
+    @BeforeAll
+    static void setup() {
+        TestBlockTypes.init();
+        extent = mock(Extent.class);
+        when(extent.getBlock(any(BlockVector3.class))).thenAnswer(invocation -> current);
+    }
+
+    private static BlockType type(String id) {
+        return TestBlockTypes.state(id).getBlockType();
+    }
+
+    /**
+     * Test the mask on every block state, one block at a time.
+     */
+    private static boolean[] tested(Mask mask) {
+        BlockState[] states = TestBlockTypes.states();
+        boolean[] ordinals = new boolean[states.length];
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != null) {
+                current = states[i];
+                ordinals[i] = mask.test(POSITION);
+            }
+        }
+        return ordinals;
+    }
+
+    private static void assertFolds(Mask mask) {
+        boolean[] folded = MaskPlanner.fold(mask);
+        assertNotNull(folded);
+        assertArrayEquals(tested(mask), folded);
+    }
+
+    @Test
+    void testFold() {
+        Mask block = new BlockMask(extent).add(TestBlockTypes.state("minecraft:glass"), TestBlockTypes.state("minecraft:dirt"));
+        Mask type = new BlockTypeMask(extent, type("minecraft:oak_log"), type("minecraft:stone"));
+        Mask state = new BlockStateMask(extent, Map.of("axis", "y"), true);
+        Mask existing = new ExistingBlockMask(extent);
+        assertFolds(block);
+        assertFolds(type);
+        assertFolds(state);
+        assertFolds(existing);
+        assertFolds(new InverseMask(type));
+        assertFolds(new InverseMask(existing));
+        assertFolds(new MaskUnion(block, state));
+        assertFolds(new MaskUnion(new InverseMask(existing), type));
+        assertFolds(new MaskIntersection(existing, new InverseMask(block)));
+        assertFolds(new MaskIntersection(type, new MaskUnion(state, new InverseMask(type))));
+        assertNull(MaskPlanner.fold(new MaskIntersection(existing, new XAxisMask(extent))));
+    }
+
+    @Test
+    void testUnionAccepts() {
+        Mask type = new BlockTypeMask(extent, type("minecraft:dirt"));
+        Mask axis = new XAxisMask(extent);
+        Mask other = new RandomMask(0.5);
+        MaskPlanner.Plan plan = MaskPlanner.plan(new MaskIntersection(new MaskUnion(type, other), axis));
+        assertNotNull(plan);
+        assertNull(plan.ordinals());
+        assertEquals(2, plan.masks().length);
+        // the union is only tested on blocks the folded part does not accept
+        int union = plan.masks()[0] == axis ? 1 : 0;
+        assertSame(other, plan.masks()[union]);
+        assertArrayEquals(tested(type), plan.accepts()[union]);
+        assertNull(plan.accepts()[1 - union]);
+    }
+
+    @Test
+    void testStatefulKeepsOrder() {
+        Mask id = new IdMask(extent);
+        Mask axis = new XAxisMask(extent);
+        Mask existing = new ExistingBlockMask(extent);
+        Mask random = new RandomMask(0.5);
+        MaskPlanner.Plan plan = MaskPlanner.plan(new MaskIntersection(random, id, existing, axis));
+        assertNotNull(plan);
+        // the existing mask is tested after the id mask latched, so it can not be folded into the table
+        assertNull(plan.ordinals());
+        assertEquals(List.of(random, id, existing, axis), List.of(plan.masks()));
+        assertTrue(MaskPlanner.isStateful(new InverseMask(new MaskUnion(existing, id))));
+        assertFalse(MaskPlanner.isStateful(new MaskUnion(existing, random)));
+
+        // masks before the first stateful mask are still folded
+        plan = MaskPlanner.plan(new MaskIntersection(existing, id, axis));
+        assertNotNull(plan);
+        assertArrayEquals(tested(existing), plan.ordinals());
+        assertEquals(List.of(id, axis), List.of(plan.masks()));
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.fastasyncworldedit.core.function.pattern;
+
+import com.fastasyncworldedit.core.extent.clipboard.SectionPaletteClipboard;
+import com.fastasyncworldedit.core.queue.IChunkSet;
+import com.fastasyncworldedit.core.util.MathMan;
+import com.fastasyncworldedit.core.util.TestBlockTypes;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.test.ResourceLockKeys;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.parallel.ResourceLock;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ResourceLock(ResourceLockKeys.WORLDEDIT_PLATFORM)
+class SectionPastePatternTest {
+
+    private static final int MIN_LAYER = -4;
+    private static final int MAX_LAYER = 19;
+
+    private static SectionPaletteClipboard clipboard;
+
+    @BeforeAll
+    static void setup() {
+        TestBlockTypes.init();
+        List<BlockState> states = new ArrayList<>();
+        for (BlockState state : TestBlockTypes.states()) {
+            if (state != null) {
+                states.add(state);
+            }
+        }
+        BlockState stone = TestBlockTypes.state("minecraft:stone");
+        // uniform stone and air sections, mixed sections and partial sections along every axis
+        clipboard = new SectionPaletteClipboard(new CuboidRegion(BlockVector3.ZERO, BlockVector3.at(36, 36, 17)));
+        Random random = new Random(0);
+        for (int y = 0; y < 37; y++) {
+            for (int z = 0; z < 18; z++) {
+                for (int x = 0; x < 37; x++) {
+                    if (x < 32 && y >= 16 && y < 32) {
+                        continue;
+                    }
+                    clipboard.setBlock(x, y, z, x < 16 && z < 16 ? stone : states.get(random.nextInt(states.size())));
+                }
+            }
+        }
+        clipboard.flush();
+    }
+
+    /**
+     * The pending edits of a chunk, as set blocks would hold them.
+     */
+    private static final class Target {
+
+        private final Map<Long, char[][]> chunks = new HashMap<>();
+
+        char[][] layers(int chunkX, int chunkZ) {
+            return chunks.computeIfAbsent(MathMan.pairInt(chunkX, chunkZ), k -> new char[MAX_LAYER - MIN_LAYER + 1][]);
+        }
+
+        void set(int x, int y, int z, char ordinal) {
+            char[][] layers = layers(x >> 4, z >> 4);
+            int layer = (y >> 4) - MIN_LAYER;
+            if (layers[layer] == null) {
+                layers[layer] = new char[4096];
+            }
+            layers[layer][(y & 15) << 8 | (z & 15) << 4 | x & 15] = ordinal;
+        }
+
+        int get(int x, int y, int z) {
+            char[] layer = layers(x >> 4, z >> 4)[(y >> 4) - MIN_LAYER];
+            return layer == null ? 0 : layer[(y & 15) << 8 | (z & 15) << 4 | x & 15];
+        }
+
+        IChunkSet set(int chunkX, int chunkZ) {
+            char[][] layers = layers(chunkX, chunkZ);
+            IChunkSet set = mock(IChunkSet.class);
+            when(set.hasSection(anyInt())).thenAnswer(invocation -> layers[(int) invocation.getArgument(0) - MIN_LAYER] != null);
+            when(set.load(anyInt())).thenAnswer(invocation -> {
+                char[] data = layers[(int) invocation.getArgument(0) - MIN_LAYER];
+                return data == null ? new char[4096] : data;
+            });
+            doAnswer(invocation -> layers[(int) invocation.getArgument(0) - MIN_LAYER] = invocation.getArgument(1))
+                    .when(set).setBlocks(anyInt(), any());
+            return set;
+        }
+
+    }
+
+    /**
+     * Edits pending before the paste, which the paste has to keep where it does not set a block.
+     */
+    private static void pending(Target target, Region region) {
+        int wool = TestBlockTypes.state("minecraft:white_wool").getOrdinalChar();
+        BlockVector3 min = region.getMinimumPoint();
+        BlockVector3 max = region.getMaximumPoint();
+        for (int x = min.x() - 1; x <= max.x() + 1; x++) {
+            for (int z = min.z() - 1; z <= max.z() + 1; z++) {
+                if ((x + z) % 5 == 0) {
+                    target.set(x, min.y(), z, (char) wool);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"16,0,-32,true", "16,0,-32,false", "5,3,-7,true", "5,3,-7,false", "-9,-20,13,true", "-9,-20,13,false"})
+    void testMatchesBlockPaste(int tx, int ty, int tz, boolean pasteAir) {
+        BlockVector3 translation = BlockVector3.at(tx, ty, tz);
+        SectionPastePattern pattern = SectionPastePattern.of(
+                clipboard,
+                clipboard.getRegion(),
+                pasteAir ? Masks.alwaysTrue() : new ExistingBlockMask(clipboard),
+                translation
+        );
+        assertNotNull(pattern);
+        Region region = pattern.getRegion();
+
+        // the same as Clipboard#paste does block by block
+        Target expected = new Target();
+        pending(expected, region);
+        for (int y = 0; y < clipboard.getHeight(); y++) {
+            for (int z = 0; z < clipboard.getLength(); z++) {
+                for (int x = 0; x < clipboard.getWidth(); x++) {
+                    BaseBlock block = clipboard.getFullBlock(x, y, z);
+                    if (!pasteAir && block.getBlockType().getMaterial().isAir()) {
+                        continue;
+                    }
+                    expected.set(x + tx, y + ty, z + tz, block.getOrdinalChar());
+                }
+            }
+        }
+
+        Target actual = new Target();
+        pending(actual, region);
+        BlockVector3 min = region.getMinimumPoint();
+        BlockVector3 max = region.getMaximumPoint();
+        for (int chunkX = min.x() >> 4; chunkX <= max.x() >> 4; chunkX++) {
+            for (int chunkZ = min.z() >> 4; chunkZ <= max.z() >> 4; chunkZ++) {
+                pattern.apply(actual.set(chunkX, chunkZ), chunkX, chunkZ, MIN_LAYER, MAX_LAYER);
+            }
+        }
+
+        for (int y = min.y() - 1; y <= max.y() + 1; y++) {
+            for (int z = min.z() - 1; z <= max.z() + 1; z++) {
+                for (int x = min.x() - 1; x <= max.x() + 1; x++) {
+                    assertEquals(expected.get(x, y, z), actual.get(x, y, z), x + "," + y + "," + z);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.fastasyncworldedit.core.history;
+
+import com.fastasyncworldedit.core.internal.io.FastByteArrayOutputStream;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkIndexedBlockFileTest {
+
+    @TempDir
+    Path folder;
+
+    private static void writeSegment(ChunkIndexedBlockFile.Writer writer, int chunkX, int chunkZ, int length)
+            throws IOException {
+        FastByteArrayOutputStream data = new FastByteArrayOutputStream();
+        data.write(new byte[length]);
+        writer.include(chunkX << 4, 64, chunkZ << 4);
+        writer.writeSegment(chunkX, chunkZ, data);
+    }
+
+    @Test
+    void testIndexAndRegionFilter() throws IOException {
+        File file = folder.resolve("0.bd").toFile();
+        try (ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file)) {
+            writeSegment(writer, 0, 0, 10);
+            writeSegment(writer, 5, -3, 20);
+            writeSegment(writer, 0, 0, 5);
+        }
+        assertTrue(ChunkIndexedBlockFile.isIndexed(file));
+        ChunkIndexedBlockFile.Index index = ChunkIndexedBlockFile.readIndex(file);
+        assertEquals(3, index.segments(null).size());
+        assertEquals(64, index.minY());
+        assertEquals(-48, index.minZ());
+
+        List<ChunkIndexedBlockFile.Segment> origin = index.segments(new Region[]{
+                new CuboidRegion(BlockVector3.at(1, 64, 1), BlockVector3.at(2, 64, 2))
+        });
+        assertEquals(2, origin.size());
+        assertEquals(10, origin.get(0).length());
+        assertEquals(5, origin.get(1).length());
+        // outside of the bounds in y
+        assertTrue(index.segments(new Region[]{
+                new CuboidRegion(BlockVector3.at(1, 10, 1), BlockVector3.at(2, 20, 2))
+        }).isEmpty());
+    }
+
+    @Test
+    void testScanWithoutIndex() throws IOException {
+        File file = folder.resolve("1.bd").toFile();
+        ChunkIndexedBlockFile.Writer writer = new ChunkIndexedBlockFile.Writer(file);
+        writeSegment(writer, 2, 3, 7);
+        writeSegment(writer, -1, 4, 9);
+        writer.close();
+        // cut off the index, as if the edit was never closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(5 + 12 + 7 + 12 + 9);
+        }
+        ChunkIndexedBlockFile.Index index = ChunkIndexedBlockFile.readIndex(file);
+        List<ChunkIndexedBlockFile.Segment> segments = index.segments(null);
+        assertEquals(2, segments.size());
+        assertEquals(-1, segments.get(1).chunkX());
+        assertEquals(5 + 12 + 7 + 12, segments.get(1).offset());
+        assertFalse(index.segments(new Region[]{
+                new CuboidRegion(BlockVector3.at(-16, 0, 64), BlockVector3.at(-16, 0, 64))
+        }).isEmpty());
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.fastasyncworldedit.core.history;
+
+import com.fastasyncworldedit.core.history.change.MutableBlockChange;
+import com.fastasyncworldedit.core.history.changeset.AbstractChangeSet;
+import com.fastasyncworldedit.core.limit.FaweLimit;
+import com.fastasyncworldedit.core.util.TestBlockTypes;
+import com.sk89q.worldedit.entity.Player;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.test.ResourceLockKeys;
+import com.sk89q.worldedit.world.World;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.parallel.ResourceLock;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ResourceLock(ResourceLockKeys.WORLDEDIT_PLATFORM)
+class HistoryRollbackRegionsTest {
+
+    @TempDir
+    Path folder;
+
+    @BeforeAll
+    static void setup() {
+        TestBlockTypes.init();
+    }
+
+    private static Player player(boolean bypass, Region... allowed) {
+        Player player = mock(Player.class);
+        when(player.getLimit()).thenReturn(new FaweLimit());
+        when(player.hasPermission("fawe.bypass.regions")).thenReturn(bypass);
+        when(player.getAllowedRegions()).thenReturn(allowed);
+        return player;
+    }
+
+    private static boolean contains(Region[] regions, BlockVector3 position) {
+        for (Region region : regions) {
+            if (region.contains(position)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void testRollbackWithoutIndex() throws IOException {
+        World world = mock(World.class);
+        when(world.getName()).thenReturn("world");
+        when(world.getMinY()).thenReturn(-64);
+        when(world.getMaxY()).thenReturn(319);
+        int stone = TestBlockTypes.state("minecraft:stone").getOrdinal();
+        int dirt = TestBlockTypes.state("minecraft:dirt").getOrdinal();
+        DiskStorageHistory history = new DiskStorageHistory(folder.toFile(), world, UUID.randomUUID(), 0);
+        for (int x = 0; x < 32; x++) {
+            history.add(x, 64, 0, stone, dirt);
+        }
+        history.close();
+
+        Region[] radius = {new CuboidRegion(BlockVector3.at(0, 0, -8), BlockVector3.at(15, 128, 8))};
+        // a file which is not chunk indexed is read entirely, so the edit session has to mask the changes
+        history.setReadRegions(radius);
+        List<BlockVector3> read = new ArrayList<>();
+        Iterator<MutableBlockChange> iterator = history.getBlockIterator(false);
+        while (iterator.hasNext()) {
+            MutableBlockChange change = iterator.next();
+            read.add(BlockVector3.at(change.x, change.y, change.z));
+        }
+        history.setReadRegions(null);
+        assertEquals(32, read.size());
+
+        Region[] allowed = AbstractChangeSet.getAllowedRegions(
+                player(false, new CuboidRegion(BlockVector3.at(8, 0, -16), BlockVector3.at(23, 128, 16))),
+                radius
+        );
+        assertNotNull(allowed);
+        List<BlockVector3> undone = new ArrayList<>();
+        for (BlockVector3 position : read) {
+            if (contains(allowed, position)) {
+                undone.add(position);
+            }
+        }
+        assertEquals(8, undone.size());
+        assertEquals(8, undone.get(0).x());
+        assertEquals(15, undone.get(7).x());
+
+        assertSame(radius, AbstractChangeSet.getAllowedRegions(player(true), radius));
+        assertEquals(0, AbstractChangeSet.getAllowedRegions(
+                player(false, new CuboidRegion(BlockVector3.at(16, 0, 0), BlockVector3.at(31, 128, 0))),
+                radius
+        ).length);
+        assertFalse(contains(AbstractChangeSet.getAllowedRegions(player(false), radius), BlockVector3.at(0, 64, 0)));
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.fastasyncworldedit.core.internal.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentedMappedFileTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void testValuesAcrossEvictedSegments() throws IOException {
+        Path path = folder.resolve("test.bd");
+        // odd offset so that chars cross the 64 byte segment boundaries
+        long length = 27 + 2 * 5000;
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+            SegmentedMappedFile file = new SegmentedMappedFile(channel, length, 6, 3);
+            for (int i = 0; i < 5000; i++) {
+                file.putChar(27 + 2L * i, (char) (i * 7));
+            }
+            file.putShort(10, (short) -5);
+            for (int i = 0; i < 5000; i++) {
+                assertEquals((char) (i * 7), file.getChar(27 + 2L * i));
+            }
+            assertEquals(-5, file.getShort(10));
+            file.close();
+
+            ByteBuffer buffer = ByteBuffer.allocate(2);
+            channel.read(buffer, 27 + 2 * 64);
+            assertEquals((char) (64 * 7), buffer.getChar(0));
+        }
+    }
+
+}
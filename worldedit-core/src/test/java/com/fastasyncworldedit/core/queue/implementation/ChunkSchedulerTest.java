@@ -0,0 +1,86 @@
+package com.fastasyncworldedit.core.queue.implementation;
+
+import com.sk89q.worldedit.math.BlockVector2;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkSchedulerTest {
+
+    private static Set<BlockVector2> square(int minX, int minZ, int side) {
+        Set<BlockVector2> chunks = new HashSet<>();
+        for (int x = 0; x < side; x++) {
+            for (int z = 0; z < side; z++) {
+                chunks.add(BlockVector2.at(minX + x, minZ + z));
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    void testTilesAreSquares() {
+        ChunkScheduler scheduler = new ChunkScheduler(square(-5, 3, 8), 1, 4);
+        ChunkScheduler.Worker worker = scheduler.worker(0);
+        for (int tile = 0; tile < 4; tile++) {
+            Set<Integer> xs = new HashSet<>();
+            Set<Integer> zs = new HashSet<>();
+            for (int i = 0; i < 16; i++) {
+                assertTrue(worker.next());
+                xs.add(worker.x());
+                zs.add(worker.z());
+            }
+            assertEquals(4, xs.size());
+            assertEquals(4, zs.size());
+        }
+        assertFalse(worker.next());
+        assertEquals(4, worker.tiles());
+        assertEquals(64, scheduler.claimed());
+    }
+
+    @Test
+    void testTilesAreCutAtSquares() {
+        // 6x6 chunks in tiles of 4: a full square, two halves and a quarter
+        ChunkScheduler scheduler = new ChunkScheduler(square(-5, 3, 6), 1, 4);
+        ChunkScheduler.Worker worker = scheduler.worker(0);
+        List<Integer> sizes = new ArrayList<>();
+        Set<BlockVector2> squares = new HashSet<>();
+        int tiles = 0;
+        while (worker.next()) {
+            if (worker.tiles() != tiles) {
+                tiles = worker.tiles();
+                sizes.add(0);
+                squares.clear();
+            }
+            sizes.set(sizes.size() - 1, sizes.get(sizes.size() - 1) + 1);
+            squares.add(BlockVector2.at((worker.x() + 5) >> 2, (worker.z() - 3) >> 2));
+            assertEquals(1, squares.size());
+        }
+        assertEquals(List.of(16, 8, 8, 4), sizes);
+    }
+
+    @Test
+    void testEveryChunkOnceWithStealing() {
+        Set<BlockVector2> chunks = square(100, -100, 10);
+        ChunkScheduler scheduler = new ChunkScheduler(chunks, 3, 2);
+        List<BlockVector2> seen = new ArrayList<>();
+        // the first worker does everything, taking the tiles of the others
+        ChunkScheduler.Worker worker = scheduler.worker(0);
+        while (worker.next()) {
+            seen.add(BlockVector2.at(worker.x(), worker.z()));
+        }
+        assertEquals(chunks.size(), seen.size());
+        assertEquals(chunks, new HashSet<>(seen));
+        assertEquals(25, worker.tiles());
+        assertEquals(16, worker.stolen());
+        assertFalse(scheduler.worker(1).next());
+        assertEquals(chunks, new HashSet<>(scheduler.order()));
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.fastasyncworldedit.core.queue.implementation.packet;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkDeltaTest {
+
+    @Test
+    void testSmallChangesAreCheaper() {
+        assertTrue(ChunkDelta.isCheaper(1, 1, 24));
+        assertTrue(ChunkDelta.isCheaper(256, 2, 24));
+    }
+
+    @Test
+    void testLargeChangesAreNotCheaper() {
+        assertFalse(ChunkDelta.isCheaper(4 * 4096, 4, 24));
+        assertFalse(ChunkDelta.isCheaper(24 * 4096, 24, 24));
+    }
+
+    @Test
+    void testFewerSectionsFavourFullChunks() {
+        assertTrue(ChunkDelta.isCheaper(2048, 1, 24));
+        assertFalse(ChunkDelta.isCheaper(2048, 1, 4));
+    }
+
+}
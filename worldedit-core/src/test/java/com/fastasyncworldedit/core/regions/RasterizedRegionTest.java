@@ -0,0 +1,114 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RasterizedRegionTest {
+
+    private static final BlockVector3 CENTER = BlockVector3.at(7, 64, -3);
+
+    /**
+     * The blocks set by EditSession#makeSphere, tested block by block. The squared distances are added in the order the region
+     * adds them, as blocks exactly on the border may otherwise differ by rounding.
+     */
+    private static Set<BlockVector3> sphere(double radiusX, double radiusY, double radiusZ, boolean filled) {
+        double invX = 1 / (radiusX + 0.5);
+        double invY = 1 / (radiusY + 0.5);
+        double invZ = 1 / (radiusZ + 0.5);
+        int ceil = (int) Math.ceil(Math.max(radiusX, Math.max(radiusY, radiusZ))) + 1;
+        Set<BlockVector3> blocks = new HashSet<>();
+        for (int x = -ceil; x <= ceil; x++) {
+            for (int y = -ceil; y <= ceil; y++) {
+                for (int z = -ceil; z <= ceil; z++) {
+                    int ax = Math.abs(x);
+                    int ay = Math.abs(y);
+                    int az = Math.abs(z);
+                    if (sq(ax * invX) + (sq(az * invZ) + sq(ay * invY)) > 1) {
+                        continue;
+                    }
+                    if (!filled && sq((ax + 1) * invX) + (sq(ay * invY) + sq(az * invZ)) <= 1
+                            && sq(ax * invX) + (sq(az * invZ) + sq((ay + 1) * invY)) <= 1
+                            && sq(ax * invX) + (sq(ay * invY) + sq((az + 1) * invZ)) <= 1) {
+                        continue;
+                    }
+                    blocks.add(CENTER.add(x, y, z));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * The blocks set by EditSession#makeCylinder, tested block by block.
+     */
+    private static Set<BlockVector3> cylinder(double radiusX, double radiusZ, int height, double thickness, boolean filled) {
+        double invX = 1 / (radiusX + 0.5);
+        double invZ = 1 / (radiusZ + 0.5);
+        double minInvX = thickness == 0 ? invX : 1 / (radiusX + 0.5 - thickness);
+        double minInvZ = thickness == 0 ? invZ : 1 / (radiusZ + 0.5 - thickness);
+        boolean hollow = thickness != 0 || !filled;
+        int ceil = (int) Math.ceil(Math.max(radiusX, radiusZ)) + 1;
+        Set<BlockVector3> blocks = new HashSet<>();
+        for (int x = -ceil; x <= ceil; x++) {
+            for (int z = -ceil; z <= ceil; z++) {
+                int ax = Math.abs(x);
+                int az = Math.abs(z);
+                if (sq(ax * invX) + sq(az * invZ) > 1) {
+                    continue;
+                }
+                if (hollow && sq((ax + 1) * minInvX) + sq(az * minInvZ) <= 1
+                        && sq(ax * minInvX) + sq((az + 1) * minInvZ) <= 1) {
+                    continue;
+                }
+                for (int y = 0; y < height; y++) {
+                    blocks.add(CENTER.add(x, y, z));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static double sq(double value) {
+        return value * value;
+    }
+
+    private static Set<BlockVector3> contained(RasterizedRegion region) {
+        Set<BlockVector3> blocks = new HashSet<>();
+        BlockVector3 min = region.getMinimumPoint().subtract(2, 2, 2);
+        BlockVector3 max = region.getMaximumPoint().add(2, 2, 2);
+        for (int x = min.x(); x <= max.x(); x++) {
+            for (int y = min.y(); y <= max.y(); y++) {
+                for (int z = min.z(); z <= max.z(); z++) {
+                    if (region.contains(x, y, z)) {
+                        blocks.add(BlockVector3.at(x, y, z));
+                    }
+                }
+            }
+        }
+        assertEquals(blocks.size(), region.getVolume());
+        return blocks;
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0,0,0,true", "3,3,3,true", "3,3,3,false", "5,2,7,true", "5,2,7,false", "12.5,12.5,12.5,false"})
+    void testEllipsoid(double radiusX, double radiusY, double radiusZ, boolean filled) {
+        Vector3 radius = Vector3.at(radiusX, radiusY, radiusZ);
+        RasterizedEllipsoid region = new RasterizedEllipsoid(null, CENTER, radius, filled, -64, 319);
+        assertEquals(sphere(radiusX, radiusY, radiusZ, filled), contained(region));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0,0,3,0,true", "4,4,3,0,true", "4,4,3,0,false", "6,3,5,0,false", "8,8,2,2,false", "8,8,2,2.5,true"})
+    void testCylinder(double radiusX, double radiusZ, int height, double thickness, boolean filled) {
+        RasterizedCylinder region = new RasterizedCylinder(null, CENTER, radiusX, radiusZ, height, thickness, filled, -64, 319);
+        assertEquals(cylinder(radiusX, radiusZ, height, thickness, filled), contained(region));
+    }
+
+}
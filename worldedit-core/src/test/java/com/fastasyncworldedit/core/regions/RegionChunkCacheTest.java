@@ -0,0 +1,50 @@
+package com.fastasyncworldedit.core.regions;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionChunkCacheTest {
+
+    private static Region cuboid(int x1, int z1, int x2, int z2) {
+        return new CuboidRegion(BlockVector3.at(x1, -64, z1), BlockVector3.at(x2, 319, z2));
+    }
+
+    @Test
+    void testClassification() {
+        Region[] allowed = {cuboid(0, 0, 63, 63)};
+        Region[] disallowed = {cuboid(16, 16, 31, 31), cuboid(40, 40, 41, 41)};
+        RegionChunkCache cache = new RegionChunkCache(allowed, disallowed, -64, 319, 0);
+        assertEquals(RegionChunkCache.ALLOWED, cache.classify(0, 0));
+        assertEquals(RegionChunkCache.DENIED, cache.classify(1, 1));
+        assertEquals(RegionChunkCache.PARTIAL, cache.classify(2, 2));
+        assertEquals(RegionChunkCache.DENIED, cache.classify(4, 0));
+        assertEquals(RegionChunkCache.DENIED, cache.classify(-1, 0));
+    }
+
+    @Test
+    void testPartialHeight() {
+        Region[] allowed = {new CuboidRegion(BlockVector3.at(0, 0, 0), BlockVector3.at(15, 100, 15))};
+        RegionChunkCache cache = new RegionChunkCache(allowed, null, -64, 319, 0);
+        assertEquals(RegionChunkCache.PARTIAL, cache.classify(0, 0));
+    }
+
+    @Test
+    void testMatches() {
+        Region[] allowed = {cuboid(0, 0, 63, 63), cuboid(100, 100, 120, 120)};
+        RegionChunkCache cache = new RegionChunkCache(allowed, null, -64, 319, 0);
+        // regions created again with the same bounds, in another order
+        Region[] same = {cuboid(100, 100, 120, 120), cuboid(0, 0, 63, 63)};
+        assertTrue(cache.matches(same, null, -64, 319, 0));
+        assertTrue(cache.matches(same, new Region[0], -64, 319, 0));
+        assertFalse(cache.matches(same, null, -64, 319, 1));
+        assertFalse(cache.matches(new Region[]{cuboid(0, 0, 63, 64)}, null, -64, 319, 0));
+        assertFalse(cache.matches(null, null, -64, 319, 0));
+    }
+
+}
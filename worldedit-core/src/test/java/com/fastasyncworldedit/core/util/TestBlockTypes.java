@@ -0,0 +1,129 @@
+package com.fastasyncworldedit.core.util;
+
+import com.sk89q.worldedit.LocalConfiguration;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.event.platform.PlatformsRegisteredEvent;
+import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extension.platform.Platform;
+import com.sk89q.worldedit.extension.platform.Preference;
+import com.sk89q.worldedit.registry.state.EnumProperty;
+import com.sk89q.worldedit.registry.state.Property;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import com.sk89q.worldedit.world.registry.BlockMaterial;
+import com.sk89q.worldedit.world.registry.BlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledBlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledRegistries;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A small set of block types for tests depending on block states, as the real ones require a platform. The block type cache
+ * is initialized only once per JVM, so tests using it must lock {@link com.sk89q.worldedit.util.test.ResourceLockKeys}
+ * {@code WORLDEDIT_PLATFORM} and call {@link #init()} first.
+ */
+public final class TestBlockTypes {
+
+    /**
+     * The default state of each block type, air types first as they are reserved.
+     */
+    public static final List<String> BLOCKS = List.of(
+            "minecraft:air",
+            "minecraft:cave_air",
+            "minecraft:void_air",
+            "minecraft:stone",
+            "minecraft:dirt",
+            "minecraft:glass",
+            "minecraft:oak_log[axis=y]",
+            "minecraft:white_wool"
+    );
+
+    private static boolean initialized;
+
+    private TestBlockTypes() {
+    }
+
+    /**
+     * Initialize the block types, registering a platform providing them until they are.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        Platform platform = mock(Platform.class);
+        when(platform.getCapabilities()).thenReturn(
+                Stream.of(Capability.values())
+                        .collect(Collectors.toMap(Function.identity(), __ -> Preference.NORMAL))
+        );
+        when(platform.getConfiguration()).thenReturn(new LocalConfiguration() {
+            @Override
+            public void load() {
+            }
+        });
+        BlockRegistry blocks = new BundledBlockRegistry() {
+            @Override
+            public BlockMaterial getMaterial(BlockType blockType) {
+                BlockMaterial material = mock(BlockMaterial.class);
+                when(material.isAir()).thenReturn(blockType.id().endsWith("air"));
+                when(material.isSolid()).thenReturn(!blockType.id().endsWith("air"));
+                return material;
+            }
+
+            @Override
+            public Map<String, ? extends Property<?>> getProperties(BlockType blockType) {
+                if (blockType.id().equals("minecraft:oak_log")) {
+                    return Map.of("axis", new EnumProperty("axis", List.of("x", "y", "z")));
+                }
+                return Map.of();
+            }
+
+            @Override
+            public Collection<String> values() {
+                return BLOCKS;
+            }
+        };
+        when(platform.getRegistries()).thenReturn(new BundledRegistries() {
+            @Override
+            public BlockRegistry getBlockRegistry() {
+                return blocks;
+            }
+        });
+        WorldEdit.getInstance().getPlatformManager().register(platform);
+        try {
+            WorldEdit.getInstance().getEventBus().post(new PlatformsRegisteredEvent());
+            // the states are kept after the platform is gone
+            BlockTypesCache.states.getClass();
+        } finally {
+            WorldEdit.getInstance().getPlatformManager().unregister(platform);
+        }
+        initialized = true;
+    }
+
+    /**
+     * Get all block states.
+     */
+    public static BlockState[] states() {
+        init();
+        return BlockTypesCache.states;
+    }
+
+    /**
+     * Get the default state of a block type.
+     *
+     * @param id the id of the block type, e.g. {@code minecraft:stone}
+     */
+    public static BlockState state(String id) {
+        init();
+        return BlockType.REGISTRY.get(id).getDefaultState();
+    }
+
+}
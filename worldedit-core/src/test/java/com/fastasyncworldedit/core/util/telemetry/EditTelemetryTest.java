@@ -0,0 +1,43 @@
+package com.fastasyncworldedit.core.util.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditTelemetryTest {
+
+    private static final long SLEEP = 20_000_000L;
+
+    @Test
+    void testNestedStagesAreExclusive() {
+        EditTelemetry telemetry = new EditTelemetry("test", "//set stone");
+        assertNull(EditTelemetry.current());
+        try (EditTelemetry.Timer outer = EditTelemetry.start(telemetry, EditStage.FILTER)) {
+            assertSame(telemetry, EditTelemetry.current());
+            try (EditTelemetry.Timer inner = EditTelemetry.start(EditStage.CHUNK_LOAD)) {
+                LockSupport.parkNanos(SLEEP);
+            }
+        }
+        assertNull(EditTelemetry.current());
+        assertEquals(1, telemetry.getCount(EditStage.FILTER));
+        assertEquals(1, telemetry.getCount(EditStage.CHUNK_LOAD));
+        assertTrue(telemetry.getNanos(EditStage.CHUNK_LOAD) >= SLEEP);
+        assertTrue(telemetry.getNanos(EditStage.FILTER) < SLEEP);
+    }
+
+    @Test
+    void testUnboundStagesAreIgnored() {
+        try (EditTelemetry.Timer timer = EditTelemetry.start(EditStage.APPLY)) {
+            assertNull(EditTelemetry.current());
+        }
+        Runnable task = () -> {
+        };
+        assertSame(task, EditTelemetry.wrap(EditStage.HISTORY, task));
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.sk89q.worldedit.internal.expression;
+
+import com.fastasyncworldedit.core.configuration.Settings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the same expressions compiled to bytecode and to method handles, see
+ * {@link Settings.EXPERIMENTAL#COMPILE_EXPRESSIONS}.
+ */
+class ExpressionBackendTest extends BaseExpressionTest {
+
+    private boolean compileExpressions;
+
+    @BeforeEach
+    void saveSetting() {
+        compileExpressions = Settings.settings().EXPERIMENTAL.COMPILE_EXPRESSIONS;
+    }
+
+    @AfterEach
+    void restoreSetting() {
+        Settings.settings().EXPERIMENTAL.COMPILE_EXPRESSIONS = compileExpressions;
+    }
+
+    /**
+     * The result of an evaluation, or the exception it threw, and the slots afterwards.
+     */
+    private record Outcome(String result, Map<String, Double> slots) {
+
+    }
+
+    private Expression compile(String expressionString, boolean bytecode) {
+        Settings.settings().EXPERIMENTAL.COMPILE_EXPRESSIONS = bytecode;
+        return compile(expressionString, "x", "y");
+    }
+
+    private static boolean isBytecode(Expression expression) {
+        return expression.getCompiledExpression().getClass().getName().contains("GeneratedExpression");
+    }
+
+    private static Outcome evaluate(Expression expression) {
+        String result;
+        try {
+            result = Double.toString(expression.evaluate(3, -2));
+        } catch (RuntimeException e) {
+            result = e.getClass().getName() + ": " + e.getMessage();
+        }
+        Map<String, Double> slots = new TreeMap<>();
+        for (String name : expression.getSlots().keySet()) {
+            slots.put(name, expression.getSlots().getSlotValue(name).orElse(Double.NaN));
+        }
+        return new Outcome(result, slots);
+    }
+
+    private void assertSameOutcome(String expressionString, boolean compiled) {
+        Expression handles = compile(expressionString, false);
+        Expression bytecode = compile(expressionString, true);
+        assertFalse(isBytecode(handles));
+        assertEquals(compiled, isBytecode(bytecode));
+        // evaluate twice, so slots and buffers carried over from the first evaluation are covered as well
+        for (int i = 0; i < 2; i++) {
+            assertEquals(evaluate(handles), evaluate(bytecode), expressionString);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "1 + 2 * 3 - 4 / 5 % 3 ^ 2 - -x",
+            "a = 5; a += 2; a -= 1; a *= 3; a /= 2; a %= 4; a ^= 2; a",
+            "a = x; b = a++ + ++a; c = a-- - --a; a + b * c",
+            "~5 + (7 << 2) + (-9 >> 1) + 5!",
+            "a = x && 0 || !y; b = 3 <= 2 != (1 >= 2); c = x == 3; a + 2 * b + 4 * c + (x ~= 3.000001)",
+            "x < 0 ? -x : y > 1 ? 1 : y",
+            "x = x * y; y = 0; x",
+            "if (x > y) { a = 1; } else if (x) { a = 2; } else { a = 3; }",
+            "if (x < y) 1",
+            "s = 0; for (i = 0; i < 10; i++) { if (i == 3) continue; if (i == 7) break; s += i; } s",
+            "s = 0; i = 0; while (i < 20) { i++; if (i % 2) continue; s += i; } s",
+            "s = 1; do { s *= 2; } while (s < 100); s",
+            "s = 0; for (i = 1, 5) { s += i * i; } s",
+            "for (i = 0; i < 4; i++) { if (i == 2) break; i; }",
+            "while (x > 0) { x--; if (x == 1) continue; x; }",
+            "s = 0; for (i = 0; i < 4; i++) { for (j = 0; j < 4; j++) { if (j > i) break; s += j; } } s",
+            "if (x) { return y * 2; } 5",
+            "for (i = 0; i < 10; i++) { if (i == 4) return i; } -1",
+            "sin(1) + cos(2) * atan2(1, 2) + abs(-3) + min(1, 2, 3) + max(4, 5) + sqrt(2) + cbrt(27) + exp(1) + ln(2)",
+            "floor(2.5) + ceil(2.5) + round(2.5) + round(-2.5) + rint(2.5) + rint(3.5)",
+            "megabuf(3, 7 + megabuf(3)); gmegabuf(2, x); megabuf(3) + gmegabuf(2)",
+            "a = 1; b = 2; rotate(a, b, 0.5); swap(a, b); a * 10 + b",
+            "i = 0; while (1) { i++; }",
+            "undefined + 1"
+    })
+    void testCompiledMatchesMethodHandles(String expression) {
+        assertSameOutcome(expression, true);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "s = 0; switch (x) { case 1: s = 1; case 3: s += 3; case 4: s += 4; break; default: s = -1; } s",
+            "switch (y) { case 1: 10; default: 20; }",
+            "s = 0; for (i = 0; i < 5; i++) { switch (i) { case 2: break; default: s += i; } } s",
+            "a = 1; break; 2",
+            "if (x) { continue; } 2",
+            "while (x) { x = 0; } break"
+    })
+    void testFallbackMatchesMethodHandles(String expression) {
+        assertSameOutcome(expression, false);
+    }
+
+    @Test
+    void testTimeout() {
+        String expression = "for(i=0;i<256;i++){for(j=0;j<256;j++){for(k=0;k<256;k++){for(l=0;l<256;l++){ln(pi)}}}}";
+        for (boolean bytecode : new boolean[]{false, true}) {
+            Expression compiled = compile(expression, bytecode);
+            assertEquals(bytecode, isBytecode(compiled));
+            ExpressionTimeoutException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(
+                    ExpressionTimeoutException.class,
+                    () -> compiled.evaluate(new double[0], 50),
+                    "Loop was not stopped."
+            ));
+            assertTrue(e.getMessage().contains("Calculations exceeded time limit"));
+        }
+    }
+
+    @Test
+    void testBatchTimeout() {
+        // loops stop after 256 iterations, so only nested loops run into the timeout
+        String expression = "if (x > 0) { for(i=0;i<256;i++){for(j=0;j<256;j++){for(k=0;k<256;k++){ln(pi)}}} } x";
+        for (boolean bytecode : new boolean[]{false, true}) {
+            Expression compiled = compile(expression, bytecode);
+            assertEquals(bytecode, isBytecode(compiled));
+            double[][] values = {{-1, 2, -3}};
+            double[] results = new double[3];
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> compiled.evaluate(values, results, 3, 50, null));
+            assertEquals(-1, results[0], 0);
+            // the batch fails from the evaluation exceeding the deadline on
+            assertTrue(Double.isNaN(results[1]));
+            assertTrue(Double.isNaN(results[2]));
+        }
+    }
+
+}
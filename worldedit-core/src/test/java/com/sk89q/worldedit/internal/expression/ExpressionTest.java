@@ -449,6 +449,77 @@ public void testTimeout() {
         assertTrue(e.getMessage().contains("Calculations exceeded time limit"));
     }
 
+    //FAWE start - batch evaluation
+    @Test
+    public void testEvaluateBatch() {
+        Expression expression = compile("x < 0 ? a : x * y + z", "x", "y", "z");
+        double[][] values = {{1, 2, -1, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}};
+        double[] results = new double[4];
+        int[] visited = new int[4];
+        expression.evaluate(values, results, 3, 1_000, i -> visited[i]++);
+        assertEquals(14, results[0], 0);
+        assertEquals(22, results[1], 0);
+        // failed evaluations do not abort the batch
+        assertTrue(Double.isNaN(results[2]));
+        assertEquals(0, results[3], 0);
+        assertEquals(List.of(1, 1, 1, 0), List.of(visited[0], visited[1], visited[2], visited[3]));
+    }
+
+    @Test
+    public void testEvaluateBatchFailsAfterDeadline() {
+        // every evaluation checks the deadline in its loop, but only the batch as a whole takes longer than the timeout
+        Expression expression = compile("s = 0; for (i = 0; i < 4; i++) { s += x; } s", "x");
+        int length = 8;
+        double[][] values = {new double[length]};
+        for (int i = 0; i < length; i++) {
+            values[0][i] = i;
+        }
+        double[] results = new double[length];
+        int[] visited = new int[length];
+        expression.evaluate(values, results, length, 50, i -> {
+            visited[i]++;
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        int failed = 0;
+        while (failed < length && !Double.isNaN(results[failed])) {
+            assertEquals(4 * failed, results[failed], 0);
+            failed++;
+        }
+        assertTrue(failed < length, "Batch did not exceed its deadline");
+        // the evaluation exceeding the deadline and all after it fail, those after it are not run at all
+        for (int i = failed; i < length; i++) {
+            assertTrue(Double.isNaN(results[i]));
+            assertEquals(i == failed ? 1 : 0, visited[i]);
+        }
+    }
+
+    @Test
+    public void testEvaluateBatchTimeout() {
+        // loops stop after 256 iterations, so only nested loops run into the timeout
+        Expression expression = compile(
+                "if (x > 0) { for(i=0;i<256;i++){for(j=0;j<256;j++){for(k=0;k<256;k++){ln(pi)}}} } x",
+                "x"
+        );
+        double[][] values = {{-1, 2, -3}};
+        double[] results = new double[3];
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> expression.evaluate(values, results, 3, 50, null));
+        assertEquals(-1, results[0], 0);
+        assertTrue(Double.isNaN(results[1]));
+        assertTrue(Double.isNaN(results[2]));
+
+        // other failures do not stop the batch
+        Expression limited = compile("c = x; while (c > 0) { ++c; } x", "x");
+        limited.evaluate(values, results, 3, 1_000, null);
+        assertEquals(-1, results[0], 0);
+        assertTrue(Double.isNaN(results[1]));
+        assertEquals(-3, results[2], 0);
+    }
+    //FAWE end
+
     @Test
     public void testRound() {
         checkTestCase("round(1.3)", 1);